@@ -0,0 +1,188 @@
+package infn.bed.batch;
+
+import infn.bed.event.DecodedEvent;
+import infn.bed.event.EnergyTimeData;
+import infn.bed.event.EventDecoder;
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * Decodes and reconstructs every event of an evio file, and writes the energy-time scintillator bar and veto
+ * hits to a text file, one hit per line: the event number, "bar" or "veto", the bar or veto number, the
+ * energy, the time and the position from the left end (NaN for a veto).
+ * 
+ * <p>
+ * A PrintWriter does not throw, so the output is checked for errors before it is closed, and a file whose
+ * output could not be written fails.
+ * </p>
+ * 
+ * <p>
+ * NOTE: Each file has its own decoder and output, so several files can be processed at the same time.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class BatchFileProcessor implements Callable<BatchStatistics> {
+	
+	/**
+	 * The evio file.
+	 */
+	private final File evioFile;
+	
+	/**
+	 * The output file, or null if no per-event output is written.
+	 */
+	private final File outputFile;
+	
+	/**
+	 * The decoder. The channels of an event are converted on the calling thread, since the files are
+	 * already processed in parallel.
+	 */
+	private final EventDecoder eventDecoder;
+	
+	/**
+	 * The structures of interest of the event being processed.
+	 */
+	private final List<IEvioStructure> structureList = new ArrayList<>();
+	
+	/**
+	 * The constructor.
+	 * 
+	 * @param evioFile The evio file.
+	 * @param outputFile The output file, or null if no per-event output is written.
+	 * @param calibrationTable The calibration table the events are reconstructed with.
+	 */
+	public BatchFileProcessor(File evioFile, File outputFile, final CalibrationTable calibrationTable) {
+		this.evioFile = evioFile;
+		this.outputFile = outputFile;
+		eventDecoder = new EventDecoder(() -> calibrationTable);
+		eventDecoder.setConversionExecutor(null);
+	}
+	
+	/**
+	 * Processes the evio file.
+	 * 
+	 * @return The statistics of the evio file.
+	 * @throws IOException If the evio file cannot be read or the output file cannot be written.
+	 * @throws EvioException If the evio file is malformed.
+	 */
+	@Override
+	public BatchStatistics call() throws IOException, EvioException {
+		BatchStatistics statistics = new BatchStatistics();
+		long startTime = System.nanoTime();
+		EvioReader evioReader = new EvioReader(evioFile);
+		PrintWriter printWriter = null;
+		try {
+			if (outputFile != null) {
+				printWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+				printWriter.println("# event kind element energy time position");
+			}
+			long eventNumber = 0;
+			EvioEvent evioEvent;
+			while ((evioEvent = evioReader.parseNextEvent()) != null) {
+				eventNumber++;
+				structureList.clear();
+				EventDecoder.collectDecodedStructures(evioEvent, structureList);
+				DecodedEvent decodedEvent = eventDecoder.decode(eventNumber, structureList);
+				int hits = _processHits(eventNumber, decodedEvent.getEnergyTimeData(), statistics, printWriter);
+				int vetoHits = _processVetoHits(eventNumber, decodedEvent.getEnergyTimeData(), statistics, printWriter);
+				statistics.addEvent(hits, vetoHits);
+				eventDecoder.recycle(decodedEvent);
+			}
+			// also flushes the output
+			if (printWriter != null && printWriter.checkError()) {
+				throw new IOException("Cannot write " + outputFile);
+			}
+		} finally {
+			if (printWriter != null) {
+				printWriter.close();
+			}
+			evioReader.close();
+		}
+		statistics.addFile(System.nanoTime() - startTime);
+		return statistics;
+	}
+	
+	/**
+	 * Collects the scintillator bar hits of an event.
+	 * 
+	 * @param eventNumber The event number.
+	 * @param energyTimeData The energy-time data of the event.
+	 * @param statistics The statistics the hits are added to.
+	 * @param printWriter The per-event output, or null if no per-event output is written.
+	 * @return The number of scintillator bar hits.
+	 */
+	private int _processHits(long eventNumber, EnergyTimeData energyTimeData, BatchStatistics statistics, PrintWriter printWriter) {
+		int barHits = 0;
+		for (int hit = 0; hit < energyTimeData.getBarHitCount(); hit++) {
+			int bar = energyTimeData.getBar(hit);
+			double energy = energyTimeData.getBarEnergy(hit);
+			if (bar < 0 || energy <= 0) {
+				continue;
+			}
+			statistics.addHit(bar, energy);
+			barHits++;
+			if (printWriter != null) {
+				printWriter.print(eventNumber);
+				printWriter.print(" bar ");
+				printWriter.print(bar + 1);
+				printWriter.print(' ');
+				printWriter.print(energy);
+				printWriter.print(' ');
+				printWriter.print(energyTimeData.getBarTime(hit));
+				printWriter.print(' ');
+				printWriter.println(energyTimeData.getPositionFromLeft(hit));
+			}
+		}
+		return barHits;
+	}
+	
+	/**
+	 * Collects the veto hits of an event.
+	 * 
+	 * @param eventNumber The event number.
+	 * @param energyTimeData The energy-time data of the event.
+	 * @param statistics The statistics the hits are added to.
+	 * @param printWriter The per-event output, or null if no per-event output is written.
+	 * @return The number of veto hits.
+	 */
+	private int _processVetoHits(long eventNumber, EnergyTimeData energyTimeData, BatchStatistics statistics, PrintWriter printWriter) {
+		int vetoHits = 0;
+		for (int hit = 0; hit < energyTimeData.getVetoHitCount(); hit++) {
+			int veto = energyTimeData.getVeto(hit);
+			double energy = energyTimeData.getVetoEnergy(hit);
+			if (veto < 0 || veto >= GeometricConstants.VETOES || energy <= 0) {
+				continue;
+			}
+			statistics.addVetoHit(veto, energy);
+			vetoHits++;
+			if (printWriter != null) {
+				printWriter.print(eventNumber);
+				printWriter.print(" veto ");
+				printWriter.print(veto + 1);
+				printWriter.print(' ');
+				printWriter.print(energy);
+				printWriter.print(' ');
+				printWriter.print(energyTimeData.getVetoTime(hit));
+				printWriter.print(' ');
+				printWriter.println(Double.NaN);
+			}
+		}
+		return vetoHits;
+	}
+	
+}
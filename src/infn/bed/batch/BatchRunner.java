@@ -0,0 +1,189 @@
+package infn.bed.batch;
+
+import infn.bed.util.CalibrationFileParser;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.InvalidCalibrationFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the event decoding and the charge-time to energy-time conversion over a list of evio files without
+ * a display. The files are processed in parallel, one file per thread.
+ * 
+ * <p>
+ * Usage: java infn.bed.batch.BatchRunner -c calibrationFile [-o outputDirectory] [-t threads] evioFile...
+ * </p>
+ * 
+ * <p>
+ * For each evio file, the energy-time hits of every event are written to a text file with the same name and
+ * the .txt extension in the output directory. Without an output directory, only the summary is printed.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class BatchRunner {
+	
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE = "Usage: java infn.bed.batch.BatchRunner -c calibrationFile [-o outputDirectory] [-t threads] evioFile...";
+	
+	/**
+	 * The calibration file.
+	 */
+	private File calibrationFile;
+	
+	/**
+	 * The output directory, or null if no per-event output is written.
+	 */
+	private File outputDirectory;
+	
+	/**
+	 * The number of threads.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The evio files.
+	 */
+	private final List<File> evioFileList = new ArrayList<>();
+	
+	/**
+	 * The constructor.
+	 * 
+	 * @param args The command line arguments.
+	 * @throws IllegalArgumentException If the command line arguments are invalid.
+	 */
+	public BatchRunner(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-c") || arg.equals("-o") || arg.equals("-t")) {
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("Missing value of " + arg);
+				}
+				String value = args[++i];
+				if (arg.equals("-c")) {
+					calibrationFile = new File(value);
+				} else if (arg.equals("-o")) {
+					outputDirectory = new File(value);
+				} else {
+					try {
+						threads = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid number of threads: " + value);
+					}
+					if (threads < 1) {
+						throw new IllegalArgumentException("Invalid number of threads: " + value);
+					}
+				}
+			} else if (arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			} else {
+				evioFileList.add(new File(arg));
+			}
+		}
+		if (calibrationFile == null || !calibrationFile.isFile()) {
+			throw new IllegalArgumentException("Missing calibration file");
+		}
+		if (evioFileList.isEmpty()) {
+			throw new IllegalArgumentException("Missing evio files");
+		}
+		if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create output directory: " + outputDirectory);
+		}
+	}
+	
+	/**
+	 * Processes the evio files.
+	 * 
+	 * @return true if every evio file was processed, false otherwise.
+	 * @throws IOException If the calibration file cannot be read.
+	 * @throws InvalidCalibrationFileException If the calibration file is invalid.
+	 * @throws InterruptedException If the run is interrupted.
+	 */
+	public boolean run() throws IOException, InterruptedException {
+		CalibrationTable calibrationTable = new CalibrationFileParser(calibrationFile).getCalibrationTable();
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, evioFileList.size()));
+		List<Future<BatchStatistics>> futureList = new ArrayList<>(evioFileList.size());
+		long startTime = System.nanoTime();
+		for (File evioFile : evioFileList) {
+			futureList.add(executorService.submit(new BatchFileProcessor(evioFile, _getOutputFile(evioFile), calibrationTable)));
+		}
+		executorService.shutdown();
+		
+		BatchStatistics totalStatistics = new BatchStatistics();
+		boolean success = true;
+		for (int i = 0; i < futureList.size(); i++) {
+			File evioFile = evioFileList.get(i);
+			try {
+				BatchStatistics statistics = futureList.get(i).get();
+				System.out.println(String.format("%s: %d events in %.3f s (%.1f events/s)", evioFile.getPath(),
+						statistics.getEvents(), statistics.getElapsedNanoseconds() / 1.0e9,
+						statistics.getEventsPerSecond(statistics.getElapsedNanoseconds())));
+				totalStatistics.merge(statistics);
+			} catch (ExecutionException e) {
+				System.err.println(evioFile.getPath() + ": " + e.getCause());
+				success = false;
+			}
+		}
+		long elapsedNanoseconds = System.nanoTime() - startTime;
+		
+		totalStatistics.print(System.out);
+		System.out.println(String.format("%d events in %.3f s (%.1f events/s, threads: %d)", totalStatistics.getEvents(),
+				elapsedNanoseconds / 1.0e9, totalStatistics.getEventsPerSecond(elapsedNanoseconds),
+				Math.min(threads, evioFileList.size())));
+		return success;
+	}
+	
+	/**
+	 * Returns the output file of an evio file.
+	 * 
+	 * @param evioFile The evio file.
+	 * @return The output file, or null if no per-event output is written.
+	 */
+	private File _getOutputFile(File evioFile) {
+		if (outputDirectory == null) {
+			return null;
+		}
+		String name = evioFile.getName();
+		int extension = name.lastIndexOf('.');
+		if (extension > 0) {
+			name = name.substring(0, extension);
+		}
+		return new File(outputDirectory, name + ".txt");
+	}
+	
+	/**
+	 * Main program for the batch mode.
+	 * 
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		BatchRunner batchRunner;
+		try {
+			batchRunner = new BatchRunner(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		try {
+			System.exit(batchRunner.run() ? 0 : 2);
+		} catch (IOException | InvalidCalibrationFileException e) {
+			System.err.println("Invalid calibration file: " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(2);
+		}
+	}
+	
+}
@@ -0,0 +1,199 @@
+package infn.bed.batch;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.io.PrintStream;
+
+/**
+ * Summary statistics of a batch run over one or more evio files.
+ * 
+ * @author Angelo Licastro
+ */
+public class BatchStatistics {
+	
+	/**
+	 * The number of processed files.
+	 */
+	private int files;
+	
+	/**
+	 * The number of processed events.
+	 */
+	private long events;
+	
+	/**
+	 * The number of events that have scintillator bar hits.
+	 */
+	private long eventsWithHits;
+	
+	/**
+	 * The number of hits of each scintillator bar.
+	 */
+	private final long[] barHitsArray = new long[GeometricConstants.BARS];
+	
+	/**
+	 * The sum of the energies of the hits of each scintillator bar.
+	 */
+	private final double[] barEnergySumArray = new double[GeometricConstants.BARS];
+	
+	/**
+	 * The maximum energy of the hits of each scintillator bar.
+	 */
+	private final double[] barEnergyMaximumArray = new double[GeometricConstants.BARS];
+	
+	/**
+	 * The number of events that have veto hits.
+	 */
+	private long eventsWithVetoHits;
+	
+	/**
+	 * The number of hits of each veto.
+	 */
+	private final long[] vetoHitsArray = new long[GeometricConstants.VETOES];
+	
+	/**
+	 * The sum of the energies of the hits of each veto.
+	 */
+	private final double[] vetoEnergySumArray = new double[GeometricConstants.VETOES];
+	
+	/**
+	 * The maximum energy of the hits of each veto.
+	 */
+	private final double[] vetoEnergyMaximumArray = new double[GeometricConstants.VETOES];
+	
+	/**
+	 * The processing time in nanoseconds.
+	 */
+	private long elapsedNanoseconds;
+	
+	/**
+	 * Counts a processed file.
+	 * 
+	 * @param elapsedNanoseconds The time spent processing the file in nanoseconds.
+	 */
+	void addFile(long elapsedNanoseconds) {
+		files++;
+		this.elapsedNanoseconds += elapsedNanoseconds;
+	}
+	
+	/**
+	 * Counts a processed event.
+	 * 
+	 * @param hits The number of scintillator bar hits of the event.
+	 * @param vetoHits The number of veto hits of the event.
+	 */
+	void addEvent(int hits, int vetoHits) {
+		events++;
+		if (hits > 0) {
+			eventsWithHits++;
+		}
+		if (vetoHits > 0) {
+			eventsWithVetoHits++;
+		}
+	}
+	
+	/**
+	 * Counts a scintillator bar hit.
+	 * 
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @param energy The energy of the hit.
+	 */
+	void addHit(int bar, double energy) {
+		barHitsArray[bar]++;
+		barEnergySumArray[bar] += energy;
+		barEnergyMaximumArray[bar] = Math.max(barEnergyMaximumArray[bar], energy);
+	}
+	
+	/**
+	 * Counts a veto hit.
+	 * 
+	 * @param veto The veto in zero-based indexing.
+	 * @param energy The energy of the hit.
+	 */
+	void addVetoHit(int veto, double energy) {
+		vetoHitsArray[veto]++;
+		vetoEnergySumArray[veto] += energy;
+		vetoEnergyMaximumArray[veto] = Math.max(vetoEnergyMaximumArray[veto], energy);
+	}
+	
+	/**
+	 * Adds the statistics of another run to these statistics.
+	 * 
+	 * @param statistics The statistics of the other run.
+	 */
+	public void merge(BatchStatistics statistics) {
+		files += statistics.files;
+		events += statistics.events;
+		eventsWithHits += statistics.eventsWithHits;
+		eventsWithVetoHits += statistics.eventsWithVetoHits;
+		elapsedNanoseconds += statistics.elapsedNanoseconds;
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			barHitsArray[bar] += statistics.barHitsArray[bar];
+			barEnergySumArray[bar] += statistics.barEnergySumArray[bar];
+			barEnergyMaximumArray[bar] = Math.max(barEnergyMaximumArray[bar], statistics.barEnergyMaximumArray[bar]);
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			vetoHitsArray[veto] += statistics.vetoHitsArray[veto];
+			vetoEnergySumArray[veto] += statistics.vetoEnergySumArray[veto];
+			vetoEnergyMaximumArray[veto] = Math.max(vetoEnergyMaximumArray[veto], statistics.vetoEnergyMaximumArray[veto]);
+		}
+	}
+	
+	/**
+	 * Returns the number of processed files.
+	 * 
+	 * @return The number of processed files.
+	 */
+	public int getFiles() {
+		return files;
+	}
+	
+	/**
+	 * Returns the number of processed events.
+	 * 
+	 * @return The number of processed events.
+	 */
+	public long getEvents() {
+		return events;
+	}
+	
+	/**
+	 * Returns the processing time in nanoseconds. For merged statistics, this is the sum over all files.
+	 * 
+	 * @return The processing time in nanoseconds.
+	 */
+	public long getElapsedNanoseconds() {
+		return elapsedNanoseconds;
+	}
+	
+	/**
+	 * Returns the number of events processed per second.
+	 * 
+	 * @param elapsedNanoseconds The time in nanoseconds.
+	 * @return The number of events processed per second.
+	 */
+	public double getEventsPerSecond(long elapsedNanoseconds) {
+		return (elapsedNanoseconds <= 0) ? 0 : events * 1.0e9 / elapsedNanoseconds;
+	}
+	
+	/**
+	 * Prints the per-bar and per-veto summary.
+	 * 
+	 * @param printStream The stream to print to.
+	 */
+	public void print(PrintStream printStream) {
+		printStream.println("files: " + files + ", events: " + events + ", events with bar hits: " + eventsWithHits
+				+ ", events with veto hits: " + eventsWithVetoHits);
+		printStream.println("bar      hits   mean energy    max energy");
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			double meanEnergy = (barHitsArray[bar] == 0) ? 0 : barEnergySumArray[bar] / barHitsArray[bar];
+			printStream.println(String.format("%3d %9d %13.4f %13.4f", bar + 1, barHitsArray[bar], meanEnergy, barEnergyMaximumArray[bar]));
+		}
+		printStream.println("veto     hits   mean energy    max energy");
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			double meanEnergy = (vetoHitsArray[veto] == 0) ? 0 : vetoEnergySumArray[veto] / vetoHitsArray[veto];
+			printStream.println(String.format("%3d %9d %13.4f %13.4f", veto + 1, vetoHitsArray[veto], meanEnergy, vetoEnergyMaximumArray[veto]));
+		}
+	}
+	
+}
@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 
 import javax.swing.Box;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JTabbedPane;
@@ -99,6 +100,9 @@ public class ControlPanel extends JPanel {
 	// the feedback pane
 	private FeedbackPane _feedbackPane;
 
+	// the render statistics below the feedback pane
+	private JLabel _renderLabel;
+
 	/**
 	 * Create a view control panel
 	 * 
@@ -118,6 +122,10 @@ public class ControlPanel extends JPanel {
 			_feedbackPane = new FeedbackPane(FEEDBACKWIDTH);
 			view.getContainer().setFeedbackPane(_feedbackPane);
 			box.add(_feedbackPane);
+
+			_renderLabel = new JLabel(" ");
+			_renderLabel.setFont(smallFont);
+			box.add(_renderLabel);
 		}
 
 		add(box);
@@ -261,4 +269,27 @@ public class ControlPanel extends JPanel {
 		return _phiSlider;
 	}
 
+	/**
+	 * Show the render statistics of the view below the feedback pane. Does
+	 * nothing if the panel has no feedback pane.
+	 * 
+	 * @param framesPerSecond the achieved frame rate
+	 * @param skippedEvents the number of events that were never drawn on
+	 *        their own
+	 * @param readAheadHitRate the fraction of the events found in the
+	 *        read-ahead cache, or NaN if none was looked up
+	 */
+	public void setRenderStatistics(double framesPerSecond, long skippedEvents,
+			double readAheadHitRate) {
+		if (_renderLabel != null) {
+			String text = String.format("%.1f fps, %d events skipped",
+					framesPerSecond, skippedEvents);
+			if (!Double.isNaN(readAheadHitRate)) {
+				text += String.format(", %.0f%% read-ahead hits",
+						100 * readAheadHitRate);
+			}
+			_renderLabel.setText(text);
+		}
+	}
+
 }
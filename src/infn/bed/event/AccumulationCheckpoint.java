@@ -0,0 +1,474 @@
+package infn.bed.event;
+
+import infn.bed.event.HistogramBank.Family;
+import infn.bed.geometry.GeometricConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Periodically writes the accumulated data (counters, histograms and quantile sketches) to a versioned,
+ * memory-mapped binary file, and restores it when the display starts again.
+ *
+ * <p>
+ * The file is an array of big-endian 64-bit words: a header (magic number, version, sequence number, time of
+ * the checkpoint and the layout of the data), followed by the event count, the counters of every scintillator
+ * bar and veto, the energy and time histograms, and the quantile sketches of every scintillator bar and veto.
+ * A file whose layout differs from the current one is not restored. The hit rates are not saved, since they
+ * only describe the last seconds.
+ * </p>
+ *
+ * <p>
+ * NOTE: Checkpoints are written on their own daemon thread, from the same snapshots the display reads, so
+ * writing never pauses the decode threads. A checkpoint only writes the words that changed since the last
+ * one, and nothing at all if no event was accumulated meanwhile. The sequence number is odd while a
+ * checkpoint is being written, so a file left by a display that stopped halfway through is not restored.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class AccumulationCheckpoint {
+
+	/**
+	 * The system property with the path of the checkpoint file.
+	 */
+	public static final String FILE_PROPERTY = "bed.checkpoint.file";
+
+	/**
+	 * The system property with the time in seconds between two checkpoints. Checkpoints are disabled if it
+	 * is 0 or below.
+	 */
+	public static final String SECONDS_PROPERTY = "bed.checkpoint.seconds";
+
+	/**
+	 * The default time in seconds between two checkpoints.
+	 */
+	public static final int DEFAULT_SECONDS = 60;
+
+	/**
+	 * The magic number of a checkpoint file ("BEDACCKP").
+	 */
+	private static final long MAGIC = 0x4245444143434b50L;
+
+	/**
+	 * The version of the layout of a checkpoint file.
+	 */
+	private static final long VERSION = 1;
+
+	/**
+	 * The word of the magic number.
+	 */
+	private static final int MAGIC_WORD = 0;
+
+	/**
+	 * The word of the version.
+	 */
+	private static final int VERSION_WORD = 1;
+
+	/**
+	 * The word of the sequence number.
+	 */
+	private static final int SEQUENCE_WORD = 2;
+
+	/**
+	 * The word of the time of the checkpoint in milliseconds since the epoch.
+	 */
+	private static final int TIME_WORD = 3;
+
+	/**
+	 * The first word of the layout of the data.
+	 */
+	private static final int LAYOUT_WORD = 4;
+
+	/**
+	 * The number of counters of a scintillator bar or veto: hit count, energy sum and event count.
+	 */
+	private static final int COUNTERS = 3;
+
+	/**
+	 * The accumulation manager whose data is saved.
+	 */
+	private final AccumulationManager manager;
+
+	/**
+	 * The checkpoint file.
+	 */
+	private final File file;
+
+	/**
+	 * The layout of the data, as written in the header.
+	 */
+	private final long[] layoutArray;
+
+	/**
+	 * The number of channels of the histograms.
+	 */
+	private final int channels;
+
+	/**
+	 * The number of regular bins of a histogram.
+	 */
+	private final int bins;
+
+	/**
+	 * The lower edge of the first regular bin of each histogram family.
+	 */
+	private final double[] minimumArray = new double[Family.values().length];
+
+	/**
+	 * The upper edge of the last regular bin of each histogram family.
+	 */
+	private final double[] maximumArray = new double[Family.values().length];
+
+	/**
+	 * The length of the state of the quantile sketches of a scintillator bar or veto.
+	 */
+	private final int sketchStateLength;
+
+	/**
+	 * The number of words of the file.
+	 */
+	private final int words;
+
+	/**
+	 * Writes the checkpoints, or null if they have not been started.
+	 */
+	private ScheduledExecutorService writer;
+
+	/**
+	 * The words of the mapped file, or null if the file has not been mapped yet.
+	 */
+	private LongBuffer buffer;
+
+	/**
+	 * The mapped file, or null if the file has not been mapped yet.
+	 */
+	private MappedByteBuffer mappedBuffer;
+
+	/**
+	 * The words in the file, or null if they are not known.
+	 */
+	private long[] writtenImage;
+
+	/**
+	 * The sequence number of the last checkpoint.
+	 */
+	private long sequence;
+
+	/**
+	 * true if a failed checkpoint has been logged, so the failure is not logged at every checkpoint.
+	 */
+	private boolean failureLogged;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param manager The accumulation manager whose data is saved.
+	 * @param file The checkpoint file.
+	 */
+	public AccumulationCheckpoint(AccumulationManager manager, File file) {
+		this.manager = manager;
+		this.file = file;
+		HistogramSnapshot histogramSnapshot = manager.getHistogramBank().getSnapshot();
+		channels = histogramSnapshot.getChannelCount();
+		bins = histogramSnapshot.getBinCount();
+		for (Family family : Family.values()) {
+			minimumArray[family.ordinal()] = histogramSnapshot.getMinimum(family);
+			maximumArray[family.ordinal()] = histogramSnapshot.getMaximum(family);
+		}
+		sketchStateLength = new ElementSketch().getStateLength();
+		layoutArray = new long[] { GeometricConstants.BARS, GeometricConstants.VETOES, channels, bins,
+				Double.doubleToLongBits(minimumArray[Family.ENERGY.ordinal()]), Double.doubleToLongBits(maximumArray[Family.ENERGY.ordinal()]),
+				Double.doubleToLongBits(minimumArray[Family.TIME.ordinal()]), Double.doubleToLongBits(maximumArray[Family.TIME.ordinal()]),
+				sketchStateLength };
+		words = getDataWord() + 1 + (GeometricConstants.BARS + GeometricConstants.VETOES) * COUNTERS
+				+ Family.values().length * channels * (bins + 2) + (GeometricConstants.BARS + GeometricConstants.VETOES) * sketchStateLength;
+	}
+
+	/**
+	 * Creates the checkpoint of the accumulation manager configured by the system properties.
+	 *
+	 * @param manager The accumulation manager whose data is saved.
+	 * @return The checkpoint, or null if checkpoints are disabled.
+	 */
+	public static AccumulationCheckpoint createDefault(AccumulationManager manager) {
+		if (Integer.getInteger(SECONDS_PROPERTY, DEFAULT_SECONDS) <= 0) {
+			return null;
+		}
+		String path = System.getProperty(FILE_PROPERTY);
+		File file = (path != null) ? new File(path) : new File(System.getProperty("user.home"), ".bed-accumulation.ckpt");
+		return new AccumulationCheckpoint(manager, file);
+	}
+
+	/**
+	 * Returns the first word of the data.
+	 *
+	 * @return The first word of the data.
+	 */
+	private int getDataWord() {
+		return LAYOUT_WORD + layoutArray.length;
+	}
+
+	/**
+	 * Restores the accumulated data of the checkpoint file, if it exists and has the current layout. Must be
+	 * called before any event is accumulated.
+	 *
+	 * @return true if the accumulated data was restored, false otherwise.
+	 */
+	public synchronized boolean restore() {
+		if (!file.isFile()) {
+			return false;
+		}
+		if (file.length() != words * 8L) {
+			Log.getInstance().warning("Ignored checkpoint " + file.getName() + ", its layout is out of date");
+			return false;
+		}
+		long[] image = new long[words];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			channel.map(FileChannel.MapMode.READ_ONLY, 0, words * 8L).asLongBuffer().get(image);
+		} catch (IOException e) {
+			Log.getInstance().warning("Cannot read checkpoint " + file.getName() + ", " + e.getMessage());
+			return false;
+		}
+		if (image[MAGIC_WORD] != MAGIC || image[VERSION_WORD] != VERSION || !hasLayout(image)) {
+			Log.getInstance().warning("Ignored checkpoint " + file.getName() + ", its layout is out of date");
+			return false;
+		}
+		if ((image[SEQUENCE_WORD] & 1) != 0) {
+			Log.getInstance().warning("Ignored checkpoint " + file.getName() + ", it was not completely written");
+			return false;
+		}
+		restore(image);
+		// the next checkpoint only writes what changed since this one
+		writtenImage = image;
+		sequence = image[SEQUENCE_WORD];
+		Log.getInstance().info("Restored " + image[getDataWord()] + " accumulated events from checkpoint " + file.getName());
+		return true;
+	}
+
+	/**
+	 * Returns true if an image has the current layout, false otherwise.
+	 *
+	 * @param image The image.
+	 * @return true if the image has the current layout, false otherwise.
+	 */
+	private boolean hasLayout(long[] image) {
+		for (int i = 0; i < layoutArray.length; i++) {
+			if (image[LAYOUT_WORD + i] != layoutArray[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restores the accumulated data of an image.
+	 *
+	 * @param image The image.
+	 */
+	private void restore(long[] image) {
+		int word = getDataWord();
+		long eventCount = image[word++];
+		int elements = GeometricConstants.BARS + GeometricConstants.VETOES;
+		long[] hitCountArray = new long[elements];
+		double[] energySumArray = new double[elements];
+		long[] eventCountArray = new long[elements];
+		for (int element = 0; element < elements; element++) {
+			hitCountArray[element] = image[word++];
+			energySumArray[element] = Double.longBitsToDouble(image[word++]);
+			eventCountArray[element] = image[word++];
+		}
+		AccumulationSnapshot snapshot = new AccumulationSnapshot(eventCount,
+				Arrays.copyOfRange(hitCountArray, 0, GeometricConstants.BARS),
+				Arrays.copyOfRange(energySumArray, 0, GeometricConstants.BARS),
+				Arrays.copyOfRange(eventCountArray, 0, GeometricConstants.BARS),
+				Arrays.copyOfRange(hitCountArray, GeometricConstants.BARS, elements),
+				Arrays.copyOfRange(energySumArray, GeometricConstants.BARS, elements),
+				Arrays.copyOfRange(eventCountArray, GeometricConstants.BARS, elements));
+		int slots = channels * (bins + 2);
+		long[][] countArrays = new long[Family.values().length][];
+		for (int family = 0; family < countArrays.length; family++) {
+			countArrays[family] = Arrays.copyOfRange(image, word, word + slots);
+			word += slots;
+		}
+		HistogramSnapshot histogramSnapshot = new HistogramSnapshot(channels, bins, minimumArray.clone(), maximumArray.clone(), countArrays);
+		ElementSketch[] barSketchArray = new ElementSketch[GeometricConstants.BARS];
+		for (int bar = 0; bar < barSketchArray.length; bar++) {
+			barSketchArray[bar] = new ElementSketch();
+			barSketchArray[bar].addState(image, word);
+			word += sketchStateLength;
+		}
+		ElementSketch[] vetoSketchArray = new ElementSketch[GeometricConstants.VETOES];
+		for (int veto = 0; veto < vetoSketchArray.length; veto++) {
+			vetoSketchArray[veto] = new ElementSketch();
+			vetoSketchArray[veto].addState(image, word);
+			word += sketchStateLength;
+		}
+		manager.restore(snapshot, histogramSnapshot, barSketchArray, vetoSketchArray);
+	}
+
+	/**
+	 * Creates the image of the accumulated data, as it is written in the file. The sequence number is left
+	 * out.
+	 *
+	 * @return The image.
+	 */
+	private long[] createImage() {
+		long[] image = new long[words];
+		image[MAGIC_WORD] = MAGIC;
+		image[VERSION_WORD] = VERSION;
+		image[TIME_WORD] = System.currentTimeMillis();
+		System.arraycopy(layoutArray, 0, image, LAYOUT_WORD, layoutArray.length);
+		int word = getDataWord();
+		// the banks are read first, so the event count is never lower than what they contain
+		HistogramSnapshot histogramSnapshot = manager.getHistogramBank().getSnapshot();
+		ElementSketchBank elementSketchBank = manager.getElementSketchBank();
+		AccumulationSnapshot snapshot = manager.createSnapshot();
+		image[word++] = snapshot.getEventCount();
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			image[word++] = snapshot.getBarHitCount(bar);
+			image[word++] = Double.doubleToLongBits(snapshot.getBarEnergySum(bar));
+			image[word++] = snapshot.getBarEventCount(bar);
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			image[word++] = snapshot.getVetoHitCount(veto);
+			image[word++] = Double.doubleToLongBits(snapshot.getVetoEnergySum(veto));
+			image[word++] = snapshot.getVetoEventCount(veto);
+		}
+		for (Family family : Family.values()) {
+			long[] counts = histogramSnapshot.getCountArray(family);
+			System.arraycopy(counts, 0, image, word, counts.length);
+			word += counts.length;
+		}
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			elementSketchBank.getBarSketch(bar).getState(image, word);
+			word += sketchStateLength;
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			elementSketchBank.getVetoSketch(veto).getState(image, word);
+			word += sketchStateLength;
+		}
+		return image;
+	}
+
+	/**
+	 * Writes a checkpoint. Only the words that changed since the last checkpoint are written.
+	 */
+	public synchronized void write() {
+		long[] image = createImage();
+		if (writtenImage != null && !hasChanged(image)) {
+			return;
+		}
+		try {
+			if (buffer == null) {
+				map();
+			}
+			buffer.put(SEQUENCE_WORD, sequence + 1);
+			for (int word = 0; word < words; word++) {
+				if (word != SEQUENCE_WORD && (writtenImage == null || image[word] != writtenImage[word])) {
+					buffer.put(word, image[word]);
+				}
+			}
+			sequence += 2;
+			buffer.put(SEQUENCE_WORD, sequence);
+			image[SEQUENCE_WORD] = sequence;
+			mappedBuffer.force();
+			writtenImage = image;
+			failureLogged = false;
+		} catch (IOException e) {
+			if (!failureLogged) {
+				Log.getInstance().warning("Cannot write checkpoint " + file.getName() + ", " + e.getMessage());
+				failureLogged = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the data of an image differs from the last checkpoint, false otherwise. The time of
+	 * the checkpoint does not count.
+	 *
+	 * @param image The image.
+	 * @return true if the data of the image differs from the last checkpoint, false otherwise.
+	 */
+	private boolean hasChanged(long[] image) {
+		for (int word = getDataWord(); word < words; word++) {
+			if (image[word] != writtenImage[word]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Maps the checkpoint file, resizing it to the current layout.
+	 *
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	private void map() throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE)) {
+			if (channel.size() != words * 8L) {
+				// the old words are of no use with another size
+				channel.truncate(0);
+				writtenImage = null;
+			}
+			// the mapping stays valid after the channel is closed
+			mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, words * 8L);
+		}
+		buffer = mappedBuffer.asLongBuffer();
+	}
+
+	/**
+	 * Starts writing checkpoints periodically, and once more when the display exits.
+	 *
+	 * @param seconds The time in seconds between two checkpoints.
+	 */
+	public synchronized void start(int seconds) {
+		if (writer != null) {
+			return;
+		}
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bed-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::writeQuietly, seconds, seconds, TimeUnit.SECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::writeQuietly, "bed-checkpoint-exit"));
+	}
+
+	/**
+	 * Writes a checkpoint, logging any unexpected error, so a failed checkpoint does not stop the later
+	 * ones.
+	 */
+	private void writeQuietly() {
+		try {
+			write();
+		} catch (RuntimeException e) {
+			Log.getInstance().exception(e);
+		}
+	}
+
+	/**
+	 * Returns the checkpoint file.
+	 *
+	 * @return The checkpoint file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+}
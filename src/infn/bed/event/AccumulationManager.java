@@ -1,72 +1,185 @@
 package infn.bed.event;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.swing.Timer;
+
 import cnuphys.bCNU.event.BaseAccumulationManager;
 import cnuphys.bCNU.event.EventControl;
-import cnuphys.bCNU.event.IPhysicsEventListener;
 import cnuphys.bCNU.graphics.colorscale.ColorScaleModel;
-import cnuphys.bCNU.util.Histo2DData;
 import infn.bed.geometry.GeometricConstants;
-import org.jlab.coda.jevio.EvioEvent;
+import infn.bed.math.MathematicalConstants;
 
 /**
- * Manages the accumulation of data
- * 
+ * Manages the accumulation of data. Builds the hit counts, energy sums and occupancies of the scintillator
+ * bars and vetoes while accumulating.
+ *
+ * <p>
+ * NOTE: The events are accumulated on the decode threads of the event pipeline, including the events that
+ * are never rendered. The counters are striped (LongAdder and DoubleAdder), so the decode threads never
+ * lock or contend on a single counter. The views read an immutable snapshot, which is refreshed on the
+ * event dispatch thread at a fixed low rate, so the cost of drawing does not depend on the event rate. The
+ * energy and time histograms of every channel, and the quantile sketches and hit rates of every element,
+ * are filled in banks with a shard per decode thread. The sketches are filled with every decoded event, so
+ * the live statistics are there in single-event mode too.
+ * </p>
+ *
  * @author heddle
- * 
+ * @author Angelo Licastro
+ *
  */
-public class AccumulationManager extends BaseAccumulationManager implements
-		IPhysicsEventListener {
+public class AccumulationManager extends BaseAccumulationManager {
 
 	// the singleton
 	private static AccumulationManager instance;
 
-	// dc accumulated data indices are sector, superlayer, layer, wire
-	private int _dcGemcAccumulatedData[];
-	private int _maxGemcDcCount;
-	
-	//dc XY accumulated data stored in a 2D histogram
-	private Histo2DData _dcXYGemcAccumulatedData;
-	
-	//bst hit xy accumulated data
-	private Histo2DData _bstXYAccumulatedData;
-	
+	// the time in milliseconds between two refreshes of the snapshot
+	private static final int REFRESH_MILLISECONDS = 500;
+
+	// the number of bins of the energy and time histograms of each channel
+	private static final int HISTOGRAM_BINS = 500;
+
+	// the upper edge of the time histograms
+	private static final double HISTOGRAM_TIME_LIMIT = 1000;
+
+	// the number of time bins of the waveform density maps of each channel
+	private static final int PERSISTENCE_TIME_BINS = 256;
+
+	// the number of samples the time bins of the density maps cover
+	private static final int PERSISTENCE_SAMPLE_WINDOW = 1024;
+
+	// the number of ADC bins of the density maps
+	private static final int PERSISTENCE_ADC_BINS = 128;
+
+	// the upper edge of the ADC bins of the density maps (12-bit FADC)
+	private static final int PERSISTENCE_ADC_LIMIT = 4096;
+
+	// the number of accumulated events
+	private final LongAdder _eventCount = new LongAdder();
+
+	// the number of hits of each scintillator bar
+	private final LongAdder _barHitCounts[] = createLongAdders(GeometricConstants.BARS);
+
+	// the sum of the hit energies of each scintillator bar
+	private final DoubleAdder _barEnergySums[] = createDoubleAdders(GeometricConstants.BARS);
+
+	// the number of events with at least one hit in each scintillator bar
+	private final LongAdder _barEventCounts[] = createLongAdders(GeometricConstants.BARS);
+
+	// the number of hits of each veto
+	private final LongAdder _vetoHitCounts[] = createLongAdders(GeometricConstants.VETOES);
+
+	// the sum of the hit energies of each veto
+	private final DoubleAdder _vetoEnergySums[] = createDoubleAdders(GeometricConstants.VETOES);
+
+	// the number of events with at least one hit in each veto
+	private final LongAdder _vetoEventCounts[] = createLongAdders(GeometricConstants.VETOES);
+
+	// the energy and time histograms of each channel
+	private final HistogramBank _histogramBank = new HistogramBank(HISTOGRAM_BINS, 0,
+			MathematicalConstants.UPPER_ENERGY_LIMIT, 0, HISTOGRAM_TIME_LIMIT);
+
+	// the waveform density maps of each channel, filled while persistence
+	// mode is on
+	private final PersistenceBank _persistenceBank = new PersistenceBank(PERSISTENCE_TIME_BINS,
+			PERSISTENCE_SAMPLE_WINDOW, PERSISTENCE_ADC_BINS, 0, PERSISTENCE_ADC_LIMIT);
+
+	// the quantile sketches and hit rates of each scintillator bar and veto
+	private final ElementSketchBank _elementSketchBank = new ElementSketchBank();
+
+	// writes the accumulated data to a checkpoint file, or null if disabled
+	private final AccumulationCheckpoint _checkpoint;
+
+	// the last snapshot of the accumulated data
+	private volatile AccumulationSnapshot _snapshot;
+
+	// the event count of the last snapshot the listeners were told about,
+	// only accessed on the event dispatch thread
+	private long _notifiedEventCount = -1;
+
+	// the listeners that are told when the snapshot changes
+	private final List<IAccumulationListener> _accumulationListeners = new CopyOnWriteArrayList<>();
+
 	/**
 	 * private constructor for singleton.
 	 */
 	private AccumulationManager() {
-		EventControl.getInstance().addPhysicsListener(this);
-		_dcGemcAccumulatedData = new int[GeometricConstants.BARS];
-
-		//dc XY accumulated data stored in a 2D histogram
-		_dcXYGemcAccumulatedData = new Histo2DData("DC XY Data",
-				-390, 390, 100, -450, 450, 100);
-		
-		//BST XY accumulated data also stored in histo
-		_bstXYAccumulatedData = new Histo2DData("BST XY Data",
-				-170, 170, 100, -170, 170, 100);
-		
+		EventPipeline pipeline = EventManager.getInstance().getPipeline();
+		pipeline.addDecodeObserver(this::newDecodedEvent);
+		// the events are accumulated as they are decoded, so none may be dropped
+		// before that while accumulating, whatever the overflow policy
+		pipeline.setLosslessDecodeCondition(() -> {
+			EventControl eventControl = EventControl.getInstance();
+			return eventControl != null && eventControl.isAccumulating();
+		});
 		clear();
+		// restored before any event is accumulated
+		_checkpoint = AccumulationCheckpoint.createDefault(this);
+		if (_checkpoint != null) {
+			_checkpoint.restore();
+			_checkpoint.start(Integer.getInteger(AccumulationCheckpoint.SECONDS_PROPERTY,
+					AccumulationCheckpoint.DEFAULT_SECONDS));
+		}
+		new Timer(REFRESH_MILLISECONDS, event -> refreshSnapshot()).start();
 	}
 
 	/**
-	 * Clears all accumulated data.
+	 * Creates an array of counters.
+	 *
+	 * @param length the length of the array
+	 * @return the array of counters
+	 */
+	private static LongAdder[] createLongAdders(int length) {
+		LongAdder adders[] = new LongAdder[length];
+		for (int i = 0; i < length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * Creates an array of sums.
+	 *
+	 * @param length the length of the array
+	 * @return the array of sums
+	 */
+	private static DoubleAdder[] createDoubleAdders(int length) {
+		DoubleAdder adders[] = new DoubleAdder[length];
+		for (int i = 0; i < length; i++) {
+			adders[i] = new DoubleAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * Clears all accumulated data. Events that are accumulated while
+	 * clearing may be partially kept.
 	 */
 	@Override
 	public void clear() {
-		//clear accumulated gemc dc data
-		for (int sector = 0; sector < GeometricConstants.BARS; sector++) {
-			_dcGemcAccumulatedData[sector] = 0;
+		_eventCount.reset();
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			_barHitCounts[bar].reset();
+			_barEnergySums[bar].reset();
+			_barEventCounts[bar].reset();
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			_vetoHitCounts[veto].reset();
+			_vetoEnergySums[veto].reset();
+			_vetoEventCounts[veto].reset();
 		}
-		_maxGemcDcCount = 0;
-		
-		//clear other stuff
-		_dcXYGemcAccumulatedData.clear();
-		_bstXYAccumulatedData.clear();
+		_histogramBank.reset();
+		_persistenceBank.reset();
+		_elementSketchBank.reset();
+		_snapshot = createSnapshot();
 	}
 
 	/**
 	 * Public access to the singleton.
-	 * 
+	 *
 	 * @return the singleton AccumulationManager
 	 */
 	public static AccumulationManager getInstance() {
@@ -76,50 +189,214 @@ public class AccumulationManager extends BaseAccumulationManager implements
 		return instance;
 	}
 
-	@Override
-	public void newPhysicsEvent(EvioEvent event) {
-		
+	/**
+	 * A new event has been decoded. Called on a decode thread.
+	 *
+	 * @param event the decoded event
+	 */
+	private void newDecodedEvent(DecodedEvent event) {
+		// persistence mode has its own switch, it also overlays the events stepped through
+		if (_persistenceBank.isEnabled() && event.getFullWaveformData() != null) {
+			_persistenceBank.fill(event.getFullWaveformData());
+		}
+		// the live statistics of each element follow every event, accumulating or not
+		_elementSketchBank.fill(event.getChargeTimeData(), event.getEnergyTimeData());
 		// only care if I am accumulating
 		if (EventControl.getInstance().isAccumulating()) {
+			accumulate(event.getEnergyTimeData());
 		}
 	}
 
 	/**
-	 * Get the accumulated Gemc DC data
-	 * @return the accumulated dc data
+	 * Accumulates the hits of an event.
+	 *
+	 * @param energyTimeData the energy-time data of the event
 	 */
-	public int[] getAccumulatedGemcDcData() {
-		return _dcGemcAccumulatedData;
+	public void accumulate(EnergyTimeData energyTimeData) {
+		// counted first, so a snapshot never has more events per element than
+		// events in total
+		_eventCount.increment();
+		if (energyTimeData == null) {
+			return;
+		}
+		_histogramBank.fill(energyTimeData);
+		HitIndex hitIndex = energyTimeData.getHitIndex();
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			int start = hitIndex.getBarStart(bar);
+			int end = hitIndex.getBarEnd(bar);
+			if (start == end) {
+				continue;
+			}
+			double energySum = 0;
+			for (int position = start; position < end; position++) {
+				energySum += energyTimeData.getBarEnergy(hitIndex.getBarHit(position));
+			}
+			_barHitCounts[bar].add(end - start);
+			_barEnergySums[bar].add(energySum);
+			_barEventCounts[bar].increment();
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			int start = hitIndex.getVetoStart(veto);
+			int end = hitIndex.getVetoEnd(veto);
+			if (start == end) {
+				continue;
+			}
+			double energySum = 0;
+			for (int position = start; position < end; position++) {
+				energySum += energyTimeData.getVetoEnergy(hitIndex.getVetoHit(position));
+			}
+			_vetoHitCounts[veto].add(end - start);
+			_vetoEnergySums[veto].add(energySum);
+			_vetoEventCounts[veto].increment();
+		}
 	}
 
 	/**
-	 * @return the max counts for any DC wire.
+	 * Get the last snapshot of the accumulated data. It is refreshed every
+	 * REFRESH_MILLISECONDS.
+	 *
+	 * @return the last snapshot of the accumulated data
 	 */
-	public int getMaxGemcDcCount() {
-		return _maxGemcDcCount;
+	public AccumulationSnapshot getSnapshot() {
+		return _snapshot;
 	}
 
 	/**
-	 * @return the colorScaleModel
+	 * Get the energy and time histograms of each channel. They are filled
+	 * with every accumulated event and merged by
+	 * {@link HistogramBank#getSnapshot()}.
+	 *
+	 * @return the histogram bank
 	 */
-	public static ColorScaleModel getColorScaleModel() {
-		return colorScaleModel;
+	public HistogramBank getHistogramBank() {
+		return _histogramBank;
 	}
-	
+
 	/**
-	 * Get the Gemc DC xy accumulated data
-	 * @return the Gemc DC xy accumulated data
+	 * Get the waveform density maps of each channel. They are only filled
+	 * while the bank is enabled.
+	 *
+	 * @return the persistence bank
 	 */
-	public Histo2DData getDcXYGemcAccumulatedData() {
-		return _dcXYGemcAccumulatedData;
+	public PersistenceBank getPersistenceBank() {
+		return _persistenceBank;
 	}
-	
+
 	/**
-	 * Get the BST XY ccumulated data
-	 * @return the BST XY accumulated data
+	 * Get the quantile sketches of the pulse charge and time and the hit
+	 * rates of each scintillator bar and veto.
+	 *
+	 * @return the element sketch bank
 	 */
-	public Histo2DData getBSTXYGemcAccumulatedData() {
-		return _bstXYAccumulatedData;
+	public ElementSketchBank getElementSketchBank() {
+		return _elementSketchBank;
+	}
+
+	/**
+	 * Refreshes the snapshot and tells the listeners if it changed. Called on
+	 * the event dispatch thread.
+	 */
+	private void refreshSnapshot() {
+		AccumulationSnapshot snapshot = createSnapshot();
+		_snapshot = snapshot;
+		// every accumulated event is counted, so nothing changed if the count did not
+		if (snapshot.getEventCount() != _notifiedEventCount) {
+			_notifiedEventCount = snapshot.getEventCount();
+			for (IAccumulationListener listener : _accumulationListeners) {
+				listener.accumulationChanged(snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Add a listener that is told when the snapshot of the accumulated data
+	 * changes
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addAccumulationListener(IAccumulationListener listener) {
+		_accumulationListeners.add(listener);
+	}
+
+	/**
+	 * Remove an accumulation listener
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeAccumulationListener(IAccumulationListener listener) {
+		_accumulationListeners.remove(listener);
+	}
+
+	/**
+	 * Adds restored accumulated data, for example from a checkpoint. Must
+	 * be called before any event is accumulated.
+	 *
+	 * @param snapshot the restored counters
+	 * @param histogramSnapshot the restored histograms
+	 * @param barSketches the restored sketches of each scintillator bar
+	 * @param vetoSketches the restored sketches of each veto
+	 */
+	void restore(AccumulationSnapshot snapshot, HistogramSnapshot histogramSnapshot,
+			ElementSketch barSketches[], ElementSketch vetoSketches[]) {
+		_eventCount.add(snapshot.getEventCount());
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			_barHitCounts[bar].add(snapshot.getBarHitCount(bar));
+			_barEnergySums[bar].add(snapshot.getBarEnergySum(bar));
+			_barEventCounts[bar].add(snapshot.getBarEventCount(bar));
+		}
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			_vetoHitCounts[veto].add(snapshot.getVetoHitCount(veto));
+			_vetoEnergySums[veto].add(snapshot.getVetoEnergySum(veto));
+			_vetoEventCounts[veto].add(snapshot.getVetoEventCount(veto));
+		}
+		_histogramBank.restore(histogramSnapshot);
+		_elementSketchBank.restore(barSketches, vetoSketches);
+		_snapshot = createSnapshot();
+	}
+
+	/**
+	 * Get the checkpoint the accumulated data is written to.
+	 *
+	 * @return the checkpoint, or null if checkpoints are disabled
+	 */
+	public AccumulationCheckpoint getCheckpoint() {
+		return _checkpoint;
+	}
+
+	/**
+	 * Create a snapshot of the accumulated data. Safe to call on any
+	 * thread.
+	 *
+	 * @return a new snapshot of the accumulated data
+	 */
+	AccumulationSnapshot createSnapshot() {
+		long barHitCounts[] = new long[GeometricConstants.BARS];
+		double barEnergySums[] = new double[GeometricConstants.BARS];
+		long barEventCounts[] = new long[GeometricConstants.BARS];
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			barHitCounts[bar] = _barHitCounts[bar].sum();
+			barEnergySums[bar] = _barEnergySums[bar].sum();
+			barEventCounts[bar] = _barEventCounts[bar].sum();
+		}
+		long vetoHitCounts[] = new long[GeometricConstants.VETOES];
+		double vetoEnergySums[] = new double[GeometricConstants.VETOES];
+		long vetoEventCounts[] = new long[GeometricConstants.VETOES];
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			vetoHitCounts[veto] = _vetoHitCounts[veto].sum();
+			vetoEnergySums[veto] = _vetoEnergySums[veto].sum();
+			vetoEventCounts[veto] = _vetoEventCounts[veto].sum();
+		}
+		// read last, so it includes every event the element counters contain
+		long eventCount = _eventCount.sum();
+		return new AccumulationSnapshot(eventCount, barHitCounts, barEnergySums, barEventCounts,
+				vetoHitCounts, vetoEnergySums, vetoEventCounts);
+	}
+
+	/**
+	 * @return the colorScaleModel
+	 */
+	public static ColorScaleModel getColorScaleModel() {
+		return colorScaleModel;
 	}
 
 }
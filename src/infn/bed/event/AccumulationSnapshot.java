@@ -0,0 +1,268 @@
+package infn.bed.event;
+
+/**
+ * An immutable snapshot of the accumulated data of the scintillator bars and vetoes.
+ *
+ * <p>
+ * NOTE: The event count of a snapshot is never lower than the number of events its per-element counters
+ * contain, so occupancies never exceed 1.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class AccumulationSnapshot {
+
+	/**
+	 * The number of accumulated events.
+	 */
+	private final long eventCount;
+
+	/**
+	 * The number of hits of each scintillator bar.
+	 */
+	private final long[] barHitCountArray;
+
+	/**
+	 * The sum of the hit energies of each scintillator bar.
+	 */
+	private final double[] barEnergySumArray;
+
+	/**
+	 * The number of events with at least one hit in each scintillator bar.
+	 */
+	private final long[] barEventCountArray;
+
+	/**
+	 * The number of hits of each veto.
+	 */
+	private final long[] vetoHitCountArray;
+
+	/**
+	 * The sum of the hit energies of each veto.
+	 */
+	private final double[] vetoEnergySumArray;
+
+	/**
+	 * The number of events with at least one hit in each veto.
+	 */
+	private final long[] vetoEventCountArray;
+
+	/**
+	 * The maximum number of hits of any scintillator bar.
+	 */
+	private final long maxBarHitCount;
+
+	/**
+	 * The maximum number of events with at least one hit in any scintillator bar.
+	 */
+	private final long maxBarEventCount;
+
+	/**
+	 * The maximum number of hits of any veto.
+	 */
+	private final long maxVetoHitCount;
+
+	/**
+	 * The maximum number of events with at least one hit in any veto.
+	 */
+	private final long maxVetoEventCount;
+
+	/**
+	 * The constructor. The arrays are owned by the snapshot afterwards.
+	 *
+	 * @param eventCount The number of accumulated events.
+	 * @param barHitCountArray The number of hits of each scintillator bar.
+	 * @param barEnergySumArray The sum of the hit energies of each scintillator bar.
+	 * @param barEventCountArray The number of events with at least one hit in each scintillator bar.
+	 * @param vetoHitCountArray The number of hits of each veto.
+	 * @param vetoEnergySumArray The sum of the hit energies of each veto.
+	 * @param vetoEventCountArray The number of events with at least one hit in each veto.
+	 */
+	AccumulationSnapshot(long eventCount, long[] barHitCountArray, double[] barEnergySumArray, long[] barEventCountArray,
+			long[] vetoHitCountArray, double[] vetoEnergySumArray, long[] vetoEventCountArray) {
+		this.eventCount = eventCount;
+		this.barHitCountArray = barHitCountArray;
+		this.barEnergySumArray = barEnergySumArray;
+		this.barEventCountArray = barEventCountArray;
+		this.vetoHitCountArray = vetoHitCountArray;
+		this.vetoEnergySumArray = vetoEnergySumArray;
+		this.vetoEventCountArray = vetoEventCountArray;
+		maxBarHitCount = max(barHitCountArray);
+		maxVetoHitCount = max(vetoHitCountArray);
+		maxBarEventCount = max(barEventCountArray);
+		maxVetoEventCount = max(vetoEventCountArray);
+	}
+
+	/**
+	 * Returns the maximum of an array.
+	 *
+	 * @param array An array.
+	 * @return The maximum of the array, or 0 if it is empty.
+	 */
+	private static long max(long[] array) {
+		long max = 0;
+		for (long value : array) {
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the mean of a sum.
+	 *
+	 * @param sum The sum.
+	 * @param count The number of terms of the sum.
+	 * @return The mean, or 0 if there are no terms.
+	 */
+	private static double mean(double sum, long count) {
+		return (count == 0) ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the number of accumulated events.
+	 *
+	 * @return The number of accumulated events.
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Returns the number of hits of a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The number of hits.
+	 */
+	public long getBarHitCount(int bar) {
+		return barHitCountArray[bar];
+	}
+
+	/**
+	 * Returns the sum of the hit energies of a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The sum of the hit energies in MeV.
+	 */
+	public double getBarEnergySum(int bar) {
+		return barEnergySumArray[bar];
+	}
+
+	/**
+	 * Returns the mean hit energy of a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The mean hit energy in MeV, or 0 if the scintillator bar has no hits.
+	 */
+	public double getBarMeanEnergy(int bar) {
+		return mean(barEnergySumArray[bar], barHitCountArray[bar]);
+	}
+
+	/**
+	 * Returns the number of events with at least one hit in a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The number of events with at least one hit.
+	 */
+	public long getBarEventCount(int bar) {
+		return barEventCountArray[bar];
+	}
+
+	/**
+	 * Returns the occupancy of a scintillator bar, the fraction of the events with at least one hit in it.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The occupancy, or 0 if no events have been accumulated.
+	 */
+	public double getBarOccupancy(int bar) {
+		return mean(barEventCountArray[bar], eventCount);
+	}
+
+	/**
+	 * Returns the occupancy of a scintillator bar relative to the scintillator bar with the highest occupancy.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The relative occupancy, between 0 and 1.
+	 */
+	public double getBarRelativeOccupancy(int bar) {
+		return mean(barEventCountArray[bar], maxBarEventCount);
+	}
+
+	/**
+	 * Returns the maximum number of hits of any scintillator bar.
+	 *
+	 * @return The maximum number of hits of any scintillator bar.
+	 */
+	public long getMaxBarHitCount() {
+		return maxBarHitCount;
+	}
+
+	/**
+	 * Returns the number of hits of a veto.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The number of hits.
+	 */
+	public long getVetoHitCount(int veto) {
+		return vetoHitCountArray[veto];
+	}
+
+	/**
+	 * Returns the sum of the hit energies of a veto.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The sum of the hit energies in MeV.
+	 */
+	public double getVetoEnergySum(int veto) {
+		return vetoEnergySumArray[veto];
+	}
+
+	/**
+	 * Returns the mean hit energy of a veto.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The mean hit energy in MeV, or 0 if the veto has no hits.
+	 */
+	public double getVetoMeanEnergy(int veto) {
+		return mean(vetoEnergySumArray[veto], vetoHitCountArray[veto]);
+	}
+
+	/**
+	 * Returns the number of events with at least one hit in a veto.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The number of events with at least one hit.
+	 */
+	public long getVetoEventCount(int veto) {
+		return vetoEventCountArray[veto];
+	}
+
+	/**
+	 * Returns the occupancy of a veto, the fraction of the events with at least one hit in it.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The occupancy, or 0 if no events have been accumulated.
+	 */
+	public double getVetoOccupancy(int veto) {
+		return mean(vetoEventCountArray[veto], eventCount);
+	}
+
+	/**
+	 * Returns the occupancy of a veto relative to the veto with the highest occupancy.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The relative occupancy, between 0 and 1.
+	 */
+	public double getVetoRelativeOccupancy(int veto) {
+		return mean(vetoEventCountArray[veto], maxVetoEventCount);
+	}
+
+	/**
+	 * Returns the maximum number of hits of any veto.
+	 *
+	 * @return The maximum number of hits of any veto.
+	 */
+	public long getMaxVetoHitCount() {
+		return maxVetoHitCount;
+	}
+
+}
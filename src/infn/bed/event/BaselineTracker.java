@@ -0,0 +1,354 @@
+package infn.bed.event;
+
+import infn.bed.math.MathematicalConstants;
+
+/**
+ * Tracks the baseline (pedestal) of each channel of the digitizers across events, so pulses can be found above
+ * the baseline of their channel with a threshold in units of its noise instead of at a fixed ADC value.
+ *
+ * <p>
+ * The first PRETRIGGER_SAMPLES samples of a channel come before the trigger and only hold its baseline. Every
+ * event updates a running mean of their mean and of their variance, so the mean and the RMS of the baseline
+ * follow a drift, and a step of the baseline does not count as noise. The running means weigh the events
+ * equally until WINDOW_EVENTS events have been seen, and the last WINDOW_EVENTS events the most afterwards. An
+ * event with a pre-trigger sample more than the threshold of its channel above the mean of its window (pile-up)
+ * is left out. The pulses of a channel are found (see PulseFinder) with its baseline subtracted and a threshold
+ * of sigma times its RMS; until a channel has seen WARM_UP_EVENTS events, the fixed
+ * MathematicalConstants.ADC_THRESHOLD is used instead.
+ * </p>
+ *
+ * <p>
+ * The tracker is off until it is enabled, so by default the pulses are found as before. The threshold in sigma
+ * units is set with the system property bed.baseline.sigma (DEFAULT_SIGMA if not set).
+ * </p>
+ *
+ * <p>
+ * Only the events that are displayed update the baselines. Events decoded ahead of time (see ReadAheadCache)
+ * are found with a read-only copy of the tracker, which gives the pulse finders of the moment it was taken and
+ * is never updated.
+ * </p>
+ *
+ * <p>
+ * NOTE: The channels are updated from the decode threads and the conversion tasks at once, so every channel
+ * has its own lock, which is only held for the few operations of an update.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class BaselineTracker {
+
+	/**
+	 * The system property with the threshold in sigma units.
+	 */
+	public static final String SIGMA_PROPERTY = "bed.baseline.sigma";
+
+	/**
+	 * The default threshold in sigma units.
+	 */
+	public static final double DEFAULT_SIGMA = 5;
+
+	/**
+	 * The number of samples before the trigger.
+	 */
+	public static final int PRETRIGGER_SAMPLES = 16;
+
+	/**
+	 * The number of events the running means are taken over.
+	 */
+	public static final int WINDOW_EVENTS = 64;
+
+	/**
+	 * The number of events a channel has to see before its baseline is used.
+	 */
+	public static final int WARM_UP_EVENTS = 8;
+
+	/**
+	 * The lowest RMS the threshold is computed from, one channel unit, so a channel without noise does not fire
+	 * on every sample above its baseline.
+	 */
+	private static final double MINIMUM_RMS = 1;
+
+	/**
+	 * The singleton.
+	 */
+	private static BaselineTracker instance;
+
+	/**
+	 * The baseline of each channel.
+	 */
+	private final ChannelBaseline[] channelBaselines = new ChannelBaseline[FullWaveformData.CHANNELS];
+
+	/**
+	 * Whether the pulses are found above the tracked baselines.
+	 */
+	private volatile boolean enabled;
+
+	/**
+	 * true if the events do not update the baselines.
+	 */
+	private final boolean readOnly;
+
+	/**
+	 * The threshold in sigma units.
+	 */
+	private volatile double sigma = Double.parseDouble(System.getProperty(SIGMA_PROPERTY, Double.toString(DEFAULT_SIGMA)));
+
+	/**
+	 * The constructor.
+	 */
+	private BaselineTracker() {
+		for (int channel = 0; channel < channelBaselines.length; channel++) {
+			channelBaselines[channel] = new ChannelBaseline();
+		}
+		readOnly = false;
+	}
+
+	/**
+	 * The constructor of a read-only copy.
+	 *
+	 * @param tracker The tracker that is copied.
+	 */
+	private BaselineTracker(BaselineTracker tracker) {
+		for (int channel = 0; channel < channelBaselines.length; channel++) {
+			channelBaselines[channel] = tracker.channelBaselines[channel].copy();
+		}
+		enabled = tracker.enabled;
+		sigma = tracker.sigma;
+		readOnly = true;
+	}
+
+	/**
+	 * Returns the singleton.
+	 *
+	 * @return The singleton.
+	 */
+	public static synchronized BaselineTracker getInstance() {
+		if (instance == null) {
+			instance = new BaselineTracker();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the tracker if it is enabled, for the conversion of full-waveform data.
+	 *
+	 * @return The tracker, or null if the pulses are found with the fixed threshold.
+	 */
+	public static BaselineTracker getActiveTracker() {
+		BaselineTracker tracker = getInstance();
+		return tracker.enabled ? tracker : null;
+	}
+
+	/**
+	 * Returns a copy of the tracker that is not updated by the events it finds the pulses of.
+	 *
+	 * @return A read-only copy with the current baselines.
+	 */
+	public BaselineTracker getReadOnlyCopy() {
+		return new BaselineTracker(this);
+	}
+
+	/**
+	 * Updates the baseline of a channel with the pre-trigger samples of an event, unless the tracker is a
+	 * read-only copy, and returns the pulse finder of the channel.
+	 *
+	 * @param fullWaveformData The full-waveform data of the event.
+	 * @param channel The channel.
+	 * @return A pulse finder with the baseline and the threshold of the channel, or with the fixed threshold if
+	 * the channel has not seen enough events.
+	 */
+	public PulseFinder track(FullWaveformData fullWaveformData, int channel) {
+		int count = Math.min(PRETRIGGER_SAMPLES, fullWaveformData.getSampleCount(channel));
+		ChannelBaseline channelBaseline = channelBaselines[channel];
+		if (count == 0 || readOnly) {
+			return channelBaseline.createPulseFinder(sigma);
+		}
+		long sum = 0;
+		long sumOfSquares = 0;
+		int maximum = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			int sample = fullWaveformData.getSample(channel, i);
+			sum += sample;
+			sumOfSquares += (long) sample * sample;
+			maximum = Math.max(maximum, sample);
+		}
+		return channelBaseline.update((double) sum / count, (double) sumOfSquares / count, maximum, sigma);
+	}
+
+	/**
+	 * Returns true if the pulses are found above the tracked baselines, false otherwise.
+	 *
+	 * @return true if the tracker is enabled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns the tracker on or off. The baselines start again from scratch when it is turned on.
+	 *
+	 * @param enabled true to find the pulses above the tracked baselines, false to use the fixed threshold.
+	 */
+	public void setEnabled(boolean enabled) {
+		if (enabled && !this.enabled) {
+			reset();
+		}
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns the threshold in sigma units.
+	 *
+	 * @return The threshold in sigma units.
+	 */
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * Sets the threshold in sigma units.
+	 *
+	 * @param sigma The threshold in sigma units.
+	 */
+	public void setSigma(double sigma) {
+		this.sigma = sigma;
+	}
+
+	/**
+	 * Forgets the baselines of all channels.
+	 */
+	public void reset() {
+		for (ChannelBaseline channelBaseline : channelBaselines) {
+			channelBaseline.reset();
+		}
+	}
+
+	/**
+	 * Returns the baseline of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The mean of the baseline in channel units, or NaN if the channel has not seen an event.
+	 */
+	public double getMean(int channel) {
+		return channelBaselines[channel].getMean();
+	}
+
+	/**
+	 * Returns the noise of the baseline of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The RMS of the baseline in channel units, or NaN if the channel has not seen an event.
+	 */
+	public double getRms(int channel) {
+		return channelBaselines[channel].getRms();
+	}
+
+	/**
+	 * The running baseline of one channel.
+	 */
+	private static class ChannelBaseline {
+
+		/**
+		 * The running mean of the pre-trigger means.
+		 */
+		private double mean;
+
+		/**
+		 * The running mean of the pre-trigger variances.
+		 */
+		private double variance;
+
+		/**
+		 * The number of events the running means are taken over.
+		 */
+		private long events;
+
+		/**
+		 * Returns a copy of the baseline.
+		 *
+		 * @return The copy.
+		 */
+		private synchronized ChannelBaseline copy() {
+			ChannelBaseline channelBaseline = new ChannelBaseline();
+			channelBaseline.mean = mean;
+			channelBaseline.variance = variance;
+			channelBaseline.events = events;
+			return channelBaseline;
+		}
+
+		/**
+		 * Updates the running means with the pre-trigger samples of an event, unless they have a pulse.
+		 *
+		 * @param windowMean The mean of the pre-trigger samples.
+		 * @param windowMeanOfSquares The mean of the squares of the pre-trigger samples.
+		 * @param windowMaximum The highest pre-trigger sample.
+		 * @param sigma The threshold in sigma units.
+		 * @return The pulse finder of the channel after the update.
+		 */
+		private synchronized PulseFinder update(double windowMean, double windowMeanOfSquares, int windowMaximum,
+				double sigma) {
+			// a pulse stands out of its own window, while a drift moves the whole window
+			boolean pileUp = events >= WARM_UP_EVENTS && windowMaximum - windowMean > getThreshold(sigma);
+			if (!pileUp) {
+				events++;
+				double weight = 1.0 / Math.min(events, WINDOW_EVENTS);
+				mean += weight * (windowMean - mean);
+				variance += weight * (Math.max(0, windowMeanOfSquares - windowMean * windowMean) - variance);
+			}
+			return createPulseFinder(sigma);
+		}
+
+		/**
+		 * Returns the pulse finder of the channel.
+		 *
+		 * @param sigma The threshold in sigma units.
+		 * @return A pulse finder with the baseline and the threshold of the channel, or with the fixed threshold
+		 * if the channel has not seen enough events.
+		 */
+		private synchronized PulseFinder createPulseFinder(double sigma) {
+			if (events < WARM_UP_EVENTS) {
+				return new PulseFinder(MathematicalConstants.ADC_THRESHOLD);
+			}
+			return new PulseFinder((int) Math.round(mean), (int) Math.ceil(getThreshold(sigma)));
+		}
+
+		/**
+		 * Returns the threshold above the baseline. Must hold the lock.
+		 *
+		 * @param sigma The threshold in sigma units.
+		 * @return The threshold in channel units.
+		 */
+		private double getThreshold(double sigma) {
+			return sigma * Math.max(MINIMUM_RMS, Math.sqrt(variance));
+		}
+
+		/**
+		 * Returns the mean of the baseline.
+		 *
+		 * @return The mean, or NaN if no event has been seen.
+		 */
+		private synchronized double getMean() {
+			return (events == 0) ? Double.NaN : mean;
+		}
+
+		/**
+		 * Returns the RMS of the baseline.
+		 *
+		 * @return The RMS, or NaN if no event has been seen.
+		 */
+		private synchronized double getRms() {
+			return (events == 0) ? Double.NaN : Math.sqrt(variance);
+		}
+
+		/**
+		 * Forgets the baseline.
+		 */
+		private synchronized void reset() {
+			mean = 0;
+			variance = 0;
+			events = 0;
+		}
+
+	}
+
+}
@@ -1,10 +1,16 @@
 package infn.bed.event;
 
 import infn.bed.geometry.GeometricConstants;
-import infn.bed.math.MathematicalConstants;
 
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.jlab.coda.jevio.IEvioStructure;
 
@@ -105,140 +111,249 @@ public class ChargeTimeData implements ILoad {
 		super();
 	}
 
+	/**
+	 * Converts full-waveform data to charge-time data, one channel after another.
+	 * 
+	 * @param fullWaveformData The PMT (photomultiplier tube) full-waveform data.
+	 */
+	public ChargeTimeData(FullWaveformData fullWaveformData) {
+		this(fullWaveformData, null);
+	}
+
 	/**
 	 * Converts full-waveform data to charge-time data.
 	 * 
-	 * @param sampleArrayList An ArrayList of PMT (photomultiplier tube) full-waveform data.
+	 * <p>
+	 * NOTE: The channels are independent, so the pulses of each channel are found in a separate task. The
+	 * per-channel results are merged in channel order, so the result does not depend on the executor.
+	 * </p>
+	 * 
+	 * @param fullWaveformData The PMT (photomultiplier tube) full-waveform data.
+	 * @param executor The executor that finds the pulses of each channel, or null to find them on the calling thread.
 	 */
-	public ChargeTimeData(ArrayList<ArrayList<Short>> sampleArrayList) {
-		ArrayList<Double> leftPMTChargeArrayList = new ArrayList<>();
-		ArrayList<Double> leftPMTTimeArrayList = new ArrayList<>();
-		
-		ArrayList<Double> rightPMTChargeArrayList = new ArrayList<>();
-		ArrayList<Double> rightPMTTimeArrayList = new ArrayList<>();
-		
-		ArrayList<Integer> sectorArrayList = new ArrayList<>();
-		ArrayList<Integer> layerArrayList = new ArrayList<>();
-		ArrayList<Integer> paddleArrayList = new ArrayList<>();
-		
-		for (int i = 0; i < sampleArrayList.size(); i++) {
-			if (i < (GeometricConstants.BARS * 2)) {
-				ArrayList<Short> leftPMTSampleArrayList = sampleArrayList.get(i);
-				ArrayList<Short> rightPMTSampleArrayList = sampleArrayList.get(i + 1);
-				
-				int[] barLeftPMTArray = TranslationTable.bars[i];
-				int[] barRightPMTArray = TranslationTable.bars[i + 1];
-				
-				@SuppressWarnings("unused")
-				int barLeftPMTIndex = barLeftPMTArray[0];
-				int barLeftPMTSector = barLeftPMTArray[1];
-				int barLeftPMTLayer = barLeftPMTArray[2];
-				int barLeftPMTPaddle = barLeftPMTArray[3];
-				
-				@SuppressWarnings("unused")
-				int barRightPMTIndex = barRightPMTArray[0];
-				int barRightPMTSector = barRightPMTArray[1];
-				int barRightPMTLayer = barRightPMTArray[2];
-				int barRightPMTPaddle = barRightPMTArray[3];
-				
-				int barLeftPMTHits = convertHits(leftPMTSampleArrayList, leftPMTChargeArrayList, leftPMTTimeArrayList);
-				int barRightPMTHits = convertHits(rightPMTSampleArrayList, rightPMTChargeArrayList, rightPMTTimeArrayList);
-				
-				for (int hit = 0; hit < barLeftPMTHits; hit++) {
-					sectorArrayList.add(barLeftPMTSector);
-					layerArrayList.add(barLeftPMTLayer);
-					paddleArrayList.add(barLeftPMTPaddle);
-				}
-				
-				for (int hit = 0; hit < barRightPMTHits; hit++) {
-					sectorArrayList.add(barRightPMTSector);
-					layerArrayList.add(barRightPMTLayer);
-					paddleArrayList.add(barRightPMTPaddle);
+	public ChargeTimeData(FullWaveformData fullWaveformData, ExecutorService executor) {
+		this(fullWaveformData, executor, null);
+	}
+
+	/**
+	 * Converts full-waveform data to charge-time data, finding the pulses of each channel above its tracked
+	 * baseline.
+	 * 
+	 * @param fullWaveformData The PMT (photomultiplier tube) full-waveform data.
+	 * @param executor The executor that finds the pulses of each channel, or null to find them on the calling thread.
+	 * @param baselineTracker The tracker that is updated with the event (unless it is a read-only copy) and
+	 * gives the baseline and the threshold of each channel, or null to find the pulses with the fixed threshold.
+	 */
+	public ChargeTimeData(FullWaveformData fullWaveformData, ExecutorService executor, BaselineTracker baselineTracker) {
+		PulseList[] channelPulseLists = findChannelPulses(fullWaveformData, executor, baselineTracker);
+		mergeBarPulses(channelPulseLists);
+		mergeVetoPulses(channelPulseLists);
+	}
+
+	/**
+	 * Finds the pulses of every channel.
+	 * 
+	 * @param fullWaveformData The PMT (photomultiplier tube) full-waveform data.
+	 * @param executor The executor that finds the pulses of each channel, or null to find them on the calling thread.
+	 * @param baselineTracker The baseline tracker, or null to find the pulses with the fixed threshold.
+	 * @return An array of the pulses of each channel.
+	 */
+	private static PulseList[] findChannelPulses(final FullWaveformData fullWaveformData, ExecutorService executor,
+			final BaselineTracker baselineTracker) {
+		final PulseFinder pulseFinder = new PulseFinder();
+		PulseList[] channelPulseLists = new PulseList[fullWaveformData.getChannelCount()];
+		if (executor != null) {
+			List<Callable<PulseList>> taskList = new ArrayList<>(channelPulseLists.length);
+			for (int channel = 0; channel < channelPulseLists.length; channel++) {
+				final int taskChannel = channel;
+				taskList.add(() -> findPulses(pulseFinder, baselineTracker, fullWaveformData, taskChannel));
+			}
+			try {
+				List<Future<PulseList>> futureList = executor.invokeAll(taskList);
+				for (int channel = 0; channel < channelPulseLists.length; channel++) {
+					channelPulseLists[channel] = futureList.get(channel).get();
 				}
-				i++;
-			} else {
-				// TODO: Implement full-waveform data to charge-time data conversion for vetoes.
+				return channelPulseLists;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException | RejectedExecutionException e) {
+				e.printStackTrace();
 			}
 		}
+		// no executor, or it failed: do the remaining channels here
+		for (int channel = 0; channel < channelPulseLists.length; channel++) {
+			if (channelPulseLists[channel] == null) {
+				channelPulseLists[channel] = findPulses(pulseFinder, baselineTracker, fullWaveformData, channel);
+			}
+		}
+		return channelPulseLists;
+	}
+
+	/**
+	 * Finds the pulses of a channel. With a baseline tracker, the baseline of the channel is updated from the
+	 * event first, and the pulses are found above it.
+	 * 
+	 * @param pulseFinder The pulse finder with the fixed threshold.
+	 * @param baselineTracker The baseline tracker, or null to use the pulse finder with the fixed threshold.
+	 * @param fullWaveformData The PMT (photomultiplier tube) full-waveform data.
+	 * @param channel The channel.
+	 * @return The pulses of the channel.
+	 */
+	private static PulseList findPulses(PulseFinder pulseFinder, BaselineTracker baselineTracker,
+			FullWaveformData fullWaveformData, int channel) {
+		if (baselineTracker != null) {
+			pulseFinder = baselineTracker.track(fullWaveformData, channel);
+		}
+		PulseList pulseList = new PulseList();
+		ShortBuffer channelView = fullWaveformData.getChannelView(channel);
+		if (channelView != null) {
+			pulseFinder.findPulses(channelView, pulseList);
+		} else {
+			pulseFinder.findPulses(fullWaveformData.getSampleArray(), fullWaveformData.getSampleOffset(channel), fullWaveformData.getSampleCount(channel), pulseList);
+		}
+		return pulseList;
+	}
+
+	/**
+	 * Merges the pulses of the bar PMT (photomultiplier tube) channels into the bar hit arrays.
+	 * 
+	 * @param channelPulseLists An array of the pulses of each channel.
+	 */
+	private void mergeBarPulses(PulseList[] channelPulseLists) {
+		PulseList leftPMTPulseList = new PulseList();
+		PulseList rightPMTPulseList = new PulseList();
+		int hits = 0;
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			leftPMTPulseList.addAll(channelPulseLists[2 * bar]);
+			rightPMTPulseList.addAll(channelPulseLists[2 * bar + 1]);
+			hits += channelPulseLists[2 * bar].size() + channelPulseLists[2 * bar + 1].size();
+		}
 
-		sectorArray = getIntArrayFromIntegerArrayList(sectorArrayList);
-		layerArray = getIntArrayFromIntegerArrayList(layerArrayList);
-		paddleArray = getIntArrayFromIntegerArrayList(paddleArrayList);
+		sectorArray = new int[hits];
+		layerArray = new int[hits];
+		paddleArray = new int[hits];
 		
-		leftPMTChargeArray = getIntArrayFromDoubleArrayList(leftPMTChargeArrayList);
-		rightPMTChargeArray = getIntArrayFromDoubleArrayList(rightPMTChargeArrayList);
+		int hit = 0;
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			hit = fillBarHits(TranslationTable.bars[2 * bar], channelPulseLists[2 * bar].size(), hit);
+			hit = fillBarHits(TranslationTable.bars[2 * bar + 1], channelPulseLists[2 * bar + 1].size(), hit);
+		}
 		
-		leftPMTTimeArray = getIntArrayFromDoubleArrayList(leftPMTTimeArrayList);
-		rightPMTTimeArray = getIntArrayFromDoubleArrayList(rightPMTTimeArrayList);
+		leftPMTChargeArray = leftPMTPulseList.toIntChargeArray();
+		rightPMTChargeArray = rightPMTPulseList.toIntChargeArray();
+		
+		leftPMTTimeArray = leftPMTPulseList.toIntTimeArray();
+		rightPMTTimeArray = rightPMTPulseList.toIntTimeArray();
 	}
 	
 	/**
-	 * @param sampleArrayList An ArrayList of samples.
-	 * @param chargeArrayList An ArrayList of charges.
-	 * @param timeArrayList An ArrayList of times.
-	 * @return hits The number of hits.
+	 * Fills the sector, layer, and paddle of the hits of a bar PMT (photomultiplier tube).
+	 * 
+	 * @param barPMTArray The translation table entry of the PMT (photomultiplier tube).
+	 * @param barPMTHits The number of hits of the PMT (photomultiplier tube).
+	 * @param hit The index of the first hit to fill.
+	 * @return The index of the next hit to fill.
+	 */
+	private int fillBarHits(int[] barPMTArray, int barPMTHits, int hit) {
+		int barPMTSector = barPMTArray[1];
+		int barPMTLayer = barPMTArray[2];
+		int barPMTPaddle = barPMTArray[3];
+		for (int i = 0; i < barPMTHits; i++) {
+			sectorArray[hit] = barPMTSector;
+			layerArray[hit] = barPMTLayer;
+			paddleArray[hit] = barPMTPaddle;
+			hit++;
+		}
+		return hit;
+	}
+
+	/**
+	 * Merges the pulses of the veto channels into the veto hit arrays.
+	 * 
+	 * <p>
+	 * NOTE: The pulses of the left (or only) SiPM (silicon photomultiplier) of a veto are its hits. The pulses
+	 * of the right SiPM of a veto that has a right entry in the translation table (see
+	 * TranslationTable.vetoChannelOf()) are the matching dual SiPM hits. Every other veto has a dual SiPM hit of 0.
+	 * </p>
+	 * 
+	 * @param channelPulseLists An array of the pulses of each channel.
 	 */
-	private int convertHits(ArrayList<Short> sampleArrayList, ArrayList<Double> chargeArrayList, ArrayList<Double> timeArrayList) {
+	private void mergeVetoPulses(PulseList[] channelPulseLists) {
+		int[][] vetoes = TranslationTable.vetoes;
 		int hits = 0;
-		double a_L = 0;
-		double b_L = 0;
-		double charge = 0;
-		double time = 0;
-		boolean collectingPulse = false;
-		for (int i = 1; i < (sampleArrayList.size() - 1); i++) {
-			if (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD && sampleArrayList.get(i - 1) < MathematicalConstants.ADC_THRESHOLD) {
-				a_L = sampleArrayList.get(i + 1) - sampleArrayList.get(i - 1) * 1 / 4;
-				b_L = sampleArrayList.get(i + 1) - a_L * (i - 1) * 4;
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
-				collectingPulse = true;
-			} else if ((sampleArrayList.get(i + 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i - 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD)) {
-				time = sampleArrayList.get(i) / 2;
-				time = time - b_L;
-				time = time / a_L;
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
-			} else if ((sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD) && (sampleArrayList.get(i + 1) < MathematicalConstants.ADC_THRESHOLD)) {
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
-				chargeArrayList.add(charge);
-				timeArrayList.add(time);
-				hits++;
-				a_L = 0;
-				b_L = 0;
-				charge = 0;
-				time = 0;
-				collectingPulse = false;
-			} else if (collectingPulse) {
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+		for (int[] vetoArray : vetoes) {
+			PulseList pulseList = getVetoPulses(vetoArray, false, channelPulseLists);
+			if (pulseList != null) {
+				PulseList dualSiPMPulseList = getVetoPulses(vetoArray, true, channelPulseLists);
+				hits += Math.max(pulseList.size(), (dualSiPMPulseList == null) ? 0 : dualSiPMPulseList.size());
+			}
+		}
+
+		vetoSectorArray = new int[hits];
+		vetoLayerArray = new int[hits];
+		vetoChannelArray = new int[hits];
+		vetoChargeArray = new int[hits];
+		vetoTimeArray = new int[hits];
+		dualSiPMVetoChargeArray = new int[hits];
+		dualSiPMVetoTimeArray = new int[hits];
+
+		int hit = 0;
+		for (int[] vetoArray : vetoes) {
+			PulseList pulseList = getVetoPulses(vetoArray, false, channelPulseLists);
+			if (pulseList != null) {
+				hit = fillVetoHits(vetoArray, pulseList, getVetoPulses(vetoArray, true, channelPulseLists), hit);
 			}
 		}
-		return hits;
 	}
 
 	/**
-	 * Converts an ArrayList of Integers to an array of ints.
+	 * Returns the pulses of the left (or only) or right SiPM (silicon photomultiplier) of the veto of a
+	 * translation table entry.
 	 * 
-	 * @param integerArrayList An ArrayList of Integers.
-	 * @return intArray An array of ints.
-	 */
-	private int[] getIntArrayFromIntegerArrayList(ArrayList<Integer> integerArrayList) {
-		int intArray[] = new int[integerArrayList.size()];
-		for (int i = 0; i < intArray.length; i++) {
-			intArray[i] = integerArrayList.get(i);
+	 * @param vetoArray A veto translation table entry.
+	 * @param right false for the left (or only) SiPM, true for the right SiPM.
+	 * @param channelPulseLists An array of the pulses of each channel.
+	 * @return The pulses, or null if the entry is not that SiPM of its veto, or its channel is not read out.
+	 */
+	private static PulseList getVetoPulses(int[] vetoArray, boolean right, PulseList[] channelPulseLists) {
+		// the layers of the table are zero-based
+		int veto = TranslationTable.vetoOf(vetoArray[2] + 1, vetoArray[3]);
+		if (TranslationTable.vetoChannelOf(veto, false) != vetoArray[0]) {
+			// the right SiPM of a veto is merged with its left SiPM
+			return null;
 		}
-		return intArray;
+		int channel = right ? TranslationTable.vetoChannelOf(veto, true) : vetoArray[0];
+		return (channel >= 0 && channel < channelPulseLists.length) ? channelPulseLists[channel] : null;
 	}
-	
+
 	/**
-	 * Converts an ArrayList of Doubles to an array of ints.
+	 * Fills the hits of a veto.
 	 * 
-	 * @param doubleArrayList An ArrayList of Doubles.
-	 * @return intArray An array of ints.
-	 */
-	private int[] getIntArrayFromDoubleArrayList(ArrayList<Double> doubleArrayList) {
-		int intArray[] = new int[doubleArrayList.size()];
-		for (int i = 0; i < intArray.length; i++) {
-			intArray[i] = (int)((double)doubleArrayList.get(i));
+	 * @param vetoArray The translation table entry of the veto.
+	 * @param pulseList The pulses of the veto.
+	 * @param dualSiPMPulseList The pulses of the second SiPM (silicon photomultiplier) of the veto, or null if it has none.
+	 * @param hit The index of the first hit to fill.
+	 * @return The index of the next hit to fill.
+	 */
+	private int fillVetoHits(int[] vetoArray, PulseList pulseList, PulseList dualSiPMPulseList, int hit) {
+		int dualSiPMHits = (dualSiPMPulseList == null) ? 0 : dualSiPMPulseList.size();
+		int vetoHits = Math.max(pulseList.size(), dualSiPMHits);
+		for (int i = 0; i < vetoHits; i++) {
+			vetoSectorArray[hit] = vetoArray[1];
+			// veto layers are one-based (1 internal, 2 external) in the charge-time banks
+			vetoLayerArray[hit] = vetoArray[2] + 1;
+			vetoChannelArray[hit] = vetoArray[3];
+			if (i < pulseList.size()) {
+				vetoChargeArray[hit] = (int) pulseList.getCharge(i);
+				vetoTimeArray[hit] = (int) pulseList.getTime(i);
+			}
+			if (i < dualSiPMHits) {
+				dualSiPMVetoChargeArray[hit] = (int) dualSiPMPulseList.getCharge(i);
+				dualSiPMVetoTimeArray[hit] = (int) dualSiPMPulseList.getTime(i);
+			}
+			hit++;
 		}
-		return intArray;
+		return hit;
 	}
 
 	/**
@@ -251,76 +366,88 @@ public class ChargeTimeData implements ILoad {
 	@Override
 	public void load(IEvioStructure structure, int tag, int num) {
 		try {
-			// Scintillator Bar
-			if (tag == 102) {
-				switch (num) {
-				// Scintillator Bar Sector
-				case 1:
-					sectorArray = structure.getIntData();
-					break;
-				// Scintillator Bar Layer
-				case 2:
-					layerArray = structure.getIntData();
-					break;
-				// Scintillator Bar Paddle
-				case 3:
-					paddleArray = structure.getIntData();
-					break;
-				// Scintillator Bar Left PMT Charge
-				case 4:
-					leftPMTChargeArray = structure.getIntData();
-					break;
-				// Scintillator Bar Right PMT Charge
-				case 5:
-					rightPMTChargeArray = structure.getIntData();
-					break;
-				// Scintillator Bar Left PMT Time
-				case 6:
-					leftPMTTimeArray = structure.getIntData();
-					break;
-				// Scintillator Bar Right PMT Time
-				case 7:
-					rightPMTTimeArray = structure.getIntData();
-					break;
-				}
-			// Veto
-			} else if (tag == 202) {
-				switch (num) {
-				// Veto Sector
-				case 1:
-					vetoSectorArray = structure.getIntData();
-					break;
-				// Veto Layer
-				case 2:
-					vetoLayerArray = structure.getIntData();
-					break;
-				// Veto Channel
-				case 3:
-					vetoChannelArray = structure.getIntData();
-					break;
-				// Veto Charge
-				case 4:
-					vetoChargeArray = structure.getIntData();
-					break;
-				// Dual SiPM Veto Charge
-				case 5:
-					dualSiPMVetoChargeArray = structure.getIntData();
-					break;
-				// Veto Time
-				case 6:
-					vetoTimeArray = structure.getIntData();
-					break;
-				// Dual SiPM Veto Charge
-				case 7:
-					dualSiPMVetoTimeArray = structure.getIntData();
-					break;
-				}
-			}
+			load(tag, num, structure.getIntData());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Loads a column of charge-time data that has already been read, for example by a scanner that reads the
+	 * banks of a file without parsing them.
+	 * 
+	 * @param tag The tag of the bank.
+	 * @param num The num of the bank.
+	 * @param data The integer data of the bank.
+	 */
+	public void load(int tag, int num, int[] data) {
+		// Scintillator Bar
+		if (tag == 102) {
+			switch (num) {
+			// Scintillator Bar Sector
+			case 1:
+				sectorArray = data;
+				break;
+			// Scintillator Bar Layer
+			case 2:
+				layerArray = data;
+				break;
+			// Scintillator Bar Paddle
+			case 3:
+				paddleArray = data;
+				break;
+			// Scintillator Bar Left PMT Charge
+			case 4:
+				leftPMTChargeArray = data;
+				break;
+			// Scintillator Bar Right PMT Charge
+			case 5:
+				rightPMTChargeArray = data;
+				break;
+			// Scintillator Bar Left PMT Time
+			case 6:
+				leftPMTTimeArray = data;
+				break;
+			// Scintillator Bar Right PMT Time
+			case 7:
+				rightPMTTimeArray = data;
+				break;
+			}
+		// Veto
+		} else if (tag == 202) {
+			switch (num) {
+			// Veto Sector
+			case 1:
+				vetoSectorArray = data;
+				break;
+			// Veto Layer
+			case 2:
+				vetoLayerArray = data;
+				break;
+			// Veto Channel
+			case 3:
+				vetoChannelArray = data;
+				break;
+			// Veto Charge
+			case 4:
+				vetoChargeArray = data;
+				break;
+			// Dual SiPM Veto Charge
+			case 5:
+				dualSiPMVetoChargeArray = data;
+				break;
+			// Veto Time
+			case 6:
+				vetoTimeArray = data;
+				break;
+			// Dual SiPM Veto Charge
+			case 7:
+				dualSiPMVetoTimeArray = data;
+				break;
+			}
+		}
+	}
+
 	/**
 	 * Currently unused.
 	 * 
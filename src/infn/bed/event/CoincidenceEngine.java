@@ -0,0 +1,215 @@
+package infn.bed.event;
+
+import java.util.function.Predicate;
+
+/**
+ * Finds the coincidences of an event in the reconstructed scintillator bar and veto hits: pairs of hits of
+ * different scintillator bars within the bar-bar window, and scintillator bar hits with or without a veto
+ * hit within the bar-veto window.
+ *
+ * <p>
+ * The valid hits are sorted by time and swept over, so each scintillator bar hit is only compared with the
+ * hits inside its window instead of with every hit of the event. A scintillator bar hit above the energy
+ * threshold without a veto hit within the bar-veto window is a veto-anticoincidence candidate, and an event
+ * with at least one candidate is a candidate event.
+ * </p>
+ *
+ * <p>
+ * NOTE: The engine itself is immutable, so one engine can be shared by every thread, each with its own
+ * result.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class CoincidenceEngine {
+
+	/**
+	 * The default bar-bar window in ns.
+	 */
+	public static final double DEFAULT_BAR_BAR_WINDOW = 10;
+
+	/**
+	 * The default bar-veto window in ns.
+	 */
+	public static final double DEFAULT_BAR_VETO_WINDOW = 20;
+
+	/**
+	 * The default energy threshold of a candidate in MeV.
+	 */
+	public static final double DEFAULT_MINIMUM_BAR_ENERGY = 0;
+
+	/**
+	 * The largest time difference in ns of two scintillator bar hits in coincidence.
+	 */
+	private final double barBarWindow;
+
+	/**
+	 * The largest time difference in ns of a scintillator bar hit and a veto hit that vetoes it.
+	 */
+	private final double barVetoWindow;
+
+	/**
+	 * The lowest energy in MeV of a candidate.
+	 */
+	private final double minimumBarEnergy;
+
+	/**
+	 * The constructor with the default windows and threshold.
+	 */
+	public CoincidenceEngine() {
+		this(DEFAULT_BAR_BAR_WINDOW, DEFAULT_BAR_VETO_WINDOW, DEFAULT_MINIMUM_BAR_ENERGY);
+	}
+
+	/**
+	 * The constructor.
+	 *
+	 * @param barBarWindow The largest time difference in ns of two scintillator bar hits in coincidence.
+	 * @param barVetoWindow The largest time difference in ns of a scintillator bar hit and a veto hit that
+	 * vetoes it.
+	 * @param minimumBarEnergy The lowest energy in MeV of a candidate.
+	 */
+	public CoincidenceEngine(double barBarWindow, double barVetoWindow, double minimumBarEnergy) {
+		this.barBarWindow = barBarWindow;
+		this.barVetoWindow = barVetoWindow;
+		this.minimumBarEnergy = minimumBarEnergy;
+	}
+
+	/**
+	 * Finds the coincidences of an event.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @param result The result the coincidences are written to. Its previous content is removed.
+	 */
+	public void find(EnergyTimeData energyTimeData, CoincidenceResult result) {
+		int barHits = energyTimeData.getBarHitCount();
+		int vetoHits = energyTimeData.getVetoHitCount();
+		result.reset(barHits, vetoHits);
+		sortBarHits(energyTimeData, result);
+		sortVetoHits(energyTimeData, result);
+		int[] sortedBarHitArray = result.sortedBarHitArray;
+		double[] sortedBarTimeArray = result.sortedBarTimeArray;
+		int sortedBarHits = result.sortedBarHitCount;
+		double[] sortedVetoTimeArray = result.sortedVetoTimeArray;
+		int sortedVetoHits = result.sortedVetoHitCount;
+		// the first veto hit that is not too early for the current scintillator bar hit
+		int firstVeto = 0;
+		for (int i = 0; i < sortedBarHits; i++) {
+			int hit = sortedBarHitArray[i];
+			double time = sortedBarTimeArray[i];
+			// bar-bar: only the later hits within the window, so every pair is found once
+			for (int j = i + 1; j < sortedBarHits && sortedBarTimeArray[j] - time <= barBarWindow; j++) {
+				int otherHit = sortedBarHitArray[j];
+				if (energyTimeData.getBar(otherHit) != energyTimeData.getBar(hit)) {
+					result.tag(hit, CoincidenceResult.BAR_COINCIDENT);
+					result.tag(otherHit, CoincidenceResult.BAR_COINCIDENT);
+					result.addPair(hit, otherHit);
+				}
+			}
+			// bar-veto: the scintillator bar hits are in time order, so the window only moves forward
+			while (firstVeto < sortedVetoHits && sortedVetoTimeArray[firstVeto] < time - barVetoWindow) {
+				firstVeto++;
+			}
+			if (firstVeto < sortedVetoHits && sortedVetoTimeArray[firstVeto] <= time + barVetoWindow) {
+				result.tag(hit, CoincidenceResult.VETOED);
+			} else if (energyTimeData.getBarEnergy(hit) >= minimumBarEnergy) {
+				result.tag(hit, CoincidenceResult.ANTICOINCIDENT);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the valid scintillator bar hits of an event by time into a result. A scintillator bar hit without
+	 * energy is not valid, so it neither forms a pair nor becomes a candidate.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @param result The result.
+	 */
+	private static void sortBarHits(EnergyTimeData energyTimeData, CoincidenceResult result) {
+		int[] hitArray = result.sortedBarHitArray;
+		double[] timeArray = result.sortedBarTimeArray;
+		int count = 0;
+		for (int hit = 0; hit < energyTimeData.getBarHitCount(); hit++) {
+			double time = energyTimeData.getBarTime(hit);
+			if (energyTimeData.getBar(hit) < 0 || Double.isNaN(time) || energyTimeData.getBarEnergy(hit) <= 0) {
+				continue;
+			}
+			// insertion sort, since an event only has a few hits
+			int position = count++;
+			while (position > 0 && timeArray[position - 1] > time) {
+				hitArray[position] = hitArray[position - 1];
+				timeArray[position] = timeArray[position - 1];
+				position--;
+			}
+			hitArray[position] = hit;
+			timeArray[position] = time;
+		}
+		result.sortedBarHitCount = count;
+	}
+
+	/**
+	 * Sorts the times of the valid veto hits of an event into a result.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @param result The result.
+	 */
+	private static void sortVetoHits(EnergyTimeData energyTimeData, CoincidenceResult result) {
+		double[] timeArray = result.sortedVetoTimeArray;
+		int count = 0;
+		for (int hit = 0; hit < energyTimeData.getVetoHitCount(); hit++) {
+			double time = energyTimeData.getVetoTime(hit);
+			if (energyTimeData.getVeto(hit) < 0 || Double.isNaN(time)) {
+				continue;
+			}
+			int position = count++;
+			while (position > 0 && timeArray[position - 1] > time) {
+				timeArray[position] = timeArray[position - 1];
+				position--;
+			}
+			timeArray[position] = time;
+		}
+		result.sortedVetoHitCount = count;
+	}
+
+	/**
+	 * Creates a filter that accepts the candidate events, for example to skip the other events of a scan.
+	 * The filter can be used on any number of threads.
+	 *
+	 * @return The filter.
+	 */
+	public Predicate<EnergyTimeData> createCandidateFilter() {
+		ThreadLocal<CoincidenceResult> result = ThreadLocal.withInitial(CoincidenceResult::new);
+		return energyTimeData -> {
+			CoincidenceResult current = result.get();
+			find(energyTimeData, current);
+			return current.isCandidate();
+		};
+	}
+
+	/**
+	 * Returns the bar-bar window.
+	 *
+	 * @return The largest time difference in ns of two scintillator bar hits in coincidence.
+	 */
+	public double getBarBarWindow() {
+		return barBarWindow;
+	}
+
+	/**
+	 * Returns the bar-veto window.
+	 *
+	 * @return The largest time difference in ns of a scintillator bar hit and a veto hit that vetoes it.
+	 */
+	public double getBarVetoWindow() {
+		return barVetoWindow;
+	}
+
+	/**
+	 * Returns the energy threshold of a candidate.
+	 *
+	 * @return The lowest energy in MeV of a candidate.
+	 */
+	public double getMinimumBarEnergy() {
+		return minimumBarEnergy;
+	}
+
+}
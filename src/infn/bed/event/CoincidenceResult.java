@@ -0,0 +1,231 @@
+package infn.bed.event;
+
+import java.util.Arrays;
+
+/**
+ * The coincidences found by the coincidence engine in an event: the tag of every scintillator bar hit and
+ * the pairs of scintillator bar hits in coincidence.
+ *
+ * <p>
+ * A result is meant to be reused from event to event, so its arrays only grow. It also holds the time-sorted
+ * hits the engine sweeps over.
+ * </p>
+ *
+ * <p>
+ * NOTE: A result is not thread-safe.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class CoincidenceResult {
+
+	/**
+	 * The tag of a scintillator bar hit above the energy threshold without a veto hit within the bar-veto
+	 * window, the candidates of a veto-anticoincidence analysis.
+	 */
+	public static final int ANTICOINCIDENT = 1;
+
+	/**
+	 * The tag of a scintillator bar hit with a veto hit within the bar-veto window.
+	 */
+	public static final int VETOED = 2;
+
+	/**
+	 * The tag of a scintillator bar hit with a hit of another scintillator bar within the bar-bar window.
+	 */
+	public static final int BAR_COINCIDENT = 4;
+
+	/**
+	 * The initial capacity of the arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/**
+	 * The tags of each scintillator bar hit, by index of the hit in the energy-time data.
+	 */
+	private int[] tagArray = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The number of scintillator bar hits of the event.
+	 */
+	private int barHitCount;
+
+	/**
+	 * The pairs of scintillator bar hits in coincidence, two hit indices per pair, earlier hit first.
+	 */
+	private int[] pairArray = new int[2 * INITIAL_CAPACITY];
+
+	/**
+	 * The number of pairs of scintillator bar hits in coincidence.
+	 */
+	private int pairCount;
+
+	/**
+	 * The number of anticoincident scintillator bar hits.
+	 */
+	private int candidateCount;
+
+	/**
+	 * The valid scintillator bar hits sorted by time.
+	 */
+	int[] sortedBarHitArray = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The times of the sorted scintillator bar hits.
+	 */
+	double[] sortedBarTimeArray = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The number of valid scintillator bar hits.
+	 */
+	int sortedBarHitCount;
+
+	/**
+	 * The times of the valid veto hits, sorted.
+	 */
+	double[] sortedVetoTimeArray = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The number of valid veto hits.
+	 */
+	int sortedVetoHitCount;
+
+	/**
+	 * Removes all coincidences and makes room for the hits of an event.
+	 *
+	 * @param barHits The number of scintillator bar hits.
+	 * @param vetoHits The number of veto hits.
+	 */
+	void reset(int barHits, int vetoHits) {
+		if (barHits > tagArray.length) {
+			int capacity = Math.max(barHits, 2 * tagArray.length);
+			tagArray = new int[capacity];
+			sortedBarHitArray = new int[capacity];
+			sortedBarTimeArray = new double[capacity];
+		}
+		if (vetoHits > sortedVetoTimeArray.length) {
+			sortedVetoTimeArray = new double[Math.max(vetoHits, 2 * sortedVetoTimeArray.length)];
+		}
+		Arrays.fill(tagArray, 0, barHits, 0);
+		barHitCount = barHits;
+		pairCount = 0;
+		candidateCount = 0;
+		sortedBarHitCount = 0;
+		sortedVetoHitCount = 0;
+	}
+
+	/**
+	 * Tags a scintillator bar hit.
+	 *
+	 * @param hit The index of the hit.
+	 * @param tag The tag to add.
+	 */
+	void tag(int hit, int tag) {
+		if (tag == ANTICOINCIDENT && (tagArray[hit] & ANTICOINCIDENT) == 0) {
+			candidateCount++;
+		}
+		tagArray[hit] |= tag;
+	}
+
+	/**
+	 * Adds a pair of scintillator bar hits in coincidence.
+	 *
+	 * @param firstHit The index of the earlier hit.
+	 * @param secondHit The index of the later hit.
+	 */
+	void addPair(int firstHit, int secondHit) {
+		if (2 * pairCount + 2 > pairArray.length) {
+			pairArray = Arrays.copyOf(pairArray, 2 * pairArray.length);
+		}
+		pairArray[2 * pairCount] = firstHit;
+		pairArray[2 * pairCount + 1] = secondHit;
+		pairCount++;
+	}
+
+	/**
+	 * Returns the number of scintillator bar hits of the event.
+	 *
+	 * @return The number of scintillator bar hits.
+	 */
+	public int getBarHitCount() {
+		return barHitCount;
+	}
+
+	/**
+	 * Returns the tags of a scintillator bar hit.
+	 *
+	 * @param hit The index of the hit in the energy-time data.
+	 * @return The tags of the hit (ANTICOINCIDENT, VETOED and BAR_COINCIDENT), or 0 if it has none.
+	 */
+	public int getTags(int hit) {
+		return tagArray[hit];
+	}
+
+	/**
+	 * Returns true if a scintillator bar hit is a veto-anticoincidence candidate, false otherwise.
+	 *
+	 * @param hit The index of the hit in the energy-time data.
+	 * @return true if the hit is a veto-anticoincidence candidate, false otherwise.
+	 */
+	public boolean isAnticoincident(int hit) {
+		return (tagArray[hit] & ANTICOINCIDENT) != 0;
+	}
+
+	/**
+	 * Returns true if a scintillator bar hit has a veto hit within the bar-veto window, false otherwise.
+	 *
+	 * @param hit The index of the hit in the energy-time data.
+	 * @return true if the hit is vetoed, false otherwise.
+	 */
+	public boolean isVetoed(int hit) {
+		return (tagArray[hit] & VETOED) != 0;
+	}
+
+	/**
+	 * Returns the number of veto-anticoincidence candidates.
+	 *
+	 * @return The number of anticoincident scintillator bar hits.
+	 */
+	public int getCandidateCount() {
+		return candidateCount;
+	}
+
+	/**
+	 * Returns true if the event has at least one veto-anticoincidence candidate, false otherwise.
+	 *
+	 * @return true if the event is a candidate, false otherwise.
+	 */
+	public boolean isCandidate() {
+		return candidateCount > 0;
+	}
+
+	/**
+	 * Returns the number of pairs of scintillator bar hits in coincidence.
+	 *
+	 * @return The number of pairs.
+	 */
+	public int getPairCount() {
+		return pairCount;
+	}
+
+	/**
+	 * Returns the earlier hit of a pair of scintillator bar hits in coincidence.
+	 *
+	 * @param pair The pair.
+	 * @return The index of the earlier hit in the energy-time data.
+	 */
+	public int getPairFirstHit(int pair) {
+		return pairArray[2 * pair];
+	}
+
+	/**
+	 * Returns the later hit of a pair of scintillator bar hits in coincidence.
+	 *
+	 * @param pair The pair.
+	 * @return The index of the later hit in the energy-time data.
+	 */
+	public int getPairSecondHit(int pair) {
+		return pairArray[2 * pair + 1];
+	}
+
+}
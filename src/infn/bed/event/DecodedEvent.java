@@ -0,0 +1,166 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+/**
+ * Holds the fully decoded data of a single event.
+ *
+ * <p>
+ * NOTE: A decoded event is built on a decode thread and is never modified after it has been handed to the
+ * render stage, so it can be shared freely between threads. Once an event has been replaced or skipped its
+ * buffers are recycled by the EventDecoder, so references to it must not be kept. The events of the
+ * ReadAheadCache are the exception: they are never recycled, so they can be rendered again.
+ * </p>
+ *
+ * <p>
+ * The calibration table in use when decoding started is kept with the event, so an event is always
+ * reconstructed with a single calibration version, even if the calibration file is reloaded meanwhile.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class DecodedEvent {
+
+	/**
+	 * The sequence number assigned when the event was submitted for decoding.
+	 */
+	private final long sequenceNumber;
+
+	/**
+	 * The charge-time data, or null if the event has none.
+	 */
+	private final ChargeTimeData chargeTimeData;
+
+	/**
+	 * The full-waveform data, or null if the event has none.
+	 */
+	private final FullWaveformData fullWaveformData;
+
+	/**
+	 * The energy-time data, reconstructed with the calibration table.
+	 */
+	private final EnergyTimeData energyTimeData;
+
+	/**
+	 * The calibration table the event is reconstructed with.
+	 */
+	private final CalibrationTable calibrationTable;
+
+	/**
+	 * Whether the event is kept by the ReadAheadCache, so its buffers must not be recycled.
+	 */
+	private final boolean cached;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param sequenceNumber The sequence number assigned when the event was submitted for decoding.
+	 * @param chargeTimeData The charge-time data, or null if the event has none.
+	 * @param fullWaveformData The full-waveform data, or null if the event has none.
+	 * @param energyTimeData The energy-time data, reconstructed with the calibration table.
+	 * @param calibrationTable The calibration table the event is reconstructed with.
+	 */
+	public DecodedEvent(long sequenceNumber, ChargeTimeData chargeTimeData, FullWaveformData fullWaveformData,
+			EnergyTimeData energyTimeData, CalibrationTable calibrationTable) {
+		this(sequenceNumber, chargeTimeData, fullWaveformData, energyTimeData, calibrationTable, false);
+	}
+
+	/**
+	 * The constructor.
+	 *
+	 * @param sequenceNumber The sequence number assigned when the event was submitted for decoding.
+	 * @param chargeTimeData The charge-time data, or null if the event has none.
+	 * @param fullWaveformData The full-waveform data, or null if the event has none.
+	 * @param energyTimeData The energy-time data, reconstructed with the calibration table.
+	 * @param calibrationTable The calibration table the event is reconstructed with.
+	 * @param cached Whether the event is kept by the ReadAheadCache, so its buffers must not be recycled.
+	 */
+	DecodedEvent(long sequenceNumber, ChargeTimeData chargeTimeData, FullWaveformData fullWaveformData,
+			EnergyTimeData energyTimeData, CalibrationTable calibrationTable, boolean cached) {
+		this.sequenceNumber = sequenceNumber;
+		this.chargeTimeData = chargeTimeData;
+		this.fullWaveformData = fullWaveformData;
+		this.energyTimeData = energyTimeData;
+		this.calibrationTable = calibrationTable;
+		this.cached = cached;
+	}
+
+	/**
+	 * Returns a copy of the event that is reconstructed with another calibration table. The copy shares the
+	 * charge-time and full-waveform data of the event, so only one of them may be recycled.
+	 *
+	 * @param calibrationTable The calibration table.
+	 * @return The copy of the event.
+	 */
+	public DecodedEvent withCalibrationTable(CalibrationTable calibrationTable) {
+		EnergyTimeData newEnergyTimeData = new EnergyTimeData();
+		EnergyTimeReconstructor.reconstruct(chargeTimeData, calibrationTable, newEnergyTimeData);
+		return new DecodedEvent(sequenceNumber, chargeTimeData, fullWaveformData, newEnergyTimeData, calibrationTable, cached);
+	}
+
+	/**
+	 * Returns a copy of the event with another sequence number. The copy shares all the data of the event.
+	 *
+	 * @param sequenceNumber The sequence number.
+	 * @return The copy of the event.
+	 */
+	DecodedEvent withSequenceNumber(long sequenceNumber) {
+		return new DecodedEvent(sequenceNumber, chargeTimeData, fullWaveformData, energyTimeData, calibrationTable, cached);
+	}
+
+	/**
+	 * Returns true if the event is kept by the ReadAheadCache, so its buffers must not be recycled, false
+	 * otherwise.
+	 *
+	 * @return true if the event is cached, false otherwise.
+	 */
+	boolean isCached() {
+		return cached;
+	}
+
+	/**
+	 * Returns the sequence number assigned when the event was submitted for decoding.
+	 *
+	 * @return The sequence number assigned when the event was submitted for decoding.
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Returns the charge-time data.
+	 *
+	 * @return The charge-time data, or null if the event has none.
+	 */
+	public ChargeTimeData getChargeTimeData() {
+		return chargeTimeData;
+	}
+
+	/**
+	 * Returns the full-waveform data.
+	 *
+	 * @return The full-waveform data, or null if the event has none.
+	 */
+	public FullWaveformData getFullWaveformData() {
+		return fullWaveformData;
+	}
+
+	/**
+	 * Returns the energy-time data.
+	 *
+	 * @return The energy-time data, reconstructed with the calibration table.
+	 */
+	public EnergyTimeData getEnergyTimeData() {
+		return energyTimeData;
+	}
+
+	/**
+	 * Returns the calibration table the event is reconstructed with.
+	 *
+	 * @return The calibration table the event is reconstructed with.
+	 */
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable;
+	}
+
+}
@@ -0,0 +1,175 @@
+package infn.bed.event;
+
+import infn.bed.math.DecayedRate;
+import infn.bed.math.QuantileSketch;
+
+/**
+ * The streaming statistics of the hits of a detector element (scintillator bar or veto): quantile sketches
+ * of the pulse charge and time, and a decayed hit rate.
+ *
+ * <p>
+ * NOTE: A sketch is not thread-safe. The sketches returned by the ElementSketchBank are merged copies, so
+ * they can be read freely.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class ElementSketch {
+
+	/**
+	 * The relative accuracy of the quantiles.
+	 */
+	private static final double RELATIVE_ACCURACY = 0.01;
+
+	/**
+	 * The lowest pulse charge that is told apart from 0, in channel units (uncalibrated).
+	 */
+	private static final double MINIMUM_CHARGE = 1;
+
+	/**
+	 * The highest pulse charge that is told apart from higher charges, in channel units (uncalibrated).
+	 */
+	private static final double MAXIMUM_CHARGE = 1e7;
+
+	/**
+	 * The lowest pulse time that is told apart from 0, in channel units (uncalibrated).
+	 */
+	private static final double MINIMUM_TIME = 0.1;
+
+	/**
+	 * The highest pulse time that is told apart from later times, in channel units (uncalibrated).
+	 */
+	private static final double MAXIMUM_TIME = 1e5;
+
+	/**
+	 * The time constant of the hit rate in seconds.
+	 */
+	private static final double RATE_SECONDS = 10;
+
+	/**
+	 * The sketch of the pulse charges.
+	 */
+	private final QuantileSketch chargeSketch = new QuantileSketch(RELATIVE_ACCURACY, MINIMUM_CHARGE, MAXIMUM_CHARGE);
+
+	/**
+	 * The sketch of the pulse times.
+	 */
+	private final QuantileSketch timeSketch = new QuantileSketch(RELATIVE_ACCURACY, MINIMUM_TIME, MAXIMUM_TIME);
+
+	/**
+	 * The hit rate.
+	 */
+	private final DecayedRate hitRate = new DecayedRate(RATE_SECONDS);
+
+	/**
+	 * Adds a hit.
+	 *
+	 * @param charge The pulse charge in channel units (uncalibrated).
+	 * @param time The pulse time in channel units (uncalibrated).
+	 */
+	void addHit(double charge, double time) {
+		chargeSketch.add(charge);
+		timeSketch.add(time);
+	}
+
+	/**
+	 * Counts hits towards the hit rate.
+	 *
+	 * @param hits The number of hits.
+	 * @param now The time of the hits in nanoseconds, as given by System.nanoTime().
+	 */
+	void countHits(int hits, long now) {
+		hitRate.add(hits, now);
+	}
+
+	/**
+	 * Adds the hits of another sketch.
+	 *
+	 * @param other Another sketch.
+	 */
+	void merge(ElementSketch other) {
+		chargeSketch.merge(other.chargeSketch);
+		timeSketch.merge(other.timeSketch);
+		hitRate.merge(other.hitRate);
+	}
+
+	/**
+	 * Returns the length of the state of the quantile sketches, as written by getState().
+	 *
+	 * @return The length of the state.
+	 */
+	int getStateLength() {
+		return chargeSketch.getStateLength() + timeSketch.getStateLength();
+	}
+
+	/**
+	 * Writes the state of the quantile sketches to an array. The hit rate is left out, since it only
+	 * describes the last seconds.
+	 *
+	 * @param state The array.
+	 * @param offset The offset the state is written at.
+	 */
+	void getState(long[] state, int offset) {
+		chargeSketch.getState(state, offset);
+		timeSketch.getState(state, offset + chargeSketch.getStateLength());
+	}
+
+	/**
+	 * Adds the hits of a state written by getState().
+	 *
+	 * @param state The array holding the state.
+	 * @param offset The offset of the state.
+	 */
+	void addState(long[] state, int offset) {
+		chargeSketch.addState(state, offset);
+		timeSketch.addState(state, offset + chargeSketch.getStateLength());
+	}
+
+	/**
+	 * Removes all hits.
+	 */
+	void clear() {
+		chargeSketch.clear();
+		timeSketch.clear();
+		hitRate.clear();
+	}
+
+	/**
+	 * Returns the number of hits.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHitCount() {
+		return chargeSketch.getCount();
+	}
+
+	/**
+	 * Returns a quantile of the pulse charge.
+	 *
+	 * @param quantile The quantile, between 0 and 1.
+	 * @return The quantile in channel units (uncalibrated), or NaN if there are no hits.
+	 */
+	public double getChargeQuantile(double quantile) {
+		return chargeSketch.getQuantile(quantile);
+	}
+
+	/**
+	 * Returns a quantile of the pulse time.
+	 *
+	 * @param quantile The quantile, between 0 and 1.
+	 * @return The quantile in channel units (uncalibrated), or NaN if there are no hits.
+	 */
+	public double getTimeQuantile(double quantile) {
+		return timeSketch.getQuantile(quantile);
+	}
+
+	/**
+	 * Returns the hit rate now.
+	 *
+	 * @return The hit rate in hits per second, averaged over roughly the last RATE_SECONDS.
+	 */
+	public double getHitRate() {
+		return hitRate.getRate(System.nanoTime());
+	}
+
+}
@@ -0,0 +1,241 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The streaming statistics of every scintillator bar and veto: quantile sketches of the pulse charge and
+ * time, and a decayed hit rate. The memory of the bank is constant no matter how long the run is.
+ *
+ * <p>
+ * The charge of a scintillator bar hit is the sum of the charges of its PMTs (photomultiplier tubes) and its
+ * time is the mean of their times, and likewise for the SiPMs (silicon photomultipliers) of a veto. Both are
+ * taken from the charge-time data, so they do not change when the calibration is reloaded.
+ * </p>
+ *
+ * <p>
+ * NOTE: Like the HistogramBank, every thread that fills the bank has its own shard of sketches, which a
+ * reader merges. A shard publishes its sketches by writing a volatile stamp after every fill, and is cleared
+ * by its own thread after a reset.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class ElementSketchBank {
+
+	/**
+	 * The shards of all threads that have filled the bank.
+	 */
+	private final List<Shard> shardList = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The shard of the current thread.
+	 */
+	private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::createShard);
+
+	/**
+	 * The current generation. It is incremented by every reset.
+	 */
+	private volatile int generation;
+
+	/**
+	 * Creates and registers the shard of the current thread.
+	 *
+	 * @return The shard.
+	 */
+	private Shard createShard() {
+		Shard newShard = new Shard(generation);
+		shardList.add(newShard);
+		return newShard;
+	}
+
+	/**
+	 * Fills the sketches with the hits of an event.
+	 *
+	 * @param chargeTimeData The charge-time data of the event.
+	 * @param energyTimeData The energy-time data of the event, whose hit index tells the element of each
+	 * hit.
+	 */
+	public void fill(ChargeTimeData chargeTimeData, EnergyTimeData energyTimeData) {
+		if (chargeTimeData == null || energyTimeData == null) {
+			return;
+		}
+		Shard current = shard.get();
+		int currentGeneration = generation;
+		if (current.generation != currentGeneration) {
+			current.clear(currentGeneration);
+		}
+		long now = System.nanoTime();
+		HitIndex hitIndex = energyTimeData.getHitIndex();
+		int[] leftChargeArray = chargeTimeData.getLeftPMTChargeArray();
+		int[] rightChargeArray = chargeTimeData.getRightPMTChargeArray();
+		int[] leftTimeArray = chargeTimeData.getLeftPMTTimeArray();
+		int[] rightTimeArray = chargeTimeData.getRightPMTTimeArray();
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			int start = hitIndex.getBarStart(bar);
+			int end = hitIndex.getBarEnd(bar);
+			if (start == end) {
+				continue;
+			}
+			ElementSketch sketch = current.barSketchArray[bar];
+			// a hit of the energy-time data is the same row of the charge-time data
+			for (int position = start; position < end; position++) {
+				int hit = hitIndex.getBarHit(position);
+				sketch.addHit(leftChargeArray[hit] + rightChargeArray[hit], (leftTimeArray[hit] + rightTimeArray[hit]) / 2.0);
+			}
+			sketch.countHits(end - start, now);
+		}
+		int[] chargeArray = chargeTimeData.getVetoChargeArray();
+		int[] timeArray = chargeTimeData.getVetoTimeArray();
+		int[] dualSiPMChargeArray = chargeTimeData.getDualSiPMVetoChargeArray();
+		int[] dualSiPMTimeArray = chargeTimeData.getDualSiPMVetoTimeArray();
+		for (int veto = 0; veto < GeometricConstants.VETOES; veto++) {
+			int start = hitIndex.getVetoStart(veto);
+			int end = hitIndex.getVetoEnd(veto);
+			if (start == end) {
+				continue;
+			}
+			ElementSketch sketch = current.vetoSketchArray[veto];
+			boolean dualSiPM = TranslationTable.isDualSiPMVeto(veto);
+			for (int position = start; position < end; position++) {
+				int hit = hitIndex.getVetoHit(position);
+				if (dualSiPM && dualSiPMChargeArray != null && hit < dualSiPMChargeArray.length
+						&& dualSiPMTimeArray != null && hit < dualSiPMTimeArray.length) {
+					sketch.addHit(chargeArray[hit] + dualSiPMChargeArray[hit], (timeArray[hit] + dualSiPMTimeArray[hit]) / 2.0);
+				} else {
+					sketch.addHit(chargeArray[hit], timeArray[hit]);
+				}
+			}
+			sketch.countHits(end - start, now);
+		}
+		// publishes the sketches to the readers
+		current.stamp++;
+	}
+
+	/**
+	 * Adds restored sketches to the shard of the current thread.
+	 *
+	 * @param barSketchArray The sketch of each scintillator bar.
+	 * @param vetoSketchArray The sketch of each veto.
+	 */
+	void restore(ElementSketch[] barSketchArray, ElementSketch[] vetoSketchArray) {
+		Shard current = shard.get();
+		int currentGeneration = generation;
+		if (current.generation != currentGeneration) {
+			current.clear(currentGeneration);
+		}
+		for (int bar = 0; bar < barSketchArray.length; bar++) {
+			current.barSketchArray[bar].merge(barSketchArray[bar]);
+		}
+		for (int veto = 0; veto < vetoSketchArray.length; veto++) {
+			current.vetoSketchArray[veto].merge(vetoSketchArray[veto]);
+		}
+		current.stamp++;
+	}
+
+	/**
+	 * Removes all hits.
+	 */
+	public void reset() {
+		generation++;
+	}
+
+	/**
+	 * Returns the merged statistics of a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return A new sketch that merges the sketches of the scintillator bar of every thread.
+	 */
+	public ElementSketch getBarSketch(int bar) {
+		ElementSketch merged = new ElementSketch();
+		int currentGeneration = generation;
+		for (Shard each : shardList) {
+			// read before the sketches, so they include every fill before the stamp
+			long stamp = each.stamp;
+			if (stamp != 0 && each.generation == currentGeneration) {
+				merged.merge(each.barSketchArray[bar]);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Returns the merged statistics of a veto.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return A new sketch that merges the sketches of the veto of every thread.
+	 */
+	public ElementSketch getVetoSketch(int veto) {
+		ElementSketch merged = new ElementSketch();
+		int currentGeneration = generation;
+		for (Shard each : shardList) {
+			// read before the sketches, so they include every fill before the stamp
+			long stamp = each.stamp;
+			if (stamp != 0 && each.generation == currentGeneration) {
+				merged.merge(each.vetoSketchArray[veto]);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * The sketches filled by one thread.
+	 */
+	private static class Shard {
+
+		/**
+		 * The sketch of each scintillator bar. Only written by the thread of the shard.
+		 */
+		private final ElementSketch[] barSketchArray = new ElementSketch[GeometricConstants.BARS];
+
+		/**
+		 * The sketch of each veto. Only written by the thread of the shard.
+		 */
+		private final ElementSketch[] vetoSketchArray = new ElementSketch[GeometricConstants.VETOES];
+
+		/**
+		 * The generation of the sketches.
+		 */
+		private volatile int generation;
+
+		/**
+		 * The number of fills since the sketches were last cleared. Written after the sketches of every fill.
+		 */
+		private volatile long stamp;
+
+		/**
+		 * The constructor.
+		 *
+		 * @param generation The generation of the sketches.
+		 */
+		private Shard(int generation) {
+			for (int bar = 0; bar < barSketchArray.length; bar++) {
+				barSketchArray[bar] = new ElementSketch();
+			}
+			for (int veto = 0; veto < vetoSketchArray.length; veto++) {
+				vetoSketchArray[veto] = new ElementSketch();
+			}
+			this.generation = generation;
+		}
+
+		/**
+		 * Clears the sketches and moves them to a new generation.
+		 *
+		 * @param newGeneration The new generation.
+		 */
+		private void clear(int newGeneration) {
+			for (ElementSketch sketch : barSketchArray) {
+				sketch.clear();
+			}
+			for (ElementSketch sketch : vetoSketchArray) {
+				sketch.clear();
+			}
+			stamp = 0;
+			generation = newGeneration;
+		}
+
+	}
+
+}
@@ -0,0 +1,388 @@
+package infn.bed.event;
+
+import java.util.Arrays;
+
+/**
+ * Holds the energy-time data of an event, reconstructed from its charge-time data.
+ * 
+ * <p>
+ * NOTE: The scintillator bar hits are in the same order as the scintillator bar rows of the charge-time data,
+ * and the veto hits are in the same order as the veto rows, so hit i here is row i there. The arrays are
+ * reused from event to event and only grow.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class EnergyTimeData {
+	
+	/**
+	 * The initial capacity of the arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 32;
+	
+	/**
+	 * The number of scintillator bar hits.
+	 */
+	private int barHits;
+	
+	/**
+	 * The scintillator bar of each hit in zero-based indexing, or -1 if the hit is not in a scintillator bar.
+	 */
+	private int[] barArray = new int[INITIAL_CAPACITY];
+	
+	/**
+	 * The energy of each scintillator bar hit.
+	 */
+	private double[] barEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The time of each scintillator bar hit.
+	 */
+	private double[] barTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The position of each scintillator bar hit measured from the left end of the scintillator bar.
+	 */
+	private double[] positionFromLeftArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The attenuation-corrected energy of the left PMT (photomultiplier tube) of each scintillator bar hit.
+	 */
+	private double[] leftPMTEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The attenuation-corrected energy of the right PMT (photomultiplier tube) of each scintillator bar hit.
+	 */
+	private double[] rightPMTEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The calibrated time of the left PMT (photomultiplier tube) of each scintillator bar hit.
+	 */
+	private double[] leftPMTTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The calibrated time of the right PMT (photomultiplier tube) of each scintillator bar hit.
+	 */
+	private double[] rightPMTTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The number of veto hits.
+	 */
+	private int vetoHits;
+	
+	/**
+	 * The veto of each hit in zero-based indexing, or -1 if the hit is not in a known veto.
+	 */
+	private int[] vetoArray = new int[INITIAL_CAPACITY];
+	
+	/**
+	 * The energy of each veto hit.
+	 */
+	private double[] vetoEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The time of each veto hit.
+	 */
+	private double[] vetoTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The energy of the left (or only) SiPM (silicon photomultiplier) of each veto hit.
+	 */
+	private double[] leftSiPMEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The energy of the right SiPM (silicon photomultiplier) of each veto hit, or 0 if the veto has one SiPM.
+	 */
+	private double[] rightSiPMEnergyArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The calibrated time of the left (or only) SiPM (silicon photomultiplier) of each veto hit.
+	 */
+	private double[] leftSiPMTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The calibrated time of the right SiPM (silicon photomultiplier) of each veto hit, or 0 if the veto has
+	 * one SiPM.
+	 */
+	private double[] rightSiPMTimeArray = new double[INITIAL_CAPACITY];
+	
+	/**
+	 * The index of the hits by scintillator bar and veto.
+	 */
+	private final HitIndex hitIndex = new HitIndex();
+	
+	/**
+	 * Removes all hits. The arrays are kept for reuse.
+	 */
+	public void reset() {
+		barHits = 0;
+		vetoHits = 0;
+		hitIndex.reset();
+	}
+	
+	/**
+	 * Returns the index of the hits by scintillator bar and veto. It is built when the event is reconstructed.
+	 * 
+	 * @return The index of the hits by scintillator bar and veto.
+	 */
+	public HitIndex getHitIndex() {
+		return hitIndex;
+	}
+	
+	/**
+	 * Makes room for a number of scintillator bar hits and sets the number of scintillator bar hits.
+	 * 
+	 * @param hits The number of scintillator bar hits.
+	 */
+	void setBarHitCount(int hits) {
+		if (hits > barArray.length) {
+			int capacity = Math.max(hits, 2 * barArray.length);
+			barArray = Arrays.copyOf(barArray, capacity);
+			barEnergyArray = Arrays.copyOf(barEnergyArray, capacity);
+			barTimeArray = Arrays.copyOf(barTimeArray, capacity);
+			positionFromLeftArray = Arrays.copyOf(positionFromLeftArray, capacity);
+			leftPMTEnergyArray = Arrays.copyOf(leftPMTEnergyArray, capacity);
+			rightPMTEnergyArray = Arrays.copyOf(rightPMTEnergyArray, capacity);
+			leftPMTTimeArray = Arrays.copyOf(leftPMTTimeArray, capacity);
+			rightPMTTimeArray = Arrays.copyOf(rightPMTTimeArray, capacity);
+		}
+		barHits = hits;
+	}
+	
+	/**
+	 * Makes room for a number of veto hits and sets the number of veto hits.
+	 * 
+	 * @param hits The number of veto hits.
+	 */
+	void setVetoHitCount(int hits) {
+		if (hits > vetoArray.length) {
+			int capacity = Math.max(hits, 2 * vetoArray.length);
+			vetoArray = Arrays.copyOf(vetoArray, capacity);
+			vetoEnergyArray = Arrays.copyOf(vetoEnergyArray, capacity);
+			vetoTimeArray = Arrays.copyOf(vetoTimeArray, capacity);
+			leftSiPMEnergyArray = Arrays.copyOf(leftSiPMEnergyArray, capacity);
+			rightSiPMEnergyArray = Arrays.copyOf(rightSiPMEnergyArray, capacity);
+			leftSiPMTimeArray = Arrays.copyOf(leftSiPMTimeArray, capacity);
+			rightSiPMTimeArray = Arrays.copyOf(rightSiPMTimeArray, capacity);
+		}
+		vetoHits = hits;
+	}
+	
+	/**
+	 * Sets a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @param bar The scintillator bar in zero-based indexing, or -1 if the hit is not in a scintillator bar.
+	 * @param energy The energy.
+	 * @param time The time.
+	 * @param positionFromLeft The position measured from the left end of the scintillator bar.
+	 * @param leftPMTEnergy The attenuation-corrected energy of the left PMT (photomultiplier tube).
+	 * @param rightPMTEnergy The attenuation-corrected energy of the right PMT (photomultiplier tube).
+	 * @param leftPMTTime The calibrated time of the left PMT (photomultiplier tube).
+	 * @param rightPMTTime The calibrated time of the right PMT (photomultiplier tube).
+	 */
+	void setBarHit(int hit, int bar, double energy, double time, double positionFromLeft, double leftPMTEnergy, double rightPMTEnergy,
+			double leftPMTTime, double rightPMTTime) {
+		barArray[hit] = bar;
+		barEnergyArray[hit] = energy;
+		barTimeArray[hit] = time;
+		positionFromLeftArray[hit] = positionFromLeft;
+		leftPMTEnergyArray[hit] = leftPMTEnergy;
+		rightPMTEnergyArray[hit] = rightPMTEnergy;
+		leftPMTTimeArray[hit] = leftPMTTime;
+		rightPMTTimeArray[hit] = rightPMTTime;
+	}
+	
+	/**
+	 * Sets a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @param veto The veto in zero-based indexing, or -1 if the hit is not in a known veto.
+	 * @param energy The energy.
+	 * @param time The time.
+	 * @param leftSiPMEnergy The energy of the left (or only) SiPM (silicon photomultiplier).
+	 * @param rightSiPMEnergy The energy of the right SiPM (silicon photomultiplier), or 0 if the veto has one SiPM.
+	 * @param leftSiPMTime The calibrated time of the left (or only) SiPM (silicon photomultiplier).
+	 * @param rightSiPMTime The calibrated time of the right SiPM (silicon photomultiplier), or 0 if the veto has
+	 * one SiPM.
+	 */
+	void setVetoHit(int hit, int veto, double energy, double time, double leftSiPMEnergy, double rightSiPMEnergy,
+			double leftSiPMTime, double rightSiPMTime) {
+		vetoArray[hit] = veto;
+		vetoEnergyArray[hit] = energy;
+		vetoTimeArray[hit] = time;
+		leftSiPMEnergyArray[hit] = leftSiPMEnergy;
+		rightSiPMEnergyArray[hit] = rightSiPMEnergy;
+		leftSiPMTimeArray[hit] = leftSiPMTime;
+		rightSiPMTimeArray[hit] = rightSiPMTime;
+	}
+	
+	/**
+	 * Returns the number of scintillator bar hits.
+	 * 
+	 * @return The number of scintillator bar hits.
+	 */
+	public int getBarHitCount() {
+		return barHits;
+	}
+	
+	/**
+	 * Returns the scintillator bar of a hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The scintillator bar in zero-based indexing, or -1 if the hit is not in a scintillator bar.
+	 */
+	public int getBar(int hit) {
+		return barArray[hit];
+	}
+	
+	/**
+	 * Returns the energy of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The energy.
+	 */
+	public double getBarEnergy(int hit) {
+		return barEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the time of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The time.
+	 */
+	public double getBarTime(int hit) {
+		return barTimeArray[hit];
+	}
+	
+	/**
+	 * Returns the position of a scintillator bar hit measured from the left end of the scintillator bar.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The position measured from the left end of the scintillator bar.
+	 */
+	public double getPositionFromLeft(int hit) {
+		return positionFromLeftArray[hit];
+	}
+	
+	/**
+	 * Returns the attenuation-corrected energy of the left PMT (photomultiplier tube) of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The attenuation-corrected energy of the left PMT (photomultiplier tube).
+	 */
+	public double getLeftPMTEnergy(int hit) {
+		return leftPMTEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the attenuation-corrected energy of the right PMT (photomultiplier tube) of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The attenuation-corrected energy of the right PMT (photomultiplier tube).
+	 */
+	public double getRightPMTEnergy(int hit) {
+		return rightPMTEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the calibrated time of the left PMT (photomultiplier tube) of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The calibrated time of the left PMT.
+	 */
+	public double getLeftPMTTime(int hit) {
+		return leftPMTTimeArray[hit];
+	}
+	
+	/**
+	 * Returns the calibrated time of the right PMT (photomultiplier tube) of a scintillator bar hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The calibrated time of the right PMT.
+	 */
+	public double getRightPMTTime(int hit) {
+		return rightPMTTimeArray[hit];
+	}
+	
+	/**
+	 * Returns the number of veto hits.
+	 * 
+	 * @return The number of veto hits.
+	 */
+	public int getVetoHitCount() {
+		return vetoHits;
+	}
+	
+	/**
+	 * Returns the veto of a hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The veto in zero-based indexing, or -1 if the hit is not in a known veto.
+	 */
+	public int getVeto(int hit) {
+		return vetoArray[hit];
+	}
+	
+	/**
+	 * Returns the energy of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The energy.
+	 */
+	public double getVetoEnergy(int hit) {
+		return vetoEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the time of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The time.
+	 */
+	public double getVetoTime(int hit) {
+		return vetoTimeArray[hit];
+	}
+	
+	/**
+	 * Returns the energy of the left (or only) SiPM (silicon photomultiplier) of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The energy of the left SiPM.
+	 */
+	public double getLeftSiPMEnergy(int hit) {
+		return leftSiPMEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the energy of the right SiPM (silicon photomultiplier) of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The energy of the right SiPM, or 0 if the veto has one SiPM.
+	 */
+	public double getRightSiPMEnergy(int hit) {
+		return rightSiPMEnergyArray[hit];
+	}
+	
+	/**
+	 * Returns the calibrated time of the left (or only) SiPM (silicon photomultiplier) of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The calibrated time of the left SiPM.
+	 */
+	public double getLeftSiPMTime(int hit) {
+		return leftSiPMTimeArray[hit];
+	}
+	
+	/**
+	 * Returns the calibrated time of the right SiPM (silicon photomultiplier) of a veto hit.
+	 * 
+	 * @param hit The index of the hit.
+	 * @return The calibrated time of the right SiPM, or 0 if the veto has one SiPM.
+	 */
+	public double getRightSiPMTime(int hit) {
+		return rightSiPMTimeArray[hit];
+	}
+	
+}
@@ -0,0 +1,152 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+/**
+ * Converts the charge-time data of an event to energy-time data.
+ * 
+ * <p>
+ * NOTE: This is done once per event, when the event is decoded, so the items (scintillator bars and vetoes)
+ * only have to look up their hits when they are drawn. Each loop runs over primitive arrays and only reads
+ * the calibration table, so nothing is allocated once the output arrays have grown to the event size. The
+ * hits are then indexed by element, so each item finds its own hits without scanning the others.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class EnergyTimeReconstructor {
+	
+	/**
+	 * Whether each veto is reconstructed from two SiPMs (silicon photomultipliers), looked up once and not
+	 * once per hit.
+	 */
+	private static final boolean[] DUAL_SIPM_VETOES = createDualSiPMVetoes();
+	
+	/**
+	 * The constructor.
+	 */
+	private EnergyTimeReconstructor() {
+	}
+	
+	/**
+	 * Finds the vetoes that are read out by two SiPMs (silicon photomultipliers).
+	 * 
+	 * @return Whether each veto of the charge-time veto bank is read out by two SiPMs.
+	 */
+	private static boolean[] createDualSiPMVetoes() {
+		// the vetoes of the charge-time veto bank: 6 internal, then 8 external
+		boolean[] dualSiPMVetoes = new boolean[TranslationTable.vetoOf(2, 7) + 1];
+		for (int veto = 0; veto < dualSiPMVetoes.length; veto++) {
+			dualSiPMVetoes[veto] = TranslationTable.isDualSiPMVeto(veto);
+		}
+		return dualSiPMVetoes;
+	}
+	
+	/**
+	 * Converts the charge-time data of an event to energy-time data.
+	 * 
+	 * @param chargeTimeData The charge-time data, or null if the event has none.
+	 * @param calibrationTable The calibration table.
+	 * @param energyTimeData The energy-time data that is filled. Its previous hits are removed.
+	 */
+	public static void reconstruct(ChargeTimeData chargeTimeData, CalibrationTable calibrationTable, EnergyTimeData energyTimeData) {
+		energyTimeData.reset();
+		if (chargeTimeData != null) {
+			reconstructBars(chargeTimeData, calibrationTable, energyTimeData);
+			reconstructVetoes(chargeTimeData, calibrationTable, energyTimeData);
+			energyTimeData.getHitIndex().build(energyTimeData);
+		}
+	}
+	
+	/**
+	 * Converts the scintillator bar hits.
+	 * 
+	 * @param chargeTimeData The charge-time data.
+	 * @param calibrationTable The calibration table.
+	 * @param energyTimeData The energy-time data that is filled.
+	 */
+	private static void reconstructBars(ChargeTimeData chargeTimeData, CalibrationTable calibrationTable, EnergyTimeData energyTimeData) {
+		int[] layerArray = chargeTimeData.getLayerArray();
+		int[] paddleArray = chargeTimeData.getPaddleArray();
+		int[] leftPMTChargeArray = chargeTimeData.getLeftPMTChargeArray();
+		int[] rightPMTChargeArray = chargeTimeData.getRightPMTChargeArray();
+		int[] leftPMTTimeArray = chargeTimeData.getLeftPMTTimeArray();
+		int[] rightPMTTimeArray = chargeTimeData.getRightPMTTimeArray();
+		if (layerArray == null || paddleArray == null || leftPMTChargeArray == null || rightPMTChargeArray == null
+				|| leftPMTTimeArray == null || rightPMTTimeArray == null) {
+			return;
+		}
+		int hits = Math.min(Math.min(layerArray.length, paddleArray.length),
+				Math.min(Math.min(leftPMTChargeArray.length, rightPMTChargeArray.length), Math.min(leftPMTTimeArray.length, rightPMTTimeArray.length)));
+		energyTimeData.setBarHitCount(hits);
+		for (int hit = 0; hit < hits; hit++) {
+			int bar = TranslationTable.barOf(layerArray[hit], paddleArray[hit]);
+			if (bar < 0) {
+				energyTimeData.setBarHit(hit, -1, 0, 0, 0, 0, 0, 0, 0);
+				continue;
+			}
+			int index = CalibrationTable.getBarIndex(bar + 1);
+			double effectiveVelocity = calibrationTable.getEffectiveVelocity(index);
+			double attenuationLength = calibrationTable.getAttenuationLength(index);
+			double length = calibrationTable.getItemLength(index);
+			double leftTime = (leftPMTTimeArray[hit] * 1.0 / calibrationTable.getLeftTDCConversionFactor(index)) - calibrationTable.getLeftShift(index);
+			double rightTime = (rightPMTTimeArray[hit] * 1.0 / calibrationTable.getRightTDCConversionFactor(index)) - calibrationTable.getRightShift(index);
+			double positionFromLeft = (effectiveVelocity * (leftTime - rightTime) + length) / 2.0;
+			double leftEnergy = leftPMTChargeArray[hit] * calibrationTable.getLeftADCConversionFactor(index) * Math.exp(positionFromLeft / attenuationLength);
+			double rightEnergy = rightPMTChargeArray[hit] * calibrationTable.getRightADCConversionFactor(index) * Math.exp((length - positionFromLeft) / attenuationLength);
+			double energy = (leftEnergy + rightEnergy) / 2;
+			double time = (leftTime + rightTime - (length / effectiveVelocity)) / 2.0;
+			energyTimeData.setBarHit(hit, bar, energy, time, positionFromLeft, leftEnergy, rightEnergy, leftTime, rightTime);
+		}
+	}
+	
+	/**
+	 * Converts the veto hits.
+	 * 
+	 * @param chargeTimeData The charge-time data.
+	 * @param calibrationTable The calibration table.
+	 * @param energyTimeData The energy-time data that is filled.
+	 */
+	private static void reconstructVetoes(ChargeTimeData chargeTimeData, CalibrationTable calibrationTable, EnergyTimeData energyTimeData) {
+		int[] layerArray = chargeTimeData.getVetoLayerArray();
+		int[] channelArray = chargeTimeData.getVetoChannelArray();
+		int[] chargeArray = chargeTimeData.getVetoChargeArray();
+		int[] timeArray = chargeTimeData.getVetoTimeArray();
+		int[] dualSiPMChargeArray = chargeTimeData.getDualSiPMVetoChargeArray();
+		int[] dualSiPMTimeArray = chargeTimeData.getDualSiPMVetoTimeArray();
+		if (layerArray == null || channelArray == null || chargeArray == null || timeArray == null) {
+			return;
+		}
+		int hits = Math.min(Math.min(layerArray.length, channelArray.length), Math.min(chargeArray.length, timeArray.length));
+		energyTimeData.setVetoHitCount(hits);
+		for (int hit = 0; hit < hits; hit++) {
+			int veto = TranslationTable.vetoOf(layerArray[hit], channelArray[hit]);
+			if (veto < 0) {
+				energyTimeData.setVetoHit(hit, -1, 0, 0, 0, 0, 0, 0);
+				continue;
+			}
+			int index = CalibrationTable.getVetoIndex(veto + 1);
+			double leftTDCConversionFactor = calibrationTable.getLeftTDCConversionFactor(index);
+			double leftADCConversionFactor = calibrationTable.getLeftADCConversionFactor(index);
+			if (DUAL_SIPM_VETOES[veto]) {
+				int dualSiPMCharge = (dualSiPMChargeArray != null && hit < dualSiPMChargeArray.length) ? dualSiPMChargeArray[hit] : 0;
+				int dualSiPMTime = (dualSiPMTimeArray != null && hit < dualSiPMTimeArray.length) ? dualSiPMTimeArray[hit] : 0;
+				double effectiveVelocity = calibrationTable.getEffectiveVelocity(index);
+				double attenuationLength = calibrationTable.getAttenuationLength(index);
+				double vetoLength = calibrationTable.getItemLength(index);
+				double leftTime = (timeArray[hit] / leftTDCConversionFactor) - calibrationTable.getLeftShift(index);
+				double rightTime = (dualSiPMTime / calibrationTable.getRightTDCConversionFactor(index)) - calibrationTable.getRightShift(index);
+				double positionFromLeft = (effectiveVelocity * (leftTime - rightTime) + vetoLength) / 2;
+				double leftEnergy = chargeArray[hit] * leftADCConversionFactor * Math.exp(positionFromLeft / attenuationLength);
+				double rightEnergy = dualSiPMCharge * calibrationTable.getRightADCConversionFactor(index) * Math.exp((vetoLength - positionFromLeft) / attenuationLength);
+				energyTimeData.setVetoHit(hit, veto, (leftEnergy + rightEnergy) / 2, (leftTime + rightTime - (vetoLength / effectiveVelocity)) / 2,
+						leftEnergy, rightEnergy, leftTime, rightTime);
+			} else {
+				double energy = chargeArray[hit] * leftADCConversionFactor;
+				double time = timeArray[hit] / leftTDCConversionFactor;
+				energyTimeData.setVetoHit(hit, veto, energy, time, energy, 0, time, 0);
+			}
+		}
+	}
+	
+}
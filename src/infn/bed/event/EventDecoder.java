@@ -0,0 +1,226 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationManager;
+import infn.bed.util.CalibrationTable;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.jlab.coda.jevio.BaseStructure;
+import org.jlab.coda.jevio.BaseStructureHeader;
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * Decodes the evio structures of a single event into a DecodedEvent.
+ *
+ * <p>
+ * NOTE: The decoder does not touch any Swing component, so it can be called from any thread.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EventDecoder {
+
+	/**
+	 * The tag of the scintillator bar charge-time bank.
+	 */
+	public static final int BAR_TAG = 102;
+
+	/**
+	 * The tag of the veto charge-time bank.
+	 */
+	public static final int VETO_TAG = 202;
+
+	/**
+	 * The tag of the full-waveform composite bank.
+	 */
+	public static final int FULL_WAVEFORM_TAG = 57601;
+
+	/**
+	 * The maximum number of full-waveform data instances kept for reuse.
+	 */
+	private static final int POOL_CAPACITY = 8;
+
+	/**
+	 * Full-waveform data instances of recycled events, waiting to be reused.
+	 */
+	private final ArrayBlockingQueue<FullWaveformData> fullWaveformDataPool = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+	/**
+	 * Energy-time data instances of recycled events, waiting to be reused.
+	 */
+	private final ArrayBlockingQueue<EnergyTimeData> energyTimeDataPool = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+	/**
+	 * Supplies the calibration table an event is reconstructed with.
+	 */
+	private final Supplier<CalibrationTable> calibrationTableSupplier;
+
+	/**
+	 * The executor that converts the channels of full-waveform data in parallel, or null to convert them on
+	 * the decoding thread.
+	 */
+	private volatile ExecutorService conversionExecutor = ForkJoinPool.commonPool();
+
+	/**
+	 * Whether the pulses are found above the baselines of the BaselineTracker while it is enabled.
+	 */
+	private volatile boolean baselineTracking = true;
+
+	/**
+	 * The constructor. Events are reconstructed with the current calibration table of the CalibrationManager.
+	 */
+	public EventDecoder() {
+		this(() -> CalibrationManager.getInstance().getCalibrationTable());
+	}
+
+	/**
+	 * The constructor.
+	 *
+	 * @param calibrationTableSupplier Supplies the calibration table an event is reconstructed with. It is
+	 * called once per event, when decoding starts.
+	 */
+	public EventDecoder(Supplier<CalibrationTable> calibrationTableSupplier) {
+		this.calibrationTableSupplier = calibrationTableSupplier;
+	}
+
+	/**
+	 * Returns true if a bank with the given tag is decoded by this class, false otherwise.
+	 *
+	 * @param tag The tag of the bank.
+	 * @return true if a bank with the given tag is decoded by this class, false otherwise.
+	 */
+	public static boolean isDecodedTag(int tag) {
+		return tag == BAR_TAG || tag == VETO_TAG || tag == FULL_WAVEFORM_TAG;
+	}
+
+	/**
+	 * Collects the structures of a structure and all of its descendants whose tags satisfy isDecodedTag().
+	 *
+	 * @param structure The structure, for example a parsed event.
+	 * @param structureList The list the structures are added to.
+	 */
+	public static void collectDecodedStructures(BaseStructure structure, List<IEvioStructure> structureList) {
+		if (isDecodedTag(structure.getHeader().getTag())) {
+			structureList.add(structure);
+		}
+		Vector<BaseStructure> children = structure.getChildren();
+		if (children != null) {
+			for (BaseStructure child : children) {
+				collectDecodedStructures(child, structureList);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the structures of an event.
+	 *
+	 * @param sequenceNumber The sequence number of the event.
+	 * @param structures The structures of the event whose tags satisfy isDecodedTag().
+	 * @return The decoded event.
+	 */
+	public DecodedEvent decode(long sequenceNumber, List<IEvioStructure> structures) {
+		// a reload while the event is decoded must not change how it is reconstructed
+		CalibrationTable calibrationTable = calibrationTableSupplier.get();
+		ChargeTimeData chargeTimeData = null;
+		FullWaveformData fullWaveformData = null;
+		for (IEvioStructure structure : structures) {
+			BaseStructureHeader header = structure.getHeader();
+			int tag = header.getTag();
+			int num = header.getNumber();
+			if (tag == BAR_TAG || tag == VETO_TAG) {
+				if (chargeTimeData == null) {
+					chargeTimeData = new ChargeTimeData();
+				}
+				chargeTimeData.load(structure, tag, num);
+			} else if (tag == FULL_WAVEFORM_TAG) {
+				if (fullWaveformData == null) {
+					fullWaveformData = obtainFullWaveformData();
+				}
+				fullWaveformData.load(structure, tag, num);
+				chargeTimeData = new ChargeTimeData(fullWaveformData, conversionExecutor,
+						baselineTracking ? BaselineTracker.getActiveTracker() : null);
+			}
+		}
+		EnergyTimeData energyTimeData = obtainEnergyTimeData();
+		EnergyTimeReconstructor.reconstruct(chargeTimeData, calibrationTable, energyTimeData);
+		return new DecodedEvent(sequenceNumber, chargeTimeData, fullWaveformData, energyTimeData, calibrationTable);
+	}
+
+	/**
+	 * Returns the executor that converts the channels of full-waveform data in parallel.
+	 *
+	 * @return The executor, or null if the channels are converted on the decoding thread.
+	 */
+	public ExecutorService getConversionExecutor() {
+		return conversionExecutor;
+	}
+
+	/**
+	 * Sets the executor that converts the channels of full-waveform data in parallel. The default is the
+	 * common fork-join pool.
+	 *
+	 * @param conversionExecutor The executor, or null to convert the channels on the decoding thread.
+	 */
+	public void setConversionExecutor(ExecutorService conversionExecutor) {
+		this.conversionExecutor = conversionExecutor;
+	}
+
+	/**
+	 * Sets whether the pulses are found above the baselines of the BaselineTracker while it is enabled. The
+	 * default is true; a decoder whose results must not depend on the events seen before turns it off.
+	 *
+	 * @param baselineTracking true to use the baseline tracker, false to always use the fixed threshold.
+	 */
+	public void setBaselineTracking(boolean baselineTracking) {
+		this.baselineTracking = baselineTracking;
+	}
+
+	/**
+	 * Returns a recycled full-waveform data instance, or a new one if none is available.
+	 *
+	 * @return A full-waveform data instance.
+	 */
+	private FullWaveformData obtainFullWaveformData() {
+		FullWaveformData fullWaveformData = fullWaveformDataPool.poll();
+		return (fullWaveformData == null) ? new FullWaveformData() : fullWaveformData;
+	}
+
+	/**
+	 * Returns a recycled energy-time data instance, or a new one if none is available.
+	 *
+	 * @return An energy-time data instance.
+	 */
+	private EnergyTimeData obtainEnergyTimeData() {
+		EnergyTimeData energyTimeData = energyTimeDataPool.poll();
+		return (energyTimeData == null) ? new EnergyTimeData() : energyTimeData;
+	}
+
+	/**
+	 * Hands the buffers of an event back for reuse. The event must not be used afterwards. The events of the
+	 * ReadAheadCache are left alone.
+	 *
+	 * @param event The event to recycle.
+	 */
+	public void recycle(DecodedEvent event) {
+		if (event.isCached()) {
+			// the read-ahead cache may hand the event out again
+			return;
+		}
+		FullWaveformData fullWaveformData = event.getFullWaveformData();
+		if (fullWaveformData != null) {
+			fullWaveformData.reset();
+			fullWaveformDataPool.offer(fullWaveformData);
+		}
+		EnergyTimeData energyTimeData = event.getEnergyTimeData();
+		if (energyTimeData != null) {
+			energyTimeData.reset();
+			energyTimeDataPool.offer(energyTimeData);
+		}
+	}
+
+}
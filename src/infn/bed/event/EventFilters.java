@@ -0,0 +1,152 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.function.Predicate;
+
+/**
+ * Creates the event filters of an event search. The filters that can also be answered from the summaries of
+ * an event index have a summary counterpart, so a search can skip reading the file once it is indexed.
+ *
+ * @author Angelo Licastro
+ */
+public class EventFilters {
+
+	/**
+	 * The constructor.
+	 */
+	private EventFilters() {
+	}
+
+	/**
+	 * Returns a filter that accepts the events whose total scintillator bar energy is above a threshold.
+	 *
+	 * @param energy The threshold in MeV.
+	 * @return The filter.
+	 */
+	public static Predicate<EnergyTimeData> totalBarEnergyAbove(double energy) {
+		return energyTimeData -> totalBarEnergy(energyTimeData) > energy;
+	}
+
+	/**
+	 * Returns the summary counterpart of totalBarEnergyAbove().
+	 *
+	 * @param energy The threshold in MeV.
+	 * @return The summary filter.
+	 */
+	public static IEventSummaryFilter summaryTotalBarEnergyAbove(double energy) {
+		// the index keeps the energy as a float
+		float threshold = (float) energy;
+		return (index, eventNumber) -> index.getTotalBarEnergy(eventNumber) > threshold;
+	}
+
+	/**
+	 * Returns a filter that accepts the events without veto hits.
+	 *
+	 * @return The filter.
+	 */
+	public static Predicate<EnergyTimeData> vetoSilent() {
+		return energyTimeData -> !isVetoHit(energyTimeData);
+	}
+
+	/**
+	 * Returns the summary counterpart of vetoSilent().
+	 *
+	 * @return The summary filter.
+	 */
+	public static IEventSummaryFilter summaryVetoSilent() {
+		return (index, eventNumber) -> !index.isVetoHit(eventNumber);
+	}
+
+	/**
+	 * Returns a filter that accepts the events with a hit in a scintillator bar.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The filter.
+	 */
+	public static Predicate<EnergyTimeData> barHit(int bar) {
+		return energyTimeData -> {
+			HitIndex hitIndex = energyTimeData.getHitIndex();
+			return hitIndex.getBarEnd(bar) > hitIndex.getBarStart(bar);
+		};
+	}
+
+	/**
+	 * Returns a filter that accepts the events with hits in at least a number of scintillator bars.
+	 *
+	 * @param bars The number of scintillator bars.
+	 * @return The filter.
+	 */
+	public static Predicate<EnergyTimeData> barMultiplicityAtLeast(int bars) {
+		return energyTimeData -> barMultiplicity(energyTimeData) >= bars;
+	}
+
+	/**
+	 * Returns the summary counterpart of barMultiplicityAtLeast().
+	 *
+	 * @param bars The number of scintillator bars.
+	 * @return The summary filter.
+	 */
+	public static IEventSummaryFilter summaryBarMultiplicityAtLeast(int bars) {
+		return (index, eventNumber) -> index.getBarMultiplicity(eventNumber) >= bars;
+	}
+
+	/**
+	 * Returns a filter that accepts the events with at least one veto-anticoincidence candidate of the
+	 * coincidence engine with the default windows.
+	 *
+	 * @return The filter.
+	 */
+	public static Predicate<EnergyTimeData> anticoincidenceCandidate() {
+		return new CoincidenceEngine().createCandidateFilter();
+	}
+
+	/**
+	 * Returns the total scintillator bar energy of an event.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @return The sum of the energies in MeV of the valid scintillator bar hits.
+	 */
+	static double totalBarEnergy(EnergyTimeData energyTimeData) {
+		double totalEnergy = 0;
+		for (int hit = 0; hit < energyTimeData.getBarHitCount(); hit++) {
+			if (energyTimeData.getBar(hit) >= 0) {
+				totalEnergy += energyTimeData.getBarEnergy(hit);
+			}
+		}
+		return totalEnergy;
+	}
+
+	/**
+	 * Returns the number of scintillator bars hit in an event.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @return The number of scintillator bars with at least one hit.
+	 */
+	static int barMultiplicity(EnergyTimeData energyTimeData) {
+		HitIndex hitIndex = energyTimeData.getHitIndex();
+		int bars = 0;
+		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
+			if (hitIndex.getBarEnd(bar) > hitIndex.getBarStart(bar)) {
+				bars++;
+			}
+		}
+		return bars;
+	}
+
+	/**
+	 * Returns true if an event has at least one valid veto hit, false otherwise.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 * @return true if a veto was hit, false otherwise.
+	 */
+	static boolean isVetoHit(EnergyTimeData energyTimeData) {
+		for (int hit = 0; hit < energyTimeData.getVetoHitCount(); hit++) {
+			if (energyTimeData.getVeto(hit) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
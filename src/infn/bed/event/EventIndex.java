@@ -0,0 +1,361 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.jlab.coda.jevio.EvioException;
+
+/**
+ * An index of the events of an evio file: where each event is in the file, and a summary of it (the number of
+ * scintillator bars hit, the total scintillator bar energy, whether a veto was hit and whether the event has
+ * full waveforms), so the events that match a query can be found without reading the file.
+ *
+ * <p>
+ * An index is built by scanning the file once and is saved next to it (see EventIndexer), together with the
+ * length and the modification time of the file and a hash of the calibration constants the energies were
+ * reconstructed with. A saved index is only used while all three still match.
+ * </p>
+ *
+ * <p>
+ * The file holds a header (magic, version, file length, modification time, calibration hash and event count)
+ * followed by one record of RECORD_BYTES bytes per event: the position (long) and the length (int) of the
+ * event, the total scintillator bar energy (float), the number of scintillator bars hit (short) and the flags
+ * (byte), padded to a whole number of words. The position and the length let an event be read straight from
+ * the file (see EvioScanner.seek()), which the read-ahead cache does once the index is ready.
+ * </p>
+ *
+ * <p>
+ * NOTE: An index is immutable, so it can be shared by every thread.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EventIndex {
+
+	/**
+	 * The flag of an event with at least one veto hit.
+	 */
+	public static final int VETO_HIT = 1;
+
+	/**
+	 * The flag of an event with a full-waveform bank.
+	 */
+	public static final int FULL_WAVEFORM = 2;
+
+	/**
+	 * The first word of an index file, "BEDEVIDX" in ASCII.
+	 */
+	private static final long MAGIC = 0x4245444556494458L;
+
+	/**
+	 * The version of the layout of an index file.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of bytes of the header of an index file.
+	 */
+	private static final int HEADER_BYTES = 40;
+
+	/**
+	 * The number of bytes of the record of an event.
+	 */
+	private static final int RECORD_BYTES = 20;
+
+	/**
+	 * The initial capacity of the arrays of an index being built.
+	 */
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * The length in bytes of the evio file.
+	 */
+	private final long fileLength;
+
+	/**
+	 * The modification time in ms of the evio file.
+	 */
+	private final long fileModified;
+
+	/**
+	 * The hash of the calibration constants the energies were reconstructed with.
+	 */
+	private final long calibrationHash;
+
+	/**
+	 * The number of events.
+	 */
+	private final int eventCount;
+
+	/**
+	 * The position in bytes in the file of each event, by event number minus one.
+	 */
+	private final long[] positionArray;
+
+	/**
+	 * The length in bytes of each event.
+	 */
+	private final int[] lengthArray;
+
+	/**
+	 * The total scintillator bar energy in MeV of each event.
+	 */
+	private final float[] totalBarEnergyArray;
+
+	/**
+	 * The number of scintillator bars hit in each event.
+	 */
+	private final short[] barMultiplicityArray;
+
+	/**
+	 * The flags (VETO_HIT and FULL_WAVEFORM) of each event.
+	 */
+	private final byte[] flagArray;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param fileLength The length in bytes of the evio file.
+	 * @param fileModified The modification time in ms of the evio file.
+	 * @param calibrationHash The hash of the calibration constants the energies were reconstructed with.
+	 * @param eventCount The number of events.
+	 * @param positionArray The position in bytes in the file of each event.
+	 * @param lengthArray The length in bytes of each event.
+	 * @param totalBarEnergyArray The total scintillator bar energy in MeV of each event.
+	 * @param barMultiplicityArray The number of scintillator bars hit in each event.
+	 * @param flagArray The flags of each event.
+	 */
+	private EventIndex(long fileLength, long fileModified, long calibrationHash, int eventCount, long[] positionArray,
+			int[] lengthArray, float[] totalBarEnergyArray, short[] barMultiplicityArray, byte[] flagArray) {
+		this.fileLength = fileLength;
+		this.fileModified = fileModified;
+		this.calibrationHash = calibrationHash;
+		this.eventCount = eventCount;
+		this.positionArray = positionArray;
+		this.lengthArray = lengthArray;
+		this.totalBarEnergyArray = totalBarEnergyArray;
+		this.barMultiplicityArray = barMultiplicityArray;
+		this.flagArray = flagArray;
+	}
+
+	/**
+	 * Builds the index of an evio file by scanning all of its events.
+	 *
+	 * @param file The evio file.
+	 * @param calibrationTable The calibration table the energies are reconstructed with.
+	 * @return The index.
+	 * @throws IOException If the file cannot be read or is not an evio file.
+	 * @throws EvioException If an event with a full-waveform bank cannot be parsed.
+	 */
+	public static EventIndex build(File file, CalibrationTable calibrationTable) throws IOException, EvioException {
+		// taken before the scan, so a file that is still being written is indexed again later
+		long fileLength = file.length();
+		long fileModified = file.lastModified();
+		long[] positionArray = new long[INITIAL_CAPACITY];
+		int[] lengthArray = new int[INITIAL_CAPACITY];
+		float[] totalBarEnergyArray = new float[INITIAL_CAPACITY];
+		short[] barMultiplicityArray = new short[INITIAL_CAPACITY];
+		byte[] flagArray = new byte[INITIAL_CAPACITY];
+		int eventCount = 0;
+		try (EvioScanner scanner = new EvioScanner(file);
+				ScannedEventDecoder decoder = new ScannedEventDecoder(file, calibrationTable)) {
+			while (scanner.next()) {
+				if (eventCount == positionArray.length) {
+					int capacity = 2 * eventCount;
+					positionArray = Arrays.copyOf(positionArray, capacity);
+					lengthArray = Arrays.copyOf(lengthArray, capacity);
+					totalBarEnergyArray = Arrays.copyOf(totalBarEnergyArray, capacity);
+					barMultiplicityArray = Arrays.copyOf(barMultiplicityArray, capacity);
+					flagArray = Arrays.copyOf(flagArray, capacity);
+				}
+				EnergyTimeData energyTimeData = decoder.decode(scanner);
+				positionArray[eventCount] = scanner.getEventPosition();
+				lengthArray[eventCount] = scanner.getEventLength();
+				totalBarEnergyArray[eventCount] = (float) EventFilters.totalBarEnergy(energyTimeData);
+				barMultiplicityArray[eventCount] = (short) EventFilters.barMultiplicity(energyTimeData);
+				int flags = decoder.hasFullWaveform() ? FULL_WAVEFORM : 0;
+				if (EventFilters.isVetoHit(energyTimeData)) {
+					flags |= VETO_HIT;
+				}
+				flagArray[eventCount] = (byte) flags;
+				eventCount++;
+			}
+		}
+		return new EventIndex(fileLength, fileModified, calibrationTable.getContentHash(), eventCount, positionArray,
+				lengthArray, totalBarEnergyArray, barMultiplicityArray, flagArray);
+	}
+
+	/**
+	 * Reads a saved index.
+	 *
+	 * @param indexFile The index file.
+	 * @return The index.
+	 * @throws IOException If the index file cannot be read or is not an index file of this version.
+	 */
+	public static EventIndex read(File indexFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not an event index file of version " + VERSION);
+			}
+			long fileLength = in.readLong();
+			long fileModified = in.readLong();
+			long calibrationHash = in.readLong();
+			int eventCount = in.readInt();
+			if (eventCount < 0 || HEADER_BYTES + (long) eventCount * RECORD_BYTES != indexFile.length()) {
+				throw new IOException("Truncated event index file");
+			}
+			long[] positionArray = new long[eventCount];
+			int[] lengthArray = new int[eventCount];
+			float[] totalBarEnergyArray = new float[eventCount];
+			short[] barMultiplicityArray = new short[eventCount];
+			byte[] flagArray = new byte[eventCount];
+			for (int event = 0; event < eventCount; event++) {
+				positionArray[event] = in.readLong();
+				lengthArray[event] = in.readInt();
+				totalBarEnergyArray[event] = in.readFloat();
+				barMultiplicityArray[event] = in.readShort();
+				flagArray[event] = in.readByte();
+				in.readByte();
+			}
+			return new EventIndex(fileLength, fileModified, calibrationHash, eventCount, positionArray, lengthArray,
+					totalBarEnergyArray, barMultiplicityArray, flagArray);
+		}
+	}
+
+	/**
+	 * Saves the index. It is written to a temporary file first, so a reader never sees half of it.
+	 *
+	 * @param indexFile The index file.
+	 * @throws IOException If the index file cannot be written.
+	 */
+	public void write(File indexFile) throws IOException {
+		File temporaryFile = new File(indexFile.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileLength);
+			out.writeLong(fileModified);
+			out.writeLong(calibrationHash);
+			out.writeInt(eventCount);
+			for (int event = 0; event < eventCount; event++) {
+				out.writeLong(positionArray[event]);
+				out.writeInt(lengthArray[event]);
+				out.writeFloat(totalBarEnergyArray[event]);
+				out.writeShort(barMultiplicityArray[event]);
+				out.writeByte(flagArray[event]);
+				out.writeByte(0);
+			}
+		}
+		Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns true if the index is still valid for an evio file, false if it has to be built again.
+	 *
+	 * @param file The evio file.
+	 * @param calibrationTable The current calibration table.
+	 * @return true if the file has the length and modification time it had when it was indexed, and the
+	 * calibration constants are the same, false otherwise.
+	 */
+	public boolean isCurrent(File file, CalibrationTable calibrationTable) {
+		return file.length() == fileLength && file.lastModified() == fileModified
+				&& calibrationTable.getContentHash() == calibrationHash;
+	}
+
+	/**
+	 * Finds the first event from a given event on that matches a query.
+	 *
+	 * @param firstEventNumber The number of the first event looked at, starting at 1.
+	 * @param filter The query.
+	 * @return The number of the first event that matches the query, or -1 if there is none.
+	 */
+	public int findNext(int firstEventNumber, IEventSummaryFilter filter) {
+		for (int eventNumber = Math.max(1, firstEventNumber); eventNumber <= eventCount; eventNumber++) {
+			if (filter.accept(this, eventNumber)) {
+				return eventNumber;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of events.
+	 *
+	 * @return The number of events of the file.
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Returns the position of an event in the file.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return The position in bytes of the event, including its header.
+	 */
+	public long getEventPosition(int eventNumber) {
+		return positionArray[eventNumber - 1];
+	}
+
+	/**
+	 * Returns the length of an event.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return The length in bytes of the event, including its header.
+	 */
+	public int getEventLength(int eventNumber) {
+		return lengthArray[eventNumber - 1];
+	}
+
+	/**
+	 * Returns the total scintillator bar energy of an event.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return The sum of the energies in MeV of the scintillator bar hits.
+	 */
+	public double getTotalBarEnergy(int eventNumber) {
+		return totalBarEnergyArray[eventNumber - 1];
+	}
+
+	/**
+	 * Returns the number of scintillator bars hit in an event.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return The number of scintillator bars with at least one hit.
+	 */
+	public int getBarMultiplicity(int eventNumber) {
+		return barMultiplicityArray[eventNumber - 1];
+	}
+
+	/**
+	 * Returns true if an event has at least one veto hit, false otherwise.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return true if a veto was hit, false otherwise.
+	 */
+	public boolean isVetoHit(int eventNumber) {
+		return (flagArray[eventNumber - 1] & VETO_HIT) != 0;
+	}
+
+	/**
+	 * Returns true if an event has a full-waveform bank, false otherwise.
+	 *
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return true if the event has full waveforms, false otherwise.
+	 */
+	public boolean hasFullWaveform(int eventNumber) {
+		return (flagArray[eventNumber - 1] & FULL_WAVEFORM) != 0;
+	}
+
+}
@@ -0,0 +1,172 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationManager;
+import infn.bed.util.CalibrationTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jlab.coda.jevio.EvioException;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Keeps the event index of the evio file being looked at, building it in the background the first time a file
+ * is seen and saving it next to the file, so the next time the file is opened the saved index is read instead.
+ *
+ * <p>
+ * The index file is the evio file name followed by INDEX_EXTENSION, in the directory of the evio file or, if
+ * the system property bed.index.directory is set, in that directory.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EventIndexer {
+
+	/**
+	 * The system property with the directory of the index files.
+	 */
+	public static final String DIRECTORY_PROPERTY = "bed.index.directory";
+
+	/**
+	 * The extension of the index files.
+	 */
+	public static final String INDEX_EXTENSION = ".bedidx";
+
+	/**
+	 * The singleton.
+	 */
+	private static EventIndexer instance;
+
+	/**
+	 * Reads and builds the indices, one at a time.
+	 */
+	private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bed-index");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	/**
+	 * The evio file of the current index, or null if none has been asked for.
+	 */
+	private File file;
+
+	/**
+	 * The current index, completed once it has been read or built.
+	 */
+	private CompletableFuture<EventIndex> index;
+
+	/**
+	 * The constructor.
+	 */
+	private EventIndexer() {
+	}
+
+	/**
+	 * Returns the singleton.
+	 *
+	 * @return The singleton.
+	 */
+	public static synchronized EventIndexer getInstance() {
+		if (instance == null) {
+			instance = new EventIndexer();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the index file of an evio file.
+	 *
+	 * @param file The evio file.
+	 * @return The index file.
+	 */
+	public static File getIndexFile(File file) {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		File parent = (directory == null) ? file.getAbsoluteFile().getParentFile() : new File(directory);
+		return new File(parent, file.getName() + INDEX_EXTENSION);
+	}
+
+	/**
+	 * Returns the index of an evio file, reading the saved index if it is still valid and building (and saving)
+	 * it otherwise. A file that is already indexed, or being indexed, is not indexed again.
+	 *
+	 * @param file The evio file.
+	 * @return A future completed on the indexing thread with the index.
+	 */
+	public synchronized CompletableFuture<EventIndex> getIndex(File file) {
+		File absoluteFile = file.getAbsoluteFile();
+		if (absoluteFile.equals(this.file) && index != null && !index.isCompletedExceptionally()) {
+			EventIndex current = index.getNow(null);
+			if (current == null || current.isCurrent(absoluteFile, CalibrationManager.getInstance().getCalibrationTable())) {
+				return index;
+			}
+		}
+		this.file = absoluteFile;
+		index = CompletableFuture.supplyAsync(() -> {
+			try {
+				return readOrBuild(absoluteFile);
+			} catch (IOException | EvioException e) {
+				throw new CompletionException(e);
+			}
+		}, indexer);
+		return index;
+	}
+
+	/**
+	 * Returns the index of an evio file if it is ready and still valid, without waiting for it.
+	 *
+	 * @param file The evio file.
+	 * @return The index, or null if it is not ready.
+	 */
+	public synchronized EventIndex getReadyIndex(File file) {
+		if (index == null || !file.getAbsoluteFile().equals(this.file)) {
+			return null;
+		}
+		EventIndex current = index.isCompletedExceptionally() ? null : index.getNow(null);
+		if (current == null || !current.isCurrent(this.file, CalibrationManager.getInstance().getCalibrationTable())) {
+			return null;
+		}
+		return current;
+	}
+
+	/**
+	 * Reads the saved index of an evio file, or builds and saves it. Called on the indexing thread.
+	 *
+	 * @param file The evio file.
+	 * @return The index.
+	 * @throws IOException If the evio file cannot be read.
+	 * @throws EvioException If an event with a full-waveform bank cannot be parsed.
+	 */
+	private EventIndex readOrBuild(File file) throws IOException, EvioException {
+		CalibrationTable calibrationTable = CalibrationManager.getInstance().getCalibrationTable();
+		File indexFile = getIndexFile(file);
+		if (indexFile.isFile()) {
+			try {
+				EventIndex index = EventIndex.read(indexFile);
+				if (index.isCurrent(file, calibrationTable)) {
+					return index;
+				}
+			} catch (IOException e) {
+				Log.getInstance().warning("Ignored event index " + indexFile.getName() + ", " + e.getMessage());
+			}
+		}
+		long start = System.nanoTime();
+		EventIndex index = EventIndex.build(file, calibrationTable);
+		Log.getInstance().info("Indexed " + index.getEventCount() + " events of " + file.getName() + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		try {
+			index.write(indexFile);
+		} catch (IOException e) {
+			// the index is still used, it is only built again next time
+			Log.getInstance().warning("Cannot write event index " + indexFile.getName() + ", " + e.getMessage());
+		}
+		return index;
+	}
+
+}
@@ -2,24 +2,34 @@ package infn.bed.event;
 
 import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.event.StructureHandler;
-import infn.bed.event.FullWaveformData;
-import infn.bed.frame.Bed;
+import infn.bed.event.EventPipeline.OverflowPolicy;
+import infn.bed.util.CalibrationManager;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.ICalibrationListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jlab.coda.jevio.BaseStructure;
 import org.jlab.coda.jevio.BaseStructureHeader;
+import org.jlab.coda.jevio.EvioReader;
 import org.jlab.coda.jevio.IEvioListener;
 import org.jlab.coda.jevio.IEvioStructure;
 
 /**
- * This is the manager for BDX specific events. This is where we load in the
- * data and store them in the data classes. This class handles passing the
- * waveshape data to the charge-time class and the waveshape data set to the
- * plots in Bed.java.
+ * This is the manager for BDX specific events. This is where we collect the
+ * structures of interest and hand them to the event pipeline, which decodes
+ * them off the event dispatch thread. When the pipeline renders an event, this
+ * class makes it the current event and tells the decoded event listeners, such
+ * as the views and the plots in Bed.java. Nothing here depends on Swing
+ * components, so the decoding can also run without a display.
  * 
  * @author heddle, Andy Beiter
  * 
  */
-public class EventManager implements IEvioListener {
+public class EventManager implements IEvioListener, ICalibrationListener {
 
 	/**
 	 * The instance of this class. There can only be one.
@@ -32,22 +42,54 @@ public class EventManager implements IEvioListener {
 	private StructureHandler _structureHandler = new StructureHandler(1543);
 
 	/**
-	 * The instance to read in full waveform data
+	 * The default capacity of the queues of the event pipeline
+	 */
+	private static final int PIPELINE_CAPACITY = 16;
+
+	/**
+	 * The structures of interest of the event being parsed
+	 */
+	private final ArrayList<IEvioStructure> _pendingStructures = new ArrayList<>();
+
+	/**
+	 * The decoder used by the event pipeline
+	 */
+	private final EventDecoder _decoder = new EventDecoder();
+
+	/**
+	 * The pipeline that decodes events off the event dispatch thread
 	 */
-	private FullWaveformData fullWaveformData;
+	private final EventPipeline _pipeline;
 
 	/**
-	 * The instance to read in charge-time data or convert to charge-time data
+	 * The cache of the events around the current event of an evio file
 	 */
-	private ChargeTimeData ctData;
+	private final ReadAheadCache _readAheadCache = new ReadAheadCache();
+
+	/**
+	 * The listeners that are told when a decoded event becomes the current event
+	 */
+	private final List<IDecodedEventListener> _decodedEventListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The current (last rendered) decoded event
+	 */
+	private volatile DecodedEvent _currentEvent;
 
 	/**
 	 * Private constructor for singleton EventManager. This with getInstance()
 	 * prevents multiple instances.
 	 */
 	private EventManager() {
+		int decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		_pipeline = new EventPipeline(_decoder, decodeThreads,
+				PIPELINE_CAPACITY, OverflowPolicy.DROP_OLDEST, this::render);
+
 		// listen for events from jevio
 		EventControl.getEvioParser().addEvioListener(this);
+
+		// reconstruct the current event again when the calibration changes
+		CalibrationManager.getInstance().addCalibrationListener(this);
 	}
 
 	/**
@@ -77,24 +119,11 @@ public class EventManager implements IEvioListener {
 
 		_structureHandler.addStructure(structure);
 
-		// grab the structures I'm interested in
+		// grab the structures I'm interested in, they are decoded in the
+		// pipeline once the whole event has been parsed
 		BaseStructureHeader header = structure.getHeader();
-		int tag = header.getTag();
-		int num = header.getNumber();
-		if (tag == 102 || tag == 202) {
-			if (ctData == null) {
-				ctData = new ChargeTimeData();
-			}
-			ctData.load(structure, tag, num);
-		}
-
-		if (tag == 57601) {
-			if (fullWaveformData == null) {
-				fullWaveformData = new FullWaveformData();
-			}
-			fullWaveformData.load(structure, tag, num);
-			ctData = new ChargeTimeData(fullWaveformData.getChannelSamples());
-			Bed.getInstance().fillPlots(fullWaveformData.getDataSet());
+		if (EventDecoder.isDecodedTag(header.getTag())) {
+			_pendingStructures.add(structure);
 		}
 	}
 
@@ -117,6 +146,35 @@ public class EventManager implements IEvioListener {
 	 */
 	@Override
 	public void endEventParse(BaseStructure baseStructure) {
+		DecodedEvent cachedEvent = getCachedEvent();
+		if (cachedEvent != null) {
+			_pipeline.submitDecoded(cachedEvent);
+		} else {
+			_pipeline.submit(new ArrayList<>(_pendingStructures));
+		}
+		_pendingStructures.clear();
+	}
+
+	/**
+	 * Get the event being parsed from the read-ahead cache, which also starts
+	 * reading ahead of it. Only events stepped through in an evio file are
+	 * cached, not accumulated ones.
+	 * 
+	 * @return the decoded event, or null if it is not cached
+	 */
+	private DecodedEvent getCachedEvent() {
+		EventControl eventControl = EventControl.getInstance();
+		if (!_readAheadCache.isEnabled() || eventControl == null
+				|| eventControl.isAccumulating()) {
+			return null;
+		}
+		EvioReader evioReader = eventControl.getEvioReader();
+		if (evioReader == null || evioReader.getPath() == null) {
+			return null;
+		}
+		return _readAheadCache.get(new File(evioReader.getPath()),
+				eventControl.getEventNumber(), CalibrationManager.getInstance()
+						.getCalibrationTable());
 	}
 
 	/**
@@ -124,10 +182,94 @@ public class EventManager implements IEvioListener {
 	 */
 	private void clear() {
 		_structureHandler.clear();
+		_pendingStructures.clear();
+	}
 
-		// nullify data pointers
-		fullWaveformData = null;
-		ctData = null;
+	/**
+	 * The render stage of the pipeline. Called on the event dispatch thread
+	 * with the latest decoded event.
+	 * 
+	 * @param event
+	 *            the latest decoded event
+	 */
+	private void render(DecodedEvent event) {
+		DecodedEvent previousEvent = _currentEvent;
+		_currentEvent = event;
+		for (IDecodedEventListener listener : _decodedEventListeners) {
+			listener.newDecodedEvent(event);
+		}
+
+		// nobody looks at the previous event anymore, so reuse its buffers
+		if (previousEvent != null) {
+			_decoder.recycle(previousEvent);
+		}
+	}
+
+	/**
+	 * A new calibration table has been published. The current event is
+	 * reconstructed with it, events that are still in the pipeline keep the
+	 * calibration table they were decoded with. Called on the event dispatch
+	 * thread.
+	 * 
+	 * @param calibrationTable
+	 *            the new calibration table
+	 */
+	@Override
+	public void calibrationChanged(CalibrationTable calibrationTable) {
+		_readAheadCache.clear();
+		DecodedEvent event = _currentEvent;
+		if (event != null) {
+			// the copy shares the buffers, so the old event is not recycled
+			_currentEvent = event.withCalibrationTable(calibrationTable);
+		}
+	}
+
+	/**
+	 * Add a listener that is told when a decoded event becomes the current
+	 * event
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addDecodedEventListener(IDecodedEventListener listener) {
+		_decodedEventListeners.add(listener);
+	}
+
+	/**
+	 * Remove a decoded event listener
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeDecodedEventListener(IDecodedEventListener listener) {
+		_decodedEventListeners.remove(listener);
+	}
+
+	/**
+	 * Get the event pipeline
+	 * 
+	 * @return The event pipeline
+	 */
+	public EventPipeline getPipeline() {
+		return _pipeline;
+	}
+
+	/**
+	 * Get the read-ahead cache
+	 * 
+	 * @return The cache of the events around the current event
+	 */
+	public ReadAheadCache getReadAheadCache() {
+		return _readAheadCache;
+	}
+
+	/**
+	 * Get the current (last rendered) decoded event
+	 * 
+	 * @return The current decoded event, or null if no event has been rendered
+	 */
+	public DecodedEvent getCurrentEvent() {
+		return _currentEvent;
 	}
 
 	/**
@@ -136,7 +278,8 @@ public class EventManager implements IEvioListener {
 	 * @return The full waveform data instance
 	 */
 	public FullWaveformData getFullWaveformData() {
-		return fullWaveformData;
+		DecodedEvent event = _currentEvent;
+		return (event == null) ? null : event.getFullWaveformData();
 	}
 
 	/**
@@ -145,7 +288,30 @@ public class EventManager implements IEvioListener {
 	 * @return The charge-time data instance
 	 */
 	public ChargeTimeData getChargeTimeData() {
-		return ctData;
+		DecodedEvent event = _currentEvent;
+		return (event == null) ? null : event.getChargeTimeData();
+	}
+
+	/**
+	 * Get the energy-time data
+	 * 
+	 * @return The energy-time data of the current event
+	 */
+	public EnergyTimeData getEnergyTimeData() {
+		DecodedEvent event = _currentEvent;
+		return (event == null) ? null : event.getEnergyTimeData();
+	}
+
+	/**
+	 * Get the calibration table of the current event
+	 * 
+	 * @return The calibration table the current event is reconstructed with,
+	 *         or the current calibration table if there is no current event
+	 */
+	public CalibrationTable getCalibrationTable() {
+		DecodedEvent event = _currentEvent;
+		return (event == null) ? CalibrationManager.getInstance()
+				.getCalibrationTable() : event.getCalibrationTable();
 	}
 
 }
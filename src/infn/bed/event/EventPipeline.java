@@ -0,0 +1,445 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationManager;
+
+import java.awt.EventQueue;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * A staged event pipeline. Events are decoded on worker threads, the decoded events are held in a bounded
+ * queue, and the render stage takes only the latest decoded event on the Swing event dispatch thread.
+ *
+ * <p>
+ * When the decoded event queue is full, the overflow policy decides what happens. With BACKPRESSURE the
+ * producer is slowed down until the render stage catches up. With DROP_OLDEST the oldest queued event is
+ * discarded and counted as dropped.
+ * </p>
+ *
+ * <p>
+ * An event is never decoded on the producer thread, which is the event dispatch thread when stepping through
+ * a file: with BACKPRESSURE a full decode queue blocks the producer until a decode thread takes an event, and a
+ * producer on the event dispatch thread renders while it waits, so the decode threads can always go on. While
+ * the lossless decode condition holds (see setLosslessDecodeCondition()), for example while events are being
+ * accumulated, the decode stage uses BACKPRESSURE whatever the overflow policy, so every submitted event
+ * reaches the decode observers. Only the render stage may then drop events.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EventPipeline {
+
+	/**
+	 * The policies that can be used when a queue of the pipeline is full.
+	 */
+	public enum OverflowPolicy {
+		BACKPRESSURE, DROP_OLDEST
+	}
+
+	/**
+	 * The time in milliseconds a blocked decode stage waits before it retries.
+	 */
+	private static final long RETRY_MILLISECONDS = 10;
+
+	/**
+	 * The decoder used by the decode stage.
+	 */
+	private final EventDecoder decoder;
+
+	/**
+	 * The executor of the decode stage.
+	 */
+	private final ThreadPoolExecutor decodeExecutor;
+
+	/**
+	 * The bounded queue of decoded events that are waiting for the render stage.
+	 */
+	private final ArrayBlockingQueue<DecodedEvent> decodedEventQueue;
+
+	/**
+	 * Called on the Swing event dispatch thread with the latest decoded event.
+	 */
+	private final Consumer<DecodedEvent> renderer;
+
+	/**
+	 * Called on a decode thread with every decoded event, before it is queued for the render stage.
+	 */
+	private final List<Consumer<DecodedEvent>> decodeObservers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The overflow policy.
+	 */
+	private volatile OverflowPolicy overflowPolicy;
+
+	/**
+	 * While true, the decode stage never drops a submitted event.
+	 */
+	private volatile BooleanSupplier losslessDecodeCondition = () -> false;
+
+	/**
+	 * true if a render has been posted to the event dispatch thread but has not run yet.
+	 */
+	private final AtomicBoolean renderPending = new AtomicBoolean(false);
+
+	/**
+	 * The sequence number of the next submitted event.
+	 */
+	private final AtomicLong nextSequenceNumber = new AtomicLong();
+
+	/**
+	 * The number of decoded events.
+	 */
+	private final AtomicLong decodedCount = new AtomicLong();
+
+	/**
+	 * The number of events dropped because a queue of the pipeline was full.
+	 */
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * The number of decoded events that were never rendered because a newer event was available.
+	 */
+	private final AtomicLong skippedCount = new AtomicLong();
+
+	/**
+	 * The number of rendered events.
+	 */
+	private final AtomicLong renderedCount = new AtomicLong();
+
+	/**
+	 * The sequence number of the last rendered event. Only accessed on the event dispatch thread.
+	 */
+	private long lastRenderedSequenceNumber = -1;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param decoder The decoder used by the decode stage.
+	 * @param decodeThreads The number of decode threads.
+	 * @param capacity The capacity of each queue of the pipeline.
+	 * @param overflowPolicy The overflow policy.
+	 * @param renderer Called on the Swing event dispatch thread with the latest decoded event.
+	 */
+	public EventPipeline(EventDecoder decoder, int decodeThreads, int capacity, OverflowPolicy overflowPolicy, Consumer<DecodedEvent> renderer) {
+		this.decoder = decoder;
+		this.renderer = renderer;
+		this.overflowPolicy = overflowPolicy;
+		decodedEventQueue = new ArrayBlockingQueue<>(capacity);
+		decodeExecutor = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), new DecodeThreadFactory(), new DecodeRejectionHandler());
+		// a blocked producer puts its event straight into the queue, so the threads must be running
+		decodeExecutor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Submits the structures of an event to the decode stage.
+	 *
+	 * @param structures The structures of the event. The list must not be modified afterwards.
+	 */
+	public void submit(final List<IEvioStructure> structures) {
+		final long sequenceNumber = nextSequenceNumber.getAndIncrement();
+		decodeExecutor.execute(() -> decode(sequenceNumber, structures));
+	}
+
+	/**
+	 * Submits an event that has already been decoded, for example by the ReadAheadCache, straight to the render
+	 * stage. It gets the next sequence number, so it is ordered with the events that are still being decoded.
+	 *
+	 * @param event The decoded event.
+	 */
+	public void submitDecoded(DecodedEvent event) {
+		publish(event.withSequenceNumber(nextSequenceNumber.getAndIncrement()));
+	}
+
+	/**
+	 * Adds an observer that is called on a decode thread with every decoded event, including the events
+	 * that are never rendered. The observer must not keep a reference to the event, since its buffers are
+	 * recycled once it has been replaced or skipped.
+	 *
+	 * @param decodeObserver The observer.
+	 */
+	public void addDecodeObserver(Consumer<DecodedEvent> decodeObserver) {
+		decodeObservers.add(decodeObserver);
+	}
+
+	/**
+	 * Removes an observer of the decoded events.
+	 *
+	 * @param decodeObserver The observer.
+	 */
+	public void removeDecodeObserver(Consumer<DecodedEvent> decodeObserver) {
+		decodeObservers.remove(decodeObserver);
+	}
+
+	/**
+	 * The decode stage.
+	 *
+	 * @param sequenceNumber The sequence number of the event.
+	 * @param structures The structures of the event.
+	 */
+	private void decode(long sequenceNumber, List<IEvioStructure> structures) {
+		DecodedEvent event;
+		try {
+			event = decoder.decode(sequenceNumber, structures);
+		} catch (Exception e) {
+			e.printStackTrace();
+			event = new DecodedEvent(sequenceNumber, null, null, new EnergyTimeData(), CalibrationManager.getInstance().getCalibrationTable());
+		}
+		decodedCount.incrementAndGet();
+		publish(event);
+	}
+
+	/**
+	 * Hands a decoded event to the decode observers and the render stage.
+	 *
+	 * @param event The decoded event.
+	 */
+	private void publish(DecodedEvent event) {
+		for (Consumer<DecodedEvent> decodeObserver : decodeObservers) {
+			try {
+				decodeObserver.accept(event);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		enqueue(event);
+		scheduleRender();
+	}
+
+	/**
+	 * Puts a decoded event in the decoded event queue according to the overflow policy.
+	 *
+	 * @param event The decoded event.
+	 */
+	private void enqueue(DecodedEvent event) {
+		if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+			while (!decodedEventQueue.offer(event)) {
+				DecodedEvent oldest = decodedEventQueue.poll();
+				if (oldest != null) {
+					droppedCount.incrementAndGet();
+					decoder.recycle(oldest);
+				}
+			}
+		} else {
+			try {
+				while (!decodedEventQueue.offer(event, RETRY_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+					// The render stage runs on the event dispatch thread, so it must never wait for itself.
+					if (EventQueue.isDispatchThread()) {
+						render();
+					} else {
+						scheduleRender();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Posts a render to the event dispatch thread unless one is already pending.
+	 */
+	private void scheduleRender() {
+		if (renderPending.compareAndSet(false, true)) {
+			EventQueue.invokeLater(this::render);
+		}
+	}
+
+	/**
+	 * The render stage. Drains the decoded event queue and renders only the latest event.
+	 */
+	private void render() {
+		renderPending.set(false);
+		DecodedEvent latest = null;
+		DecodedEvent event;
+		while ((event = decodedEventQueue.poll()) != null) {
+			if (latest == null) {
+				latest = event;
+			} else if (event.getSequenceNumber() > latest.getSequenceNumber()) {
+				skip(latest);
+				latest = event;
+			} else {
+				skip(event);
+			}
+		}
+		if (latest == null) {
+			return;
+		}
+		// decode threads can finish out of order, so never go back to an older event
+		if (latest.getSequenceNumber() < lastRenderedSequenceNumber) {
+			skip(latest);
+			return;
+		}
+		lastRenderedSequenceNumber = latest.getSequenceNumber();
+		renderedCount.incrementAndGet();
+		renderer.accept(latest);
+	}
+
+	/**
+	 * Counts a decoded event that will never be rendered and recycles it.
+	 *
+	 * @param event The decoded event.
+	 */
+	private void skip(DecodedEvent event) {
+		skippedCount.incrementAndGet();
+		decoder.recycle(event);
+	}
+
+	/**
+	 * Returns the overflow policy.
+	 *
+	 * @return The overflow policy.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets the overflow policy.
+	 *
+	 * @param overflowPolicy The overflow policy.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Sets the condition under which the decode stage uses BACKPRESSURE whatever the overflow policy, so no
+	 * submitted event is dropped before it is decoded.
+	 *
+	 * @param losslessDecodeCondition The condition, evaluated whenever the decode queue is full.
+	 */
+	public void setLosslessDecodeCondition(BooleanSupplier losslessDecodeCondition) {
+		this.losslessDecodeCondition = losslessDecodeCondition;
+	}
+
+	/**
+	 * Returns the number of decoded events that are waiting for the render stage.
+	 *
+	 * @return The number of decoded events that are waiting for the render stage.
+	 */
+	public int getQueueDepth() {
+		return decodedEventQueue.size();
+	}
+
+	/**
+	 * Returns the number of submitted events that are waiting for the decode stage.
+	 *
+	 * @return The number of submitted events that are waiting for the decode stage.
+	 */
+	public int getPendingDecodeCount() {
+		return decodeExecutor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of decoded events.
+	 *
+	 * @return The number of decoded events.
+	 */
+	public long getDecodedCount() {
+		return decodedCount.get();
+	}
+
+	/**
+	 * Returns the number of events dropped because a queue of the pipeline was full.
+	 *
+	 * @return The number of events dropped because a queue of the pipeline was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of decoded events that were never rendered because a newer event was available.
+	 *
+	 * @return The number of decoded events that were never rendered because a newer event was available.
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	/**
+	 * Returns the number of rendered events.
+	 *
+	 * @return The number of rendered events.
+	 */
+	public long getRenderedCount() {
+		return renderedCount.get();
+	}
+
+	/**
+	 * Stops the decode stage. Events that have not been decoded yet are discarded.
+	 */
+	public void shutdown() {
+		decodeExecutor.shutdownNow();
+	}
+
+	/**
+	 * Creates the daemon threads of the decode stage.
+	 */
+	private static class DecodeThreadFactory implements ThreadFactory {
+
+		/**
+		 * The number of the next thread.
+		 */
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "bed-decode-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	/**
+	 * Applies the overflow policy when the queue of the decode stage is full.
+	 */
+	private class DecodeRejectionHandler implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				return;
+			}
+			if (overflowPolicy == OverflowPolicy.DROP_OLDEST && !losslessDecodeCondition.getAsBoolean()) {
+				if (executor.getQueue().poll() != null) {
+					droppedCount.incrementAndGet();
+				}
+				executor.execute(runnable);
+				return;
+			}
+			// block the producer until a decode thread takes an event, never decode on the producer thread
+			try {
+				while (!executor.getQueue().offer(runnable, RETRY_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+					if (executor.isShutdown()) {
+						return;
+					}
+					// the decode threads may be waiting for the render stage, which runs on this thread
+					if (EventQueue.isDispatchThread()) {
+						render();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedCount.incrementAndGet();
+			}
+		}
+
+	}
+
+}
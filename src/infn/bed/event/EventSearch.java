@@ -0,0 +1,207 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationManager;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+import cnuphys.bCNU.event.EventControl;
+
+/**
+ * Searches an evio file for the next event that passes a filter, off the event dispatch thread.
+ *
+ * <p>
+ * The file is walked with an EvioScanner, which reads only the block and bank headers and the integer data
+ * of the charge-time banks (tags 102 and 202), and the charge-time data is reconstructed with the current
+ * calibration table before it is filtered. Only the events with a full-waveform bank (tag 57601) are parsed
+ * and decoded in full, since their charge-time data has to be found from the waveforms (see
+ * ScannedEventDecoder). Nothing is rendered, so the search runs at the speed of the disk rather than of the
+ * display. Once the file is indexed, the filters with a summary counterpart do not read it at all.
+ * </p>
+ *
+ * <p>
+ * NOTE: One search runs at a time. Starting a search cancels the previous one.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EventSearch {
+
+	/**
+	 * The singleton.
+	 */
+	private static EventSearch instance;
+
+	/**
+	 * Runs the searches.
+	 */
+	private final ExecutorService searcher = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bed-search");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The number of the current search. A search stops as soon as it is no longer the current one.
+	 */
+	private final AtomicInteger currentSearch = new AtomicInteger();
+
+	/**
+	 * The number of events the current search has looked at.
+	 */
+	private volatile int scannedCount;
+
+	/**
+	 * The constructor.
+	 */
+	private EventSearch() {
+	}
+
+	/**
+	 * Returns the singleton.
+	 *
+	 * @return The singleton.
+	 */
+	public static EventSearch getInstance() {
+		if (instance == null) {
+			instance = new EventSearch();
+		}
+		return instance;
+	}
+
+	/**
+	 * Searches the file of the current event for the next event that passes a filter, and moves the display
+	 * to it. Must be called on the event dispatch thread.
+	 *
+	 * @param filter The filter, called on the search thread.
+	 * @return A future completed with the number of the event moved to, or -1 if no later event passes the
+	 * filter. It is completed exceptionally if the search is cancelled or the file cannot be read.
+	 */
+	public CompletableFuture<Integer> findNext(Predicate<EnergyTimeData> filter) {
+		return findNext(filter, null);
+	}
+
+	/**
+	 * Searches the file of the current event for the next event that passes a filter, and moves the display
+	 * to it. If the file has an up-to-date event index, the summary filter is applied to the index instead and
+	 * the file is not read at all. Otherwise the file is scanned, and indexed in the background for the next
+	 * search. Must be called on the event dispatch thread.
+	 *
+	 * @param filter The filter, called on the search thread.
+	 * @param summaryFilter The summary counterpart of the filter, or null if it has none.
+	 * @return A future completed with the number of the event moved to, or -1 if no later event passes the
+	 * filter. It is completed exceptionally if the search is cancelled or the file cannot be read.
+	 */
+	public CompletableFuture<Integer> findNext(Predicate<EnergyTimeData> filter, IEventSummaryFilter summaryFilter) {
+		EventControl eventControl = EventControl.getInstance();
+		EvioReader evioReader = eventControl.getEvioReader();
+		if (evioReader == null || evioReader.getPath() == null) {
+			CompletableFuture<Integer> future = new CompletableFuture<>();
+			future.completeExceptionally(new IOException("No evio file is open"));
+			return future;
+		}
+		File file = new File(evioReader.getPath());
+		int firstEventNumber = eventControl.getEventNumber() + 1;
+		CompletableFuture<Integer> found;
+		if (summaryFilter != null) {
+			EventIndex index = EventIndexer.getInstance().getReadyIndex(file);
+			if (index != null) {
+				cancel();
+				int eventNumber = index.findNext(firstEventNumber, summaryFilter);
+				scannedCount = Math.max(0, ((eventNumber > 0) ? eventNumber : index.getEventCount()) - firstEventNumber + 1);
+				found = CompletableFuture.completedFuture(eventNumber);
+			} else {
+				EventIndexer.getInstance().getIndex(file);
+				found = find(file, firstEventNumber, filter);
+			}
+		} else {
+			found = find(file, firstEventNumber, filter);
+		}
+		return found.thenApplyAsync(eventNumber -> {
+			if (eventNumber > 0) {
+				EventControl.getInstance().gotoEvent(eventNumber);
+			}
+			return eventNumber;
+		}, EventQueue::invokeLater);
+	}
+
+	/**
+	 * Searches a file for the first event from a given event on that passes a filter.
+	 *
+	 * @param file The evio file.
+	 * @param firstEventNumber The number of the first event looked at, starting at 1.
+	 * @param filter The filter, called on the search thread.
+	 * @return A future completed on the search thread with the number of the event, or -1 if no event passes
+	 * the filter. It is completed exceptionally if the search is cancelled or the file cannot be read.
+	 */
+	public CompletableFuture<Integer> find(File file, int firstEventNumber, Predicate<EnergyTimeData> filter) {
+		int search = currentSearch.incrementAndGet();
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return search(file, Math.max(1, firstEventNumber), filter, search);
+			} catch (IOException | EvioException e) {
+				throw new CompletionException(e);
+			}
+		}, searcher);
+	}
+
+	/**
+	 * Searches a file on the search thread.
+	 *
+	 * @param file The evio file.
+	 * @param firstEventNumber The number of the first event looked at, starting at 1.
+	 * @param filter The filter.
+	 * @param search The number of the search.
+	 * @return The number of the first event that passes the filter, or -1 if there is none.
+	 * @throws IOException If the file cannot be read.
+	 * @throws EvioException If an event with a full-waveform bank cannot be parsed.
+	 */
+	private int search(File file, int firstEventNumber, Predicate<EnergyTimeData> filter, int search) throws IOException, EvioException {
+		scannedCount = 0;
+		try (EvioScanner scanner = new EvioScanner(file);
+				ScannedEventDecoder decoder = new ScannedEventDecoder(file, CalibrationManager.getInstance().getCalibrationTable())) {
+			if (!scanner.skipTo(firstEventNumber)) {
+				return -1;
+			}
+			while (scanner.next()) {
+				if (currentSearch.get() != search) {
+					throw new CancellationException("The search was cancelled");
+				}
+				boolean passes = filter.test(decoder.decode(scanner));
+				scannedCount++;
+				if (passes) {
+					return scanner.getEventNumber();
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Cancels the current search, if any.
+	 */
+	public void cancel() {
+		currentSearch.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of events the current (or last) search has looked at.
+	 *
+	 * @return The number of events looked at.
+	 */
+	public int getScannedCount() {
+		return scannedCount;
+	}
+
+}
@@ -0,0 +1,504 @@
+package infn.bed.event;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Walks the events of an evio (version 4) file without parsing them, reading only the block headers, the
+ * bank headers and the integer data of the charge-time banks.
+ *
+ * <p>
+ * An evio file is a sequence of blocks. A block has a header of 8 words (block length, block number, header
+ * length, event count, reserved, bit info and version, reserved, magic number) followed by whole events.
+ * Blocks that are skipped are never read beyond their header, so skipping ahead runs at the speed of a
+ * seek. The byte order of the file is found from the magic number.
+ * </p>
+ *
+ * <p>
+ * An event whose position and length are known, from an EventIndex, is read straight from the file with
+ * seek(), which reads nothing else. A scanner that has seeked no longer knows which block it is in, so it can
+ * only seek from then on.
+ * </p>
+ *
+ * <p>
+ * NOTE: The composite data of full-waveform banks is not read, only reported, and handed out as a buffer over
+ * the bytes already read (see getFullWaveformData()).
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class EvioScanner implements Closeable {
+
+	/**
+	 * The magic number of a block header.
+	 */
+	private static final int MAGIC = 0xc0da0100;
+
+	/**
+	 * The number of words of a block header.
+	 */
+	private static final int BLOCK_HEADER_WORDS = 8;
+
+	/**
+	 * The bit of the bit info of a block header set if the first event of the block is a dictionary.
+	 */
+	private static final int DICTIONARY_BIT = 0x100;
+
+	/**
+	 * The bit of the bit info of a block header set if the block is the last one.
+	 */
+	private static final int LAST_BLOCK_BIT = 0x200;
+
+	/**
+	 * The data types of evio structures.
+	 */
+	private static final int UINT32 = 0x1, INT32 = 0xb, TAGSEGMENT = 0xc, SEGMENT = 0xd, BANK = 0xe, ALSO_BANK = 0x10,
+			ALSO_SEGMENT = 0x20;
+
+	/**
+	 * The kinds of evio structure headers.
+	 */
+	private enum Kind {
+		BANK, SEGMENT, TAGSEGMENT
+	}
+
+	/**
+	 * The file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of the file in bytes.
+	 */
+	private final long size;
+
+	/**
+	 * The header of the current block.
+	 */
+	private final ByteBuffer headerBuffer = ByteBuffer.allocate(4 * BLOCK_HEADER_WORDS);
+
+	/**
+	 * The events of the current block, starting with its first event.
+	 */
+	private ByteBuffer blockBuffer = ByteBuffer.allocate(1 << 16);
+
+	/**
+	 * The byte order of the file.
+	 */
+	private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+
+	/**
+	 * The position in the file of the events of the current block.
+	 */
+	private long blockDataPosition;
+
+	/**
+	 * The number of bytes of the events of the current block.
+	 */
+	private int blockDataLength;
+
+	/**
+	 * true if the first event of the current block is a dictionary.
+	 */
+	private boolean blockHasDictionary;
+
+	/**
+	 * true if the events of the current block have been read into the block buffer.
+	 */
+	private boolean blockLoaded;
+
+	/**
+	 * true if the current block is the last one.
+	 */
+	private boolean lastBlock;
+
+	/**
+	 * The position in the file of the next block.
+	 */
+	private long nextBlockPosition;
+
+	/**
+	 * The number of events of the current block after the current event.
+	 */
+	private int eventsLeftInBlock;
+
+	/**
+	 * The offset of the current event in the block buffer.
+	 */
+	private int eventOffset;
+
+	/**
+	 * The offset of the next event in the block buffer.
+	 */
+	private int nextEventOffset;
+
+	/**
+	 * The number of the current event, starting at 1, or 0 before the first event.
+	 */
+	private int eventNumber;
+
+	/**
+	 * The offset in the block buffer of the data of the full-waveform bank of the current event, or -1 if it
+	 * has none.
+	 */
+	private int fullWaveformOffset = -1;
+
+	/**
+	 * The offset in the block buffer the data of the full-waveform bank of the current event ends before.
+	 */
+	private int fullWaveformEnd;
+
+	/**
+	 * true if the byte order of the file has been found from a block header.
+	 */
+	private boolean byteOrderKnown;
+
+	/**
+	 * true if the scanner has seeked, so it can no longer move to the next event.
+	 */
+	private boolean detached;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param file The evio file.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public EvioScanner(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		size = channel.size();
+	}
+
+	/**
+	 * Reads the header of the next block.
+	 *
+	 * @return true if there is a next block, false at the end of the file.
+	 * @throws IOException If the file cannot be read or is not an evio file.
+	 */
+	private boolean readBlockHeader() throws IOException {
+		if (lastBlock || nextBlockPosition + headerBuffer.capacity() > size) {
+			return false;
+		}
+		headerBuffer.clear();
+		readFully(headerBuffer, nextBlockPosition);
+		headerBuffer.order(ByteOrder.BIG_ENDIAN);
+		int magic = headerBuffer.getInt(4 * 7);
+		if (magic == Integer.reverseBytes(MAGIC)) {
+			headerBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		} else if (magic != MAGIC) {
+			throw new IOException("Not an evio version 4 block at byte " + nextBlockPosition);
+		}
+		byteOrder = headerBuffer.order();
+		byteOrderKnown = true;
+		int blockWords = headerBuffer.getInt(0);
+		int headerWords = headerBuffer.getInt(4 * 2);
+		int eventCount = headerBuffer.getInt(4 * 3);
+		int bitInfo = headerBuffer.getInt(4 * 5);
+		if (blockWords < headerWords || headerWords < BLOCK_HEADER_WORDS) {
+			throw new IOException("Invalid evio block at byte " + nextBlockPosition);
+		}
+		blockDataPosition = nextBlockPosition + 4L * headerWords;
+		blockDataLength = 4 * (blockWords - headerWords);
+		blockHasDictionary = (bitInfo & DICTIONARY_BIT) != 0;
+		lastBlock = (bitInfo & LAST_BLOCK_BIT) != 0;
+		nextBlockPosition += 4L * blockWords;
+		eventsLeftInBlock = blockHasDictionary ? eventCount - 1 : eventCount;
+		blockLoaded = false;
+		return true;
+	}
+
+	/**
+	 * Reads the events of the current block into the block buffer.
+	 *
+	 * @throws IOException If the file cannot be read.
+	 */
+	private void loadBlock() throws IOException {
+		if (blockBuffer.capacity() < blockDataLength) {
+			blockBuffer = ByteBuffer.allocate(Math.max(blockDataLength, 2 * blockBuffer.capacity()));
+		}
+		blockBuffer.clear();
+		blockBuffer.limit(blockDataLength);
+		readFully(blockBuffer, blockDataPosition);
+		blockBuffer.order(byteOrder);
+		nextEventOffset = 0;
+		if (blockHasDictionary) {
+			nextEventOffset = 4 * (blockBuffer.getInt(0) + 1);
+		}
+		blockLoaded = true;
+	}
+
+	/**
+	 * Fills a buffer from a position of the file.
+	 *
+	 * @param buffer The buffer, filled up to its limit.
+	 * @param position The position in the file.
+	 * @throws IOException If the file cannot be read or ends too early.
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int bytes = channel.read(buffer, position);
+			if (bytes < 0) {
+				throw new EOFException("Truncated evio file");
+			}
+			position += bytes;
+		}
+	}
+
+	/**
+	 * Moves to the next event.
+	 *
+	 * @return true if there is a next event, false at the end of the file.
+	 * @throws IOException If the file cannot be read or is not an evio file.
+	 */
+	public boolean next() throws IOException {
+		checkAttached();
+		while (eventsLeftInBlock <= 0) {
+			if (!readBlockHeader()) {
+				return false;
+			}
+		}
+		if (!blockLoaded) {
+			loadBlock();
+		}
+		fullWaveformOffset = -1;
+		eventOffset = nextEventOffset;
+		if (eventOffset + 8 > blockDataLength) {
+			throw new IOException("Invalid evio event " + (eventNumber + 1));
+		}
+		nextEventOffset = eventOffset + 4 * (blockBuffer.getInt(eventOffset) + 1);
+		eventsLeftInBlock--;
+		eventNumber++;
+		return true;
+	}
+
+	/**
+	 * Moves to just before an event, so the next call of next() moves to it. Whole blocks before the event
+	 * are skipped without being read.
+	 *
+	 * @param targetEventNumber The number of the event, starting at 1.
+	 * @return true if the file has that many events, false otherwise.
+	 * @throws IOException If the file cannot be read or is not an evio file.
+	 */
+	public boolean skipTo(int targetEventNumber) throws IOException {
+		checkAttached();
+		if (targetEventNumber <= eventNumber) {
+			throw new IllegalArgumentException("The scanner cannot move back to event " + targetEventNumber);
+		}
+		while (eventNumber + eventsLeftInBlock < targetEventNumber - 1) {
+			eventNumber += Math.max(0, eventsLeftInBlock);
+			eventsLeftInBlock = 0;
+			if (!readBlockHeader()) {
+				return false;
+			}
+		}
+		while (eventNumber < targetEventNumber - 1) {
+			if (!next()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves straight to an event whose position and length are known, reading only the event (and the first
+	 * block header, once, for the byte order of the file). The scanner can only seek afterwards.
+	 *
+	 * @param targetEventNumber The number of the event, starting at 1.
+	 * @param position The position in bytes of the event in the file, including its header.
+	 * @param length The length in bytes of the event, including its header.
+	 * @throws IOException If the file cannot be read, or there is no event of that length at that position.
+	 */
+	public void seek(int targetEventNumber, long position, int length) throws IOException {
+		if (!byteOrderKnown) {
+			nextBlockPosition = 0;
+			lastBlock = false;
+			if (!readBlockHeader()) {
+				throw new EOFException("Empty evio file");
+			}
+		}
+		if (length < 8 || position < 0 || position + length > size) {
+			throw new IOException("No evio event " + targetEventNumber + " at byte " + position);
+		}
+		detached = true;
+		if (blockBuffer.capacity() < length) {
+			blockBuffer = ByteBuffer.allocate(Math.max(length, 2 * blockBuffer.capacity()));
+		}
+		blockBuffer.clear();
+		blockBuffer.limit(length);
+		readFully(blockBuffer, position);
+		blockBuffer.order(byteOrder);
+		// the bank length of the event tells a stale position apart
+		if (4 * (blockBuffer.getInt(0) + 1) != length) {
+			throw new IOException("No evio event " + targetEventNumber + " at byte " + position);
+		}
+		blockDataPosition = position;
+		blockDataLength = length;
+		blockLoaded = true;
+		eventsLeftInBlock = 0;
+		eventOffset = 0;
+		nextEventOffset = length;
+		fullWaveformOffset = -1;
+		eventNumber = targetEventNumber;
+	}
+
+	/**
+	 * Throws if the scanner has seeked, since it no longer knows where the next event is.
+	 */
+	private void checkAttached() {
+		if (detached) {
+			throw new IllegalStateException("The scanner can only seek after a seek");
+		}
+	}
+
+	/**
+	 * Returns the number of the current event.
+	 *
+	 * @return The number of the current event, starting at 1, or 0 before the first event.
+	 */
+	public int getEventNumber() {
+		return eventNumber;
+	}
+
+	/**
+	 * Returns the position in the file of the current event.
+	 *
+	 * @return The position in bytes of the current event.
+	 */
+	public long getEventPosition() {
+		return blockDataPosition + eventOffset;
+	}
+
+	/**
+	 * Returns the length of the current event.
+	 *
+	 * @return The length in bytes of the current event, including its header.
+	 */
+	public int getEventLength() {
+		return nextEventOffset - eventOffset;
+	}
+
+	/**
+	 * Reads the charge-time banks (tags 102 and 202) of the current event into charge-time data.
+	 *
+	 * @param chargeTimeData The charge-time data.
+	 * @return true if the event also has a full-waveform bank (tag 57601), whose charge-time data can only be
+	 * found by decoding it, false otherwise.
+	 */
+	public boolean loadChargeTimeData(ChargeTimeData chargeTimeData) {
+		fullWaveformOffset = -1;
+		return walk(Kind.BANK, eventOffset, Math.min(nextEventOffset, blockDataLength), chargeTimeData);
+	}
+
+	/**
+	 * Returns the data of the full-waveform bank found by the last call of loadChargeTimeData(), without
+	 * copying it, so it can be decoded with FullWaveformData.load(ByteBuffer).
+	 *
+	 * @return A read-only buffer over the data of the bank in the byte order of the file, valid until the
+	 * scanner moves to another event, or null if the event has no full-waveform bank.
+	 */
+	public ByteBuffer getFullWaveformData() {
+		if (fullWaveformOffset < 0) {
+			return null;
+		}
+		ByteBuffer data = blockBuffer.asReadOnlyBuffer();
+		data.limit(fullWaveformEnd).position(fullWaveformOffset);
+		return data.slice().order(byteOrder);
+	}
+
+	/**
+	 * Walks a structure and its descendants, loading the charge-time banks.
+	 *
+	 * @param kind The kind of header of the structure.
+	 * @param offset The offset of the structure in the block buffer.
+	 * @param limit The offset in the block buffer the structure must end before.
+	 * @param chargeTimeData The charge-time data.
+	 * @return true if a full-waveform bank was found, false otherwise.
+	 */
+	private boolean walk(Kind kind, int offset, int limit, ChargeTimeData chargeTimeData) {
+		int word = blockBuffer.getInt(offset);
+		int tag;
+		int type;
+		int num = 0;
+		int dataOffset;
+		int end;
+		if (kind == Kind.BANK) {
+			if (offset + 8 > limit) {
+				return false;
+			}
+			int header = blockBuffer.getInt(offset + 4);
+			tag = header >>> 16;
+			type = (header >>> 8) & 0x3f;
+			num = header & 0xff;
+			dataOffset = offset + 8;
+			end = offset + 4 * (word + 1);
+		} else if (kind == Kind.SEGMENT) {
+			tag = word >>> 24;
+			type = (word >>> 16) & 0x3f;
+			dataOffset = offset + 4;
+			end = dataOffset + 4 * (word & 0xffff);
+		} else {
+			tag = word >>> 20;
+			type = (word >>> 16) & 0xf;
+			dataOffset = offset + 4;
+			end = dataOffset + 4 * (word & 0xffff);
+		}
+		// a malformed length must not make the walk leave its parent
+		if (end > limit || end < dataOffset) {
+			return false;
+		}
+		if (tag == EventDecoder.FULL_WAVEFORM_TAG) {
+			if (kind == Kind.BANK) {
+				fullWaveformOffset = dataOffset;
+				fullWaveformEnd = end;
+			}
+			return true;
+		}
+		if ((tag == EventDecoder.BAR_TAG || tag == EventDecoder.VETO_TAG) && (type == UINT32 || type == INT32)) {
+			int[] data = new int[(end - dataOffset) / 4];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = blockBuffer.getInt(dataOffset + 4 * i);
+			}
+			chargeTimeData.load(tag, num, data);
+			return false;
+		}
+		Kind childKind;
+		if (type == BANK || type == ALSO_BANK) {
+			childKind = Kind.BANK;
+		} else if (type == SEGMENT || type == ALSO_SEGMENT) {
+			childKind = Kind.SEGMENT;
+		} else if (type == TAGSEGMENT) {
+			childKind = Kind.TAGSEGMENT;
+		} else {
+			return false;
+		}
+		boolean fullWaveform = false;
+		int childOffset = dataOffset;
+		while (childOffset + 4 <= end) {
+			fullWaveform |= walk(childKind, childOffset, end, chargeTimeData);
+			int childWord = blockBuffer.getInt(childOffset);
+			int childLength = (childKind == Kind.BANK) ? 4 * (childWord + 1) : 4 * ((childWord & 0xffff) + 1);
+			if (childLength <= 0) {
+				break;
+			}
+			childOffset += childLength;
+		}
+		return fullWaveform;
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException If the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -1,64 +1,116 @@
 package infn.bed.event;
 
-import infn.bed.view.plot.WavePlot;
-
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.Vector;
 
+import org.jlab.coda.jevio.BaseStructure;
 import org.jlab.coda.jevio.CompositeData;
 import org.jlab.coda.jevio.IEvioStructure;
 
 import cnuphys.lund.LundId;
-import cnuphys.splot.pdata.DataSet;
-import cnuphys.splot.pdata.DataSetException;
-import cnuphys.splot.pdata.DataSetType;
 
 /**
  * Reads a full-waveform data file.
- * 
+ *
+ * <p>
+ * The samples of all channels are kept in a single channel-major short array, with a table of the offset
+ * and the length of each channel. The array is only grown, never shrunk, so an instance can be reset and
+ * reused for the next event without allocating.
+ * </p>
+ *
+ * <p>
+ * A channel decoded straight from the bytes of its bank (see WaveformBankDecoder) is kept as a view over
+ * those bytes instead, and only copied into the sample array if the same channel shows up again in the bank.
+ * </p>
+ *
  * @author Andy Beiter, Angelo Licastro
  */
 public class FullWaveformData implements ILoad {
 
 	/**
-	 * An ArrayList of PMT (photomultiplier tube) full-waveform data.
+	 * The number of PMT (photomultiplier tube) channels.
+	 */
+	public static final int CHANNELS = 34;
+
+	/**
+	 * The initial capacity of the sample array.
 	 */
-	private final ArrayList<ArrayList<Short>> channelSampleArrayList;
+	private static final int INITIAL_CAPACITY = CHANNELS * 256;
 
 	/**
-	 * An array of plot data sets.
+	 * The channel-major array of the samples of all channels.
 	 */
-	private final DataSet[] dataSetArray;
+	private short[] sampleArray;
+
+	/**
+	 * The number of used entries of the sample array.
+	 */
+	private int sampleArraySize;
+
+	/**
+	 * The offset of the first sample of each channel in the sample array.
+	 */
+	private final int[] offsetArray;
+
+	/**
+	 * The number of samples of each channel.
+	 */
+	private final int[] lengthArray;
+
+	/**
+	 * The view over the bank bytes of the samples of each channel, or null if the samples of the channel are
+	 * in the sample array.
+	 */
+	private final ShortBuffer[] viewArray;
+
+	/**
+	 * The channel whose samples were appended last, or -1 if none.
+	 */
+	private int lastChannel;
 
 	/**
 	 * Prepares the full-waveform data.
 	 */
 	public FullWaveformData() {
-		channelSampleArrayList = new ArrayList<>();
-		dataSetArray = new DataSet[34];
-		for (int i = 0; i < 34; i++) {
-			channelSampleArrayList.add(new ArrayList<>());
-		}
-		for (int i = 0; i < 34; i++) {
-			try {
-				dataSetArray[i] = new DataSet(DataSetType.XYXY, WavePlot.getColumnNames());
-			} catch (DataSetException e) {
-				e.printStackTrace();
-			}
-		}
+		sampleArray = new short[INITIAL_CAPACITY];
+		offsetArray = new int[CHANNELS];
+		lengthArray = new int[CHANNELS];
+		viewArray = new ShortBuffer[CHANNELS];
+		reset();
+	}
+
+	/**
+	 * Removes the samples of all channels. The sample array is kept for reuse.
+	 */
+	public void reset() {
+		sampleArraySize = 0;
+		lastChannel = -1;
+		Arrays.fill(offsetArray, 0);
+		Arrays.fill(lengthArray, 0);
+		Arrays.fill(viewArray, null);
 	}
 
 	/**
 	 * Loads full-waveform data from a full-waveform data file.
-	 * 
+	 *
 	 * @param structure An instance of the IEvioStructure object.
 	 * @param tag The tag of the bank.
 	 * @param num The num of the bank.
 	 */
 	@Override
 	public void load(IEvioStructure structure, int tag, int num) {
+		if (structure instanceof BaseStructure) {
+			BaseStructure baseStructure = (BaseStructure) structure;
+			byte[] rawBytes = baseStructure.getRawBytes();
+			if (rawBytes != null && load(ByteBuffer.wrap(rawBytes).order(baseStructure.getByteOrder()))) {
+				return;
+			}
+		}
+		// not the expected layout, so let jevio interpret the format
 		try {
-			channelSampleArrayList.forEach(ArrayList<Short>::clear);
+			reset();
 			CompositeData[] compositeDataArray = structure.getCompositeData();
 			if (compositeDataArray != null) {
 				for (CompositeData compositeData : compositeDataArray) {
@@ -66,11 +118,7 @@ public class FullWaveformData implements ILoad {
 					for (int i = 0; i < channelCount; i++) {
 						byte channelNumber = compositeData.getByte();
 						int sampleCount = compositeData.getNValue();
-						for (int j = 0; j < sampleCount; j++) {
-							short sample = compositeData.getShort();
-							channelSampleArrayList.get(channelNumber).add(sample);
-							dataSetArray[channelNumber].add((j + 1) * 4, sample);
-						}
+						loadSamples(compositeData, channelNumber, sampleCount);
 					}
 					byte boardNumber = compositeData.getByte();
 					compositeData.getInt();
@@ -79,11 +127,7 @@ public class FullWaveformData implements ILoad {
 					for (int i = 0; i < channelCount; i++) {
 						byte channelNum = compositeData.getByte();
 						int numSamples = compositeData.getNValue();
-						for (int j = 0; j < numSamples; j++) {
-							short sample = compositeData.getShort();
-							channelSampleArrayList.get((boardNumber - 7) * 16 + channelNum).add(sample);
-							dataSetArray[(boardNumber - 7) * 16 + channelNum].add((j + 1) * 4, sample);
-						}
+						loadSamples(compositeData, (boardNumber - 7) * 16 + channelNum, numSamples);
 					}
 				}
 			}
@@ -93,26 +137,199 @@ public class FullWaveformData implements ILoad {
 	}
 
 	/**
-	 * Returns an ArrayList of PMT (photomultiplier tube) full-waveform data.
-	 * 
-	 * @return An ArrayList of PMT (photomultiplier tube) full-waveform data.
+	 * Loads full-waveform data from the bytes of a full-waveform bank, without copying the samples.
+	 *
+	 * @param payload The bytes of the bank after its header, from the position to the limit, in the byte order
+	 * of the file. They must not change until the data is reset.
+	 * @return true if the data was loaded, false if the bank does not have the expected layout.
+	 */
+	public boolean load(ByteBuffer payload) {
+		return WaveformBankDecoder.decode(payload, this);
+	}
+
+	/**
+	 * Appends the samples of a channel, keeping a view over them if the channel has no samples yet.
+	 *
+	 * @param channel The channel, ignored if it is not known.
+	 * @param samples A view over the samples, from the position to the limit.
+	 */
+	void appendChannel(int channel, ShortBuffer samples) {
+		if (channel < 0 || channel >= CHANNELS) {
+			return;
+		}
+		if (lengthArray[channel] == 0) {
+			viewArray[channel] = samples;
+			lengthArray[channel] = samples.remaining();
+			return;
+		}
+		// the channel shows up again, so its samples have to be made contiguous in the sample array
+		ShortBuffer view = viewArray[channel];
+		if (view != null) {
+			viewArray[channel] = null;
+			lengthArray[channel] = 0;
+			view.duplicate().get(sampleArray, prepareAppend(channel, view.remaining()), view.remaining());
+		}
+		int sampleCount = samples.remaining();
+		samples.duplicate().get(sampleArray, prepareAppend(channel, sampleCount), sampleCount);
+	}
+
+	/**
+	 * Reads the samples of a channel from composite data and appends them to the channel.
+	 *
+	 * @param compositeData The composite data, positioned at the first sample.
+	 * @param channel The channel.
+	 * @param sampleCount The number of samples to read.
+	 */
+	private void loadSamples(CompositeData compositeData, int channel, int sampleCount) {
+		if (channel < 0 || channel >= CHANNELS) {
+			// skip the samples of a channel we don't know about
+			for (int j = 0; j < sampleCount; j++) {
+				compositeData.getShort();
+			}
+			return;
+		}
+		int start = prepareAppend(channel, sampleCount);
+		for (int j = 0; j < sampleCount; j++) {
+			sampleArray[start + j] = compositeData.getShort();
+		}
+	}
+
+	/**
+	 * Makes room to append samples to a channel, keeping the samples of the channel contiguous.
+	 *
+	 * @param channel The channel.
+	 * @param sampleCount The number of samples that will be appended.
+	 * @return The index in the sample array of the first appended sample.
+	 */
+	private int prepareAppend(int channel, int sampleCount) {
+		int length = lengthArray[channel];
+		if (length > 0 && channel != lastChannel) {
+			// the channel shows up again after another one, so move it to the end
+			ensureCapacity(sampleArraySize + length + sampleCount);
+			System.arraycopy(sampleArray, offsetArray[channel], sampleArray, sampleArraySize, length);
+			offsetArray[channel] = sampleArraySize;
+			sampleArraySize += length;
+		} else {
+			ensureCapacity(sampleArraySize + sampleCount);
+			if (length == 0) {
+				offsetArray[channel] = sampleArraySize;
+			}
+		}
+		int start = sampleArraySize;
+		lengthArray[channel] = length + sampleCount;
+		sampleArraySize += sampleCount;
+		lastChannel = channel;
+		return start;
+	}
+
+	/**
+	 * Grows the sample array if it can't hold the given number of samples.
+	 *
+	 * @param capacity The number of samples the array must be able to hold.
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > sampleArray.length) {
+			sampleArray = Arrays.copyOf(sampleArray, Math.max(capacity, 2 * sampleArray.length));
+		}
+	}
+
+	/**
+	 * Returns the number of channels.
+	 *
+	 * @return The number of channels.
+	 */
+	public int getChannelCount() {
+		return CHANNELS;
+	}
+
+	/**
+	 * Returns the number of samples of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The number of samples of the channel.
+	 */
+	public int getSampleCount(int channel) {
+		return lengthArray[channel];
+	}
+
+	/**
+	 * Returns a sample of a channel.
+	 *
+	 * @param channel The channel.
+	 * @param index The index of the sample.
+	 * @return The sample.
+	 */
+	public short getSample(int channel, int index) {
+		if (index < 0 || index >= lengthArray[channel]) {
+			throw new IndexOutOfBoundsException("sample " + index + " of channel " + channel);
+		}
+		ShortBuffer view = viewArray[channel];
+		return (view != null) ? view.get(view.position() + index) : sampleArray[offsetArray[channel] + index];
+	}
+
+	/**
+	 * Returns a read-only view of the samples of a channel. The view is only valid until the data is reset.
+	 *
+	 * @param channel The channel.
+	 * @return A read-only view of the samples of the channel.
+	 */
+	public ShortBuffer getChannelSamples(int channel) {
+		ShortBuffer view = viewArray[channel];
+		if (view != null) {
+			return view.asReadOnlyBuffer();
+		}
+		return ShortBuffer.wrap(sampleArray, offsetArray[channel], lengthArray[channel]).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the samples of a channel into an array.
+	 *
+	 * @param channel The channel.
+	 * @param destination The destination array, which must hold at least getSampleCount(channel) samples.
+	 */
+	public void copyChannelSamples(int channel, short[] destination) {
+		ShortBuffer view = viewArray[channel];
+		if (view != null) {
+			view.duplicate().get(destination, 0, lengthArray[channel]);
+			return;
+		}
+		System.arraycopy(sampleArray, offsetArray[channel], destination, 0, lengthArray[channel]);
+	}
+
+	/**
+	 * Returns the view over the bank bytes of the samples of a channel. Only for use by the conversion code of
+	 * this package, which must not modify it.
+	 *
+	 * @param channel The channel.
+	 * @return The view, or null if the samples of the channel are in the sample array.
+	 */
+	ShortBuffer getChannelView(int channel) {
+		return viewArray[channel];
+	}
+
+	/**
+	 * Returns the channel-major array of the samples of all channels. Only for use by the conversion code of
+	 * this package, which must not modify it.
+	 *
+	 * @return The channel-major array of the samples of all channels.
 	 */
-	public ArrayList<ArrayList<Short>> getChannelSampleArrayList() {
-		return channelSampleArrayList;
+	short[] getSampleArray() {
+		return sampleArray;
 	}
 
 	/**
-	 * Returns an array of plot data sets.
-	 * 
-	 * @return An array of plot data sets.
+	 * Returns the offset of the first sample of a channel in the sample array.
+	 *
+	 * @param channel The channel.
+	 * @return The offset of the first sample of the channel in the sample array.
 	 */
-	public DataSet[] getDataSetArray() {
-		return dataSetArray;
+	int getSampleOffset(int channel) {
+		return offsetArray[channel];
 	}
 
 	/**
 	 * Currently unused.
-	 * 
+	 *
 	 * @see infn.bed.event.ILoad#uniqueLundIds()
 	 */
 	@Override
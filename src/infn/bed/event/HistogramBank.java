@@ -0,0 +1,312 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A bank of fixed-bin energy and time histograms, one of each per channel of the digitizers.
+ *
+ * <p>
+ * The histograms of a family (energy or time) are stored in one contiguous array of counts, channel after
+ * channel. Every histogram has an underflow bin and an overflow bin around its regular bins, so the slot of
+ * bin b of channel c is c * (bins + 2) + b + 1.
+ * </p>
+ *
+ * <p>
+ * NOTE: Every thread that fills the bank has its own shard of counts, so filling never locks or contends
+ * with other threads. A snapshot merges the shards. A shard publishes its counts by writing a volatile
+ * stamp after every fill, and a snapshot reads the stamp before the counts, so it sees at least every
+ * event filled before the stamp it read. Resetting the bank starts a new generation, and a shard of an
+ * older generation is cleared by its own thread the next time it fills, so the counts are only ever
+ * written by one thread. Events that are filled while resetting may be partially kept.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class HistogramBank {
+
+	/**
+	 * The families of histograms.
+	 */
+	public enum Family {
+		ENERGY, TIME
+	}
+
+	/**
+	 * The number of channels.
+	 */
+	private final int channels;
+
+	/**
+	 * The number of regular bins of a histogram.
+	 */
+	private final int bins;
+
+	/**
+	 * The lower edge of the first regular bin of each family.
+	 */
+	private final double[] minimumArray = new double[Family.values().length];
+
+	/**
+	 * The upper edge of the last regular bin of each family.
+	 */
+	private final double[] maximumArray = new double[Family.values().length];
+
+	/**
+	 * The channel of the left PMT (photomultiplier tube) of each scintillator bar, or -1.
+	 */
+	private final int[] leftBarChannelArray;
+
+	/**
+	 * The channel of the right PMT (photomultiplier tube) of each scintillator bar, or -1.
+	 */
+	private final int[] rightBarChannelArray;
+
+	/**
+	 * The channel of the left (or only) SiPM (silicon photomultiplier) of each veto, or -1.
+	 */
+	private final int[] leftVetoChannelArray;
+
+	/**
+	 * The channel of the right SiPM (silicon photomultiplier) of each veto, or -1 if the veto has one SiPM.
+	 */
+	private final int[] rightVetoChannelArray;
+
+	/**
+	 * The shards of all threads that have filled the bank.
+	 */
+	private final List<Shard> shardList = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The shard of the current thread.
+	 */
+	private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::createShard);
+
+	/**
+	 * The current generation. It is incremented by every reset.
+	 */
+	private volatile int generation;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param bins The number of regular bins of a histogram.
+	 * @param minimumEnergy The lower edge of the first energy bin in MeV.
+	 * @param maximumEnergy The upper edge of the last energy bin in MeV.
+	 * @param minimumTime The lower edge of the first time bin.
+	 * @param maximumTime The upper edge of the last time bin.
+	 */
+	public HistogramBank(int bins, double minimumEnergy, double maximumEnergy, double minimumTime, double maximumTime) {
+		this.channels = TranslationTable.channelCount();
+		this.bins = bins;
+		minimumArray[Family.ENERGY.ordinal()] = minimumEnergy;
+		maximumArray[Family.ENERGY.ordinal()] = maximumEnergy;
+		minimumArray[Family.TIME.ordinal()] = minimumTime;
+		maximumArray[Family.TIME.ordinal()] = maximumTime;
+		// the translation table is searched once, not once per hit
+		int barCount = GeometricConstants.BARS;
+		leftBarChannelArray = new int[barCount];
+		rightBarChannelArray = new int[barCount];
+		for (int bar = 0; bar < barCount; bar++) {
+			leftBarChannelArray[bar] = TranslationTable.barChannelOf(bar, false);
+			rightBarChannelArray[bar] = TranslationTable.barChannelOf(bar, true);
+		}
+		int vetoCount = GeometricConstants.VETOES;
+		leftVetoChannelArray = new int[vetoCount];
+		rightVetoChannelArray = new int[vetoCount];
+		for (int veto = 0; veto < vetoCount; veto++) {
+			leftVetoChannelArray[veto] = TranslationTable.vetoChannelOf(veto, false);
+			rightVetoChannelArray[veto] = TranslationTable.isDualSiPMVeto(veto) ? TranslationTable.vetoChannelOf(veto, true) : -1;
+		}
+	}
+
+	/**
+	 * Creates and registers the shard of the current thread.
+	 *
+	 * @return The shard.
+	 */
+	private Shard createShard() {
+		Shard newShard = new Shard(channels * (bins + 2), generation);
+		shardList.add(newShard);
+		return newShard;
+	}
+
+	/**
+	 * Fills the histograms with the hits of an event. Every PMT (photomultiplier tube) of a scintillator bar
+	 * hit and every SiPM (silicon photomultiplier) of a veto hit is filled into the histograms of its channel.
+	 *
+	 * @param energyTimeData The energy-time data of the event.
+	 */
+	public void fill(EnergyTimeData energyTimeData) {
+		Shard current = shard.get();
+		int currentGeneration = generation;
+		if (current.generation != currentGeneration) {
+			current.clear(currentGeneration);
+		}
+		long[] energyCounts = current.countArrays[Family.ENERGY.ordinal()];
+		long[] timeCounts = current.countArrays[Family.TIME.ordinal()];
+		int barHits = energyTimeData.getBarHitCount();
+		for (int hit = 0; hit < barHits; hit++) {
+			int bar = energyTimeData.getBar(hit);
+			if (bar < 0 || bar >= leftBarChannelArray.length) {
+				continue;
+			}
+			fill(energyCounts, timeCounts, leftBarChannelArray[bar], energyTimeData.getLeftPMTEnergy(hit), energyTimeData.getLeftPMTTime(hit));
+			fill(energyCounts, timeCounts, rightBarChannelArray[bar], energyTimeData.getRightPMTEnergy(hit), energyTimeData.getRightPMTTime(hit));
+		}
+		int vetoHits = energyTimeData.getVetoHitCount();
+		for (int hit = 0; hit < vetoHits; hit++) {
+			int veto = energyTimeData.getVeto(hit);
+			if (veto < 0 || veto >= leftVetoChannelArray.length) {
+				continue;
+			}
+			fill(energyCounts, timeCounts, leftVetoChannelArray[veto], energyTimeData.getLeftSiPMEnergy(hit), energyTimeData.getLeftSiPMTime(hit));
+			fill(energyCounts, timeCounts, rightVetoChannelArray[veto], energyTimeData.getRightSiPMEnergy(hit), energyTimeData.getRightSiPMTime(hit));
+		}
+		// publishes the counts to the snapshots
+		current.stamp++;
+	}
+
+	/**
+	 * Fills the energy and time histograms of a channel.
+	 *
+	 * @param energyCounts The energy counts of the shard.
+	 * @param timeCounts The time counts of the shard.
+	 * @param channel The channel, or -1 to fill nothing.
+	 * @param energy The energy in MeV.
+	 * @param time The time.
+	 */
+	private void fill(long[] energyCounts, long[] timeCounts, int channel, double energy, double time) {
+		if (channel < 0) {
+			return;
+		}
+		int base = channel * (bins + 2);
+		energyCounts[base + slotOf(Family.ENERGY, energy)]++;
+		timeCounts[base + slotOf(Family.TIME, time)]++;
+	}
+
+	/**
+	 * Returns the slot of a value within a histogram: 0 for the underflow bin, b + 1 for regular bin b, and
+	 * bins + 1 for the overflow bin.
+	 *
+	 * @param family The family.
+	 * @param value The value.
+	 * @return The slot of the value.
+	 */
+	private int slotOf(Family family, double value) {
+		double minimum = minimumArray[family.ordinal()];
+		double maximum = maximumArray[family.ordinal()];
+		// written so that NaN is an underflow
+		if (!(value >= minimum)) {
+			return 0;
+		}
+		if (value >= maximum) {
+			return bins + 1;
+		}
+		return 1 + Math.min(bins - 1, (int) ((value - minimum) * bins / (maximum - minimum)));
+	}
+
+	/**
+	 * Adds restored counts to the shard of the current thread.
+	 *
+	 * @param snapshot A snapshot with the same channels, bins and ranges.
+	 */
+	void restore(HistogramSnapshot snapshot) {
+		Shard current = shard.get();
+		int currentGeneration = generation;
+		if (current.generation != currentGeneration) {
+			current.clear(currentGeneration);
+		}
+		for (Family family : Family.values()) {
+			long[] source = snapshot.getCountArray(family);
+			long[] target = current.countArrays[family.ordinal()];
+			for (int slot = 0; slot < target.length; slot++) {
+				target[slot] += source[slot];
+			}
+		}
+		current.stamp++;
+	}
+
+	/**
+	 * Empties the histograms.
+	 */
+	public void reset() {
+		generation++;
+	}
+
+	/**
+	 * Merges the shards into a new snapshot.
+	 *
+	 * @return A new snapshot of the histograms.
+	 */
+	public HistogramSnapshot getSnapshot() {
+		int currentGeneration = generation;
+		int slots = channels * (bins + 2);
+		long[][] countArrays = new long[Family.values().length][slots];
+		for (Shard each : shardList) {
+			// read before the counts, see the class comment
+			long stamp = each.stamp;
+			if (stamp == 0 || each.generation != currentGeneration) {
+				continue;
+			}
+			for (int family = 0; family < countArrays.length; family++) {
+				long[] source = each.countArrays[family];
+				long[] target = countArrays[family];
+				for (int slot = 0; slot < slots; slot++) {
+					target[slot] += source[slot];
+				}
+			}
+		}
+		return new HistogramSnapshot(channels, bins, minimumArray.clone(), maximumArray.clone(), countArrays);
+	}
+
+	/**
+	 * The counts filled by one thread.
+	 */
+	private static class Shard {
+
+		/**
+		 * The counts of each family. Only written by the thread of the shard.
+		 */
+		private final long[][] countArrays;
+
+		/**
+		 * The generation of the counts.
+		 */
+		private volatile int generation;
+
+		/**
+		 * The number of fills since the counts were last cleared. Written after the counts of every fill.
+		 */
+		private volatile long stamp;
+
+		/**
+		 * The constructor.
+		 *
+		 * @param slots The number of slots of a family.
+		 * @param generation The generation of the counts.
+		 */
+		private Shard(int slots, int generation) {
+			countArrays = new long[Family.values().length][slots];
+			this.generation = generation;
+		}
+
+		/**
+		 * Clears the counts and moves them to a new generation.
+		 *
+		 * @param newGeneration The new generation.
+		 */
+		private void clear(int newGeneration) {
+			for (long[] counts : countArrays) {
+				Arrays.fill(counts, 0);
+			}
+			stamp = 0;
+			generation = newGeneration;
+		}
+
+	}
+
+}
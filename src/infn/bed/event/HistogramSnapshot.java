@@ -0,0 +1,177 @@
+package infn.bed.event;
+
+import infn.bed.event.HistogramBank.Family;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the energy and time histograms of a histogram bank.
+ *
+ * @author Angelo Licastro
+ */
+public class HistogramSnapshot {
+
+	/**
+	 * The number of channels.
+	 */
+	private final int channels;
+
+	/**
+	 * The number of regular bins of a histogram.
+	 */
+	private final int bins;
+
+	/**
+	 * The lower edge of the first regular bin of each family.
+	 */
+	private final double[] minimumArray;
+
+	/**
+	 * The upper edge of the last regular bin of each family.
+	 */
+	private final double[] maximumArray;
+
+	/**
+	 * The counts of each family, laid out as in the histogram bank.
+	 */
+	private final long[][] countArrays;
+
+	/**
+	 * The constructor. The arrays are owned by the snapshot afterwards.
+	 *
+	 * @param channels The number of channels.
+	 * @param bins The number of regular bins of a histogram.
+	 * @param minimumArray The lower edge of the first regular bin of each family.
+	 * @param maximumArray The upper edge of the last regular bin of each family.
+	 * @param countArrays The counts of each family.
+	 */
+	HistogramSnapshot(int channels, int bins, double[] minimumArray, double[] maximumArray, long[][] countArrays) {
+		this.channels = channels;
+		this.bins = bins;
+		this.minimumArray = minimumArray;
+		this.maximumArray = maximumArray;
+		this.countArrays = countArrays;
+	}
+
+	/**
+	 * Returns the number of channels.
+	 *
+	 * @return The number of channels.
+	 */
+	public int getChannelCount() {
+		return channels;
+	}
+
+	/**
+	 * Returns the number of regular bins of a histogram.
+	 *
+	 * @return The number of regular bins.
+	 */
+	public int getBinCount() {
+		return bins;
+	}
+
+	/**
+	 * Returns the lower edge of the first regular bin of a family.
+	 *
+	 * @param family The family.
+	 * @return The lower edge of the first regular bin.
+	 */
+	public double getMinimum(Family family) {
+		return minimumArray[family.ordinal()];
+	}
+
+	/**
+	 * Returns the upper edge of the last regular bin of a family.
+	 *
+	 * @param family The family.
+	 * @return The upper edge of the last regular bin.
+	 */
+	public double getMaximum(Family family) {
+		return maximumArray[family.ordinal()];
+	}
+
+	/**
+	 * Returns the width of the bins of a family.
+	 *
+	 * @param family The family.
+	 * @return The width of the bins.
+	 */
+	public double getBinWidth(Family family) {
+		return (getMaximum(family) - getMinimum(family)) / bins;
+	}
+
+	/**
+	 * Returns the counts of a family, laid out as in the histogram bank. The array is not copied, so it must
+	 * not be modified.
+	 *
+	 * @param family The family.
+	 * @return The counts of the family.
+	 */
+	long[] getCountArray(Family family) {
+		return countArrays[family.ordinal()];
+	}
+
+	/**
+	 * Returns the count of a regular bin.
+	 *
+	 * @param family The family.
+	 * @param channel The channel.
+	 * @param bin The regular bin, from 0 to the number of bins - 1.
+	 * @return The count of the bin.
+	 */
+	public long getCount(Family family, int channel, int bin) {
+		return countArrays[family.ordinal()][channel * (bins + 2) + bin + 1];
+	}
+
+	/**
+	 * Returns the number of values below the first regular bin (or not a number).
+	 *
+	 * @param family The family.
+	 * @param channel The channel.
+	 * @return The count of the underflow bin.
+	 */
+	public long getUnderflow(Family family, int channel) {
+		return countArrays[family.ordinal()][channel * (bins + 2)];
+	}
+
+	/**
+	 * Returns the number of values above the last regular bin.
+	 *
+	 * @param family The family.
+	 * @param channel The channel.
+	 * @return The count of the overflow bin.
+	 */
+	public long getOverflow(Family family, int channel) {
+		return countArrays[family.ordinal()][channel * (bins + 2) + bins + 1];
+	}
+
+	/**
+	 * Returns the number of values of a histogram, including the underflow and overflow bins.
+	 *
+	 * @param family The family.
+	 * @param channel The channel.
+	 * @return The number of values.
+	 */
+	public long getEntries(Family family, int channel) {
+		long[] counts = countArrays[family.ordinal()];
+		long entries = 0;
+		for (int slot = channel * (bins + 2); slot < (channel + 1) * (bins + 2); slot++) {
+			entries += counts[slot];
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns a copy of the counts of the regular bins of a histogram.
+	 *
+	 * @param family The family.
+	 * @param channel The channel.
+	 * @return A new array with the count of each regular bin.
+	 */
+	public long[] getCounts(Family family, int channel) {
+		int start = channel * (bins + 2) + 1;
+		return Arrays.copyOfRange(countArrays[family.ordinal()], start, start + bins);
+	}
+
+}
@@ -0,0 +1,183 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.Arrays;
+
+/**
+ * Indexes the hits of an event by detector element (scintillator bar or veto).
+ *
+ * <p>
+ * The hits are sorted by element with a counting sort, so the hits of an element are a contiguous slice of
+ * the sorted hit table. An item only has to look at its own slice instead of testing every hit of the event.
+ * The sorted table holds the indices of the hits in the energy-time data, so hit i is still row i of the
+ * charge-time data.
+ * </p>
+ *
+ * <p>
+ * Usage: for (int position = index.getBarStart(bar); position &lt; index.getBarEnd(bar); position++) { int hit
+ * = index.getBarHit(position); ... }
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class HitIndex {
+
+	/**
+	 * The initial capacity of the sorted hit tables.
+	 */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/**
+	 * The start of the slice of each scintillator bar in the sorted scintillator bar hit table. The slice of
+	 * scintillator bar b ends where the slice of scintillator bar b + 1 starts.
+	 */
+	private final int[] barStartArray = new int[GeometricConstants.BARS + 1];
+
+	/**
+	 * The scintillator bar hits sorted by scintillator bar.
+	 */
+	private int[] sortedBarHitArray = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The start of the slice of each veto in the sorted veto hit table. The slice of veto v ends where the
+	 * slice of veto v + 1 starts.
+	 */
+	private final int[] vetoStartArray = new int[GeometricConstants.VETOES + 1];
+
+	/**
+	 * The veto hits sorted by veto.
+	 */
+	private int[] sortedVetoHitArray = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Removes all hits. The arrays are kept for reuse.
+	 */
+	public void reset() {
+		Arrays.fill(barStartArray, 0);
+		Arrays.fill(vetoStartArray, 0);
+	}
+
+	/**
+	 * Builds the index from the hits of the energy-time data. Hits that are not in a known element are left
+	 * out.
+	 *
+	 * @param energyTimeData The energy-time data.
+	 */
+	void build(EnergyTimeData energyTimeData) {
+		int barHits = energyTimeData.getBarHitCount();
+		if (barHits > sortedBarHitArray.length) {
+			sortedBarHitArray = new int[Math.max(barHits, 2 * sortedBarHitArray.length)];
+		}
+		Arrays.fill(barStartArray, 0);
+		for (int hit = 0; hit < barHits; hit++) {
+			int bar = energyTimeData.getBar(hit);
+			if (bar >= 0 && bar < GeometricConstants.BARS) {
+				barStartArray[bar + 1]++;
+			}
+		}
+		sort(barStartArray, sortedBarHitArray, barHits, energyTimeData, true);
+		int vetoHits = energyTimeData.getVetoHitCount();
+		if (vetoHits > sortedVetoHitArray.length) {
+			sortedVetoHitArray = new int[Math.max(vetoHits, 2 * sortedVetoHitArray.length)];
+		}
+		Arrays.fill(vetoStartArray, 0);
+		for (int hit = 0; hit < vetoHits; hit++) {
+			int veto = energyTimeData.getVeto(hit);
+			if (veto >= 0 && veto < GeometricConstants.VETOES) {
+				vetoStartArray[veto + 1]++;
+			}
+		}
+		sort(vetoStartArray, sortedVetoHitArray, vetoHits, energyTimeData, false);
+	}
+
+	/**
+	 * Turns the counts of a start array into slice starts and fills the sorted hit table. Hits of the same
+	 * element keep their order.
+	 *
+	 * @param startArray The start array, holding the count of element e at index e + 1.
+	 * @param sortedHitArray The sorted hit table that is filled.
+	 * @param hits The number of hits.
+	 * @param energyTimeData The energy-time data.
+	 * @param bars true to sort the scintillator bar hits, false to sort the veto hits.
+	 */
+	private static void sort(int[] startArray, int[] sortedHitArray, int hits, EnergyTimeData energyTimeData, boolean bars) {
+		int elements = startArray.length - 1;
+		for (int element = 0; element < elements; element++) {
+			startArray[element + 1] += startArray[element];
+		}
+		// startArray[element] is the next free position of the element while the table is filled
+		for (int hit = 0; hit < hits; hit++) {
+			int element = bars ? energyTimeData.getBar(hit) : energyTimeData.getVeto(hit);
+			if (element >= 0 && element < elements) {
+				sortedHitArray[startArray[element]++] = hit;
+			}
+		}
+		// every next free position is now the start of the following element, so shift them back
+		for (int element = elements; element > 0; element--) {
+			startArray[element] = startArray[element - 1];
+		}
+		startArray[0] = 0;
+	}
+
+	/**
+	 * Returns the start of the slice of a scintillator bar in the sorted scintillator bar hit table.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The start of the slice (inclusive).
+	 */
+	public int getBarStart(int bar) {
+		return barStartArray[bar];
+	}
+
+	/**
+	 * Returns the end of the slice of a scintillator bar in the sorted scintillator bar hit table.
+	 *
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @return The end of the slice (exclusive).
+	 */
+	public int getBarEnd(int bar) {
+		return barStartArray[bar + 1];
+	}
+
+	/**
+	 * Returns a scintillator bar hit of the sorted scintillator bar hit table.
+	 *
+	 * @param position The position in the sorted scintillator bar hit table.
+	 * @return The index of the hit in the energy-time data.
+	 */
+	public int getBarHit(int position) {
+		return sortedBarHitArray[position];
+	}
+
+	/**
+	 * Returns the start of the slice of a veto in the sorted veto hit table.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The start of the slice (inclusive).
+	 */
+	public int getVetoStart(int veto) {
+		return vetoStartArray[veto];
+	}
+
+	/**
+	 * Returns the end of the slice of a veto in the sorted veto hit table.
+	 *
+	 * @param veto The veto in zero-based indexing.
+	 * @return The end of the slice (exclusive).
+	 */
+	public int getVetoEnd(int veto) {
+		return vetoStartArray[veto + 1];
+	}
+
+	/**
+	 * Returns a veto hit of the sorted veto hit table.
+	 *
+	 * @param position The position in the sorted veto hit table.
+	 * @return The index of the hit in the energy-time data.
+	 */
+	public int getVetoHit(int position) {
+		return sortedVetoHitArray[position];
+	}
+
+}
@@ -0,0 +1,19 @@
+package infn.bed.event;
+
+/**
+ * Interface used by classes that want to be told when the snapshot of the accumulated data has been
+ * refreshed.
+ *
+ * @author Angelo Licastro
+ */
+public interface IAccumulationListener {
+
+	/**
+	 * The snapshot of the accumulated data has changed. This is always called on the Swing event dispatch
+	 * thread, at most at the refresh rate of the AccumulationManager.
+	 *
+	 * @param snapshot The new snapshot.
+	 */
+	public void accumulationChanged(AccumulationSnapshot snapshot);
+
+}
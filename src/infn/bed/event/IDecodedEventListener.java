@@ -0,0 +1,18 @@
+package infn.bed.event;
+
+/**
+ * Interface used by classes that want to be told when a decoded event has been rendered.
+ *
+ * @author Angelo Licastro
+ */
+public interface IDecodedEventListener {
+
+	/**
+	 * A new decoded event has become the current event. This is always called on the Swing event dispatch
+	 * thread.
+	 *
+	 * @param event The new current event.
+	 */
+	public void newDecodedEvent(DecodedEvent event);
+
+}
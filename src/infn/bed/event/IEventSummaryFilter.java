@@ -0,0 +1,19 @@
+package infn.bed.event;
+
+/**
+ * Interface used by the queries that look at the summaries of an event index instead of the events.
+ *
+ * @author Angelo Licastro
+ */
+public interface IEventSummaryFilter {
+
+	/**
+	 * Returns true if the summary of an event matches the query, false otherwise.
+	 *
+	 * @param index The event index.
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @return true if the event matches the query, false otherwise.
+	 */
+	public boolean accept(EventIndex index, int eventNumber);
+
+}
@@ -0,0 +1,23 @@
+package infn.bed.event;
+
+/**
+ * Interface used by PulseFinder to skip the samples below the threshold, the part of a window where nothing
+ * happens.
+ *
+ * @author Angelo Licastro
+ */
+interface IThresholdScanner {
+
+	/**
+	 * Returns the index of the first sample above a threshold.
+	 *
+	 * @param samples An array of samples.
+	 * @param offset The offset of the first sample of the window.
+	 * @param from The index in the window where the search starts.
+	 * @param to The index in the window where the search stops (exclusive).
+	 * @param threshold The threshold in raw channel units.
+	 * @return The index of the first sample above the threshold, or to if there is none.
+	 */
+	public int nextAboveThreshold(short[] samples, int offset, int from, int to, int threshold);
+
+}
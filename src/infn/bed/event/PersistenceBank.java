@@ -0,0 +1,265 @@
+package infn.bed.event;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A bank of waveform density maps, one per channel of the digitizers, which overlay the waveforms of many
+ * events the way the persistence mode of a digital oscilloscope does.
+ *
+ * <p>
+ * The map of a channel is a grid of time bins by ADC (analog-to-digital converter) bins, and each sample of
+ * the channel adds one to the cell of its time and value. Sample i falls in time bin i * timeBins /
+ * sampleWindow, and the samples after the window are left out. A value outside the ADC range is counted in the
+ * first or the last ADC bin, so a saturated pulse stays visible. The grids have a fixed size, so the memory used
+ * does not depend on the number of events, and a cell that reaches Integer.MAX_VALUE stays there.
+ * </p>
+ *
+ * <p>
+ * The maps are stored in one contiguous array of counts, channel after channel, and the slot of time bin t and
+ * ADC bin a of channel c is (c * timeBins + t) * adcBins + a.
+ * </p>
+ *
+ * <p>
+ * NOTE: As in HistogramBank, every thread that fills the bank has its own shard of counts, which is published
+ * by a volatile stamp and cleared by its own thread once the bank is reset, so filling never locks. The bank
+ * is only filled while it is enabled.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class PersistenceBank {
+
+	/**
+	 * The number of channels.
+	 */
+	private final int channels = FullWaveformData.CHANNELS;
+
+	/**
+	 * The number of time bins of a map.
+	 */
+	private final int timeBins;
+
+	/**
+	 * The number of samples the time bins cover.
+	 */
+	private final int sampleWindow;
+
+	/**
+	 * The number of ADC bins of a map.
+	 */
+	private final int adcBins;
+
+	/**
+	 * The lower edge of the first ADC bin.
+	 */
+	private final int minimumAdc;
+
+	/**
+	 * The upper edge of the last ADC bin.
+	 */
+	private final int maximumAdc;
+
+	/**
+	 * The time bin of each sample of the window.
+	 */
+	private final int[] timeBinArray;
+
+	/**
+	 * The shards of all threads that have filled the bank.
+	 */
+	private final List<Shard> shardList = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The shard of the current thread.
+	 */
+	private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::createShard);
+
+	/**
+	 * The current generation. It is incremented by every reset.
+	 */
+	private volatile int generation;
+
+	/**
+	 * Whether the bank is filled.
+	 */
+	private volatile boolean enabled;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param timeBins The number of time bins of a map.
+	 * @param sampleWindow The number of samples the time bins cover.
+	 * @param adcBins The number of ADC bins of a map.
+	 * @param minimumAdc The lower edge of the first ADC bin.
+	 * @param maximumAdc The upper edge of the last ADC bin.
+	 */
+	public PersistenceBank(int timeBins, int sampleWindow, int adcBins, int minimumAdc, int maximumAdc) {
+		this.timeBins = timeBins;
+		this.sampleWindow = sampleWindow;
+		this.adcBins = adcBins;
+		this.minimumAdc = minimumAdc;
+		this.maximumAdc = maximumAdc;
+		// the division is done once per sample of the window, not once per sample filled
+		timeBinArray = new int[sampleWindow];
+		for (int i = 0; i < sampleWindow; i++) {
+			timeBinArray[i] = (int) ((long) i * timeBins / sampleWindow);
+		}
+	}
+
+	/**
+	 * Creates and registers the shard of the current thread.
+	 *
+	 * @return The shard.
+	 */
+	private Shard createShard() {
+		Shard newShard = new Shard(channels * timeBins * adcBins, generation);
+		shardList.add(newShard);
+		return newShard;
+	}
+
+	/**
+	 * Fills the maps with the waveforms of an event, if the bank is enabled.
+	 *
+	 * @param fullWaveformData The full-waveform data of the event.
+	 */
+	public void fill(FullWaveformData fullWaveformData) {
+		if (!enabled) {
+			return;
+		}
+		Shard current = shard.get();
+		int currentGeneration = generation;
+		if (current.generation != currentGeneration) {
+			current.clear(currentGeneration);
+		}
+		int[] counts = current.countArray;
+		int adcRange = maximumAdc - minimumAdc;
+		for (int channel = 0; channel < channels; channel++) {
+			int sampleCount = fullWaveformData.getSampleCount(channel);
+			if (sampleCount == 0) {
+				continue;
+			}
+			if (sampleCount > current.sampleArray.length) {
+				current.sampleArray = new short[Math.max(sampleCount, 2 * current.sampleArray.length)];
+			}
+			short[] samples = current.sampleArray;
+			fullWaveformData.copyChannelSamples(channel, samples);
+			int count = Math.min(sampleCount, sampleWindow);
+			int base = channel * timeBins;
+			for (int i = 0; i < count; i++) {
+				int adcBin = (int) ((long) (samples[i] - minimumAdc) * adcBins / adcRange);
+				adcBin = Math.max(0, Math.min(adcBins - 1, adcBin));
+				int slot = (base + timeBinArray[i]) * adcBins + adcBin;
+				if (counts[slot] != Integer.MAX_VALUE) {
+					counts[slot]++;
+				}
+			}
+		}
+		// publishes the counts to the snapshots
+		current.stamp++;
+	}
+
+	/**
+	 * Empties the maps.
+	 */
+	public void reset() {
+		generation++;
+	}
+
+	/**
+	 * Returns true if the bank is filled, false otherwise.
+	 *
+	 * @return true if the bank is filled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops filling the bank. The maps are kept when it is stopped.
+	 *
+	 * @param enabled true to fill the bank, false otherwise.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Merges the map of one channel from the shards into a new snapshot.
+	 *
+	 * @param channel The channel.
+	 * @return A new snapshot of the map of the channel.
+	 */
+	public PersistenceSnapshot getSnapshot(int channel) {
+		int currentGeneration = generation;
+		int cells = timeBins * adcBins;
+		int offset = channel * cells;
+		int[] countArray = new int[cells];
+		long events = 0;
+		for (Shard each : shardList) {
+			// read before the counts, see the class comment of HistogramBank
+			long stamp = each.stamp;
+			if (stamp == 0 || each.generation != currentGeneration) {
+				continue;
+			}
+			events += stamp;
+			int[] source = each.countArray;
+			for (int cell = 0; cell < cells; cell++) {
+				countArray[cell] = (int) Math.min(Integer.MAX_VALUE, (long) countArray[cell] + source[offset + cell]);
+			}
+		}
+		return new PersistenceSnapshot(channel, timeBins, sampleWindow, adcBins, minimumAdc, maximumAdc, events,
+				countArray);
+	}
+
+	/**
+	 * The counts filled by one thread.
+	 */
+	private static class Shard {
+
+		/**
+		 * The counts of all the maps. Only written by the thread of the shard.
+		 */
+		private final int[] countArray;
+
+		/**
+		 * The samples of the channel being filled, which only grows.
+		 */
+		private short[] sampleArray = new short[0];
+
+		/**
+		 * The generation of the counts.
+		 */
+		private volatile int generation;
+
+		/**
+		 * The number of fills since the counts were last cleared. Written after the counts of every fill.
+		 */
+		private volatile long stamp;
+
+		/**
+		 * The constructor.
+		 *
+		 * @param slots The number of slots of all the maps.
+		 * @param generation The generation of the counts.
+		 */
+		private Shard(int slots, int generation) {
+			countArray = new int[slots];
+			this.generation = generation;
+		}
+
+		/**
+		 * Clears the counts and moves them to a new generation.
+		 *
+		 * @param newGeneration The new generation.
+		 */
+		private void clear(int newGeneration) {
+			Arrays.fill(countArray, 0);
+			stamp = 0;
+			generation = newGeneration;
+		}
+
+	}
+
+}
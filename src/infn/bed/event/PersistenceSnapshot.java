@@ -0,0 +1,167 @@
+package infn.bed.event;
+
+/**
+ * An immutable snapshot of the waveform density map of one channel of a persistence bank.
+ *
+ * @author Angelo Licastro
+ */
+public class PersistenceSnapshot {
+
+	/**
+	 * The channel.
+	 */
+	private final int channel;
+
+	/**
+	 * The number of time bins.
+	 */
+	private final int timeBins;
+
+	/**
+	 * The number of samples the time bins cover.
+	 */
+	private final int sampleWindow;
+
+	/**
+	 * The number of ADC (analog-to-digital converter) bins.
+	 */
+	private final int adcBins;
+
+	/**
+	 * The lower edge of the first ADC bin.
+	 */
+	private final int minimumAdc;
+
+	/**
+	 * The upper edge of the last ADC bin.
+	 */
+	private final int maximumAdc;
+
+	/**
+	 * The number of events filled.
+	 */
+	private final long eventCount;
+
+	/**
+	 * The counts, time bin after time bin, so the count of time bin t and ADC bin a is at t * adcBins + a.
+	 */
+	private final int[] countArray;
+
+	/**
+	 * The highest count.
+	 */
+	private final int maximumCount;
+
+	/**
+	 * The constructor. The array is owned by the snapshot afterwards.
+	 *
+	 * @param channel The channel.
+	 * @param timeBins The number of time bins.
+	 * @param sampleWindow The number of samples the time bins cover.
+	 * @param adcBins The number of ADC bins.
+	 * @param minimumAdc The lower edge of the first ADC bin.
+	 * @param maximumAdc The upper edge of the last ADC bin.
+	 * @param eventCount The number of events filled.
+	 * @param countArray The counts.
+	 */
+	PersistenceSnapshot(int channel, int timeBins, int sampleWindow, int adcBins, int minimumAdc, int maximumAdc,
+			long eventCount, int[] countArray) {
+		this.channel = channel;
+		this.timeBins = timeBins;
+		this.sampleWindow = sampleWindow;
+		this.adcBins = adcBins;
+		this.minimumAdc = minimumAdc;
+		this.maximumAdc = maximumAdc;
+		this.eventCount = eventCount;
+		this.countArray = countArray;
+		int maximum = 0;
+		for (int count : countArray) {
+			maximum = Math.max(maximum, count);
+		}
+		maximumCount = maximum;
+	}
+
+	/**
+	 * Returns the channel.
+	 *
+	 * @return The channel.
+	 */
+	public int getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the number of time bins.
+	 *
+	 * @return The number of time bins.
+	 */
+	public int getTimeBinCount() {
+		return timeBins;
+	}
+
+	/**
+	 * Returns the number of samples the time bins cover.
+	 *
+	 * @return The number of samples.
+	 */
+	public int getSampleWindow() {
+		return sampleWindow;
+	}
+
+	/**
+	 * Returns the number of ADC bins.
+	 *
+	 * @return The number of ADC bins.
+	 */
+	public int getAdcBinCount() {
+		return adcBins;
+	}
+
+	/**
+	 * Returns the lower edge of the first ADC bin.
+	 *
+	 * @return The lower edge of the first ADC bin.
+	 */
+	public int getMinimumAdc() {
+		return minimumAdc;
+	}
+
+	/**
+	 * Returns the upper edge of the last ADC bin.
+	 *
+	 * @return The upper edge of the last ADC bin.
+	 */
+	public int getMaximumAdc() {
+		return maximumAdc;
+	}
+
+	/**
+	 * Returns the number of events filled, in every channel.
+	 *
+	 * @return The number of events.
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Returns the count of a cell.
+	 *
+	 * @param timeBin The time bin.
+	 * @param adcBin The ADC bin.
+	 * @return The count of the cell.
+	 */
+	public int getCount(int timeBin, int adcBin) {
+		return countArray[timeBin * adcBins + adcBin];
+	}
+
+	/**
+	 * Returns the highest count of a cell.
+	 *
+	 * @return The highest count.
+	 */
+	public int getMaximumCount() {
+		return maximumCount;
+	}
+
+}
@@ -0,0 +1,199 @@
+package infn.bed.event;
+
+import infn.bed.math.MathematicalConstants;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Finds pulses in a window of full-waveform samples and converts them to charge-time pairs.
+ *
+ * <p>
+ * A pulse starts when a sample crosses the threshold, its time is interpolated from the leading edge at the
+ * peak, and its charge is integrated until the samples fall back below the threshold. If the finder has a
+ * baseline (see BaselineTracker), it is subtracted from every sample first.
+ * </p>
+ *
+ * <p>
+ * NOTE: Nothing happens outside of a pulse until a sample is above the threshold, so those samples are
+ * skipped by a threshold scanner. The VectorThresholdScanner compares many samples at once with the JDK Vector
+ * API; it is used when the jdk.incubator.vector module is there and the system property bed.pulse.vector is
+ * not false, and the ScalarThresholdScanner otherwise. Both find the same first sample, so the pulses do not
+ * depend on the scanner.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class PulseFinder {
+
+	/**
+	 * The system property that turns the Vector API scanner off when it is false.
+	 */
+	public static final String VECTOR_PROPERTY = "bed.pulse.vector";
+
+	/**
+	 * The class name of the Vector API scanner, which is only loaded if its module is there.
+	 */
+	private static final String VECTOR_SCANNER = "infn.bed.event.VectorThresholdScanner";
+
+	/**
+	 * Skips the samples below the threshold.
+	 */
+	private static final IThresholdScanner SCANNER = createScanner();
+
+	/**
+	 * The window of each thread the samples of a buffer without an array are copied into, which only grows.
+	 */
+	private static final ThreadLocal<short[]> WINDOW = ThreadLocal.withInitial(() -> new short[0]);
+
+	/**
+	 * The threshold in channel units (uncalibrated), above the baseline.
+	 */
+	private final int threshold;
+
+	/**
+	 * The baseline (pedestal) subtracted from every sample, in channel units.
+	 */
+	private final int baseline;
+
+	/**
+	 * The threshold in raw channel units, the baseline plus the threshold.
+	 */
+	private final int rawThreshold;
+
+	/**
+	 * Creates the threshold scanner, the Vector API one if it can be loaded and is not turned off.
+	 *
+	 * @return The threshold scanner.
+	 */
+	private static IThresholdScanner createScanner() {
+		if (Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+			try {
+				IThresholdScanner scanner = (IThresholdScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor()
+						.newInstance();
+				// the module is only resolved once the scanner is first used
+				scanner.nextAboveThreshold(new short[1], 0, 0, 1, 0);
+				return scanner;
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// the jdk.incubator.vector module is not there
+			}
+		}
+		return new ScalarThresholdScanner();
+	}
+
+	/**
+	 * Returns true if the pulses are found with the Vector API scanner, false otherwise.
+	 *
+	 * @return true if the Vector API is used, false otherwise.
+	 */
+	public static boolean isVectorized() {
+		return !(SCANNER instanceof ScalarThresholdScanner);
+	}
+
+	/**
+	 * The constructor. Uses MathematicalConstants.ADC_THRESHOLD as the threshold.
+	 */
+	public PulseFinder() {
+		this(MathematicalConstants.ADC_THRESHOLD);
+	}
+
+	/**
+	 * The constructor. The samples are not baseline-subtracted.
+	 *
+	 * @param threshold The threshold in channel units (uncalibrated).
+	 */
+	public PulseFinder(int threshold) {
+		this(0, threshold);
+	}
+
+	/**
+	 * The constructor. The baseline is subtracted from the samples before they are compared to the threshold
+	 * and integrated.
+	 *
+	 * @param baseline The baseline (pedestal) in channel units.
+	 * @param threshold The threshold in channel units, above the baseline.
+	 */
+	public PulseFinder(int baseline, int threshold) {
+		this.baseline = baseline;
+		this.threshold = threshold;
+		this.rawThreshold = baseline + threshold;
+	}
+
+	/**
+	 * Finds the pulses of a window of samples.
+	 *
+	 * @param samples An array of samples.
+	 * @param offset The offset of the first sample of the window.
+	 * @param length The number of samples of the window.
+	 * @param pulses The list the pulses are appended to.
+	 * @return The number of pulses found.
+	 */
+	public int findPulses(short[] samples, int offset, int length, PulseList pulses) {
+		int hits = 0;
+		double a_L = 0;
+		double b_L = 0;
+		double charge = 0;
+		double time = 0;
+		boolean collectingPulse = false;
+		int end = length - 1;
+		int i = 1;
+		while (i < end) {
+			if (!collectingPulse) {
+				i = SCANNER.nextAboveThreshold(samples, offset, i, end, rawThreshold);
+				if (i >= end) {
+					break;
+				}
+			}
+			int previous = samples[offset + i - 1] - baseline;
+			int current = samples[offset + i] - baseline;
+			int next = samples[offset + i + 1] - baseline;
+			if (current > threshold && previous < threshold) {
+				a_L = next - previous * 1 / 4;
+				b_L = next - a_L * (i - 1) * 4;
+				charge = charge + (current / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				collectingPulse = true;
+			} else if ((next < current) && (previous < current) && (current > threshold)) {
+				time = current / 2;
+				time = time - b_L;
+				time = time / a_L;
+				charge = charge + (current / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+			} else if ((current > threshold) && (next < threshold)) {
+				charge = charge + (current / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				pulses.add(charge, time);
+				hits++;
+				a_L = 0;
+				b_L = 0;
+				charge = 0;
+				time = 0;
+				collectingPulse = false;
+			} else if (collectingPulse) {
+				charge = charge + (current / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+			}
+			i++;
+		}
+		return hits;
+	}
+
+	/**
+	 * Finds the pulses of a window of samples held in a buffer, for example a view over the bytes of a
+	 * full-waveform bank. A buffer backed by an array is read in place; any other buffer is first copied into a
+	 * window array of the current thread, which is reused from call to call.
+	 *
+	 * @param samples The samples of the window, from the position to the limit. The position is not changed.
+	 * @param pulses The list the pulses are appended to.
+	 * @return The number of pulses found.
+	 */
+	public int findPulses(ShortBuffer samples, PulseList pulses) {
+		if (samples.hasArray()) {
+			return findPulses(samples.array(), samples.arrayOffset() + samples.position(), samples.remaining(), pulses);
+		}
+		int length = samples.remaining();
+		short[] window = WINDOW.get();
+		if (window.length < length) {
+			window = new short[Math.max(length, 2 * window.length)];
+			WINDOW.set(window);
+		}
+		samples.duplicate().get(window, 0, length);
+		return findPulses(window, 0, length, pulses);
+	}
+
+}
@@ -0,0 +1,127 @@
+package infn.bed.event;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of pulses (charge and time pairs) backed by primitive arrays.
+ *
+ * @author Angelo Licastro
+ */
+public class PulseList {
+
+	/**
+	 * The initial capacity of the list.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The pulse charges.
+	 */
+	private double[] chargeArray = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The pulse times.
+	 */
+	private double[] timeArray = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The number of pulses.
+	 */
+	private int size;
+
+	/**
+	 * Appends a pulse.
+	 *
+	 * @param charge The charge of the pulse.
+	 * @param time The time of the pulse.
+	 */
+	public void add(double charge, double time) {
+		if (size == chargeArray.length) {
+			chargeArray = Arrays.copyOf(chargeArray, 2 * size);
+			timeArray = Arrays.copyOf(timeArray, 2 * size);
+		}
+		chargeArray[size] = charge;
+		timeArray[size] = time;
+		size++;
+	}
+
+	/**
+	 * Appends all pulses of another list.
+	 *
+	 * @param pulses The list whose pulses are appended.
+	 */
+	public void addAll(PulseList pulses) {
+		for (int i = 0; i < pulses.size; i++) {
+			add(pulses.chargeArray[i], pulses.timeArray[i]);
+		}
+	}
+
+	/**
+	 * Removes all pulses. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of pulses.
+	 *
+	 * @return The number of pulses.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the charge of a pulse.
+	 *
+	 * @param index The index of the pulse.
+	 * @return The charge of the pulse.
+	 */
+	public double getCharge(int index) {
+		return chargeArray[index];
+	}
+
+	/**
+	 * Returns the time of a pulse.
+	 *
+	 * @param index The index of the pulse.
+	 * @return The time of the pulse.
+	 */
+	public double getTime(int index) {
+		return timeArray[index];
+	}
+
+	/**
+	 * Returns the pulse charges truncated to ints.
+	 *
+	 * @return A new array of the pulse charges truncated to ints.
+	 */
+	public int[] toIntChargeArray() {
+		return toIntArray(chargeArray);
+	}
+
+	/**
+	 * Returns the pulse times truncated to ints.
+	 *
+	 * @return A new array of the pulse times truncated to ints.
+	 */
+	public int[] toIntTimeArray() {
+		return toIntArray(timeArray);
+	}
+
+	/**
+	 * Truncates the used part of an array of doubles to ints.
+	 *
+	 * @param doubleArray An array of doubles.
+	 * @return A new array of ints.
+	 */
+	private int[] toIntArray(double[] doubleArray) {
+		int intArray[] = new int[size];
+		for (int i = 0; i < size; i++) {
+			intArray[i] = (int) doubleArray[i];
+		}
+		return intArray;
+	}
+
+}
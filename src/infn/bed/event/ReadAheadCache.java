@@ -0,0 +1,432 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Decodes the events after the current event of an evio file in the background, so stepping forward renders
+ * an event that is already decoded, and keeps the last events looked at, so stepping back does too.
+ *
+ * <p>
+ * The read-ahead events are decoded with an EvioScanner, which only moves forward, on a thread of their own.
+ * Once the file has an up-to-date event index (see EventIndexer), each event is read straight from its
+ * position in the index instead, so a jump far into the file does not walk the blocks before it.
+ * Each cached event owns its buffers (the bytes of its full-waveform bank are copied once, and its channels are
+ * views over them), and it is never recycled, so it can be rendered any number of times. The cache is emptied
+ * when another file is opened, the calibration table changes or the baseline tracking is turned on or off.
+ * </p>
+ *
+ * <p>
+ * The number of read-ahead events is set with the system property bed.readahead.events (DEFAULT_READ_AHEAD if
+ * not set, 0 disables the cache) and the number of past events with bed.readahead.history (DEFAULT_HISTORY).
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class ReadAheadCache {
+
+	/**
+	 * The system property with the number of read-ahead events.
+	 */
+	public static final String READ_AHEAD_PROPERTY = "bed.readahead.events";
+
+	/**
+	 * The system property with the number of past events kept.
+	 */
+	public static final String HISTORY_PROPERTY = "bed.readahead.history";
+
+	/**
+	 * The default number of read-ahead events.
+	 */
+	public static final int DEFAULT_READ_AHEAD = 8;
+
+	/**
+	 * The default number of past events kept.
+	 */
+	public static final int DEFAULT_HISTORY = 8;
+
+	/**
+	 * Decodes the read-ahead events.
+	 */
+	private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bed-readahead");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		return thread;
+	});
+
+	/**
+	 * The read-ahead events by event number, all after the current event and at most readAhead after it.
+	 */
+	private final Map<Integer, DecodedEvent> aheadMap = new HashMap<>();
+
+	/**
+	 * The past events by event number, least recently used first.
+	 */
+	private final LinkedHashMap<Integer, DecodedEvent> historyMap = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The number of read-ahead events.
+	 */
+	private volatile int readAhead;
+
+	/**
+	 * The number of past events kept.
+	 */
+	private final int history;
+
+	/**
+	 * The evio file of the cached events, or null if none.
+	 */
+	private File file;
+
+	/**
+	 * The calibration table the cached events are reconstructed with.
+	 */
+	private CalibrationTable calibrationTable;
+
+	/**
+	 * Whether the cached events were found above the tracked baselines (see BaselineTracker).
+	 */
+	private boolean baselineTracking;
+
+	/**
+	 * The current event number.
+	 */
+	private int currentEventNumber;
+
+	/**
+	 * Changes whenever the cached events are thrown away, so a prefetch that is under way stops.
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * The number of events found in the cache.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * The number of events not found in the cache.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * The scanner of the prefetch thread, or null if none is open.
+	 */
+	private EvioScanner scanner;
+
+	/**
+	 * The file of the scanner.
+	 */
+	private File scannerFile;
+
+	/**
+	 * true if the scanner has seeked to an event of the index, so it can no longer move forward.
+	 */
+	private boolean scannerSeeked;
+
+	/**
+	 * The constructor. The sizes are read from the system properties.
+	 */
+	public ReadAheadCache() {
+		this(Integer.getInteger(READ_AHEAD_PROPERTY, DEFAULT_READ_AHEAD), Integer.getInteger(HISTORY_PROPERTY,
+				DEFAULT_HISTORY));
+	}
+
+	/**
+	 * The constructor.
+	 *
+	 * @param readAhead The number of read-ahead events, or 0 to disable the cache.
+	 * @param history The number of past events kept.
+	 */
+	public ReadAheadCache(int readAhead, int history) {
+		this.readAhead = Math.max(0, readAhead);
+		this.history = Math.max(0, history);
+	}
+
+	/**
+	 * Returns an event if it is cached, and starts decoding the events after it. Called whenever an event
+	 * becomes the current event.
+	 *
+	 * @param file The evio file.
+	 * @param eventNumber The number of the event, starting at 1.
+	 * @param calibrationTable The current calibration table.
+	 * @return The decoded event, or null if it is not cached.
+	 */
+	public DecodedEvent get(File file, int eventNumber, CalibrationTable calibrationTable) {
+		if (readAhead <= 0) {
+			return null;
+		}
+		DecodedEvent event;
+		int firstMissing;
+		int lastAhead;
+		int currentGeneration;
+		synchronized (this) {
+			// an event found with the other threshold mode is never shown
+			boolean baselineTracking = BaselineTracker.getInstance().isEnabled();
+			if (!file.equals(this.file) || calibrationTable != this.calibrationTable
+					|| baselineTracking != this.baselineTracking) {
+				clearEvents();
+				this.file = file;
+				this.calibrationTable = calibrationTable;
+				this.baselineTracking = baselineTracking;
+			}
+			currentEventNumber = eventNumber;
+			event = aheadMap.remove(eventNumber);
+			if (event == null) {
+				event = historyMap.get(eventNumber);
+			}
+			if (event != null) {
+				remember(eventNumber, event);
+			}
+			lastAhead = eventNumber + readAhead;
+			// only the read-ahead window is kept ahead, the events behind it are in the history
+			for (Iterator<Integer> iterator = aheadMap.keySet().iterator(); iterator.hasNext();) {
+				int ahead = iterator.next();
+				if (ahead <= eventNumber || ahead > lastAhead) {
+					iterator.remove();
+				}
+			}
+			// a missed event is decoded again in the background, so stepping back to it is a hit
+			firstMissing = (event == null) ? eventNumber : eventNumber + 1;
+			while (firstMissing <= lastAhead && (aheadMap.containsKey(firstMissing) || historyMap.containsKey(firstMissing))) {
+				firstMissing++;
+			}
+			currentGeneration = generation.get();
+		}
+		(event != null ? hitCount : missCount).incrementAndGet();
+		if (firstMissing <= lastAhead) {
+			int first = firstMissing;
+			prefetcher.execute(() -> prefetch(file, first, lastAhead, calibrationTable, currentGeneration));
+		}
+		return event;
+	}
+
+	/**
+	 * Adds a rendered event to the history, dropping the least recently used past event if it is full.
+	 *
+	 * @param eventNumber The number of the event.
+	 * @param event The event.
+	 */
+	private void remember(int eventNumber, DecodedEvent event) {
+		historyMap.put(eventNumber, event);
+		// the current event counts as one of the past events
+		while (historyMap.size() > history + 1) {
+			Iterator<Integer> iterator = historyMap.keySet().iterator();
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Decodes a range of events into the read-ahead map, or into the history for the current event. Called on
+	 * the prefetch thread.
+	 *
+	 * @param file The evio file.
+	 * @param first The number of the first event.
+	 * @param last The number of the last event.
+	 * @param calibrationTable The calibration table the events are reconstructed with.
+	 * @param expectedGeneration The generation of the cache the events belong to.
+	 */
+	private void prefetch(File file, int first, int last, CalibrationTable calibrationTable, int expectedGeneration) {
+		// the events read ahead do not move the baselines, only the events displayed do
+		BaselineTracker activeTracker = BaselineTracker.getActiveTracker();
+		BaselineTracker baselineTracker = (activeTracker == null) ? null : activeTracker.getReadOnlyCopy();
+		try {
+			for (int eventNumber = first; eventNumber <= last; eventNumber++) {
+				synchronized (this) {
+					if (generation.get() != expectedGeneration || eventNumber < currentEventNumber
+							|| eventNumber > currentEventNumber + readAhead) {
+						return;
+					}
+					if (aheadMap.containsKey(eventNumber) || historyMap.containsKey(eventNumber)) {
+						continue;
+					}
+				}
+				if (!moveTo(file, eventNumber)) {
+					return;
+				}
+				DecodedEvent event = decode(calibrationTable, baselineTracker);
+				if (event != null) {
+					synchronized (this) {
+						if (generation.get() != expectedGeneration) {
+							return;
+						}
+						if (eventNumber == currentEventNumber) {
+							remember(eventNumber, event);
+						} else if (eventNumber > currentEventNumber && eventNumber <= currentEventNumber + readAhead) {
+							aheadMap.put(eventNumber, event);
+						}
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// the events are decoded again on the render path
+			Log.getInstance().warning("Stopped reading ahead in " + file.getName() + ", " + e.getMessage());
+			closeScanner();
+		}
+	}
+
+	/**
+	 * Moves the scanner of the prefetch thread to an event. If the file has an up-to-date event index, the event
+	 * is read straight from its position. Otherwise the scanner skips forward to it, opening the file again if
+	 * it has to go back.
+	 *
+	 * @param file The evio file.
+	 * @param eventNumber The number of the event.
+	 * @return true if the file has the event, false otherwise.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private boolean moveTo(File file, int eventNumber) throws IOException {
+		EventIndex index = EventIndexer.getInstance().getReadyIndex(file);
+		if (index != null) {
+			if (eventNumber > index.getEventCount()) {
+				return false;
+			}
+			if (scanner == null || !file.equals(scannerFile)) {
+				openScanner(file);
+			}
+			scanner.seek(eventNumber, index.getEventPosition(eventNumber), index.getEventLength(eventNumber));
+			scannerSeeked = true;
+			return true;
+		}
+		if (scanner == null || !file.equals(scannerFile) || scannerSeeked || scanner.getEventNumber() >= eventNumber) {
+			openScanner(file);
+		}
+		if (scanner.getEventNumber() < eventNumber - 1 && !scanner.skipTo(eventNumber)) {
+			return false;
+		}
+		return scanner.next();
+	}
+
+	/**
+	 * Opens a new scanner of the prefetch thread at the start of a file, closing the old one.
+	 *
+	 * @param file The evio file.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	private void openScanner(File file) throws IOException {
+		closeScanner();
+		scanner = new EvioScanner(file);
+		scannerFile = file;
+		scannerSeeked = false;
+	}
+
+	/**
+	 * Decodes the current event of the scanner into an event that owns all of its buffers.
+	 *
+	 * @param calibrationTable The calibration table the event is reconstructed with.
+	 * @param baselineTracker A read-only copy of the baseline tracker, or null to find the pulses with the fixed
+	 * threshold.
+	 * @return The event, or null if its full-waveform bank does not have the expected layout.
+	 */
+	private DecodedEvent decode(CalibrationTable calibrationTable, BaselineTracker baselineTracker) {
+		ChargeTimeData chargeTimeData = new ChargeTimeData();
+		FullWaveformData fullWaveformData = null;
+		if (scanner.loadChargeTimeData(chargeTimeData)) {
+			ByteBuffer data = scanner.getFullWaveformData();
+			if (data == null) {
+				return null;
+			}
+			// the scanner reuses its buffer, so the bank is copied once and the channels are views over the copy
+			ByteBuffer copy = ByteBuffer.allocate(data.remaining()).order(data.order());
+			copy.put(data);
+			copy.flip();
+			fullWaveformData = new FullWaveformData();
+			if (!fullWaveformData.load(copy)) {
+				return null;
+			}
+			chargeTimeData = new ChargeTimeData(fullWaveformData, null, baselineTracker);
+		}
+		EnergyTimeData energyTimeData = new EnergyTimeData();
+		EnergyTimeReconstructor.reconstruct(chargeTimeData, calibrationTable, energyTimeData);
+		return new DecodedEvent(0, chargeTimeData, fullWaveformData, energyTimeData, calibrationTable, true);
+	}
+
+	/**
+	 * Closes the scanner of the prefetch thread.
+	 */
+	private void closeScanner() {
+		if (scanner != null) {
+			try {
+				scanner.close();
+			} catch (IOException e) {
+				Log.getInstance().exception(e);
+			}
+			scanner = null;
+		}
+	}
+
+	/**
+	 * Throws the cached events away. Must hold the lock.
+	 */
+	private void clearEvents() {
+		generation.incrementAndGet();
+		aheadMap.clear();
+		historyMap.clear();
+	}
+
+	/**
+	 * Throws the cached events away, for example because the calibration table changed.
+	 */
+	public synchronized void clear() {
+		clearEvents();
+		file = null;
+		calibrationTable = null;
+	}
+
+	/**
+	 * Returns true if the cache is enabled, false otherwise.
+	 *
+	 * @return true if the number of read-ahead events is positive, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return readAhead > 0;
+	}
+
+	/**
+	 * Returns the number of read-ahead events.
+	 *
+	 * @return The number of read-ahead events.
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Sets the number of read-ahead events.
+	 *
+	 * @param readAhead The number of read-ahead events, or 0 to disable the cache.
+	 */
+	public synchronized void setReadAhead(int readAhead) {
+		this.readAhead = Math.max(0, readAhead);
+		if (this.readAhead == 0) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns the fraction of the events looked up that were found in the cache.
+	 *
+	 * @return The hit rate between 0 and 1, or NaN if no event has been looked up.
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long lookups = hits + missCount.get();
+		return (lookups == 0) ? Double.NaN : (double) hits / lookups;
+	}
+
+}
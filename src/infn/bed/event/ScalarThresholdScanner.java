@@ -0,0 +1,51 @@
+package infn.bed.event;
+
+/**
+ * The plain Java threshold scanner, used where the Vector API is not available.
+ *
+ * <p>
+ * The samples are tested a block at a time. The block test is a branch-free maximum over a fixed number of
+ * samples, which the JIT may auto-vectorize, and only the block with the first sample above the threshold is
+ * searched one sample at a time.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+class ScalarThresholdScanner implements IThresholdScanner {
+
+	/**
+	 * The number of samples tested at once.
+	 */
+	private static final int BLOCK = 16;
+
+	/**
+	 * Returns the index of the first sample above a threshold.
+	 *
+	 * @param samples An array of samples.
+	 * @param offset The offset of the first sample of the window.
+	 * @param from The index in the window where the search starts.
+	 * @param to The index in the window where the search stops (exclusive).
+	 * @param threshold The threshold in raw channel units.
+	 * @return The index of the first sample above the threshold, or to if there is none.
+	 */
+	@Override
+	public int nextAboveThreshold(short[] samples, int offset, int from, int to, int threshold) {
+		int i = from;
+		while (i + BLOCK <= to) {
+			int base = offset + i;
+			int max = Short.MIN_VALUE;
+			for (int j = 0; j < BLOCK; j++) {
+				max = Math.max(max, samples[base + j]);
+			}
+			if (max > threshold) {
+				break;
+			}
+			i += BLOCK;
+		}
+		while (i < to && samples[offset + i] <= threshold) {
+			i++;
+		}
+		return i;
+	}
+
+}
@@ -0,0 +1,175 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * Reconstructs the energy-time data of the events an EvioScanner moves to, for the tools that look at every
+ * event of a file without displaying it.
+ *
+ * <p>
+ * The charge-time banks are read straight from the scanner. The charge-time data of an event with a
+ * full-waveform bank has to be found from the waveforms, which are decoded in place from the bytes the scanner
+ * already read. Only a full-waveform bank without the expected layout is parsed with jevio and decoded in full,
+ * so the file is only opened with jevio once such an event shows up.
+ * </p>
+ *
+ * <p>
+ * NOTE: A decoder is not thread-safe, and the energy-time data it returns is only valid until its next call.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+class ScannedEventDecoder implements Closeable {
+
+	/**
+	 * The evio file.
+	 */
+	private final File file;
+
+	/**
+	 * The calibration table the events are reconstructed with.
+	 */
+	private final CalibrationTable calibrationTable;
+
+	/**
+	 * The energy-time data of the events without a full-waveform bank.
+	 */
+	private final EnergyTimeData energyTimeData = new EnergyTimeData();
+
+	/**
+	 * The full-waveform data of the events with a full-waveform bank.
+	 */
+	private final FullWaveformData fullWaveformData = new FullWaveformData();
+
+	/**
+	 * The structures of the current event that are decoded.
+	 */
+	private final List<IEvioStructure> structureList = new ArrayList<>();
+
+	/**
+	 * Parses the events with a full-waveform bank, or null before the first one.
+	 */
+	private EvioReader evioReader;
+
+	/**
+	 * Decodes the events with a full-waveform bank, or null before the first one.
+	 */
+	private EventDecoder eventDecoder;
+
+	/**
+	 * The last event decoded in full, recycled on the next call.
+	 */
+	private DecodedEvent decodedEvent;
+
+	/**
+	 * Whether the current event has a full-waveform bank.
+	 */
+	private boolean fullWaveform;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param file The evio file the scanner reads.
+	 * @param calibrationTable The calibration table the events are reconstructed with.
+	 */
+	ScannedEventDecoder(File file, CalibrationTable calibrationTable) {
+		this.file = file;
+		this.calibrationTable = calibrationTable;
+	}
+
+	/**
+	 * Reconstructs the current event of a scanner.
+	 *
+	 * @param scanner The scanner, moved to an event of the file.
+	 * @return The energy-time data of the event, valid until the next call.
+	 * @throws IOException If the file cannot be opened with jevio.
+	 * @throws EvioException If an event with a full-waveform bank cannot be parsed.
+	 */
+	EnergyTimeData decode(EvioScanner scanner) throws IOException, EvioException {
+		recycle();
+		ChargeTimeData chargeTimeData = new ChargeTimeData();
+		fullWaveform = scanner.loadChargeTimeData(chargeTimeData);
+		if (fullWaveform) {
+			ByteBuffer data = scanner.getFullWaveformData();
+			if (data != null && fullWaveformData.load(data)) {
+				chargeTimeData = new ChargeTimeData(fullWaveformData, null);
+			} else {
+				return decodeWithParser(scanner);
+			}
+		}
+		EnergyTimeReconstructor.reconstruct(chargeTimeData, calibrationTable, energyTimeData);
+		return energyTimeData;
+	}
+
+	/**
+	 * Parses the current event of a scanner with jevio and decodes it in full.
+	 *
+	 * @param scanner The scanner, moved to an event of the file.
+	 * @return The energy-time data of the event, valid until the next call of decode().
+	 * @throws IOException If the file cannot be opened with jevio.
+	 * @throws EvioException If the event cannot be parsed.
+	 */
+	private EnergyTimeData decodeWithParser(EvioScanner scanner) throws IOException, EvioException {
+		if (evioReader == null) {
+			evioReader = new EvioReader(file);
+			eventDecoder = new EventDecoder(() -> calibrationTable);
+			eventDecoder.setConversionExecutor(null);
+			// the index of a file must not depend on the order its events were looked at
+			eventDecoder.setBaselineTracking(false);
+		}
+		EvioEvent evioEvent = evioReader.parseEvent(scanner.getEventNumber());
+		structureList.clear();
+		if (evioEvent != null) {
+			EventDecoder.collectDecodedStructures(evioEvent, structureList);
+		}
+		decodedEvent = eventDecoder.decode(scanner.getEventNumber(), structureList);
+		return decodedEvent.getEnergyTimeData();
+	}
+
+	/**
+	 * Returns true if the last event reconstructed has a full-waveform bank, false otherwise.
+	 *
+	 * @return true if the event has a full-waveform bank, false otherwise.
+	 */
+	boolean hasFullWaveform() {
+		return fullWaveform;
+	}
+
+	/**
+	 * Hands the buffers of the last event decoded in full back to the decoder.
+	 */
+	private void recycle() {
+		fullWaveformData.reset();
+		if (decodedEvent != null) {
+			eventDecoder.recycle(decodedEvent);
+			decodedEvent = null;
+		}
+	}
+
+	/**
+	 * Closes the jevio reader, if the file was opened with it.
+	 *
+	 * @throws IOException If the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		recycle();
+		if (evioReader != null) {
+			evioReader.close();
+			evioReader = null;
+		}
+	}
+
+}
@@ -44,4 +44,110 @@ public interface TranslationTable {
 
 	public static final int[] vetoOuter8R = { 35, 0, 1, 7 };
 
+	public static final int[][] vetoes = { vetoInner1, vetoInner2, vetoInner3,
+			vetoInner4, vetoInner5, vetoInner6, vetoOuter1, vetoOuter2,
+			vetoOuter3, vetoOuter4, vetoOuter5L, vetoOuter5R, vetoOuter6L,
+			vetoOuter6R, vetoOuter7L, vetoOuter7R, vetoOuter8L, vetoOuter8R };
+
+	/**
+	 * Returns the scintillator bar at a layer (column) and paddle (row).
+	 * 
+	 * @param layer The layer (column).
+	 * @param paddle The paddle (row).
+	 * @return The scintillator bar in zero-based indexing, or -1 if there is no scintillator bar there.
+	 */
+	public static int barOf(int layer, int paddle) {
+		if (layer < 0 || layer > 2 || paddle < 0 || paddle > 2) {
+			return -1;
+		}
+		// bars are numbered from the bottom row up, left to right
+		return 6 + layer - 3 * paddle;
+	}
+
+	/**
+	 * Returns the veto at a layer and channel of the charge-time veto bank.
+	 * 
+	 * @param layer The layer (1 if the layer is internal or 2 if the layer is external).
+	 * @param channel The channel.
+	 * @return The veto in zero-based indexing, or -1 if there is no veto there.
+	 */
+	public static int vetoOf(int layer, int channel) {
+		if (layer == 1 && channel >= 0 && channel < 6) {
+			return channel;
+		} else if (layer == 2 && channel >= 0 && channel < 8) {
+			return 6 + channel;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if a veto is reconstructed from two SiPMs (silicon photomultipliers), false otherwise. These
+	 * are the vetoes FullSideViewVeto.chargeToEnergy() treated as dual-SiPM, kept so the energies, times and
+	 * positions of the charge-time veto bank stay the same. They are not the vetoes with a right entry in the
+	 * table (see vetoChannelOf()).
+	 * 
+	 * @param veto The veto in zero-based indexing.
+	 * @return true if the veto is read out by two SiPMs (silicon photomultipliers), false otherwise.
+	 */
+	public static boolean isDualSiPMVeto(int veto) {
+		return veto == 7 || veto == 8 || veto == 10 || veto == 11;
+	}
+
+	/**
+	 * Returns the number of channels of the digitizers, one more than the highest channel of the tables.
+	 * 
+	 * @return The number of channels.
+	 */
+	public static int channelCount() {
+		int channels = 0;
+		for (int[] entry : bars) {
+			channels = Math.max(channels, entry[0] + 1);
+		}
+		for (int[] entry : vetoes) {
+			channels = Math.max(channels, entry[0] + 1);
+		}
+		return channels;
+	}
+
+	/**
+	 * Returns the channel of the left or right PMT (photomultiplier tube) of a scintillator bar.
+	 * 
+	 * @param bar The scintillator bar in zero-based indexing.
+	 * @param right false for the left PMT (the first entry of the table), true for the right PMT.
+	 * @return The channel, or -1 if the scintillator bar is not in the table.
+	 */
+	public static int barChannelOf(int bar, boolean right) {
+		boolean skip = right;
+		for (int[] entry : bars) {
+			if (barOf(entry[2], entry[3]) == bar) {
+				if (!skip) {
+					return entry[0];
+				}
+				skip = false;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the channel of the left (or only) or right SiPM (silicon photomultiplier) of a veto.
+	 * 
+	 * @param veto The veto in zero-based indexing.
+	 * @param right false for the left (or only) SiPM (the first entry of the table), true for the right SiPM.
+	 * @return The channel, or -1 if the veto is not in the table or has no right SiPM.
+	 */
+	public static int vetoChannelOf(int veto, boolean right) {
+		boolean skip = right;
+		for (int[] entry : vetoes) {
+			// the layers of the table are zero-based
+			if (vetoOf(entry[2] + 1, entry[3]) == veto) {
+				if (!skip) {
+					return entry[0];
+				}
+				skip = false;
+			}
+		}
+		return -1;
+	}
+
 }
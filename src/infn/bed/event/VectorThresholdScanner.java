@@ -0,0 +1,59 @@
+package infn.bed.event;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The threshold scanner built on the JDK Vector API, which compares as many samples at once as the widest
+ * SIMD register of the hardware holds.
+ *
+ * <p>
+ * NOTE: The Vector API is an incubator module, so this class is compiled and run with --add-modules
+ * jdk.incubator.vector. PulseFinder only loads it by name, and falls back to ScalarThresholdScanner when the
+ * module is missing.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+class VectorThresholdScanner implements IThresholdScanner {
+
+	/**
+	 * The preferred shape of the vectors of samples on this hardware.
+	 */
+	private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+	/**
+	 * Returns the index of the first sample above a threshold.
+	 *
+	 * @param samples An array of samples.
+	 * @param offset The offset of the first sample of the window.
+	 * @param from The index in the window where the search starts.
+	 * @param to The index in the window where the search stops (exclusive).
+	 * @param threshold The threshold in raw channel units.
+	 * @return The index of the first sample above the threshold, or to if there is none.
+	 */
+	@Override
+	public int nextAboveThreshold(short[] samples, int offset, int from, int to, int threshold) {
+		int i = from;
+		// a threshold outside the range of a sample cannot be compared lane by lane
+		if (threshold >= Short.MIN_VALUE && threshold < Short.MAX_VALUE) {
+			short limit = (short) threshold;
+			int lanes = SPECIES.length();
+			while (i + lanes <= to) {
+				VectorMask<Short> above = ShortVector.fromArray(SPECIES, samples, offset + i).compare(
+						VectorOperators.GT, limit);
+				if (above.anyTrue()) {
+					return i + above.firstTrue();
+				}
+				i += lanes;
+			}
+		}
+		while (i < to && samples[offset + i] <= threshold) {
+			i++;
+		}
+		return i;
+	}
+
+}
@@ -0,0 +1,136 @@
+package infn.bed.event;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes the composite data of a full-waveform bank (tag 57601) straight from its bytes.
+ *
+ * <p>
+ * A composite bank holds one or more items, each a tagsegment with the format string followed by a bank with
+ * the packed data. The data is read in the layout the format describes for this bank: the number of channels
+ * (N), then for each channel its number (c), its number of samples (N) and the samples (s); then the board
+ * number (c), two words that are not used (i and l), and the channels of the board in the same layout.
+ * </p>
+ *
+ * <p>
+ * The samples are not copied: each channel is handed to the full-waveform data as a short view over the bytes
+ * of the bank, so decoding an event only reads the few header values of each channel.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+class WaveformBankDecoder {
+
+	/**
+	 * The constructor.
+	 */
+	private WaveformBankDecoder() {
+	}
+
+	/**
+	 * Decodes the composite data of a full-waveform bank.
+	 *
+	 * @param payload The bytes of the bank after its header, from the position to the limit, in the byte order
+	 * of the file. The full-waveform data keeps views over them, so they must not change until it is reset.
+	 * @param fullWaveformData The full-waveform data, which is reset first.
+	 * @return true if the data was decoded, false if it does not have the expected layout, in which case the
+	 * full-waveform data is left reset.
+	 */
+	static boolean decode(ByteBuffer payload, FullWaveformData fullWaveformData) {
+		fullWaveformData.reset();
+		ByteBuffer buffer = payload.duplicate().order(payload.order());
+		int position = buffer.position();
+		int limit = buffer.limit();
+		while (position + 4 <= limit) {
+			// the tagsegment with the format string
+			int formatWords = buffer.getInt(position) & 0xffff;
+			position += 4 * (formatWords + 1);
+			// the bank with the data
+			if (position + 8 > limit) {
+				break;
+			}
+			int dataEnd = position + 4 * (buffer.getInt(position) + 1);
+			if (dataEnd > limit || dataEnd < position + 8) {
+				break;
+			}
+			if (!decodeItem(buffer, position + 8, dataEnd, fullWaveformData)) {
+				break;
+			}
+			position = dataEnd;
+		}
+		if (position != limit) {
+			fullWaveformData.reset();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the data of one composite item.
+	 *
+	 * @param buffer The bytes of the bank.
+	 * @param start The offset of the first byte of the data.
+	 * @param end The offset the data ends before, including its padding.
+	 * @param fullWaveformData The full-waveform data.
+	 * @return true if the data was decoded, false otherwise.
+	 */
+	private static boolean decodeItem(ByteBuffer buffer, int start, int end, FullWaveformData fullWaveformData) {
+		int position = decodeChannels(buffer, start, end, 0, false, fullWaveformData);
+		// the board number, an int and a long
+		if (position < 0 || position + 13 > end) {
+			return false;
+		}
+		int boardNumber = buffer.get(position);
+		position = decodeChannels(buffer, position + 13, end, boardNumber, true, fullWaveformData);
+		// only the padding to a whole word may follow
+		return position >= 0 && end - position < 4;
+	}
+
+	/**
+	 * Decodes a list of channels: their number, then for each channel its number, its number of samples and
+	 * its samples.
+	 *
+	 * @param buffer The bytes of the bank.
+	 * @param position The offset of the number of channels.
+	 * @param end The offset the data ends before.
+	 * @param boardNumber The board number of the channels.
+	 * @param onBoard Whether the channel numbers are relative to the board.
+	 * @param fullWaveformData The full-waveform data.
+	 * @return The offset after the last sample, or -1 if the channels do not fit.
+	 */
+	private static int decodeChannels(ByteBuffer buffer, int position, int end, int boardNumber, boolean onBoard,
+			FullWaveformData fullWaveformData) {
+		if (position + 4 > end) {
+			return -1;
+		}
+		int channelCount = buffer.getInt(position);
+		position += 4;
+		if (channelCount < 0) {
+			return -1;
+		}
+		ByteOrder byteOrder = buffer.order();
+		for (int i = 0; i < channelCount; i++) {
+			if (position + 5 > end) {
+				return -1;
+			}
+			int channel = buffer.get(position);
+			int sampleCount = buffer.getInt(position + 1);
+			position += 5;
+			if (sampleCount < 0 || position + 2L * sampleCount > end) {
+				return -1;
+			}
+			if (onBoard) {
+				channel = (boardNumber - 7) * 16 + channel;
+			}
+			ByteBuffer samples = buffer.duplicate();
+			samples.limit(position + 2 * sampleCount).position(position);
+			ShortBuffer view = samples.slice().order(byteOrder).asShortBuffer();
+			fullWaveformData.appendChannel(channel, view);
+			position += 2 * sampleCount;
+		}
+		return position;
+	}
+
+}
@@ -3,12 +3,24 @@ package infn.bed.frame;
 import infn.bed.view.BarFrontView;
 import infn.bed.view.BarSideView;
 import infn.bed.view.FullSideView;
+import infn.bed.view.plot.PersistencePlot;
 import infn.bed.view.plot.WavePlot;
+import infn.bed.view.plot.WaveformOverview;
 import infn.bed.event.AccumulationManager;
-import infn.bed.item.FrontViewBar;
-import infn.bed.item.FullSideViewBar;
-import infn.bed.item.FullSideViewVeto;
-import infn.bed.item.SideViewBar;
+import infn.bed.event.BaselineTracker;
+import infn.bed.event.DecodedEvent;
+import infn.bed.event.EnergyTimeData;
+import infn.bed.event.EventFilters;
+import infn.bed.event.EventIndexer;
+import infn.bed.event.EventManager;
+import infn.bed.event.EventPipeline;
+import infn.bed.event.EventSearch;
+import infn.bed.event.FullWaveformData;
+import infn.bed.event.IDecodedEventListener;
+import infn.bed.event.IEventSummaryFilter;
+import infn.bed.event.ReadAheadCache;
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationManager;
 
 import java.awt.EventQueue;
 import java.awt.Toolkit;
@@ -20,8 +32,12 @@ import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
 
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -34,6 +50,7 @@ import cnuphys.bCNU.application.Desktop;
 import cnuphys.bCNU.attributes.AttributeType;
 import cnuphys.bCNU.et.ETSupport;
 import cnuphys.bCNU.event.AccumulationDialog;
+import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.event.EventMenu;
 import cnuphys.bCNU.graphics.ImageManager;
 import cnuphys.bCNU.log.Log;
@@ -42,7 +59,7 @@ import cnuphys.bCNU.util.Environment;
 import cnuphys.bCNU.view.EventView;
 import cnuphys.bCNU.view.ViewManager;
 import cnuphys.bCNU.view.VirtualView;
-import cnuphys.splot.pdata.DataSet;
+import org.jlab.coda.jevio.EvioReader;
 
 /**
  * This class is the frame of the program. It holds and manages all of the
@@ -53,7 +70,8 @@ import cnuphys.splot.pdata.DataSet;
  * @author Angelo Licastro
  */
 @SuppressWarnings("serial")
-public class Bed extends BaseMDIApplication implements PropertyChangeListener {
+public class Bed extends BaseMDIApplication implements PropertyChangeListener,
+		IDecodedEventListener {
 
 	/**
 	 * The path where we'll look for data such as translation tables and
@@ -96,6 +114,16 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	 */
 	private WavePlot rightPlot[];
 
+	/**
+	 * The waveforms of all the channels
+	 */
+	private WaveformOverview waveformOverview;
+
+	/**
+	 * The waveforms of one channel overlaid over many events
+	 */
+	private PersistencePlot persistencePlot;
+
 	/**
 	 * The instance of this class being used
 	 */
@@ -106,6 +134,11 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	 */
 	private int firstTime = 0;
 
+	/**
+	 * The path of the last evio file handed to the event indexer
+	 */
+	private String indexedPath;
+
 	/**
 	 * String used in the about bed pop up
 	 */
@@ -166,6 +199,8 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 				virtualView.moveTo(leftPlot[i], 0, 3);
 				virtualView.moveTo(rightPlot[i], 0, 3);
 			}
+			virtualView.moveTo(waveformOverview, 0, 3);
+			virtualView.moveTo(persistencePlot, 0, 3);
 			Log.getInstance().config("reset views on virtual dekstop");
 		}
 		firstTime++;
@@ -195,10 +230,15 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 		rightPlot = new WavePlot[9];
 		
 		for (int i = 0; i < 9; i++) {
-			leftPlot[i] = new WavePlot();
-			rightPlot[i] = new WavePlot();
+			leftPlot[i] = new WavePlot(true);
+			rightPlot[i] = new WavePlot(false);
 		}
 		clearViewMenu();
+
+		waveformOverview = WaveformOverview.createWaveformOverview();
+
+		persistencePlot = PersistencePlot.createPersistencePlot();
+
 		// log some environment info
 		Log.getInstance().config(Environment.getInstance().toString());
 
@@ -262,28 +302,80 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 			    chooser.setFileFilter(filter);
 			    int returnVal = chooser.showOpenDialog(Bed.getInstance());
 		        if (returnVal == JFileChooser.APPROVE_OPTION) {
-		            File calibrationFile = chooser.getSelectedFile();
-		            FullSideViewBar[] fsvBars = fullSideView.getBars();
-		            for(int i = 0; i < fsvBars.length; i++) {
-		            	fsvBars[i].getConstants(calibrationFile);
-		            }
-		            FullSideViewVeto[] fsvVetoes = fullSideView.getVetoes();
-		            for(int i = 0; i < fsvBars.length; i++) {
-		            	fsvVetoes[i].getConstants(calibrationFile);
-		            }
-		            FrontViewBar[] frontBars = barFrontView.getBars();
-		            for(int i = 0; i < frontBars.length; i++) {
-		            	frontBars[i].getConstants(calibrationFile);
-		            }
-		            SideViewBar[] sideBars = barSideView.getBars();
-		            for(int i = 0; i < sideBars.length; i++) {
-		            	sideBars[i].getConstants(calibrationFile);
-		            }
+		            final File calibrationFile = chooser.getSelectedFile();
+		            // parsed in the background, the views repaint once it is in use
+		            CalibrationManager.getInstance().load(calibrationFile).exceptionally(error -> {
+		            	EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(Bed.getInstance(),
+		            			"Could not load " + calibrationFile.getName() + ":\n" + error.getMessage(),
+		            			"Invalid Calibration Constants File", JOptionPane.ERROR_MESSAGE));
+		            	return null;
+		            });
 		        } 
 			}
 		};
 		calibrationItem.addActionListener(calibAL);
 		menu.add(calibrationItem, 2);
+
+		// choose what the event pipeline does when it can't keep up
+		final EventPipeline pipeline = EventManager.getInstance().getPipeline();
+		final JCheckBoxMenuItem dropItem = new JCheckBoxMenuItem(
+				"Drop Oldest Events When Busy",
+				pipeline.getOverflowPolicy() == EventPipeline.OverflowPolicy.DROP_OLDEST);
+		dropItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				pipeline.setOverflowPolicy(dropItem.isSelected() ? EventPipeline.OverflowPolicy.DROP_OLDEST
+						: EventPipeline.OverflowPolicy.BACKPRESSURE);
+			}
+		});
+		menu.add(dropItem, 3);
+
+		// how many events are decoded ahead of the current one
+		JMenuItem readAheadItem = new JMenuItem("Read-Ahead Events...");
+		readAheadItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ReadAheadCache cache = EventManager.getInstance()
+						.getReadAheadCache();
+				String events = JOptionPane.showInputDialog(Bed.getInstance(),
+						"Events decoded ahead (0 to disable):",
+						cache.getReadAhead());
+				if (events != null) {
+					try {
+						cache.setReadAhead(Integer.parseInt(events.trim()));
+					} catch (NumberFormatException error) {
+						JOptionPane.showMessageDialog(Bed.getInstance(),
+								"Not a number: " + events, "Read-Ahead Events",
+								JOptionPane.ERROR_MESSAGE);
+					}
+				}
+			}
+		});
+		menu.add(readAheadItem, 4);
+
+		// overlay the waveforms of many events
+		JMenuItem persistenceItem = new JMenuItem("Waveform Persistence...");
+		persistenceItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				persistencePlot.startPersistence();
+			}
+		});
+		menu.add(persistenceItem, 5);
+
+		// find the pulses above the tracked baseline of each channel
+		final BaselineTracker baselineTracker = BaselineTracker.getInstance();
+		final JCheckBoxMenuItem baselineItem = new JCheckBoxMenuItem(
+				"Subtract Channel Baselines", baselineTracker.isEnabled());
+		baselineItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				baselineTracker.setEnabled(baselineItem.isSelected());
+				// the events decoded ahead were found with the other thresholds
+				EventManager.getInstance().getReadAheadCache().clear();
+			}
+		});
+		menu.add(baselineItem, 6);
 		
 		EventMenu.menuAdditions();
 
@@ -310,9 +402,151 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 			}
 		};
 		MenuManager.addMenuItem("Noise Algorithm Parameters...", menu, al2);
+
+		addFindNextMenu(menu);
 		
 	}
 
+	/**
+	 * Adds the menu that searches the evio file for the next event that
+	 * passes a filter.
+	 * 
+	 * @param menu
+	 *            The event menu
+	 */
+	private void addFindNextMenu(JMenu menu) {
+		JMenu findMenu = new JMenu("Find Next Event");
+
+		MenuManager.addMenuItem("Total Bar Energy Above...", findMenu,
+				new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						String energy = JOptionPane.showInputDialog(
+								Bed.getInstance(), "Total bar energy (MeV):",
+								"Find Next Event", JOptionPane.QUESTION_MESSAGE);
+						if (energy != null) {
+							try {
+								double threshold = Double.parseDouble(energy.trim());
+								findNext(EventFilters.totalBarEnergyAbove(threshold),
+										EventFilters.summaryTotalBarEnergyAbove(threshold));
+							} catch (NumberFormatException error) {
+								showSearchError("Not a number: " + energy);
+							}
+						}
+					}
+				});
+
+		MenuManager.addMenuItem("Silent Vetoes", findMenu,
+				new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						findNext(EventFilters.vetoSilent(),
+								EventFilters.summaryVetoSilent());
+					}
+				});
+
+		MenuManager.addMenuItem("Bar Hit...", findMenu, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String bar = JOptionPane.showInputDialog(Bed.getInstance(),
+						"Bar (1-" + GeometricConstants.BARS + "):",
+						"Find Next Event", JOptionPane.QUESTION_MESSAGE);
+				if (bar != null) {
+					try {
+						int number = Integer.parseInt(bar.trim());
+						if (number < 1 || number > GeometricConstants.BARS) {
+							showSearchError("No such bar: " + number);
+						} else {
+							findNext(EventFilters.barHit(number - 1), null);
+						}
+					} catch (NumberFormatException error) {
+						showSearchError("Not a number: " + bar);
+					}
+				}
+			}
+		});
+
+		MenuManager.addMenuItem("Bar Multiplicity At Least...", findMenu,
+				new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						String bars = JOptionPane.showInputDialog(
+								Bed.getInstance(), "Number of bars hit:",
+								"Find Next Event", JOptionPane.QUESTION_MESSAGE);
+						if (bars != null) {
+							try {
+								int number = Integer.parseInt(bars.trim());
+								findNext(EventFilters.barMultiplicityAtLeast(number),
+										EventFilters.summaryBarMultiplicityAtLeast(number));
+							} catch (NumberFormatException error) {
+								showSearchError("Not a number: " + bars);
+							}
+						}
+					}
+				});
+
+		MenuManager.addMenuItem("Veto-Anticoincidence Candidate", findMenu,
+				new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						findNext(EventFilters.anticoincidenceCandidate(), null);
+					}
+				});
+
+		findMenu.addSeparator();
+
+		MenuManager.addMenuItem("Stop Search", findMenu, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				EventSearch.getInstance().cancel();
+			}
+		});
+
+		menu.add(findMenu);
+	}
+
+	/**
+	 * Searches the evio file in the background for the next event that passes
+	 * a filter, and goes to it.
+	 * 
+	 * @param filter
+	 *            The filter
+	 * @param summaryFilter
+	 *            The summary counterpart of the filter, used instead once the
+	 *            file is indexed, or null if it has none
+	 */
+	private void findNext(Predicate<EnergyTimeData> filter,
+			IEventSummaryFilter summaryFilter) {
+		EventSearch.getInstance().findNext(filter, summaryFilter)
+				.whenComplete((eventNumber, error) -> EventQueue.invokeLater(() -> {
+					if (error != null) {
+						Throwable cause = error instanceof CompletionException
+								&& error.getCause() != null ? error.getCause()
+								: error;
+						if (!(cause instanceof CancellationException)) {
+							showSearchError(cause.getMessage());
+						}
+					} else if (eventNumber < 0) {
+						JOptionPane.showMessageDialog(Bed.getInstance(),
+								"No later event passes the filter ("
+										+ EventSearch.getInstance().getScannedCount()
+										+ " events searched).",
+								"Find Next Event", JOptionPane.INFORMATION_MESSAGE);
+					}
+				}));
+	}
+
+	/**
+	 * Shows why an event search failed.
+	 * 
+	 * @param message
+	 *            The message
+	 */
+	private void showSearchError(String message) {
+		JOptionPane.showMessageDialog(Bed.getInstance(), message,
+				"Find Next Event", JOptionPane.ERROR_MESSAGE);
+	}
+
 	/**
 	 * Returns the instance of the frame
 	 * 
@@ -327,6 +561,7 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 
 			instance.addInitialViews();
 			instance.createMenus();
+			EventManager.getInstance().addDecodedEventListener(instance);
 		}
 		return instance;
 	}
@@ -402,31 +637,52 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	}
 
 	/**
-	 * Empties the plots and passes in new data sets.
+	 * Passes the new waveforms to the plots, which are reused from event to
+	 * event, and to the waveform overview.
 	 * 
-	 * @param ds
+	 * @param fullWaveformData
+	 *            The full-waveform data of the event
 	 */
-	public void fillPlots(DataSet ds[]) {
-		clearPlots();
+	public void fillPlots(FullWaveformData fullWaveformData) {
 		for (int i = 0; i < leftPlot.length; i++) {
-			leftPlot[i].addData(ds[2 * i], true);
-			rightPlot[i].addData(ds[2 * i + 1], false);
+			leftPlot[i].setData(fullWaveformData, 2 * i);
+			rightPlot[i].setData(fullWaveformData, 2 * i + 1);
 		}
+		waveformOverview.setData(fullWaveformData);
 	}
 
 	/**
-	 * Resets the plots for the next event.
+	 * A decoded event became the current event. Fills the plots with its
+	 * full-waveform data.
+	 * 
+	 * @param event
+	 *            The decoded event
 	 */
-	private void clearPlots() { //TODO
-		for(int i = 0; i < leftPlot.length; i++) {
-			leftPlot[i] = new WavePlot();
-			rightPlot[i] = new WavePlot();
-			virtualView.moveTo(leftPlot[i], 0, 3);
-			virtualView.moveTo(rightPlot[i], 0, 3);
+	@Override
+	public void newDecodedEvent(DecodedEvent event) {
+		FullWaveformData fullWaveformData = event.getFullWaveformData();
+		if (fullWaveformData != null) {
+			fillPlots(fullWaveformData);
+		}
+
+		// index a newly opened file in the background, so searches can use it
+		EvioReader evioReader = EventControl.getInstance().getEvioReader();
+		if (evioReader != null && evioReader.getPath() != null
+				&& !evioReader.getPath().equals(indexedPath)) {
+			indexedPath = evioReader.getPath();
+			EventIndexer.getInstance().getIndex(new File(indexedPath))
+					.exceptionally(error -> {
+						Log.getInstance().warning("Cannot index " + indexedPath
+								+ ", " + error.getMessage());
+						return null;
+					});
 		}
-		clearViewMenu();
 	}
-	
+
+	/**
+	 * Removes the "sPlot" items the plots add to the view menu. Called once,
+	 * when the plots are created.
+	 */
 	private void clearViewMenu() {
 		for (int i = 0; i < leftPlot.length; i++) {
 			JMenu menu = ViewManager.getInstance().getViewMenu();
@@ -0,0 +1,119 @@
+package infn.bed.item;
+
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.ElementSketch;
+import infn.bed.view.BedView;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+
+import cnuphys.bCNU.event.EventControl;
+import cnuphys.bCNU.format.DoubleFormat;
+
+/**
+ * Draws the scintillator bars and vetoes in accumulated mode. An item is filled with the color of its
+ * relative occupancy and labeled with its mean hit energy.
+ *
+ * @author Angelo Licastro
+ */
+public class AccumulatedItemDrawer {
+
+	/**
+	 * The constructor.
+	 */
+	private AccumulatedItemDrawer() {
+	}
+
+	/**
+	 * Returns true if the items of a view are drawn in accumulated mode, false otherwise. They are while
+	 * events are being accumulated, since single events are not drawn then.
+	 *
+	 * @param view The view.
+	 * @return true if the items of the view are drawn in accumulated mode, false otherwise.
+	 */
+	public static boolean isAccumulatedMode(BedView view) {
+		return EventControl.getInstance().isAccumulating() || view.getMode() != BedView.Mode.SINGLE_EVENT;
+	}
+
+	/**
+	 * Returns the fill color of an item.
+	 *
+	 * @param relativeOccupancy The occupancy of the item relative to the item with the highest occupancy.
+	 * @return The fill color of the item.
+	 */
+	public static Color getColor(double relativeOccupancy) {
+		return AccumulationManager.getColorScaleModel().getColor(relativeOccupancy);
+	}
+
+	/**
+	 * Returns the label of an item.
+	 *
+	 * @param meanEnergy The mean hit energy of the item in MeV.
+	 * @return The label of the item.
+	 */
+	public static String getLabel(double meanEnergy) {
+		return DoubleFormat.doubleFormat(meanEnergy, 1);
+	}
+
+	/**
+	 * Returns the feedback string with the streaming statistics of an item: the median and 99th percentile of
+	 * the pulse charge and time, and the hit rate.
+	 *
+	 * @param sketch The merged sketch of the item.
+	 * @return The feedback string.
+	 */
+	public static String getSketchFeedbackString(ElementSketch sketch) {
+		return "$orange$" + "Charge median/p99:  " + formatQuantile(sketch.getChargeQuantile(0.5)) + " / "
+				+ formatQuantile(sketch.getChargeQuantile(0.99)) + "\nTime median/p99:  "
+				+ formatQuantile(sketch.getTimeQuantile(0.5)) + " / " + formatQuantile(sketch.getTimeQuantile(0.99))
+				+ "\nHit rate:  " + DoubleFormat.doubleFormat(sketch.getHitRate(), 1) + " Hz";
+	}
+
+	/**
+	 * Formats a quantile.
+	 *
+	 * @param quantile The quantile, or NaN if there are no hits.
+	 * @return The formatted quantile.
+	 */
+	private static String formatQuantile(double quantile) {
+		return Double.isNaN(quantile) ? "-" : DoubleFormat.doubleFormat(quantile, 1);
+	}
+
+	/**
+	 * Returns the render state of an item in accumulated mode.
+	 *
+	 * @param color The fill color of the item.
+	 * @param label The label of the item.
+	 * @return The render state of the item.
+	 */
+	public static long getRenderState(Color color, String label) {
+		return ((long) label.hashCode() << 32) | (color.getRGB() & 0xffffffffL);
+	}
+
+	/**
+	 * Draws the label of an item centered in the polygon it was drawn as. Nothing is drawn if the label does
+	 * not fit.
+	 *
+	 * @param g The graphics context, with the font and color of the label set.
+	 * @param polygon The polygon the item was drawn as, or null if it has not been drawn.
+	 * @param label The label.
+	 */
+	public static void drawLabel(Graphics g, Polygon polygon, String label) {
+		if (polygon == null) {
+			return;
+		}
+		Rectangle bounds = polygon.getBounds();
+		FontMetrics fontMetrics = g.getFontMetrics();
+		int width = fontMetrics.stringWidth(label);
+		if (width > bounds.width || fontMetrics.getAscent() > bounds.height) {
+			return;
+		}
+		int x = bounds.x + (bounds.width - width) / 2;
+		int y = bounds.y + (bounds.height + fontMetrics.getAscent() - fontMetrics.getDescent()) / 2;
+		g.drawString(label, x, y);
+	}
+
+}
@@ -1,12 +1,11 @@
 package infn.bed.item;
 
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.view.BarFrontView;
-import infn.bed.view.BedView;
 import infn.bed.event.AccumulationManager;
-import infn.bed.event.ChargeTimeData;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.EnergyTimeData;
 import infn.bed.event.EventManager;
-import infn.bed.math.MathematicalConstants;
+import infn.bed.event.HitIndex;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -15,13 +14,11 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 
-import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.format.DoubleFormat;
 import cnuphys.bCNU.graphics.container.IContainer;
 import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
@@ -41,7 +38,7 @@ import cnuphys.bCNU.util.Fonts;
  * @author Andy Beiter
  * 
  */
-public class FrontViewBar extends RectangleItem {
+public class FrontViewBar extends RectangleItem implements IRenderStateItem {
 
 	/**
 	 * Font for label text
@@ -53,116 +50,20 @@ public class FrontViewBar extends RectangleItem {
 	 */
 	private int _bar;
 
-	/**
-	 * The array of the hit sectors (detectors)
-	 */
-	private int hitSectors[];
-
-	/**
-	 * The array of the hit layers (columns)
-	 */
-	private int hitLayers[];
-
-	/**
-	 * The array of the hit paddles (rows)
-	 */
-	private int hitPaddles[];
-
-	/**
-	 * The array of the charges from the left PMTs
-	 */
-	private int chargeLeft[];
-
-	/**
-	 * The array of the charges from the right PMTs
-	 */
-	private int chargeRight[];
-
-	/**
-	 * The array of the times from the left PMTs
-	 */
-	private int timeLeft[];
-
-	/**
-	 * The array of the times from the right PMTs
-	 */
-	private int timeRight[];
-
-	/**
-	 * The array of the positions from the left side of the bar where a hit
-	 * occurred
-	 */
-	private double posFromLeft[];
-
-	/**
-	 * The array of energies from each hit
-	 */
-	private double totalE[];
-
-	/**
-	 * The array of times from each hit
-	 */
-	private double totalT[];
-
-	/**
-	 * The effective speed of light in the bar
-	 */
-	private double v_eff;
-
-	/**
-	 * The charge-to-energy conversion factor for the left PMT for the bar
-	 */
-	private double A_left;
-
-	/**
-	 * The charge-to-energy conversion factor for the right PMT for the bar
-	 */
-	private double A_right;
-
-	/**
-	 * The attenuation length
-	 */
-	private double lambda;
-
-	/**
-	 * Time delay for the left PMT
-	 */
-	private double delta_left;
-
-	/**
-	 * Time delay for the right PMT
-	 */
-	private double delta_right;
-
-	/**
-	 * The tdc-to-time conversion factor for the left PMT for the bar
-	 */
-	private double tdcConvLeft;
-
-	/**
-	 * The tdc-to-time conversion factor for the right PMT for the bar
-	 */
-	private double tdcConvRight;
-
-	/**
-	 * The length of the bar
-	 */
-	private double length;
-
 	/**
 	 * The view this bar is in
 	 */
 	private BarFrontView _view;
 
 	/**
-	 * Upper energy level (MeV) for color scaling
+	 * The rectangle the bar is drawn in
 	 */
-	private static final float upperEnergyScale = MathematicalConstants.UPPER_ENERGY_LIMIT;
+	private Rectangle2D.Double _worldRectangle;
 
 	/**
-	 * The rectangle the bar is drawn in
+	 * The color the bar is filled with in single event mode
 	 */
-	private Rectangle2D.Double _worldRectangle;
+	private Color _singleEventFillColor;
 
 	/**
 	 * Constructor for the bar used in the front view
@@ -189,27 +90,10 @@ public class FrontViewBar extends RectangleItem {
 		} else if (_bar % 3 == 1) {
 			_style.setFillColor(new Color(150, 150, 150));
 		}
+		_singleEventFillColor = _style.getFillColor();
 		_name = "Bar: " + _bar;
 	}
 
-	/**
-	 * Gets the calibration constants from a file and stores them
-	 * 
-	 * TODO change file for real constants
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "b", _bar);
-		v_eff = calibrationFileParser.getEffectiveVelocity();
-		A_left = calibrationFileParser.getLeftADCConversionFactor();
-		A_right = calibrationFileParser.getRightADCConversionFactor();
-		lambda = calibrationFileParser.getAttenuationLength();
-		delta_left = calibrationFileParser.getLeftShift();
-		delta_right = calibrationFileParser.getRightShift();
-		tdcConvLeft = calibrationFileParser.getLeftTDCConversionFactor();
-		tdcConvRight = calibrationFileParser.getRightTDCConversionFactor();
-		length = calibrationFileParser.getItemLength();
-	}
-
 	/**
 	 * Custom drawer for the bar.
 	 * 
@@ -220,17 +104,17 @@ public class FrontViewBar extends RectangleItem {
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-		if (EventControl.getInstance().isAccumulating()) {
-			return;
-		}
+		boolean accumulated = AccumulatedItemDrawer.isAccumulatedMode(_view);
+		_style.setFillColor(accumulated ? getAccumulatedColor()
+				: _singleEventFillColor);
 		super.drawItem(g, container);
 		g.setFont(labelFont);
 		g.setColor(Color.yellow);
 		// now the data
-		if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
-			singleEventDrawItem(g, container);
-		} else {
+		if (accumulated) {
 			accumulatedDrawItem(g, container);
+		} else {
+			singleEventDrawItem(g, container);
 		}
 
 		// just to make clean
@@ -240,7 +124,7 @@ public class FrontViewBar extends RectangleItem {
 
 	/**
 	 * Draw in single event mode. Uses a small rectangle at the position of the
-	 * hit.
+	 * hit. The bar itself was already drawn by the super class.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -248,52 +132,18 @@ public class FrontViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void singleEventDrawItem(Graphics g, IContainer container) {
-		WorldGraphicsUtilities.drawWorldRectangle(g, container,
-				_worldRectangle, _style.getFillColor(), _style.getLineColor());
-
-		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
-		if (ctData != null) {
-			hitSectors = ctData.getSectorArray();
-			hitLayers = ctData.getLayerArray();
-			hitPaddles = ctData.getPaddleArray();
-			chargeLeft = ctData.getLeftPMTChargeArray();
-			timeLeft = ctData.getLeftPMTTimeArray();
-			chargeRight = ctData.getRightPMTChargeArray();
-			timeRight = ctData.getRightPMTTimeArray();
-			if (chargeLeft != null && chargeRight != null) {
-				chargeToEnergy();
-				for (int i = 0; i < totalE.length; i++) {
-					if (inThisBar(hitSectors[i], hitLayers[i], hitPaddles[i])) {
-						if (totalE[i] > 0) {
-							// TODO EDIT SIZE OF HIT RECTANGLE
-							// draw small rectangle at hit
-							double pos = posFromLeft[i] / 40.0 * 3;
-							Rectangle2D.Double hitRect = new Rectangle2D.Double(
-									pos, _worldRectangle.y,
-									_worldRectangle.width / 40.0,
-									_worldRectangle.height);
-							double scale = totalE[i] / upperEnergyScale;
-							try {
-								WorldGraphicsUtilities
-										.drawWorldRectangle(
-												g,
-												container,
-												hitRect,
-												new Color(
-														(int) (Math
-																.ceil(scale * 255)),
-														0,
-														(int) Math
-																.ceil(255 - scale * 255)),
-												_style.getLineColor());
-							} catch (Exception e) {
-								WorldGraphicsUtilities.drawWorldRectangle(g,
-										container, hitRect,
-										new Color(255, 0, 0),
-										_style.getLineColor());
-							}
-						}
-					}
+		// the hits were converted to energy and indexed by bar when the event was decoded
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (etData != null) {
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
+				if (etData.getBarEnergy(i) > 0) {
+					// draw small rectangle at hit
+					WorldGraphicsUtilities.drawWorldRectangle(g, container,
+							getHitRectangle(etData, i),
+							HitColor.getColor(etData.getBarEnergy(i)),
+							_style.getLineColor());
 				}
 			}
 		}
@@ -301,90 +151,75 @@ public class FrontViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Converts the charge-time information to energy-time information
+	 * Get the render state of the bar, which combines the position and color
+	 * of every hit rectangle or, in accumulated mode, the color and label of
+	 * the bar.
+	 * 
+	 * @return the render state of the bar
 	 */
-	private void chargeToEnergy() {
-		double t_l[] = new double[timeLeft.length];
-		double t_r[] = new double[timeRight.length];
-		for (int i = 0; i < timeLeft.length; i++) {
-			t_l[i] = (timeLeft[i] * 1.0 / tdcConvLeft) - delta_left;
-		}
-		for (int i = 0; i < timeRight.length; i++) {
-			t_r[i] = (timeRight[i] * 1.0 / tdcConvRight) - delta_right;
-		}
-		posFromLeft = new double[chargeLeft.length];
-		for (int i = 0; i < posFromLeft.length; i++) {
-			posFromLeft[i] = (v_eff * (t_l[i] - t_r[i]) + length) / 2.0;
-		}
-		double e_l[] = new double[chargeLeft.length];
-		double e_r[] = new double[chargeRight.length];
-		for (int i = 0; i < e_l.length; i++) {
-			e_l[i] = chargeLeft[i] * A_left;
-		}
-		for (int i = 0; i < e_r.length; i++) {
-			e_r[i] = chargeRight[i] * A_right;
+	@Override
+	public long getRenderState() {
+		if (AccumulatedItemDrawer.isAccumulatedMode(_view)) {
+			return AccumulatedItemDrawer.getRenderState(getAccumulatedColor(),
+					getAccumulatedLabel());
 		}
-		totalE = new double[e_l.length];
-		totalT = new double[t_l.length];
-		for (int i = 0; i < totalE.length; i++) {
-			double e_l_prime = e_l[i] * Math.exp(posFromLeft[i] / lambda);
-			double e_r_prime = e_r[i]
-					* Math.exp((length - posFromLeft[i]) / lambda);
-			totalE[i] = (e_l_prime + e_r_prime) / 2;
-			totalT[i] = (t_l[i] + t_r[i] - (length / v_eff)) / 2.0;
+		long state = 1;
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (etData != null) {
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
+				if (etData.getBarEnergy(i) > 0) {
+					state = 31 * state + Double.doubleToLongBits(etData.getPositionFromLeft(i));
+					state = 31 * state + HitColor.getColor(etData.getBarEnergy(i)).getRGB();
+				}
+			}
 		}
+		return state;
 	}
 
 	/**
-	 * Checks if a given sector/layer/paddle is this bar
+	 * Get the rectangle the bar and its hit rectangles are drawn in. A hit far
+	 * from the center can be drawn outside of the bar.
 	 * 
-	 * @param sector
-	 *            Which detector (currently not used)
-	 * @param layer
-	 *            Which column
-	 * @param paddle
-	 *            Which row
-	 * @return True if the s/l/p is this bar, false if not
+	 * @return the rectangle the bar and its hit rectangles are drawn in
 	 */
-	private boolean inThisBar(int sector, int layer, int paddle) {
-		switch (layer) {
-		case 0:
-			switch (paddle) {
-			case 0:
-				return (7 == _bar);
-			case 1:
-				return (4 == _bar);
-			case 2:
-				return (1 == _bar);
-			}
-			break;
-		case 1:
-			switch (paddle) {
-			case 0:
-				return (8 == _bar);
-			case 1:
-				return (5 == _bar);
-			case 2:
-				return (2 == _bar);
-			}
-			break;
-		case 2:
-			switch (paddle) {
-			case 0:
-				return (9 == _bar);
-			case 1:
-				return (6 == _bar);
-			case 2:
-				return (3 == _bar);
+	@Override
+	public Rectangle2D.Double getRenderRectangle() {
+		Rectangle2D.Double renderRect = new Rectangle2D.Double();
+		renderRect.setRect(_worldRectangle);
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (etData != null) {
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
+				if (etData.getBarEnergy(i) > 0) {
+					Rectangle2D.union(renderRect, getHitRectangle(etData, i), renderRect);
+				}
 			}
 		}
-		return false;
+		return renderRect;
 	}
 
 	/**
-	 * Draw hits in accumulated mode
+	 * Get the small rectangle drawn at the position of a hit.
 	 * 
-	 * Currently unused
+	 * @param etData
+	 *            the energy-time data of the event
+	 * @param hit
+	 *            the index of the hit
+	 * @return the rectangle drawn at the position of the hit
+	 */
+	private Rectangle2D.Double getHitRectangle(EnergyTimeData etData, int hit) {
+		// TODO EDIT SIZE OF HIT RECTANGLE
+		double pos = etData.getPositionFromLeft(hit) / 40.0 * 3;
+		return new Rectangle2D.Double(pos, _worldRectangle.y,
+				_worldRectangle.width / 40.0, _worldRectangle.height);
+	}
+
+	/**
+	 * Draw hits in accumulated mode. The bar was already filled with the color
+	 * of its relative occupancy, so only the mean energy is drawn.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -392,6 +227,34 @@ public class FrontViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		AccumulatedItemDrawer.drawLabel(g, _lastDrawnPolygon,
+				getAccumulatedLabel());
+	}
+
+	/**
+	 * Get the color of the bar in accumulated mode, which is the color of its
+	 * relative occupancy.
+	 * 
+	 * @return the color of the relative occupancy
+	 */
+	private Color getAccumulatedColor() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		return AccumulatedItemDrawer.getColor(snapshot
+				.getBarRelativeOccupancy(_bar - 1));
+	}
+
+	/**
+	 * Get the label of the bar in accumulated mode, which is its mean hit
+	 * energy.
+	 * 
+	 * @return the label of the bar
+	 */
+	private String getAccumulatedLabel() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		return AccumulatedItemDrawer.getLabel(snapshot
+				.getBarMeanEnergy(_bar - 1));
 	}
 
 	/**
@@ -423,7 +286,7 @@ public class FrontViewBar extends RectangleItem {
 					+ DoubleFormat.doubleFormat(z, 1) + "cm";
 			feedbackStrings.add(rtp);
 
-			if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
+			if (!AccumulatedItemDrawer.isAccumulatedMode(_view)) {
 				singleEventFeedbackStrings(feedbackStrings);
 			} else {
 				accumulatedFeedbackStrings(feedbackStrings);
@@ -440,52 +303,40 @@ public class FrontViewBar extends RectangleItem {
 	 *            The list of feedback strings
 	 */
 	private void singleEventFeedbackStrings(List<String> feedbackStrings) {
-		if (EventManager.getInstance().getChargeTimeData() != null) {
-			if (chargeLeft != null && chargeRight != null) {
-				int hits = 0;
-				double barE = 0;
-				boolean hit[] = new boolean[totalE.length];
-				for (int i = 0; i < totalE.length; i++) {
-					if (inThisBar(hitSectors[i], hitLayers[i], hitPaddles[i])) {
-						if (totalE[i] > 0) {
-							hits++;
-							barE += totalE[i];
-							hit[i] = true;
-						} else {
-							hit[i] = false;
-						}
-					} else {
-						hit[i] = false;
-					}
-				}
-				String energyStr = "$orange$" + "Energy deposited:  " + barE
-						+ " MeV\n# of hits:  " + hits;
-				int counter = 1;
-				for (int i = 0; i < hit.length; i++) {
-					if (hit[i]) {
-						energyStr += "\nTime #" + counter + ":  " + totalT[i]
-								+ " ns";
-					}
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (etData != null) {
+			int hits = 0;
+			double barE = 0;
+			String timeStr = "";
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
+				if (etData.getBarEnergy(i) > 0) {
+					hits++;
+					barE += etData.getBarEnergy(i);
+					timeStr += "\nTime #" + hits + ":  " + etData.getBarTime(i)
+							+ " ns";
 				}
-				feedbackStrings.add(energyStr);
 			}
+			String energyStr = "$orange$" + "Energy deposited:  " + barE
+					+ " MeV\n# of hits:  " + hits + timeStr;
+			feedbackStrings.add(energyStr);
 		}
 	}
 
 	/**
-	 * Get the feedback strings for accumulated mode
-	 * 
-	 * Currently unused
+	 * Get the feedback strings for accumulated mode. Displays the hit count
+	 * relative to the bar with the most hits, and the occupancy of the bar.
 	 * 
 	 * @param feedbackStrings
 	 *            The list of feedback strings
 	 */
 	private void accumulatedFeedbackStrings(List<String> feedbackStrings) {
 
-		int dcAccumulatedData[] = AccumulationManager.getInstance()
-				.getAccumulatedGemcDcData();
-		int hitCount = dcAccumulatedData[_bar - 1];
-		int maxHit = AccumulationManager.getInstance().getMaxGemcDcCount();
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		long hitCount = snapshot.getBarHitCount(_bar - 1);
+		long maxHit = snapshot.getMaxBarHitCount();
 		if ((hitCount < 1) || (maxHit < 1)) {
 			feedbackStrings.add("hit fraction 0.0");
 		} else {
@@ -493,6 +344,8 @@ public class FrontViewBar extends RectangleItem {
 			feedbackStrings.add("hit fraction "
 					+ DoubleFormat.doubleFormat(fract, 3));
 		}
+		feedbackStrings.add("occupancy "
+				+ DoubleFormat.doubleFormat(snapshot.getBarOccupancy(_bar - 1), 3));
 	}
 
 }
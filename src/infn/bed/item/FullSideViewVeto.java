@@ -1,13 +1,13 @@
 package infn.bed.item;
 
 import infn.bed.config.FullSideViewConfig;
-import infn.bed.event.ChargeTimeData;
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.EnergyTimeData;
 import infn.bed.event.EventManager;
+import infn.bed.event.HitIndex;
 import infn.bed.geometry.GeometricConstants;
-import infn.bed.math.MathematicalConstants;
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.util.GetVetoLayer;
-import infn.bed.view.BedView;
 import infn.bed.view.FullSideView;
 
 import java.awt.Color;
@@ -16,13 +16,10 @@ import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.io.File;
 import java.util.List;
 
-import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.format.DoubleFormat;
 import cnuphys.bCNU.graphics.container.IContainer;
-import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
 import cnuphys.bCNU.item.RectangleItem;
 import cnuphys.bCNU.layer.LogicalLayer;
 import cnuphys.bCNU.util.Fonts;
@@ -33,7 +30,7 @@ import cnuphys.bCNU.util.Fonts;
  * @author Andy Beiter
  * @author Angelo Licastro
  */
-public class FullSideViewVeto extends RectangleItem {
+public class FullSideViewVeto extends RectangleItem implements IRenderStateItem {
 
 	/**
 	 * The font of the label text.
@@ -45,96 +42,6 @@ public class FullSideViewVeto extends RectangleItem {
 	 */
 	private final int _veto;
 
-	/**
-	 * An array of hit sectors (detectors).
-	 */
-	private int sectorArray[];
-
-	/**
-	 * An array of hit layers (internal or external).
-	 */
-	private int layerArray[];
-
-	/**
-	 * An array of hit channels.
-	 */
-	private int channelArray[];
-
-	/**
-	 * An array of hit charges.
-	 */
-	private int chargeArray[];
-
-	/**
-	 * An array of dual SiPM (silicon photomultiplier) hit charges.
-	 */
-	private int dualSiPMChargeArray[];
-
-	/**
-	 * An array of hit times.
-	 */
-	private int timeArray[];
-
-	/**
-	 * An array of dual SiPM (silicon photomultiplier) hit times.
-	 */
-	private int dualSiPMTimeArray[];
-
-	/**
-	 * An array of total hit energies.
-	 */
-	private double totalEnergyArray[];
-
-	/**
-	 * An array of total hit times.
-	 */
-	private double totalTimeArray[];
-
-	/**
-	 * The effective velocity.
-	 */
-	private double effectiveVelocity;
-
-	/**
-	 * The left ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double leftADCConversionFactor;
-
-	/**
-	 * The right ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double rightADCConversionFactor;
-
-	/**
-	 * The attenuation length.
-	 */
-	private double attenuationLength;
-
-	/**
-	 * The left shift.
-	 */
-	private double leftShift;
-
-	/**
-	 * The right shift.
-	 */
-	private double rightShift;
-
-	/**
-	 * The left TDC (time-to-digital converter) conversion factor.
-	 */
-	private double leftTDCConversionFactor;
-
-	/**
-	 * The right TDC (time-to-digital converter) conversion factor.
-	 */
-	private double rightTDCConversionFactor;
-
-	/**
-	 * The veto length.
-	 */
-	private double vetoLength;
-
 	/**
 	 * The view that contains the veto.
 	 */
@@ -162,6 +69,7 @@ public class FullSideViewVeto extends RectangleItem {
 		_name = "Veto: " + _veto;
 		
 		_style.setFillColor(Color.white);
+		_style.setLineColor(getLineColor());
 		
 		if (isInternalUpstreamVeto()) {
 			_style.setLineWidth(3);
@@ -169,184 +77,104 @@ public class FullSideViewVeto extends RectangleItem {
 	}
 
 	/**
-	 * Retrieves the calibration constants of the veto.
-	 * 
-	 * @param file A calibration file.
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "v", _veto);
-		effectiveVelocity        = calibrationFileParser.getEffectiveVelocity();
-		leftADCConversionFactor  = calibrationFileParser.getLeftADCConversionFactor();
-		rightADCConversionFactor = calibrationFileParser.getRightADCConversionFactor();
-		attenuationLength        = calibrationFileParser.getAttenuationLength();
-		leftShift                = calibrationFileParser.getLeftShift();
-		rightShift               = calibrationFileParser.getRightShift();
-		leftTDCConversionFactor  = calibrationFileParser.getLeftTDCConversionFactor();
-		rightTDCConversionFactor = calibrationFileParser.getRightTDCConversionFactor();
-		vetoLength               = calibrationFileParser.getItemLength();
-	}
-
-	/**
-	 * Draws the veto.
+	 * Draws the veto. The rectangle is drawn once, in the color of its hits or, in accumulated mode, of its
+	 * relative occupancy.
 	 * 
 	 * @param g The graphics context.
 	 * @param container The graphics container that is being rendered.
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-		if (EventControl.getInstance().isAccumulating()) {
-			return;
-		}
-		
+		boolean accumulated = AccumulatedItemDrawer.isAccumulatedMode(_view);
+		Color fillColor = accumulated ? getAccumulatedColor() : getHitColor();
+		_style.setFillColor((fillColor == null) ? Color.white : fillColor);
 		super.drawItem(g, container);
 		g.setFont(labelTextFont);
 
-		if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
-			singleEventDrawItem(g, container);
-		} else {
+		if (accumulated) {
 			accumulatedDrawItem(g, container);
 		}
 	}
 
 	/**
-	 * Draws the single event mode hits.
+	 * Returns the color of the veto in single event mode, which is the color of the last hit with energy
+	 * above 0.
 	 * 
-	 * @param g The graphics context.
-	 * @param container The graphics container that is being rendered.
+	 * @return The color of the last hit, or null if the veto has no hits.
 	 */
-	private void singleEventDrawItem(Graphics g, IContainer container) {
-		WorldGraphicsUtilities.drawWorldRectangle(g, container, _worldRectangle, Color.white, getLineColor());
+	private Color getHitColor() {
+		Color hitColor = null;
 		
-		ChargeTimeData chargeTimeData = EventManager.getInstance().getChargeTimeData();
-		if (chargeTimeData != null) {
-			sectorArray         = chargeTimeData.getVetoSectorArray();
-			layerArray          = chargeTimeData.getVetoLayerArray();
-			channelArray        = chargeTimeData.getVetoChannelArray();
-			chargeArray         = chargeTimeData.getVetoChargeArray();
-			timeArray           = chargeTimeData.getVetoTimeArray();
-			dualSiPMChargeArray = chargeTimeData.getDualSiPMVetoChargeArray();
-			dualSiPMTimeArray   = chargeTimeData.getDualSiPMVetoTimeArray();
-
-			if (chargeArray != null) {
-				chargeToEnergy();
-				for (int i = 0; i < totalEnergyArray.length; i++) {
-					if (inThisVeto(sectorArray[i], layerArray[i], channelArray[i])) {
-						if (totalEnergyArray[i] > 0) {
-							double scaleFactor = totalEnergyArray[i] / MathematicalConstants.UPPER_ENERGY_LIMIT;
-							try {
-								WorldGraphicsUtilities.drawWorldRectangle(g, container, _worldRectangle, new Color((int)(Math.ceil(scaleFactor * 255)), 0, (int)Math.ceil(255 - scaleFactor * 255)), getLineColor());
-							} catch (Exception e) {
-								WorldGraphicsUtilities.drawWorldRectangle(g, container, _worldRectangle, new Color(255, 0, 0), _style.getLineColor());
-							}
-						}
-					}
+		// The hits were converted to energy and indexed by veto when the event was decoded.
+		EnergyTimeData energyTimeData = EventManager.getInstance().getEnergyTimeData();
+		if (energyTimeData != null) {
+			HitIndex hitIndex = energyTimeData.getHitIndex();
+			for (int position = hitIndex.getVetoStart(_veto - 1); position < hitIndex.getVetoEnd(_veto - 1); position++) {
+				int i = hitIndex.getVetoHit(position);
+				if (energyTimeData.getVetoEnergy(i) > 0) {
+					hitColor = HitColor.getColor(energyTimeData.getVetoEnergy(i));
 				}
 			}
 		}
+		return hitColor;
 	}
 
 	/**
-	 * Converts charge-time information to energy-time information.
+	 * Returns the color of the veto in accumulated mode, which is the color of its relative occupancy.
+	 * 
+	 * @return The color of the relative occupancy.
 	 */
-	private void chargeToEnergy() {
-		if (_veto == 8 || _veto == 9 || _veto == 11 || _veto == 12) {
-			double leftTimeArray[] = new double[timeArray.length];
-			double rightTimeArray[] = new double[dualSiPMTimeArray.length];
-			for (int i = 0; i < timeArray.length; i++) {
-				leftTimeArray[i] = (timeArray[i] / leftTDCConversionFactor) - leftShift;
-			}
-			for (int i = 0; i < dualSiPMTimeArray.length; i++) {
-				rightTimeArray[i] = (dualSiPMTimeArray[i] / rightTDCConversionFactor) - rightShift;
-			}
-			double positionFromLeftArray[] = new double[chargeArray.length];
-			for (int i = 0; i < positionFromLeftArray.length; i++) {
-				positionFromLeftArray[i] = (effectiveVelocity * (leftTimeArray[i] - rightTimeArray[i]) + vetoLength) / 2;
-			}
-			double leftEnergyArray[] = new double[chargeArray.length];
-			double rightEnergyArray[] = new double[dualSiPMChargeArray.length];
-			for (int i = 0; i < leftEnergyArray.length; i++) {
-				leftEnergyArray[i] = chargeArray[i] * leftADCConversionFactor;
-			}
-			for (int i = 0; i < rightEnergyArray.length; i++) {
-				rightEnergyArray[i] = dualSiPMChargeArray[i] * rightADCConversionFactor;
-			}
-			totalEnergyArray = new double[leftEnergyArray.length];
-			totalTimeArray = new double[leftTimeArray.length];
-			for (int i = 0; i < totalEnergyArray.length; i++) {
-				double leftEnergyPrime = leftEnergyArray[i] * Math.exp(positionFromLeftArray[i] / attenuationLength);
-				double rightEnergyPrime = rightEnergyArray[i] * Math.exp((vetoLength - positionFromLeftArray[i]) / attenuationLength);
-				totalEnergyArray[i] = (leftEnergyPrime + rightEnergyPrime) / 2;
-				totalTimeArray[i] = (leftTimeArray[i] + rightTimeArray[i] - (vetoLength / effectiveVelocity)) / 2;
-			}
-		} else {
-			totalEnergyArray = new double[chargeArray.length];
-			totalTimeArray = new double[timeArray.length];
-			for (int i = 0; i < totalTimeArray.length; i++) {
-				totalTimeArray[i] = timeArray[i] / leftTDCConversionFactor;
-			}
-			for (int i = 0; i < totalEnergyArray.length; i++) {
-				totalEnergyArray[i] = chargeArray[i] * leftADCConversionFactor;
-			}
-		}
+	private Color getAccumulatedColor() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance().getSnapshot();
+		return AccumulatedItemDrawer.getColor(snapshot.getVetoRelativeOccupancy(_veto - 1));
 	}
 
 	/**
-	 * Returns true if the sector, layer, and channel combination is this veto, false otherwise.
+	 * Returns the label of the veto in accumulated mode, which is its mean hit energy.
 	 * 
-	 * @param sector The number of the sector.
-	 * @param layer The number of the layer (1 if the layer is interior or 2 if the layer is exterior).
-	 * @param channel The number of the channel.
-	 * @return true if the sector, layer, and channel combination is this veto, false otherwise.
+	 * @return The label of the veto.
 	 */
-	private boolean inThisVeto(int sector, int layer, int channel) {
-		switch (layer) {
-		case 1:
-			switch (channel) {
-			case 0:
-				return (1 == _veto);
-			case 1:
-				return (2 == _veto);
-			case 2:
-				return (3 == _veto);
-			case 3:
-				return (4 == _veto);
-			case 4:
-				return (5 == _veto);
-			case 5:
-				return (6 == _veto);
-			}
-			break;
-		case 2:
-			switch (channel) {
-			case 0:
-				return (7 == _veto);
-			case 1:
-				return (8 == _veto);
-			case 2:
-				return (9 == _veto);
-			case 3:
-				return (10 == _veto);
-			case 4:
-				return (11 == _veto);
-			case 5:
-				return (12 == _veto);
-			case 6:
-				return (13 == _veto);
-			case 7:
-				return (14 == _veto);
-			}
-			break;
+	private String getAccumulatedLabel() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance().getSnapshot();
+		return AccumulatedItemDrawer.getLabel(snapshot.getVetoMeanEnergy(_veto - 1));
+	}
+
+	/**
+	 * Returns the render state of the veto, which is the color it is filled with and, in accumulated mode, its
+	 * label.
+	 * 
+	 * @return The render state of the veto.
+	 */
+	@Override
+	public long getRenderState() {
+		if (AccumulatedItemDrawer.isAccumulatedMode(_view)) {
+			return AccumulatedItemDrawer.getRenderState(getAccumulatedColor(), getAccumulatedLabel());
 		}
-		return false;
+		Color hitColor = getHitColor();
+		return (hitColor == null) ? -1 : (hitColor.getRGB() & 0xffffffffL);
 	}
 
 	/**
-	 * Draws the accumulated mode hits.
+	 * Returns the world rectangle the veto is drawn in.
+	 * 
+	 * @return The world rectangle the veto is drawn in.
+	 */
+	@Override
+	public Rectangle2D.Double getRenderRectangle() {
+		return _worldRectangle;
+	}
+
+	/**
+	 * Draws the accumulated mode hits. The rectangle is already filled with the color of the relative
+	 * occupancy, so only the mean energy is drawn.
 	 * 
 	 * @param g The graphics context.
 	 * @param container The graphics container that is being rendered.
 	 */
-	private void accumulatedDrawItem(Graphics g, IContainer container) { }
+	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		g.setColor(Color.black);
+		AccumulatedItemDrawer.drawLabel(g, _lastDrawnPolygon, getAccumulatedLabel());
+	}
 
 	/**
 	 * Add any appropriate feedback strings for the heads-up display or feedback
@@ -363,7 +191,7 @@ public class FullSideViewVeto extends RectangleItem {
 			int vetoLayer = GetVetoLayer.getVetoLayer(_veto);
 			String feedbackString = "\n" + (vetoLayer == 1 ? "Crystal n." : (vetoLayer == 2 ? "Internal Veto n." : "External Veto n.")) + _veto + "\n";
 			feedbackStringList.add(feedbackString);
-			if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
+			if (!AccumulatedItemDrawer.isAccumulatedMode(_view)) {
 				singleEventFeedbackStrings(feedbackStringList);
 			} else {
 				accumulatedFeedbackStrings(feedbackStringList);
@@ -377,47 +205,46 @@ public class FullSideViewVeto extends RectangleItem {
 	}
 
 	/**
-	 * Collects the single event mode feedback strings.
+	 * Collects the single event mode feedback strings, and the live statistics of the veto.
 	 * 
 	 * @param feedbackStringList A list of feedback strings.
 	 */
 	private void singleEventFeedbackStrings(List<String> feedbackStringList) {
-		if (EventManager.getInstance().getChargeTimeData() != null) {
-			if (totalEnergyArray != null) {
-				int hits = 0;
-				double vetoEnergy = 0;
-				boolean hitArray[] = new boolean[totalEnergyArray.length];
-				for (int i = 0; i < totalEnergyArray.length; i++) {
-					if (inThisVeto(sectorArray[i], layerArray[i], channelArray[i])) {
-						if (totalEnergyArray[i] > 0) {
-							hits++;
-							vetoEnergy = vetoEnergy + totalEnergyArray[i];
-							hitArray[i] = true;
-						} else {
-							hitArray[i] = false;
-						}
-					} else {
-						hitArray[i] = false;
-					}
+		EnergyTimeData energyTimeData = EventManager.getInstance().getEnergyTimeData();
+		if (energyTimeData != null) {
+			int hits = 0;
+			double vetoEnergy = 0;
+			String timeFeedbackString = "";
+			HitIndex hitIndex = energyTimeData.getHitIndex();
+			for (int position = hitIndex.getVetoStart(_veto - 1); position < hitIndex.getVetoEnd(_veto - 1); position++) {
+				int i = hitIndex.getVetoHit(position);
+				if (energyTimeData.getVetoEnergy(i) > 0) {
+					hits++;
+					vetoEnergy = vetoEnergy + energyTimeData.getVetoEnergy(i);
+					timeFeedbackString = timeFeedbackString + "\nTime n." + hits + ": " + energyTimeData.getVetoTime(i) + " ns";
 				}
-				String eventFeedbackString = "$orange$" + "\nEnergy Deposited: " + vetoEnergy + " MeV\nNumber of Hits: " + hits;
-				int counter = 1;
-				for (int i = 0; i < hitArray.length; i++) {
-					if (hitArray[i]) {
-						eventFeedbackString = eventFeedbackString + "\nTime n." + counter + ": " + totalTimeArray[i] + " ns";
-					}
-				}
-				feedbackStringList.add(eventFeedbackString);
 			}
+			String eventFeedbackString = "$orange$" + "\nEnergy Deposited: " + vetoEnergy + " MeV\nNumber of Hits: " + hits + timeFeedbackString;
+			feedbackStringList.add(eventFeedbackString);
 		}
+		feedbackStringList.add(AccumulatedItemDrawer.getSketchFeedbackString(
+				AccumulationManager.getInstance().getElementSketchBank().getVetoSketch(_veto - 1)));
 	}
 
 	/**
-	 * Collects the accumulated mode feedback strings.
+	 * Collects the accumulated mode feedback strings, which are the hit count, occupancy and mean energy of the
+	 * veto.
 	 * 
 	 * @param feedbackStringList A list of feedback strings.
 	 */
-	private void accumulatedFeedbackStrings(List<String> feedbackStringList) { }
+	private void accumulatedFeedbackStrings(List<String> feedbackStringList) {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance().getSnapshot();
+		feedbackStringList.add("$orange$" + "Hits: " + snapshot.getVetoHitCount(_veto - 1) + " in " + snapshot.getEventCount()
+				+ " events\nOccupancy: " + DoubleFormat.doubleFormat(snapshot.getVetoOccupancy(_veto - 1), 3)
+				+ "\nMean Energy: " + DoubleFormat.doubleFormat(snapshot.getVetoMeanEnergy(_veto - 1), 2) + " MeV");
+		feedbackStringList.add(AccumulatedItemDrawer.getSketchFeedbackString(
+				AccumulationManager.getInstance().getElementSketchBank().getVetoSketch(_veto - 1)));
+	}
 	
 	/**
 	 * Returns the line color of the veto.
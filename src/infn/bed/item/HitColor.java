@@ -0,0 +1,40 @@
+package infn.bed.item;
+
+import infn.bed.math.MathematicalConstants;
+
+import java.awt.Color;
+
+/**
+ * Maps the energy of a hit to the color it is drawn with in single event mode.
+ *
+ * @author Angelo Licastro
+ */
+public class HitColor {
+
+	/**
+	 * The color of hits whose energy is above the upper energy limit.
+	 */
+	private static final Color SATURATED_COLOR = new Color(255, 0, 0);
+
+	/**
+	 * The constructor.
+	 */
+	private HitColor() {
+	}
+
+	/**
+	 * Returns the color of a hit. The color goes from blue to red as the energy goes up to the upper energy
+	 * limit, and stays red above it.
+	 *
+	 * @param energy The energy of the hit in MeV. It must be above 0.
+	 * @return The color of the hit.
+	 */
+	public static Color getColor(double energy) {
+		double scale = energy / MathematicalConstants.UPPER_ENERGY_LIMIT;
+		if (scale > 1) {
+			return SATURATED_COLOR;
+		}
+		return new Color((int) Math.ceil(scale * 255), 0, (int) Math.ceil(255 - scale * 255));
+	}
+
+}
@@ -0,0 +1,28 @@
+package infn.bed.item;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * An item whose drawing is determined by a render state, so a view only has to repaint it when its render
+ * state changes.
+ *
+ * @author Angelo Licastro
+ */
+public interface IRenderStateItem {
+
+	/**
+	 * Returns the render state of the item for the current event. Two calls return the same value if and only
+	 * if the item would be drawn the same way (barring hash collisions).
+	 *
+	 * @return The render state of the item.
+	 */
+	public long getRenderState();
+
+	/**
+	 * Returns the world rectangle the item is drawn in.
+	 *
+	 * @return The world rectangle the item is drawn in.
+	 */
+	public Rectangle2D.Double getRenderRectangle();
+
+}
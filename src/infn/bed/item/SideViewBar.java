@@ -1,11 +1,12 @@
 package infn.bed.item;
 
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.view.BarSideView;
 import infn.bed.event.ChargeTimeData;
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.EnergyTimeData;
 import infn.bed.event.EventManager;
-import infn.bed.math.MathematicalConstants;
-import infn.bed.view.BedView;
+import infn.bed.event.HitIndex;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -14,16 +15,13 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 
-import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.format.DoubleFormat;
 import cnuphys.bCNU.graphics.container.IContainer;
-import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
 import cnuphys.bCNU.item.RectangleItem;
 import cnuphys.bCNU.layer.LogicalLayer;
 import cnuphys.bCNU.log.Log;
@@ -38,7 +36,7 @@ import cnuphys.bCNU.util.Fonts;
  * @author Andy Beiter
  * 
  */
-public class SideViewBar extends RectangleItem {
+public class SideViewBar extends RectangleItem implements IRenderStateItem {
 
 	/**
 	 * Font for label text
@@ -50,106 +48,11 @@ public class SideViewBar extends RectangleItem {
 	 */
 	private int _bar;
 
-	/**
-	 * The array of the hit sectors (detectors)
-	 */
-	private int hitSectors[];
-
-	/**
-	 * The array of the hit layers (columns)
-	 */
-	private int hitLayers[];
-
-	/**
-	 * The array of the hit paddles (rows)
-	 */
-	private int hitPaddles[];
-
-	/**
-	 * The array of the charges from the left PMTs
-	 */
-	private int chargeLeft[];
-
-	/**
-	 * The array of the charges from the right PMTs
-	 */
-	private int chargeRight[];
-
-	/**
-	 * The array of the times from the left PMTs
-	 */
-	private int timeLeft[];
-
-	/**
-	 * The array of the times from the right PMTs
-	 */
-	private int timeRight[];
-
-	/**
-	 * The array of energies from each hit
-	 */
-	private double totalE[];
-
-	/**
-	 * The array of times from each hit
-	 */
-	private double totalT[];
-
-	/**
-	 * The effective speed of light in the bar
-	 */
-	private double v_eff;
-
-	/**
-	 * The charge-to-energy conversion factor for the left PMT for the bar
-	 */
-	private double A_left;
-
-	/**
-	 * The charge-to-energy conversion factor for the right PMT for the bar
-	 */
-	private double A_right;
-
-	/**
-	 * The attenuation length
-	 */
-	private double lambda;
-
-	/**
-	 * Time delay for the left PMT
-	 */
-	private double delta_left;
-
-	/**
-	 * Time delay for the right PMT
-	 */
-	private double delta_right;
-
-	/**
-	 * The tdc-to-time conversion factor for the left PMT for the bar
-	 */
-	private double tdcConvLeft;
-
-	/**
-	 * The tdc-to-time conversion factor for the right PMT for the bar
-	 */
-	private double tdcConvRight;
-
-	/**
-	 * The length of the bar
-	 */
-	private double length;
-
 	/**
 	 * The view this bar is in
 	 */
 	private BarSideView _view;
 
-	/**
-	 * Upper energy level (MeV) for color scaling
-	 */
-	private static final float upperEnergyScale = MathematicalConstants.UPPER_ENERGY_LIMIT;
-
 	/**
 	 * The rectangle the bar is drawn in
 	 */
@@ -181,25 +84,8 @@ public class SideViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Gets the calibration constants from a file and stores them
-	 * 
-	 * TODO change file for real constants
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "b", _bar);
-		v_eff = calibrationFileParser.getEffectiveVelocity();
-		A_left = calibrationFileParser.getLeftADCConversionFactor();
-		A_right = calibrationFileParser.getRightADCConversionFactor();
-		lambda = calibrationFileParser.getAttenuationLength();
-		delta_left = calibrationFileParser.getLeftShift();
-		delta_right = calibrationFileParser.getRightShift();
-		tdcConvLeft = calibrationFileParser.getLeftTDCConversionFactor();
-		tdcConvRight = calibrationFileParser.getRightTDCConversionFactor();
-		length = calibrationFileParser.getItemLength();
-	}
-
-	/**
-	 * Custom drawer for the bar.
+	 * Custom drawer for the bar. The rectangle is drawn once, in the color of
+	 * its hits or, in accumulated mode, of its relative occupancy.
 	 * 
 	 * @param g
 	 *            the graphics context.
@@ -208,181 +94,107 @@ public class SideViewBar extends RectangleItem {
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-
-		if (EventControl.getInstance().isAccumulating()) {
-			return;
+		boolean accumulated = AccumulatedItemDrawer.isAccumulatedMode(_view);
+		Color fillColor;
+		if (accumulated) {
+			fillColor = getAccumulatedColor();
+		} else {
+			fillColor = getHitColor();
 		}
-
-		super.drawItem(g, container); // draws rectangular shell
+		_style.setFillColor((fillColor == null) ? Color.white : fillColor);
+		super.drawItem(g, container); // draws the filled rectangle
 
 		g.setFont(labelFont);
 		g.setColor(Color.yellow);
-
-		if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
-			singleEventDrawItem(g, container);
-		} else {
+		if (accumulated) {
 			accumulatedDrawItem(g, container);
 		}
 
+		// just to make clean
 		g.setColor(_style.getLineColor());
 		g.drawPolygon(_lastDrawnPolygon);
 	}
 
 	/**
-	 * Draw in single event mode
+	 * Get the color of the bar in single event mode, which is the color of the
+	 * last hit with energy above 0.
 	 * 
-	 * @param g
-	 *            the graphics context
-	 * @param container
-	 *            the rendering container
+	 * @return the color of the last hit, or null if the bar has no hits
 	 */
-	private void singleEventDrawItem(Graphics g, IContainer container) {
-
-		// draw default, blank rectangle
-		WorldGraphicsUtilities.drawWorldRectangle(g, container,
-				_worldRectangle, Color.white, _style.getLineColor());
-
-		// get the data and make sure it's not null
-		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
-		if (ctData != null) {
-			hitSectors = ctData.getSectorArray();
-			hitLayers = ctData.getLayerArray();
-			hitPaddles = ctData.getPaddleArray();
-			chargeLeft = ctData.getLeftPMTChargeArray();
-			timeLeft = ctData.getLeftPMTTimeArray();
-			chargeRight = ctData.getRightPMTChargeArray();
-			timeRight = ctData.getRightPMTTimeArray();
-
-			// if we have hits
-			if (chargeLeft != null && chargeRight != null) {
-
-				// convert to energy
-				chargeToEnergy();
-
-				for (int i = 0; i < totalE.length; i++) {
+	private Color getHitColor() {
+		Color hitColor = null;
 
-					// if the hits are in this bar
-					if (inThisBar(hitSectors[i], hitLayers[i], hitPaddles[i])) {
+		// the hits were converted to energy and indexed by bar when the event was decoded
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (etData != null) {
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
 
-						// if the energy is above 0 (extra check)
-						if (totalE[i] > 0) {
-
-							// draw red rectangle
-							double scale = totalE[i] / upperEnergyScale;
-							try {
-								WorldGraphicsUtilities
-										.drawWorldRectangle(
-												g,
-												container,
-												_worldRectangle,
-												new Color(
-														(int) (Math
-																.ceil(scale * 255)),
-														0,
-														(int) Math
-																.ceil(255 - scale * 255)),
-												_style.getLineColor());
-							} catch (Exception e) {
-								WorldGraphicsUtilities.drawWorldRectangle(g,
-										container, _worldRectangle, new Color(
-												255, 0, 0), _style
-												.getLineColor());
-							}
-						}
-					}
+				// if the energy is above 0 (extra check)
+				if (etData.getBarEnergy(i) > 0) {
+					hitColor = HitColor.getColor(etData.getBarEnergy(i));
 				}
 			}
 		}
+		return hitColor;
 	}
 
 	/**
-	 * Converts the charge-time information to energy-time information
+	 * Get the color of the bar in accumulated mode, which is the color of its
+	 * relative occupancy.
+	 * 
+	 * @return the color of the relative occupancy
 	 */
-	private void chargeToEnergy() {
-		double t_l[] = new double[timeLeft.length];
-		double t_r[] = new double[timeRight.length];
-		// change tdc to time
-		for (int i = 0; i < timeLeft.length; i++) {
-			t_l[i] = (timeLeft[i] * 1.0 / tdcConvLeft) - delta_left;
-		}
-		for (int i = 0; i < timeRight.length; i++) {
-			t_r[i] = (timeRight[i] * 1.0 / tdcConvRight) - delta_right;
-		}
-		// get the position of the hit from the left side
-		double posFromLeft[] = new double[chargeLeft.length];
-		for (int i = 0; i < posFromLeft.length; i++) {
-			posFromLeft[i] = (v_eff * (t_l[i] - t_r[i]) + length) / 2.0;
-		}
-		// change charge to energy
-		double e_l[] = new double[chargeLeft.length];
-		double e_r[] = new double[chargeRight.length];
-		for (int i = 0; i < e_l.length; i++) {
-			e_l[i] = chargeLeft[i] * A_left;
-		}
-		for (int i = 0; i < e_r.length; i++) {
-			e_r[i] = chargeRight[i] * A_right;
-		}
-		totalE = new double[e_l.length];
-		totalT = new double[t_l.length];
-		for (int i = 0; i < totalE.length; i++) {
-			double e_l_prime = e_l[i] * Math.exp(posFromLeft[i] / lambda);
-			double e_r_prime = e_r[i]
-					* Math.exp((length - posFromLeft[i]) / lambda);
-			totalE[i] = (e_l_prime + e_r_prime) / 2;
-			totalT[i] = (t_l[i] + t_r[i] - (length / v_eff)) / 2.0;
-		}
+	private Color getAccumulatedColor() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		return AccumulatedItemDrawer.getColor(snapshot
+				.getBarRelativeOccupancy(_bar - 1));
 	}
 
 	/**
-	 * Checks if a given sector/layer/paddle is this bar
+	 * Get the label of the bar in accumulated mode, which is its mean hit
+	 * energy.
 	 * 
-	 * @param sector
-	 *            Which detector (currently not used)
-	 * @param layer
-	 *            Which column
-	 * @param paddle
-	 *            Which row
-	 * @return True if the s/l/p is this bar, false if not
+	 * @return the label of the bar
 	 */
-	private boolean inThisBar(int sector, int layer, int paddle) {
-		switch (layer) {
-		case 0:
-			switch (paddle) {
-			case 0:
-				return (7 == _bar);
-			case 1:
-				return (4 == _bar);
-			case 2:
-				return (1 == _bar);
-			}
-			break;
-		case 1:
-			switch (paddle) {
-			case 0:
-				return (8 == _bar);
-			case 1:
-				return (5 == _bar);
-			case 2:
-				return (2 == _bar);
-			}
-			break;
-		case 2:
-			switch (paddle) {
-			case 0:
-				return (9 == _bar);
-			case 1:
-				return (6 == _bar);
-			case 2:
-				return (3 == _bar);
-			}
+	private String getAccumulatedLabel() {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		return AccumulatedItemDrawer.getLabel(snapshot
+				.getBarMeanEnergy(_bar - 1));
+	}
+
+	/**
+	 * Get the render state of the bar, which is the color it is filled with
+	 * and, in accumulated mode, its label.
+	 * 
+	 * @return the render state of the bar
+	 */
+	@Override
+	public long getRenderState() {
+		if (AccumulatedItemDrawer.isAccumulatedMode(_view)) {
+			return AccumulatedItemDrawer.getRenderState(getAccumulatedColor(),
+					getAccumulatedLabel());
 		}
-		return false;
+		Color hitColor = getHitColor();
+		return (hitColor == null) ? -1 : (hitColor.getRGB() & 0xffffffffL);
 	}
 
 	/**
-	 * Draw hits in accumulated mode
+	 * Get the rectangle the bar is drawn in.
 	 * 
-	 * Currently unused
+	 * @return the rectangle the bar is drawn in
+	 */
+	@Override
+	public Rectangle2D.Double getRenderRectangle() {
+		return _worldRectangle;
+	}
+
+	/**
+	 * Draw hits in accumulated mode. The rectangle was already filled with the
+	 * color of the relative occupancy, so only the mean energy is drawn.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -390,6 +202,8 @@ public class SideViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		AccumulatedItemDrawer.drawLabel(g, _lastDrawnPolygon,
+				getAccumulatedLabel());
 	}
 
 	/**
@@ -421,7 +235,7 @@ public class SideViewBar extends RectangleItem {
 					+ DoubleFormat.doubleFormat(z, 1) + "cm";
 			feedbackStrings.add(rtp);
 
-			if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
+			if (!AccumulatedItemDrawer.isAccumulatedMode(_view)) {
 				singleEventFeedbackStrings(feedbackStrings);
 			} else {
 				accumulatedFeedbackStrings(feedbackStrings);
@@ -438,33 +252,45 @@ public class SideViewBar extends RectangleItem {
 	 *            The list of feedback strings
 	 */
 	private void singleEventFeedbackStrings(List<String> feedbackStrings) {
-		if (EventManager.getInstance().getChargeTimeData() != null) {
-			if (chargeLeft != null && chargeRight != null) {
-				String energyStr = "";
-				for (int i = 0; i < totalE.length; i++) {
-					if (inThisBar(hitSectors[i], hitLayers[i], hitPaddles[i])) {
-						if (totalE[i] > 0) {
-							energyStr += "$orange$" + "Left PMT Charge:  "
-									+ chargeLeft[i] + "\nLeft PMT Time:  "
-									+ timeLeft[i] + "\nRight PMT Charge:  "
-									+ chargeRight[i] + "\nRight PMT Time:  "
-									+ timeRight[i];
-						}
-					}
+		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
+		EnergyTimeData etData = EventManager.getInstance().getEnergyTimeData();
+		if (ctData != null && etData != null) {
+			// hit i of the energy-time data is row i of the charge-time data
+			String energyStr = "";
+			HitIndex hitIndex = etData.getHitIndex();
+			for (int position = hitIndex.getBarStart(_bar - 1); position < hitIndex.getBarEnd(_bar - 1); position++) {
+				int i = hitIndex.getBarHit(position);
+				if (etData.getBarEnergy(i) > 0) {
+					energyStr += "$orange$" + "Left PMT Charge:  "
+							+ ctData.getLeftPMTChargeArray()[i]
+							+ "\nLeft PMT Time:  "
+							+ ctData.getLeftPMTTimeArray()[i]
+							+ "\nRight PMT Charge:  "
+							+ ctData.getRightPMTChargeArray()[i]
+							+ "\nRight PMT Time:  "
+							+ ctData.getRightPMTTimeArray()[i];
 				}
-				feedbackStrings.add(energyStr);
 			}
+			feedbackStrings.add(energyStr);
 		}
 	}
 
 	/**
-	 * Get the feedback strings for accumulated mode
-	 * 
-	 * Currently unused
+	 * Get the feedback strings for accumulated mode. Displays the hit count,
+	 * occupancy and mean energy of the bar.
 	 * 
 	 * @param feedbackStrings
 	 *            The list of feedback strings
 	 */
 	private void accumulatedFeedbackStrings(List<String> feedbackStrings) {
+		AccumulationSnapshot snapshot = AccumulationManager.getInstance()
+				.getSnapshot();
+		feedbackStrings.add("$orange$" + "Hits:  "
+				+ snapshot.getBarHitCount(_bar - 1) + " in "
+				+ snapshot.getEventCount() + " events\nOccupancy:  "
+				+ DoubleFormat.doubleFormat(snapshot.getBarOccupancy(_bar - 1), 3)
+				+ "\nMean energy:  "
+				+ DoubleFormat.doubleFormat(snapshot.getBarMeanEnergy(_bar - 1), 2)
+				+ " MeV");
 	}
 }
@@ -0,0 +1,99 @@
+package infn.bed.math;
+
+/**
+ * A rate counter that weighs counts with an exponential decay, as a constant-memory stand-in for a sliding
+ * window.
+ *
+ * <p>
+ * A count that happened t seconds ago weighs exp(-t / tau), so the rate is the decayed sum divided by the
+ * time constant tau. Once the counts have been arriving for several time constants, a steady rate of r
+ * counts per second reads as r. Two counters with the same time constant are merged by decaying both to the
+ * same time and adding their sums.
+ * </p>
+ *
+ * <p>
+ * NOTE: A counter is not thread-safe.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class DecayedRate {
+
+	/**
+	 * The time constant in nanoseconds.
+	 */
+	private final double timeConstant;
+
+	/**
+	 * The decayed sum of the counts at the time of the last update.
+	 */
+	private double sum;
+
+	/**
+	 * The time of the last update in nanoseconds, as given by System.nanoTime(), which may be negative.
+	 */
+	private long updateTime = Long.MIN_VALUE;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param timeConstantSeconds The time constant (roughly the length of the window) in seconds.
+	 */
+	public DecayedRate(double timeConstantSeconds) {
+		timeConstant = timeConstantSeconds * 1e9;
+	}
+
+	/**
+	 * Returns the decayed sum at a time.
+	 *
+	 * @param time The time in nanoseconds.
+	 * @return The decayed sum at the time.
+	 */
+	private double sumAt(long time) {
+		if (sum == 0 || time <= updateTime) {
+			return sum;
+		}
+		return sum * Math.exp((updateTime - time) / timeConstant);
+	}
+
+	/**
+	 * Adds counts.
+	 *
+	 * @param counts The counts.
+	 * @param time The time of the counts in nanoseconds, as given by System.nanoTime().
+	 */
+	public void add(double counts, long time) {
+		sum = sumAt(time) + counts;
+		updateTime = Math.max(updateTime, time);
+	}
+
+	/**
+	 * Adds the counts of another counter.
+	 *
+	 * @param other A counter with the same time constant.
+	 */
+	public void merge(DecayedRate other) {
+		long time = Math.max(updateTime, other.updateTime);
+		sum = sumAt(time) + other.sumAt(time);
+		updateTime = time;
+	}
+
+	/**
+	 * Removes all counts.
+	 */
+	public void clear() {
+		sum = 0;
+		updateTime = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the rate at a time.
+	 *
+	 * @param time The time in nanoseconds, as given by System.nanoTime().
+	 * @return The rate in counts per second.
+	 */
+	public double getRate(long time) {
+		return sumAt(time) / timeConstant * 1e9;
+	}
+
+}
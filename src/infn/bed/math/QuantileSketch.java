@@ -0,0 +1,203 @@
+package infn.bed.math;
+
+import java.util.Arrays;
+
+/**
+ * A streaming quantile sketch with a relative accuracy guarantee, in the style of DDSketch.
+ *
+ * <p>
+ * Positive values are counted in logarithmic buckets whose bounds grow by a factor of gamma = (1 + a) / (1 -
+ * a), where a is the relative accuracy. Every value of a bucket is within a relative error a of the value the
+ * bucket stands for, so every quantile is too. The buckets cover a fixed range of values, so the memory of a
+ * sketch is constant no matter how many values are added. Values below the range (including 0 and negative
+ * values) are counted in a zero bucket, and values above the range in the highest bucket.
+ * </p>
+ *
+ * <p>
+ * Two sketches with the same parameters are merged by adding their bucket counts, so sketches filled on
+ * different threads can be combined exactly.
+ * </p>
+ *
+ * <p>
+ * NOTE: A sketch is not thread-safe.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class QuantileSketch {
+
+	/**
+	 * The relative accuracy.
+	 */
+	private final double relativeAccuracy;
+
+	/**
+	 * The lowest value that is not counted in the zero bucket.
+	 */
+	private final double minimumValue;
+
+	/**
+	 * The natural logarithm of the growth factor of the bucket bounds.
+	 */
+	private final double logGamma;
+
+	/**
+	 * The logarithmic index of the lowest bucket.
+	 */
+	private final int indexOffset;
+
+	/**
+	 * The count of each bucket.
+	 */
+	private final long[] bucketArray;
+
+	/**
+	 * The number of values below the lowest bucket.
+	 */
+	private long zeroCount;
+
+	/**
+	 * The number of values.
+	 */
+	private long count;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param relativeAccuracy The relative accuracy, between 0 and 1 (exclusive).
+	 * @param minimumValue The lowest value that is not counted in the zero bucket. It must be above 0.
+	 * @param maximumValue The highest value that is not counted in the highest bucket.
+	 */
+	public QuantileSketch(double relativeAccuracy, double minimumValue, double maximumValue) {
+		this.relativeAccuracy = relativeAccuracy;
+		this.minimumValue = minimumValue;
+		logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+		indexOffset = logIndexOf(minimumValue);
+		bucketArray = new long[logIndexOf(maximumValue) - indexOffset + 1];
+	}
+
+	/**
+	 * Returns the logarithmic index of the bucket of a positive value.
+	 *
+	 * @param value The value.
+	 * @return The logarithmic index.
+	 */
+	private int logIndexOf(double value) {
+		return (int) Math.ceil(Math.log(value) / logGamma);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value The value.
+	 */
+	public void add(double value) {
+		count++;
+		// written so that NaN is counted in the zero bucket
+		if (!(value >= minimumValue)) {
+			zeroCount++;
+			return;
+		}
+		int bucket = Math.min(bucketArray.length - 1, logIndexOf(value) - indexOffset);
+		bucketArray[bucket]++;
+	}
+
+	/**
+	 * Adds the values of another sketch.
+	 *
+	 * @param other A sketch with the same relative accuracy and range.
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.bucketArray.length != bucketArray.length || other.relativeAccuracy != relativeAccuracy
+				|| other.minimumValue != minimumValue) {
+			throw new IllegalArgumentException("The sketches have different parameters.");
+		}
+		for (int bucket = 0; bucket < bucketArray.length; bucket++) {
+			bucketArray[bucket] += other.bucketArray[bucket];
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void clear() {
+		Arrays.fill(bucketArray, 0);
+		zeroCount = 0;
+		count = 0;
+	}
+
+	/**
+	 * Returns the length of the state of the sketch, as written by getState().
+	 *
+	 * @return The length of the state.
+	 */
+	public int getStateLength() {
+		return bucketArray.length + 2;
+	}
+
+	/**
+	 * Writes the state of the sketch (the counts) to an array.
+	 *
+	 * @param state The array.
+	 * @param offset The offset the state is written at.
+	 */
+	public void getState(long[] state, int offset) {
+		state[offset] = count;
+		state[offset + 1] = zeroCount;
+		System.arraycopy(bucketArray, 0, state, offset + 2, bucketArray.length);
+	}
+
+	/**
+	 * Adds the values of a state written by getState() of a sketch with the same parameters.
+	 *
+	 * @param state The array holding the state.
+	 * @param offset The offset of the state.
+	 */
+	public void addState(long[] state, int offset) {
+		count += state[offset];
+		zeroCount += state[offset + 1];
+		for (int bucket = 0; bucket < bucketArray.length; bucket++) {
+			bucketArray[bucket] += state[offset + 2 + bucket];
+		}
+	}
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return The number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the estimate of a quantile. It is within the relative accuracy of the true quantile if the true
+	 * quantile is in the range of the sketch.
+	 *
+	 * @param quantile The quantile, between 0 and 1.
+	 * @return The estimate of the quantile, 0 if it is in the zero bucket, or NaN if the sketch is empty.
+	 */
+	public double getQuantile(double quantile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		// the rank of the value, counted from 0
+		long rank = (long) (quantile * (count - 1));
+		long seen = zeroCount;
+		if (rank < seen) {
+			return 0;
+		}
+		for (int bucket = 0; bucket < bucketArray.length; bucket++) {
+			seen += bucketArray[bucket];
+			if (rank < seen) {
+				// the value between the bounds of the bucket with the lowest relative error to both
+				return 2 * Math.exp((bucket + indexOffset) * logGamma) / (1 + Math.exp(logGamma));
+			}
+		}
+		// only reached if the counts were read while another thread was adding values
+		return 2 * Math.exp((bucketArray.length - 1 + indexOffset) * logGamma) / (1 + Math.exp(logGamma));
+	}
+
+}
@@ -6,34 +6,33 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
- * Parses a calibration file.
+ * Parses a calibration file into a CalibrationTable.
+ * 
+ * <p>
+ * NOTE: The file is read once. Each line is validated against the expected item (scintillator bar or veto) tag
+ * while its constants are parsed, so the table is only built if the whole file is valid.
+ * </p>
  * 
  * @author Angelo Licastro
  */
 public class CalibrationFileParser {
 	
 	/**
-	 * An instance of the File object.
-	 */
-	private final File file;
-	
-	/**
-	 * The item (scintillator bar or veto).
+	 * The number of calibration constants of an item (scintillator bar or veto).
 	 */
-	private final String item;
+	private static final int CONSTANTS = 9;
 	
 	/**
-	 * The item (scintillator bar or veto) identification number.
+	 * The file.
 	 */
-	private final int identificationNumber;
+	private final File file;
 	
 	/**
-	 * An ArrayList of item (scintillator bar or veto) tags.
+	 * The item (scintillator bar or veto) tags in the order of the calibration file.
 	 */
-	private final ArrayList<String> validationArrayList = new ArrayList<>();
+	private final String[] tagArray = new String[CalibrationTable.ITEMS];
 	
 	/**
 	 * The comment initializer.
@@ -46,86 +45,33 @@ public class CalibrationFileParser {
 	private final String delimiter = Character.toString((char)32);
 	
 	/**
-	 * The effective velocity.
-	 */
-	private double effectiveVelocity;
-	
-	/**
-	 * The left ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double leftADCConversionFactor;
-	
-	/**
-	 * The right ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double rightADCConversionFactor;
-	
-	/**
-	 * The attenuation length.
+	 * The calibration table.
 	 */
-	private double attenuationLength;
-	
-	/**
-	 * The left shift.
-	 */
-	private double leftShift;
-	
-	/**
-	 * The right shift.
-	 */
-	private double rightShift;
-	
-	/**
-	 * The left TDC (time-to-digital converter) conversion factor.
-	 */
-	private double leftTDCConversionFactor;
-	
-	/**
-	 * The right TDC (time-to-digital converter) conversion factor.
-	 */
-	private double rightTDCConversionFactor;
-	
-	/**
-	 * The item (scintillator bar or veto) length.
-	 */
-	private double itemLength;
+	private final CalibrationTable calibrationTable;
 	
 	/**
 	 * The constructor.
 	 * 
-	 * <p>
-	 * NOTE: The constructor must call _parseConfigurationFile(). Additionally, validation is not intrinsic to _parseConfigurationFile().
-	 * </p>
-	 * 
 	 * @param file The file to parse.
-	 * @param item The item name (b for scintillator bar or v for veto).
-	 * @param identificationNumber The identification number of the item.
-	 * @throws InvalidCalibrationFileException If _isValidCalibrationFile() returns false, an unchecked exception is thrown.
+	 * @throws IOException If the file cannot be read.
+	 * @throws InvalidCalibrationFileException If the file is not a valid calibration file, an unchecked exception is thrown.
 	 */
-	public CalibrationFileParser(File file, String item, int identificationNumber) {
+	public CalibrationFileParser(File file) throws IOException {
 		this.file = file;
-		this.item = item;
-		this.identificationNumber = identificationNumber;
-		_populateValidationArray();
-		if (_isValidCalibrationFile()) {
-			_parseCalibrationFile();
-		} else {
-			throw new InvalidCalibrationFileException();
-		}
+		_populateTagArray();
+		calibrationTable = _parseCalibrationFile();
 	}
 	
 	/**
-	 * Populates validationArrayList for use in _isValidCalibrationFile().
+	 * Populates tagArray.
 	 */
-	private void _populateValidationArray() {
-		for (int i = 1; i < GeometricConstants.BARS + 1; i++) {
-			validationArrayList.add("b" + i);
-		}
-		for (int i = 1; i < GeometricConstants.CRYSTALS + 1; i++) {
-			validationArrayList.add("v" + i);
+	private void _populateTagArray() {
+		int i = 0;
+		for (int bar = 1; bar < GeometricConstants.BARS + 1; bar++) {
+			tagArray[i++] = "b" + bar;
 		}
-		for (int i = 1 + GeometricConstants.CRYSTALS; i < GeometricConstants.VETOES + 1; i++) {
-			validationArrayList.add("v" + i);
+		for (int veto = 1; veto < GeometricConstants.VETOES + 1; veto++) {
+			tagArray[i++] = "v" + veto;
 		}
 	}
 	
@@ -140,154 +86,54 @@ public class CalibrationFileParser {
 	}
 	
 	/**
-	 * Validates the calibration file.
+	 * Parses the calibration file.
 	 * 
-	 * @return true if the calibration file is valid, false otherwise.
-	 */
-	private boolean _isValidCalibrationFile() {
-		try {
-			FileReader fileReader = new FileReader(file);
-			BufferedReader bufferedReader = new BufferedReader(fileReader);
-			int i = 0;
-			while (i < validationArrayList.size()) {
+	 * @return The calibration table.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private CalibrationTable _parseCalibrationFile() throws IOException {
+		double[][] constantArray = new double[CONSTANTS][CalibrationTable.ITEMS];
+		try (BufferedReader bufferedReader = new BufferedReader(new FileReader(file))) {
+			int item = 0;
+			int lineNumber = 0;
+			while (item < tagArray.length) {
 				String s = bufferedReader.readLine();
-				if (!s.startsWith(comment) && s.length() > 0) {
-					String tag = _format(s).split(delimiter)[0];
-					if (!(validationArrayList.get(i).equals(tag))) {
-						return false;
-					}
-					i++;
+				lineNumber++;
+				if (s == null) {
+					throw new InvalidCalibrationFileException(file.getName() + ": missing " + tagArray[item]);
 				}
-			}
-			bufferedReader.close();
-		} catch (NullPointerException e) {
-			throw new InvalidCalibrationFileException();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return true;
-	}
-	
-	/**
-	 * Parses the calibration file.
-	 */
-	private void _parseCalibrationFile() {
-		if (file == null || !file.exists()) {
-			// Oops. Something went wrong.
-		} else {
-			try {
-				FileReader fileReader = new FileReader(file);
-				BufferedReader bufferedReader = new BufferedReader(fileReader);
-				String tag = item + identificationNumber;
-				boolean found = false;
-				while (!found) {
-					String s = bufferedReader.readLine();
-					if (s == null) {
-						break;
-					} else {
-						if (!s.startsWith(comment) && s.length() > 0) {
-							String[] tokens = _format(s).split(delimiter);
-							if (tokens[0].equals(tag)) {
-								found = true;
-								effectiveVelocity        = Double.parseDouble(tokens[1]);
-								leftADCConversionFactor  = Double.parseDouble(tokens[2]);
-								rightADCConversionFactor = Double.parseDouble(tokens[3]);
-								attenuationLength        = Double.parseDouble(tokens[4]);
-								leftShift                = Double.parseDouble(tokens[5]);
-								rightShift               = Double.parseDouble(tokens[6]);
-								leftTDCConversionFactor  = Double.parseDouble(tokens[7]);
-								rightTDCConversionFactor = Double.parseDouble(tokens[8]);
-								itemLength               = Double.parseDouble(tokens[9]);
-								bufferedReader.close();
-							}
-						}
+				s = _format(s);
+				if (s.startsWith(comment) || s.length() == 0) {
+					continue;
+				}
+				String[] tokens = s.split(delimiter);
+				if (!tokens[0].equals(tagArray[item])) {
+					throw new InvalidCalibrationFileException(file.getName() + ":" + lineNumber + ": expected " + tagArray[item] + " but found " + tokens[0]);
+				}
+				if (tokens.length < CONSTANTS + 1) {
+					throw new InvalidCalibrationFileException(file.getName() + ":" + lineNumber + ": expected " + CONSTANTS + " constants");
+				}
+				for (int constant = 0; constant < CONSTANTS; constant++) {
+					try {
+						constantArray[constant][item] = Double.parseDouble(tokens[constant + 1]);
+					} catch (NumberFormatException e) {
+						throw new InvalidCalibrationFileException(file.getName() + ":" + lineNumber + ": invalid constant " + tokens[constant + 1]);
 					}
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
+				item++;
 			}
 		}
+		return new CalibrationTable(constantArray[0], constantArray[1], constantArray[2], constantArray[3],
+				constantArray[4], constantArray[5], constantArray[6], constantArray[7], constantArray[8]);
 	}
 	
 	/**
-	 * Returns the effective velocity.
-	 * 
-	 * @return effectiveVelocity The effective velocity;
-	 */
-	public double getEffectiveVelocity() {
-		return effectiveVelocity;
-	}
-	
-	/**
-	 * Returns the left ADC (analog-to-digital converter) conversion factor.
-	 * 
-	 * @return leftADCConversionFactor The left ADC (analog-to-digital converter) conversion factor.
-	 */
-	public double getLeftADCConversionFactor() {
-		return leftADCConversionFactor;
-	}
-	
-	/**
-	 * Returns the right ADC (analog-to-digital converter) conversion factor.
-	 * 
-	 * @return rightADCConversionFactor The right ADC (analog-to-digital converter) conversion factor.
-	 */
-	public double getRightADCConversionFactor() {
-		return rightADCConversionFactor;
-	}
-	
-	/**
-	 * Returns the attenuation length.
-	 * 
-	 * @return attenuationLength The attenuation length.
-	 */
-	public double getAttenuationLength() {
-		return attenuationLength;
-	}
-	
-	/**
-	 * Returns the left shift.
-	 * 
-	 * @return leftShift The left shift.
-	 */
-	public double getLeftShift() {
-		return leftShift;
-	}
-	
-	/**
-	 * Returns the right shift.
-	 * 
-	 * @return rightShift The right shift.
-	 */
-	public double getRightShift() {
-		return rightShift;
-	}
-	
-	/**
-	 * Returns the left TDC (time-to-digital converter) conversion factor.
-	 * 
-	 * @return leftTDCConversionFactor The left TDC (time-to-digital converter) conversion factor.
-	 */
-	public double getLeftTDCConversionFactor() {
-		return leftTDCConversionFactor;
-	}
-	
-	/**
-	 * Returns the right TDC (time-to-digital converter) conversion factor.
-	 * 
-	 * @return rightTDCConversionFactor The right TDC (time-to-digital converter) conversion factor.
-	 */
-	public double getRightTDCConversionFactor() {
-		return rightTDCConversionFactor;
-	}
-	
-	/**
-	 * Returns the item (scintillator bar or veto) length.
+	 * Returns the calibration table.
 	 * 
-	 * @return itemLength The item (scintillator bar or veto) length.
+	 * @return The calibration table.
 	 */
-	public double getItemLength() {
-		return itemLength;
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable;
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,298 @@
+package infn.bed.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Holds the calibration table shared by every item (scintillator bar or veto).
+ * 
+ * <p>
+ * NOTE: Calibration files are parsed on a background thread. The new table replaces the current one in a
+ * single atomic step once it has been parsed, so readers never see a partially loaded table and a reload never
+ * blocks the event dispatch thread.
+ * </p>
+ * 
+ * <p>
+ * Once a calibration file has been loaded, it is watched for changes and parsed again whenever it is written.
+ * Each valid file is published as a new version of the table. An invalid file is reported and the current
+ * version is kept, so a file that is being written is never used halfway.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class CalibrationManager {
+	
+	/**
+	 * The time in milliseconds to wait after the last change of the watched file before it is parsed again.
+	 * Editors usually write a file in several steps.
+	 */
+	private static final long RELOAD_DELAY_MILLISECONDS = 250;
+	
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static CalibrationManager instance;
+	
+	/**
+	 * The current calibration table.
+	 */
+	private final AtomicReference<CalibrationTable> calibrationTable = new AtomicReference<>(CalibrationTable.EMPTY);
+	
+	/**
+	 * The version of the last published calibration table.
+	 */
+	private final AtomicLong version = new AtomicLong();
+	
+	/**
+	 * The thread that parses calibration files.
+	 */
+	private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bed-calibration");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * The listeners that are told when the calibration table changes.
+	 */
+	private final List<ICalibrationListener> calibrationListenerList = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * The watch service of the watched file, or null if no file is watched.
+	 */
+	private WatchService watchService;
+	
+	/**
+	 * The watched file, or null if no file is watched.
+	 */
+	private File watchedFile;
+	
+	/**
+	 * The pending reload of the watched file, or null if there is none.
+	 */
+	private ScheduledFuture<?> pendingReload;
+	
+	/**
+	 * The constructor.
+	 */
+	private CalibrationManager() {
+	}
+	
+	/**
+	 * Returns the instance of this class.
+	 * 
+	 * @return The instance of this class.
+	 */
+	public static synchronized CalibrationManager getInstance() {
+		if (instance == null) {
+			instance = new CalibrationManager();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Returns the current calibration table.
+	 * 
+	 * @return The current calibration table. Every constant is 0 until a calibration file has been loaded.
+	 */
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable.get();
+	}
+	
+	/**
+	 * Parses a calibration file in the background and makes it the current calibration table if it is valid. If
+	 * it is not, the current calibration table is kept. A valid file is watched for changes from then on.
+	 * 
+	 * @param file The calibration file.
+	 * @return A future that completes with the new calibration table, or exceptionally with an IOException or
+	 * an InvalidCalibrationFileException.
+	 */
+	public CompletableFuture<CalibrationTable> load(final File file) {
+		final CompletableFuture<CalibrationTable> future = new CompletableFuture<>();
+		loader.execute(() -> {
+			try {
+				CalibrationTable newCalibrationTable = _parseAndPublish(file);
+				future.complete(newCalibrationTable);
+				try {
+					watch(file);
+				} catch (IOException e) {
+					Log.getInstance().warning("Cannot watch calibration file " + file.getName() + ", " + e.getMessage());
+				}
+			} catch (IOException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Parses a calibration file and publishes it as a new version of the calibration table.
+	 * 
+	 * @param file The calibration file.
+	 * @return The new calibration table.
+	 * @throws IOException If the file cannot be read.
+	 * @throws InvalidCalibrationFileException If the file is not a valid calibration file.
+	 */
+	private CalibrationTable _parseAndPublish(File file) throws IOException {
+		CalibrationTable newCalibrationTable = new CalibrationFileParser(file).getCalibrationTable().withVersion(version.incrementAndGet());
+		calibrationTable.set(newCalibrationTable);
+		_fireCalibrationChanged(newCalibrationTable);
+		return newCalibrationTable;
+	}
+	
+	/**
+	 * Watches a calibration file and reloads it whenever it changes. Only one file is watched at a time.
+	 * 
+	 * @param file The calibration file.
+	 * @throws IOException If the directory of the file cannot be watched.
+	 */
+	public synchronized void watch(File file) throws IOException {
+		stopWatching();
+		final Path path = file.getAbsoluteFile().toPath();
+		final WatchService newWatchService = path.getFileSystem().newWatchService();
+		path.getParent().register(newWatchService, ENTRY_CREATE, ENTRY_MODIFY);
+		watchService = newWatchService;
+		watchedFile = path.toFile();
+		Thread watchThread = new Thread(() -> _watch(newWatchService, path), "bed-calibration-watch");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+	
+	/**
+	 * Stops watching the watched file, if any.
+	 */
+	public synchronized void stopWatching() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			watchService = null;
+			watchedFile = null;
+		}
+		if (pendingReload != null) {
+			pendingReload.cancel(false);
+			pendingReload = null;
+		}
+	}
+	
+	/**
+	 * Returns the watched file.
+	 * 
+	 * @return The watched file, or null if no file is watched.
+	 */
+	public synchronized File getWatchedFile() {
+		return watchedFile;
+	}
+	
+	/**
+	 * Waits for changes of a watched file until its watch service is closed.
+	 * 
+	 * @param watchService The watch service.
+	 * @param path The path of the watched file.
+	 */
+	private void _watch(WatchService watchService, Path path) {
+		try {
+			while (true) {
+				WatchKey watchKey = watchService.take();
+				for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+					if (watchEvent.kind() == OVERFLOW || path.getFileName().equals(watchEvent.context())) {
+						_scheduleReload(watchService, path.toFile());
+					}
+				}
+				if (!watchKey.reset()) {
+					break;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped watching
+		}
+	}
+	
+	/**
+	 * Reloads the watched file once it has not changed for RELOAD_DELAY_MILLISECONDS.
+	 * 
+	 * @param changedWatchService The watch service that saw the change.
+	 * @param file The watched file.
+	 */
+	private synchronized void _scheduleReload(WatchService changedWatchService, final File file) {
+		if (changedWatchService != watchService) {
+			return;
+		}
+		if (pendingReload != null) {
+			pendingReload.cancel(false);
+		}
+		pendingReload = loader.schedule(() -> _reload(file), RELOAD_DELAY_MILLISECONDS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Reloads the watched file. If it is not valid, the current calibration table is kept.
+	 * 
+	 * @param file The watched file.
+	 */
+	private void _reload(File file) {
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			CalibrationTable newCalibrationTable = _parseAndPublish(file);
+			Log.getInstance().info("Reloaded calibration file " + file.getName() + " (version " + newCalibrationTable.getVersion() + ")");
+		} catch (IOException | InvalidCalibrationFileException e) {
+			Log.getInstance().warning("Kept calibration version " + getCalibrationTable().getVersion() + ", " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tells the listeners on the event dispatch thread that the calibration table has changed.
+	 * 
+	 * @param newCalibrationTable The new calibration table.
+	 */
+	private void _fireCalibrationChanged(final CalibrationTable newCalibrationTable) {
+		EventQueue.invokeLater(() -> {
+			for (ICalibrationListener calibrationListener : calibrationListenerList) {
+				calibrationListener.calibrationChanged(newCalibrationTable);
+			}
+		});
+	}
+	
+	/**
+	 * Adds a listener that is told when the calibration table changes.
+	 * 
+	 * @param calibrationListener The listener to add.
+	 */
+	public void addCalibrationListener(ICalibrationListener calibrationListener) {
+		calibrationListenerList.add(calibrationListener);
+	}
+	
+	/**
+	 * Removes a calibration listener.
+	 * 
+	 * @param calibrationListener The listener to remove.
+	 */
+	public void removeCalibrationListener(ICalibrationListener calibrationListener) {
+		calibrationListenerList.remove(calibrationListener);
+	}
+	
+}
@@ -0,0 +1,283 @@
+package infn.bed.util;
+
+import infn.bed.geometry.GeometricConstants;
+
+/**
+ * An immutable table of the calibration constants of every item (scintillator bar or veto).
+ * 
+ * <p>
+ * NOTE: The constants are kept in one primitive array per constant, indexed by item. The scintillator bars come
+ * first, followed by the vetoes, in the order of the calibration file. Use getBarIndex() and getVetoIndex() to
+ * find the index of an item.
+ * </p>
+ * 
+ * <p>
+ * Every table published by the CalibrationManager has its own version, so a decoded event can tell which
+ * calibration it was reconstructed with.
+ * </p>
+ * 
+ * @author Angelo Licastro
+ */
+public class CalibrationTable {
+	
+	/**
+	 * The number of items (scintillator bars and vetoes).
+	 */
+	public static final int ITEMS = GeometricConstants.BARS + GeometricConstants.VETOES;
+	
+	/**
+	 * The table used before a calibration file has been loaded. Every constant is 0.
+	 */
+	public static final CalibrationTable EMPTY = new CalibrationTable(new double[ITEMS], new double[ITEMS], new double[ITEMS],
+			new double[ITEMS], new double[ITEMS], new double[ITEMS], new double[ITEMS], new double[ITEMS], new double[ITEMS]);
+	
+	/**
+	 * The version of the table. The empty table and newly parsed tables have version 0.
+	 */
+	private final long version;
+	
+	/**
+	 * The effective velocity of each item.
+	 */
+	private final double[] effectiveVelocityArray;
+	
+	/**
+	 * The left ADC (analog-to-digital converter) conversion factor of each item.
+	 */
+	private final double[] leftADCConversionFactorArray;
+	
+	/**
+	 * The right ADC (analog-to-digital converter) conversion factor of each item.
+	 */
+	private final double[] rightADCConversionFactorArray;
+	
+	/**
+	 * The attenuation length of each item.
+	 */
+	private final double[] attenuationLengthArray;
+	
+	/**
+	 * The left shift of each item.
+	 */
+	private final double[] leftShiftArray;
+	
+	/**
+	 * The right shift of each item.
+	 */
+	private final double[] rightShiftArray;
+	
+	/**
+	 * The left TDC (time-to-digital converter) conversion factor of each item.
+	 */
+	private final double[] leftTDCConversionFactorArray;
+	
+	/**
+	 * The right TDC (time-to-digital converter) conversion factor of each item.
+	 */
+	private final double[] rightTDCConversionFactorArray;
+	
+	/**
+	 * The length of each item.
+	 */
+	private final double[] itemLengthArray;
+	
+	/**
+	 * The constructor. The arrays are not copied, so they must not be modified afterwards.
+	 * 
+	 * @param effectiveVelocityArray The effective velocity of each item.
+	 * @param leftADCConversionFactorArray The left ADC (analog-to-digital converter) conversion factor of each item.
+	 * @param rightADCConversionFactorArray The right ADC (analog-to-digital converter) conversion factor of each item.
+	 * @param attenuationLengthArray The attenuation length of each item.
+	 * @param leftShiftArray The left shift of each item.
+	 * @param rightShiftArray The right shift of each item.
+	 * @param leftTDCConversionFactorArray The left TDC (time-to-digital converter) conversion factor of each item.
+	 * @param rightTDCConversionFactorArray The right TDC (time-to-digital converter) conversion factor of each item.
+	 * @param itemLengthArray The length of each item.
+	 */
+	CalibrationTable(double[] effectiveVelocityArray, double[] leftADCConversionFactorArray, double[] rightADCConversionFactorArray,
+			double[] attenuationLengthArray, double[] leftShiftArray, double[] rightShiftArray,
+			double[] leftTDCConversionFactorArray, double[] rightTDCConversionFactorArray, double[] itemLengthArray) {
+		this(0, effectiveVelocityArray, leftADCConversionFactorArray, rightADCConversionFactorArray, attenuationLengthArray,
+				leftShiftArray, rightShiftArray, leftTDCConversionFactorArray, rightTDCConversionFactorArray, itemLengthArray);
+	}
+	
+	/**
+	 * The constructor. The arrays are not copied, so they must not be modified afterwards.
+	 * 
+	 * @param version The version of the table.
+	 * @param effectiveVelocityArray The effective velocity of each item.
+	 * @param leftADCConversionFactorArray The left ADC (analog-to-digital converter) conversion factor of each item.
+	 * @param rightADCConversionFactorArray The right ADC (analog-to-digital converter) conversion factor of each item.
+	 * @param attenuationLengthArray The attenuation length of each item.
+	 * @param leftShiftArray The left shift of each item.
+	 * @param rightShiftArray The right shift of each item.
+	 * @param leftTDCConversionFactorArray The left TDC (time-to-digital converter) conversion factor of each item.
+	 * @param rightTDCConversionFactorArray The right TDC (time-to-digital converter) conversion factor of each item.
+	 * @param itemLengthArray The length of each item.
+	 */
+	private CalibrationTable(long version, double[] effectiveVelocityArray, double[] leftADCConversionFactorArray,
+			double[] rightADCConversionFactorArray, double[] attenuationLengthArray, double[] leftShiftArray, double[] rightShiftArray,
+			double[] leftTDCConversionFactorArray, double[] rightTDCConversionFactorArray, double[] itemLengthArray) {
+		this.version = version;
+		this.effectiveVelocityArray = effectiveVelocityArray;
+		this.leftADCConversionFactorArray = leftADCConversionFactorArray;
+		this.rightADCConversionFactorArray = rightADCConversionFactorArray;
+		this.attenuationLengthArray = attenuationLengthArray;
+		this.leftShiftArray = leftShiftArray;
+		this.rightShiftArray = rightShiftArray;
+		this.leftTDCConversionFactorArray = leftTDCConversionFactorArray;
+		this.rightTDCConversionFactorArray = rightTDCConversionFactorArray;
+		this.itemLengthArray = itemLengthArray;
+	}
+	
+	/**
+	 * Returns a table with the same constants and another version. The arrays are shared.
+	 * 
+	 * @param version The version of the new table.
+	 * @return The table with the given version.
+	 */
+	CalibrationTable withVersion(long version) {
+		return new CalibrationTable(version, effectiveVelocityArray, leftADCConversionFactorArray, rightADCConversionFactorArray,
+				attenuationLengthArray, leftShiftArray, rightShiftArray, leftTDCConversionFactorArray, rightTDCConversionFactorArray,
+				itemLengthArray);
+	}
+	
+	/**
+	 * Returns the version of the table.
+	 * 
+	 * @return The version of the table, or 0 if it has not been published by the CalibrationManager.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns a hash of the constants of the table, which unlike the version is the same from run to run for
+	 * the same constants. It tells whether data reconstructed with another table, for example in an event
+	 * index file, is still valid.
+	 * 
+	 * @return The hash of the constants.
+	 */
+	public long getContentHash() {
+		long hash = 1;
+		for (double[] array : new double[][] { effectiveVelocityArray, leftADCConversionFactorArray,
+				rightADCConversionFactorArray, attenuationLengthArray, leftShiftArray, rightShiftArray,
+				leftTDCConversionFactorArray, rightTDCConversionFactorArray, itemLengthArray }) {
+			for (double value : array) {
+				hash = 31 * hash + Double.doubleToLongBits(value);
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Returns the index of a scintillator bar.
+	 * 
+	 * @param bar The number of the scintillator bar in one-based indexing.
+	 * @return The index of the scintillator bar.
+	 */
+	public static int getBarIndex(int bar) {
+		return bar - 1;
+	}
+	
+	/**
+	 * Returns the index of a veto.
+	 * 
+	 * @param veto The number of the veto in one-based indexing.
+	 * @return The index of the veto.
+	 */
+	public static int getVetoIndex(int veto) {
+		return GeometricConstants.BARS + veto - 1;
+	}
+	
+	/**
+	 * Returns the effective velocity of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The effective velocity.
+	 */
+	public double getEffectiveVelocity(int index) {
+		return effectiveVelocityArray[index];
+	}
+	
+	/**
+	 * Returns the left ADC (analog-to-digital converter) conversion factor of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The left ADC (analog-to-digital converter) conversion factor.
+	 */
+	public double getLeftADCConversionFactor(int index) {
+		return leftADCConversionFactorArray[index];
+	}
+	
+	/**
+	 * Returns the right ADC (analog-to-digital converter) conversion factor of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The right ADC (analog-to-digital converter) conversion factor.
+	 */
+	public double getRightADCConversionFactor(int index) {
+		return rightADCConversionFactorArray[index];
+	}
+	
+	/**
+	 * Returns the attenuation length of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The attenuation length.
+	 */
+	public double getAttenuationLength(int index) {
+		return attenuationLengthArray[index];
+	}
+	
+	/**
+	 * Returns the left shift of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The left shift.
+	 */
+	public double getLeftShift(int index) {
+		return leftShiftArray[index];
+	}
+	
+	/**
+	 * Returns the right shift of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The right shift.
+	 */
+	public double getRightShift(int index) {
+		return rightShiftArray[index];
+	}
+	
+	/**
+	 * Returns the left TDC (time-to-digital converter) conversion factor of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The left TDC (time-to-digital converter) conversion factor.
+	 */
+	public double getLeftTDCConversionFactor(int index) {
+		return leftTDCConversionFactorArray[index];
+	}
+	
+	/**
+	 * Returns the right TDC (time-to-digital converter) conversion factor of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The right TDC (time-to-digital converter) conversion factor.
+	 */
+	public double getRightTDCConversionFactor(int index) {
+		return rightTDCConversionFactorArray[index];
+	}
+	
+	/**
+	 * Returns the length of an item.
+	 * 
+	 * @param index The index of the item.
+	 * @return The length.
+	 */
+	public double getItemLength(int index) {
+		return itemLengthArray[index];
+	}
+	
+}
@@ -0,0 +1,17 @@
+package infn.bed.util;
+
+/**
+ * Listens for changes of the calibration table.
+ * 
+ * @author Angelo Licastro
+ */
+public interface ICalibrationListener {
+	
+	/**
+	 * The calibration table has changed. This is always called on the event dispatch thread.
+	 * 
+	 * @param calibrationTable The new calibration table.
+	 */
+	public void calibrationChanged(CalibrationTable calibrationTable);
+	
+}
@@ -15,4 +15,13 @@ public class InvalidCalibrationFileException extends RuntimeException {
 		super();
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * The constructor.
+	 * 
+	 * @param message The reason the calibration file is invalid.
+	 */
+	public InvalidCalibrationFileException(String message) {
+		super(message);
+	}
+	
+}
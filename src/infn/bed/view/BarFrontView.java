@@ -204,6 +204,8 @@ public class BarFrontView extends BedView {
 		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
 			_superLayerItems[bar] = new FrontViewBar(detectorLayer, this,
 					_barWorldRects[bar], bar);
+
+			getRenderScheduler().addItem(_superLayerItems[bar]);
 		}
 	}
 
@@ -254,6 +254,8 @@ public class BarSideView extends BedView {
 		for (int bar = 0; bar < GeometricConstants.BARS; bar++) {
 			_superLayerItems[bar] = new SideViewBar(detectorLayer, this,
 					_barWorldRects[bar], bar);
+
+			getRenderScheduler().addItem(_superLayerItems[bar]);
 		}
 	}
 
@@ -1,6 +1,15 @@
 package infn.bed.view;
 
 import infn.bed.component.ControlPanel;
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.DecodedEvent;
+import infn.bed.event.EventManager;
+import infn.bed.event.IAccumulationListener;
+import infn.bed.event.IDecodedEventListener;
+import infn.bed.util.CalibrationManager;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.ICalibrationListener;
 
 import java.awt.Point;
 import java.awt.event.ActionListener;
@@ -11,8 +20,6 @@ import java.awt.geom.Point2D;
 
 import javax.swing.Timer;
 
-import org.jlab.coda.jevio.EvioEvent;
-
 import cnuphys.bCNU.component.InfoWindow;
 import cnuphys.bCNU.component.TranslucentWindow;
 import cnuphys.bCNU.event.EventControl;
@@ -26,13 +33,18 @@ import cnuphys.bCNU.view.EventDisplayView;
  * @author Angelo Licastro
  */
 @SuppressWarnings("serial")
-public abstract class BedView extends EventDisplayView {
+public abstract class BedView extends EventDisplayView implements IDecodedEventListener, ICalibrationListener, IAccumulationListener {
 
 	/**
 	 * An instance of the ControlPanel object.
 	 */
 	protected ControlPanel _controlPanel;
 
+	/**
+	 * Coalesces the repaints of the view and repaints only the items that changed.
+	 */
+	private final RenderScheduler _renderScheduler;
+
 	/**
 	 * The hovering check threshold.
 	 */
@@ -55,12 +67,17 @@ public abstract class BedView extends EventDisplayView {
 	 */
 	public BedView(Object... args) {
 		super(args);
+		_renderScheduler = new RenderScheduler(getContainer(), RenderScheduler.DEFAULT_FRAMES_PER_SECOND);
 		createHeartbeat();
 		prepareForHovering();
+		EventManager.getInstance().addDecodedEventListener(this);
+		CalibrationManager.getInstance().addCalibrationListener(this);
+		AccumulationManager.getInstance().addAccumulationListener(this);
 	}
 
 	/**
-	 * Checks if the hovering event exceeds the hovering check threshold and the minimum hovering trigger.
+	 * Checks if the hovering event exceeds the hovering check threshold and the minimum hovering trigger, and
+	 * updates the render statistics of the control panel.
 	 */
 	private void ping() {
 		long minimumHoveringTrigger = 1000;
@@ -70,10 +87,14 @@ public abstract class BedView extends EventDisplayView {
 				hoveringCheckThreshold = -1;
 			}
 		}
+		if (_controlPanel != null) {
+			_controlPanel.setRenderStatistics(_renderScheduler.getFramesPerSecond(), _renderScheduler.getSkippedCount(),
+					EventManager.getInstance().getReadAheadCache().getHitRate());
+		}
 	}
 
 	/**
-	 * Creates a heartbeat to check for hovering.
+	 * Creates a heartbeat to check for hovering and to update the render statistics.
 	 */
 	private void createHeartbeat() {
 		int delay = 1000;
@@ -178,22 +199,51 @@ public abstract class BedView extends EventDisplayView {
 	public abstract int getSector(Point2D.Double worldPoint);
 
 	/**
-	 * A new event has arrived from jevio. This is called by the generic
-	 * EventContol object. By the time we get here any detector specific parsing
-	 * on this event should be done, provided you haven't put the detector
-	 * specific parsing in a separate thread. This is the actual event not a
-	 * copy so it should not be modified.
+	 * The event pipeline has rendered a new decoded event. This is called on
+	 * the event dispatch thread. The detector specific decoding of a new jevio
+	 * event is done in the event pipeline, so the view is repainted here
+	 * instead of in newPhysicsEvent().
 	 * 
-	 * @param event A new JEVIO event.
+	 * @param event The new current event.
 	 */
 	@Override
-	public void newPhysicsEvent(final EvioEvent event) {
-		super.newPhysicsEvent(event);
+	public void newDecodedEvent(DecodedEvent event) {
 		if (!EventControl.getInstance().isAccumulating()) {
-			getUserComponent().repaint();
+			_renderScheduler.requestRepaint();
 		}
 	}
 
+	/**
+	 * A new calibration table is in use, so the energies of the current event
+	 * have changed. This is called on the event dispatch thread.
+	 * 
+	 * @param calibrationTable The new calibration table.
+	 */
+	@Override
+	public void calibrationChanged(CalibrationTable calibrationTable) {
+		_renderScheduler.requestFullRepaint();
+	}
+
+	/**
+	 * The snapshot of the accumulated data has been refreshed. Only the items whose accumulated color or label
+	 * changed are repainted.
+	 * 
+	 * @param snapshot The new snapshot.
+	 */
+	@Override
+	public void accumulationChanged(AccumulationSnapshot snapshot) {
+		_renderScheduler.requestRepaint();
+	}
+
+	/**
+	 * Returns the render scheduler of the view. Subclasses add their items to it.
+	 * 
+	 * @return The render scheduler of the view.
+	 */
+	public RenderScheduler getRenderScheduler() {
+		return _renderScheduler;
+	}
+
 	/**
 	 * Creates a hovering window.
 	 * 
@@ -391,10 +391,12 @@ public class FullSideView extends BedView {
 
 		for (int bar = 0; bar < _barWorldRectanglesArrayList.size(); bar++) {
 			_superLayerBars[bar] = new FullSideViewBar(detectorLayer, this, _barWorldRectanglesArrayList.get(bar), bar);
+			getRenderScheduler().addItem(_superLayerBars[bar]);
 		}
 		
 		for (int veto = 0; veto < _vetoWorldRectanglesArrayList.size(); veto++) {
 			_superLayerVetoes[veto] = new FullSideViewVeto(detectorLayer, this, _vetoWorldRectanglesArrayList.get(veto), veto);
+			getRenderScheduler().addItem(_superLayerVetoes[veto]);
 		}
 	}
 
@@ -0,0 +1,300 @@
+package infn.bed.view;
+
+import infn.bed.item.IRenderStateItem;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import cnuphys.bCNU.graphics.container.IContainer;
+
+/**
+ * Coalesces the repaints of a view to a target frame rate and repaints only the items whose render state
+ * changed.
+ *
+ * <p>
+ * Repaint requests that arrive while a frame is pending are merged into that frame and counted as skipped.
+ * When the frame runs, the render state of every item is compared with the state it was last painted in,
+ * and only the union of the changed items (old and new rectangles) is repainted.
+ * </p>
+ *
+ * <p>
+ * NOTE: The scheduler must only be used on the Swing event dispatch thread.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class RenderScheduler {
+
+	/**
+	 * The default target frame rate.
+	 */
+	public static final int DEFAULT_FRAMES_PER_SECOND = 30;
+
+	/**
+	 * The time in milliseconds over which the achieved frame rate is measured.
+	 */
+	private static final long MEASUREMENT_MILLISECONDS = 1000;
+
+	/**
+	 * The number of pixels a dirty region is grown by, so thick item borders are repainted too.
+	 */
+	private static final int BORDER = 3;
+
+	/**
+	 * The container of the view.
+	 */
+	private final IContainer container;
+
+	/**
+	 * The items whose render state is tracked.
+	 */
+	private final List<TrackedItem> trackedItems = new ArrayList<>();
+
+	/**
+	 * Runs the pending frame.
+	 */
+	private final Timer frameTimer;
+
+	/**
+	 * The minimum time in milliseconds between two frames.
+	 */
+	private int frameMilliseconds;
+
+	/**
+	 * true if a frame has been scheduled but has not run yet.
+	 */
+	private boolean framePending;
+
+	/**
+	 * true if the pending frame must repaint the whole view.
+	 */
+	private boolean fullRepaintPending;
+
+	/**
+	 * The time in milliseconds the last frame ran.
+	 */
+	private long lastFrameTime;
+
+	/**
+	 * The number of repaint requests that were merged into a pending frame.
+	 */
+	private long skippedCount;
+
+	/**
+	 * The time in milliseconds the current measurement of the frame rate started.
+	 */
+	private long measurementStartTime;
+
+	/**
+	 * The number of frames since the current measurement of the frame rate started.
+	 */
+	private int measurementFrames;
+
+	/**
+	 * The frame rate achieved in the last measurement.
+	 */
+	private double framesPerSecond;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param container The container of the view.
+	 * @param targetFramesPerSecond The target frame rate.
+	 */
+	public RenderScheduler(IContainer container, int targetFramesPerSecond) {
+		this.container = container;
+		setTargetFramesPerSecond(targetFramesPerSecond);
+		frameTimer = new Timer(frameMilliseconds, event -> frame());
+		frameTimer.setRepeats(false);
+	}
+
+	/**
+	 * Adds an item whose render state is tracked.
+	 *
+	 * @param item The item.
+	 */
+	public void addItem(IRenderStateItem item) {
+		trackedItems.add(new TrackedItem(item));
+	}
+
+	/**
+	 * Requests a repaint of the items whose render state changed, for example because a new event arrived.
+	 */
+	public void requestRepaint() {
+		schedule();
+	}
+
+	/**
+	 * Requests a repaint of the whole view, for example because the calibration changed.
+	 */
+	public void requestFullRepaint() {
+		fullRepaintPending = true;
+		schedule();
+	}
+
+	/**
+	 * Schedules a frame, unless one is already pending.
+	 */
+	private void schedule() {
+		if (framePending) {
+			skippedCount++;
+			return;
+		}
+		framePending = true;
+		long delay = lastFrameTime + frameMilliseconds - System.currentTimeMillis();
+		frameTimer.setInitialDelay((int) Math.max(0, Math.min(delay, frameMilliseconds)));
+		frameTimer.restart();
+	}
+
+	/**
+	 * Runs a frame. Repaints the union of the rectangles of the items whose render state changed.
+	 */
+	private void frame() {
+		framePending = false;
+		long now = System.currentTimeMillis();
+		Rectangle dirtyRegion = null;
+		for (TrackedItem trackedItem : trackedItems) {
+			long renderState = trackedItem.item.getRenderState();
+			if (!fullRepaintPending && trackedItem.paintedRectangle != null && renderState == trackedItem.paintedState) {
+				continue;
+			}
+			Rectangle2D.Double renderRectangle = new Rectangle2D.Double();
+			renderRectangle.setRect(trackedItem.item.getRenderRectangle());
+			dirtyRegion = union(dirtyRegion, toLocal(renderRectangle));
+			// the item may have been drawn somewhere else before
+			if (trackedItem.paintedRectangle != null) {
+				dirtyRegion = union(dirtyRegion, toLocal(trackedItem.paintedRectangle));
+			}
+			trackedItem.paintedState = renderState;
+			trackedItem.paintedRectangle = renderRectangle;
+		}
+		if (fullRepaintPending) {
+			fullRepaintPending = false;
+			container.getComponent().repaint();
+		} else if (dirtyRegion != null) {
+			container.getComponent().repaint(dirtyRegion.x, dirtyRegion.y, dirtyRegion.width, dirtyRegion.height);
+		}
+		countFrame(now);
+	}
+
+	/**
+	 * Counts a frame towards the achieved frame rate.
+	 *
+	 * @param now The time in milliseconds the frame ran.
+	 */
+	private void countFrame(long now) {
+		// an idle period must not lower the rate measured once frames resume
+		if (now - lastFrameTime > MEASUREMENT_MILLISECONDS) {
+			measurementStartTime = now;
+			measurementFrames = 0;
+		}
+		lastFrameTime = now;
+		measurementFrames++;
+		long elapsed = now - measurementStartTime;
+		if (elapsed >= MEASUREMENT_MILLISECONDS) {
+			framesPerSecond = measurementFrames * 1000.0 / elapsed;
+			measurementStartTime = now;
+			measurementFrames = 0;
+		}
+	}
+
+	/**
+	 * Converts a world rectangle to a local rectangle, grown by the border.
+	 *
+	 * @param worldRectangle The world rectangle.
+	 * @return The local rectangle.
+	 */
+	private Rectangle toLocal(Rectangle2D.Double worldRectangle) {
+		Rectangle localRectangle = new Rectangle();
+		container.worldToLocal(localRectangle, worldRectangle);
+		localRectangle.grow(BORDER, BORDER);
+		return localRectangle;
+	}
+
+	/**
+	 * Returns the union of two rectangles.
+	 *
+	 * @param rectangle A rectangle, or null.
+	 * @param other Another rectangle.
+	 * @return The union of the rectangles.
+	 */
+	private static Rectangle union(Rectangle rectangle, Rectangle other) {
+		return (rectangle == null) ? other : rectangle.union(other);
+	}
+
+	/**
+	 * Returns the target frame rate.
+	 *
+	 * @return The target frame rate.
+	 */
+	public int getTargetFramesPerSecond() {
+		return 1000 / frameMilliseconds;
+	}
+
+	/**
+	 * Sets the target frame rate.
+	 *
+	 * @param targetFramesPerSecond The target frame rate. It must be above 0.
+	 */
+	public void setTargetFramesPerSecond(int targetFramesPerSecond) {
+		frameMilliseconds = Math.max(1, 1000 / targetFramesPerSecond);
+	}
+
+	/**
+	 * Returns the frame rate achieved in the last second.
+	 *
+	 * @return The frame rate achieved in the last second, or 0 if no frame ran in the last second.
+	 */
+	public double getFramesPerSecond() {
+		if (System.currentTimeMillis() - lastFrameTime > MEASUREMENT_MILLISECONDS) {
+			return 0;
+		}
+		return framesPerSecond;
+	}
+
+	/**
+	 * Returns the number of repaint requests that were merged into a pending frame. Each of them is an event
+	 * that was never drawn on its own.
+	 *
+	 * @return The number of repaint requests that were merged into a pending frame.
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * An item together with the render state and world rectangle it was last painted with.
+	 */
+	private static class TrackedItem {
+
+		/**
+		 * The item.
+		 */
+		private final IRenderStateItem item;
+
+		/**
+		 * The render state the item was last painted with.
+		 */
+		private long paintedState;
+
+		/**
+		 * The world rectangle the item was last painted in, or null if it has not been painted yet.
+		 */
+		private Rectangle2D.Double paintedRectangle;
+
+		/**
+		 * The constructor.
+		 *
+		 * @param item The item.
+		 */
+		private TrackedItem(IRenderStateItem item) {
+			this.item = item;
+		}
+
+	}
+
+}
@@ -0,0 +1,259 @@
+package infn.bed.view.plot;
+
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.FullWaveformData;
+import infn.bed.event.PersistenceBank;
+import infn.bed.event.PersistenceSnapshot;
+import infn.bed.math.MathematicalConstants;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import cnuphys.bCNU.attributes.AttributeType;
+import cnuphys.bCNU.graphics.colorscale.ColorModelLegend;
+import cnuphys.bCNU.graphics.colorscale.ColorScaleModel;
+import cnuphys.bCNU.view.BaseView;
+
+/**
+ * Shows the waveforms of one channel overlaid over many events, as the density map of its persistence bank
+ * (see PersistenceBank), the way the persistence mode of a digital oscilloscope does.
+ *
+ * <p>
+ * The bank is only filled while "Persist" is checked, and it stops being filled when the plot is hidden. The
+ * map of the selected channel is merged from the bank and drawn again every REFRESH_MILLISECONDS while the plot
+ * is showing, so the cost of drawing does not depend on the event rate. The counts are shown on a logarithmic
+ * color scale, so a rare pulse shape stays visible next to the baseline, and an empty cell is white.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+@SuppressWarnings("serial")
+public class PersistencePlot extends BaseView {
+
+	/**
+	 * The time in milliseconds between two refreshes of the map.
+	 */
+	private static final int REFRESH_MILLISECONDS = 500;
+
+	/**
+	 * The number of colors of the color scale.
+	 */
+	private static final int COLORS = 256;
+
+	/**
+	 * The bank the maps are filled into.
+	 */
+	private final PersistenceBank persistenceBank = AccumulationManager.getInstance().getPersistenceBank();
+
+	/**
+	 * Chooses the channel on display.
+	 */
+	private final JComboBox<String> channelComboBox = new JComboBox<>();
+
+	/**
+	 * Starts and stops filling the bank.
+	 */
+	private final JCheckBox persistCheckBox = new JCheckBox("Persist");
+
+	/**
+	 * Shows the number of events filled.
+	 */
+	private final JLabel eventLabel = new JLabel();
+
+	/**
+	 * Draws the map.
+	 */
+	private final DensityCanvas densityCanvas = new DensityCanvas();
+
+	/**
+	 * The color of each level of the color scale, from the lowest nonzero count to the highest.
+	 */
+	private int[] colorArray;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param keyVals Variable set of arguments.
+	 */
+	private PersistencePlot(Object... keyVals) {
+		super(keyVals);
+		for (int channel = 0; channel < FullWaveformData.CHANNELS; channel++) {
+			channelComboBox.addItem(WaveformStripChart.getLabel(channel));
+		}
+		channelComboBox.addActionListener(event -> refresh());
+		persistCheckBox.addActionListener(event -> persistenceBank.setEnabled(persistCheckBox.isSelected()));
+		JButton clearButton = new JButton("Clear");
+		clearButton.addActionListener(event -> {
+			persistenceBank.reset();
+			refresh();
+		});
+
+		JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		controlPanel.add(channelComboBox);
+		controlPanel.add(persistCheckBox);
+		controlPanel.add(clearButton);
+		controlPanel.add(eventLabel);
+		add(controlPanel, BorderLayout.NORTH);
+		add(densityCanvas, BorderLayout.CENTER);
+		add(new ColorModelLegend(AccumulationManager.getColorScaleModel(), 160, "Relative Density (log)"),
+				BorderLayout.SOUTH);
+
+		// a hidden plot does not keep filling the bank
+		addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentHidden(ComponentEvent e) {
+				persistCheckBox.setSelected(false);
+				persistenceBank.setEnabled(false);
+			}
+		});
+		new Timer(REFRESH_MILLISECONDS, event -> {
+			if (isShowing()) {
+				refresh();
+			}
+		}).start();
+	}
+
+	/**
+	 * Creates the persistence plot, hidden until it is chosen from the event menu.
+	 *
+	 * @return The persistence plot.
+	 */
+	public static PersistencePlot createPersistencePlot() {
+		PersistencePlot view = new PersistencePlot(AttributeType.TITLE, "Waveform Persistence",
+				AttributeType.WIDTH, 640, AttributeType.HEIGHT, 480, AttributeType.VISIBLE, false,
+				AttributeType.STANDARDVIEWDECORATIONS, true);
+		view.pack();
+		return view;
+	}
+
+	/**
+	 * Shows the plot and starts filling the bank.
+	 */
+	public void startPersistence() {
+		persistCheckBox.setSelected(true);
+		persistenceBank.setEnabled(true);
+		setVisible(true);
+		refresh();
+	}
+
+	/**
+	 * Merges the map of the selected channel and draws it again.
+	 */
+	private void refresh() {
+		int channel = Math.max(0, channelComboBox.getSelectedIndex());
+		PersistenceSnapshot snapshot = persistenceBank.getSnapshot(channel);
+		eventLabel.setText(snapshot.getEventCount() + " events");
+		densityCanvas.setSnapshot(snapshot);
+	}
+
+	/**
+	 * Returns the colors of the color scale, read from the color scale model the first time.
+	 *
+	 * @return The color of each level.
+	 */
+	private int[] getColorArray() {
+		if (colorArray == null) {
+			ColorScaleModel colorScaleModel = AccumulationManager.getColorScaleModel();
+			colorArray = new int[COLORS];
+			for (int level = 0; level < COLORS; level++) {
+				colorArray[level] = colorScaleModel.getColor((double) level / (COLORS - 1)).getRGB();
+			}
+		}
+		return colorArray;
+	}
+
+	/**
+	 * Draws the map of a snapshot, with time to the right and ADC (analog-to-digital converter) values up.
+	 */
+	private class DensityCanvas extends JComponent {
+
+		/**
+		 * The map, one pixel per cell, or null if there is nothing to draw.
+		 */
+		private BufferedImage image;
+
+		/**
+		 * The snapshot of the map.
+		 */
+		private PersistenceSnapshot snapshot;
+
+		/**
+		 * The constructor.
+		 */
+		private DensityCanvas() {
+			setOpaque(true);
+			setPreferredSize(new Dimension(512, 256));
+		}
+
+		/**
+		 * Converts a snapshot into the image of the map.
+		 *
+		 * @param snapshot The snapshot.
+		 */
+		private void setSnapshot(PersistenceSnapshot snapshot) {
+			this.snapshot = snapshot;
+			int timeBins = snapshot.getTimeBinCount();
+			int adcBins = snapshot.getAdcBinCount();
+			if (image == null || image.getWidth() != timeBins || image.getHeight() != adcBins) {
+				image = new BufferedImage(timeBins, adcBins, BufferedImage.TYPE_INT_RGB);
+			}
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			int[] colors = getColorArray();
+			int white = Color.white.getRGB();
+			double logMaximum = Math.log1p(snapshot.getMaximumCount());
+			for (int timeBin = 0; timeBin < timeBins; timeBin++) {
+				for (int adcBin = 0; adcBin < adcBins; adcBin++) {
+					int count = snapshot.getCount(timeBin, adcBin);
+					int pixel = (adcBins - 1 - adcBin) * timeBins + timeBin;
+					if (count == 0) {
+						pixels[pixel] = white;
+					} else {
+						int level = (int) ((COLORS - 1) * Math.log1p(count) / logMaximum);
+						pixels[pixel] = colors[level];
+					}
+				}
+			}
+			repaint();
+		}
+
+		/**
+		 * Draws the map stretched over the canvas, and the threshold line.
+		 *
+		 * @param g The graphics context.
+		 */
+		@Override
+		protected void paintComponent(Graphics g) {
+			int width = getWidth();
+			int height = getHeight();
+			g.setColor(Color.white);
+			g.fillRect(0, 0, width, height);
+			if (image == null) {
+				return;
+			}
+			g.drawImage(image, 0, 0, width, height, null);
+			int minimumAdc = snapshot.getMinimumAdc();
+			int maximumAdc = snapshot.getMaximumAdc();
+			int thresholdY = height - (int) ((long) (MathematicalConstants.ADC_THRESHOLD - minimumAdc) * height
+					/ (maximumAdc - minimumAdc));
+			g.setColor(Color.red);
+			g.drawLine(0, thresholdY, width, thresholdY);
+		}
+
+	}
+
+}
@@ -1,6 +1,15 @@
 package infn.bed.view.plot;
 
+import infn.bed.event.FullWaveformData;
+
 import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 import java.util.Collection;
 
 import cnuphys.bCNU.view.PlotView;
@@ -8,6 +17,8 @@ import cnuphys.splot.fit.FitType;
 import cnuphys.splot.pdata.DataColumn;
 import cnuphys.splot.pdata.DataColumnType;
 import cnuphys.splot.pdata.DataSet;
+import cnuphys.splot.pdata.DataSetException;
+import cnuphys.splot.pdata.DataSetType;
 import cnuphys.splot.plot.HorizontalLine;
 import cnuphys.splot.plot.PlotParameters;
 import cnuphys.splot.plot.VerticalLine;
@@ -16,17 +27,89 @@ import cnuphys.splot.style.SymbolType;
 /**
  * Plots ADC (analog-to-digital converter) and TDC (time-to-digital converter) waveforms.
  * 
+ * <p>
+ * A plot is created once and reused for every event. It owns two data sets: the one on display and a spare
+ * one, which is filled with the samples of the next event and then swapped in, so no plot, data set or style is
+ * created per event.
+ * </p>
+ * 
+ * <p>
+ * When there are more samples in view than the plot can show, each pixel column is drawn as a line from the
+ * minimum to the maximum of its samples (see WaveformDecimator), so the time to draw a channel does not depend
+ * on the length of the readout window. Once the plot is zoomed in far enough, every sample is drawn with its
+ * symbol again. The samples of the event are copied, so the view can be recomputed after a zoom.
+ * </p>
+ * 
  * @author Andy Beiter
  * @author Angelo Licastro
  */
 @SuppressWarnings("serial")
 public class WavePlot extends PlotView {
 
+	/**
+	 * The data set on display.
+	 */
+	private DataSet frontDataSet;
+
+	/**
+	 * The data set the next event is written to.
+	 */
+	private DataSet backDataSet;
+
+	/**
+	 * The time in ns between two samples.
+	 */
+	private static final double SAMPLE_PERIOD = 4;
+
+	/**
+	 * The number of pixel columns used when the plot has not been laid out yet.
+	 */
+	private static final int DEFAULT_COLUMNS = 512;
+
+	/**
+	 * The samples of the channel on display.
+	 */
+	private short[] sampleArray = new short[0];
+
+	/**
+	 * The number of samples of the channel on display.
+	 */
+	private int sampleCount;
+
+	/**
+	 * Reduces the samples in view to one minimum and maximum per pixel column.
+	 */
+	private final WaveformDecimator decimator = new WaveformDecimator();
+
 	/**
 	 * The constructor.
+	 * 
+	 * @param isLeft true if the plot shows a left PMT (photomultiplier tube), false otherwise.
 	 */
-	public WavePlot() {
+	public WavePlot(boolean isLeft) {
 		super();
+		try {
+			frontDataSet = createDataSet();
+			backDataSet = createDataSet();
+		} catch (DataSetException e) {
+			e.printStackTrace();
+		}
+		_plotCanvas.setDataSet(frontDataSet);
+		setPreferences(isLeft);
+
+		// a zoom ends with a mouse release, and a resize changes the number of columns
+		_plotCanvas.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				EventQueue.invokeLater(WavePlot.this::refresh);
+			}
+		});
+		_plotCanvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				refresh();
+			}
+		});
 	}
 
 	/**
@@ -57,13 +140,14 @@ public class WavePlot extends PlotView {
 	}
 
 	/**
-	 * Sets the preferences for the plot.
+	 * Creates an empty data set with the style of the plot.
 	 * 
-	 * @param isLeft true if the left PMT (photomultiplier tube) is sampling, false otherwise.
+	 * @return The data set.
+	 * @throws DataSetException If the data set cannot be created.
 	 */
-	private void setPreferences(boolean isLeft) {
+	private static DataSet createDataSet() throws DataSetException {
+		DataSet dataSet = new DataSet(DataSetType.XYXY, getColumnNames());
 		Color fillColor = new Color(255, 0, 0, 96);
-		DataSet dataSet = _plotCanvas.getDataSet();
 		Collection<DataColumn> yDataColumns = dataSet.getAllColumnsByType(DataColumnType.Y);
 		for (DataColumn dataColumn : yDataColumns) {
 			dataColumn.getFit().setFitType(FitType.CONNECT);
@@ -72,6 +156,15 @@ public class WavePlot extends PlotView {
 			dataColumn.getStyle().setFillColor(fillColor);
 			dataColumn.getStyle().setLineColor(Color.black);
 		}
+		return dataSet;
+	}
+
+	/**
+	 * Sets the preferences for the plot. Called once, the plot lines and labels are kept from event to event.
+	 * 
+	 * @param isLeft true if the left PMT (photomultiplier tube) is sampling, false otherwise.
+	 */
+	private void setPreferences(boolean isLeft) {
 		PlotParameters plotParameters = _plotCanvas.getParameters();
 		plotParameters.mustIncludeXZero(true);
 		plotParameters.mustIncludeYZero(true);
@@ -87,14 +180,95 @@ public class WavePlot extends PlotView {
 	}
 
 	/**
-	 * Sets the data set for the plot and calls setPreferences().
+	 * Writes the samples of a channel to the spare data set and swaps it in. Must be called on the event
+	 * dispatch thread.
 	 * 
-	 * @param dataSet The data set for the plot.
-	 * @param isLeft true if the left PMT (photomultiplier tube) is sampling, false otherwise.
+	 * @param fullWaveformData The full-waveform data.
+	 * @param channel The channel to plot.
 	 */
-	public void addData(DataSet dataSet, boolean isLeft) {
-		this._plotCanvas.setDataSet(dataSet);
-		setPreferences(isLeft);
+	public void setData(FullWaveformData fullWaveformData, int channel) {
+		if (backDataSet == null) {
+			return;
+		}
+		sampleCount = fullWaveformData.getSampleCount(channel);
+		if (sampleCount > sampleArray.length) {
+			sampleArray = new short[sampleCount];
+		}
+		fullWaveformData.copyChannelSamples(channel, sampleArray);
+		// setting the data set rescales the axes to all of the samples
+		fill(backDataSet, 0, sampleCount);
+		DataSet dataSet = backDataSet;
+		backDataSet = frontDataSet;
+		frontDataSet = dataSet;
+		_plotCanvas.setDataSet(frontDataSet);
+	}
+
+	/**
+	 * Recomputes the data set on display for the samples in view, keeping the zoom.
+	 */
+	private void refresh() {
+		if (frontDataSet == null || sampleCount == 0) {
+			return;
+		}
+		int from = 0;
+		int to = sampleCount;
+		Rectangle2D.Double world = _plotCanvas.getWorld();
+		if (world != null) {
+			// sample i is at (i + 1) * SAMPLE_PERIOD, keep one sample on each side so the lines reach the edges
+			from = Math.max(0, (int) Math.floor(world.x / SAMPLE_PERIOD) - 2);
+			to = Math.min(sampleCount, (int) Math.ceil((world.x + world.width) / SAMPLE_PERIOD) + 1);
+		}
+		fill(frontDataSet, from, Math.max(from, to));
+		_plotCanvas.repaint();
+	}
+
+	/**
+	 * Writes a window of the samples to a data set: every sample if the window fits in the plot, the minimum
+	 * and the maximum of each pixel column otherwise.
+	 * 
+	 * @param dataSet The data set.
+	 * @param from The index of the first sample of the window.
+	 * @param to The index after the last sample of the window.
+	 */
+	private void fill(DataSet dataSet, int from, int to) {
+		int columns = DEFAULT_COLUMNS;
+		Rectangle activeBounds = _plotCanvas.getActiveBounds();
+		if (activeBounds != null && activeBounds.width > 0) {
+			columns = activeBounds.width;
+		}
+		boolean fullResolution = WaveformDecimator.isFullResolution(to - from, columns);
+		setSymbols(dataSet, fullResolution);
+		try {
+			dataSet.clear();
+			if (fullResolution) {
+				for (int i = from; i < to; i++) {
+					dataSet.add((i + 1) * SAMPLE_PERIOD, sampleArray[i]);
+				}
+			} else {
+				int columnCount = decimator.decimate(sampleArray, from, to, columns);
+				for (int column = 0; column < columnCount; column++) {
+					// the middle of the samples of the column
+					double x = (decimator.getColumnStart(column) + decimator.getColumnStart(column + 1) + 1) * SAMPLE_PERIOD / 2;
+					dataSet.add(x, decimator.getMinimum(column));
+					dataSet.add(x, decimator.getMaximum(column));
+				}
+			}
+		} catch (DataSetException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Shows or hides the symbols of a data set. The symbols are only drawn at full resolution, the envelope
+	 * of a decimated window is only drawn as lines.
+	 * 
+	 * @param dataSet The data set.
+	 * @param symbols true to draw the symbols, false otherwise.
+	 */
+	private static void setSymbols(DataSet dataSet, boolean symbols) {
+		for (DataColumn dataColumn : dataSet.getAllColumnsByType(DataColumnType.Y)) {
+			dataColumn.getStyle().setSymbolType(symbols ? SymbolType.CIRCLE : SymbolType.NOSYMBOL);
+		}
 	}
 
-}
\ No newline at end of file
+}
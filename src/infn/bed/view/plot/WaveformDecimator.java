@@ -0,0 +1,136 @@
+package infn.bed.view.plot;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a window of waveform samples to the minimum and the maximum of each pixel column it is drawn on.
+ *
+ * <p>
+ * Drawing a vertical line from the minimum to the maximum of every column looks the same as drawing every
+ * sample once there are more samples than columns, but the number of points drawn only depends on the width
+ * of the plot. Column c covers the samples from getColumnStart(c) up to getColumnStart(c + 1), so every sample
+ * belongs to exactly one column and a peak is never lost.
+ * </p>
+ *
+ * <p>
+ * NOTE: A decimator is reused from call to call, so its arrays only grow. It is not thread-safe.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class WaveformDecimator {
+
+	/**
+	 * The smallest width in pixels of a sample for which every sample is drawn.
+	 */
+	public static final double FULL_RESOLUTION_PIXELS = 4;
+
+	/**
+	 * The minimum sample of each column.
+	 */
+	private short[] minimumArray = new short[0];
+
+	/**
+	 * The maximum sample of each column.
+	 */
+	private short[] maximumArray = new short[0];
+
+	/**
+	 * The index of the first sample of each column, and of the end of the window after the last column.
+	 */
+	private int[] startArray = new int[1];
+
+	/**
+	 * The number of columns of the last decimation.
+	 */
+	private int columnCount;
+
+	/**
+	 * Returns true if a window of samples is drawn wide enough to show every sample, false if it should be
+	 * decimated.
+	 *
+	 * @param sampleCount The number of samples of the window.
+	 * @param pixels The width in pixels the window is drawn on.
+	 * @return true if every sample gets at least FULL_RESOLUTION_PIXELS pixels, false otherwise.
+	 */
+	public static boolean isFullResolution(int sampleCount, double pixels) {
+		return sampleCount * FULL_RESOLUTION_PIXELS <= pixels;
+	}
+
+	/**
+	 * Reduces a window of samples to the minimum and the maximum of each column.
+	 *
+	 * @param samples An array of samples.
+	 * @param from The index of the first sample of the window.
+	 * @param to The index after the last sample of the window.
+	 * @param columns The number of pixel columns the window is drawn on.
+	 * @return The number of columns, at most the number of samples of the window.
+	 */
+	public int decimate(short[] samples, int from, int to, int columns) {
+		int sampleCount = Math.max(0, to - from);
+		columnCount = Math.max(0, Math.min(columns, sampleCount));
+		if (columnCount > minimumArray.length) {
+			int capacity = Math.max(columnCount, 2 * minimumArray.length);
+			minimumArray = Arrays.copyOf(minimumArray, capacity);
+			maximumArray = Arrays.copyOf(maximumArray, capacity);
+			startArray = Arrays.copyOf(startArray, capacity + 1);
+		}
+		int start = from;
+		for (int column = 0; column < columnCount; column++) {
+			int end = from + (int) ((long) sampleCount * (column + 1) / columnCount);
+			int minimum = samples[start];
+			int maximum = minimum;
+			for (int i = start + 1; i < end; i++) {
+				int sample = samples[i];
+				minimum = Math.min(minimum, sample);
+				maximum = Math.max(maximum, sample);
+			}
+			startArray[column] = start;
+			minimumArray[column] = (short) minimum;
+			maximumArray[column] = (short) maximum;
+			start = end;
+		}
+		startArray[columnCount] = start;
+		return columnCount;
+	}
+
+	/**
+	 * Returns the number of columns of the last decimation.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the index of the first sample of a column.
+	 *
+	 * @param column The column, or the number of columns for the end of the window.
+	 * @return The index of the first sample of the column.
+	 */
+	public int getColumnStart(int column) {
+		return startArray[column];
+	}
+
+	/**
+	 * Returns the minimum sample of a column.
+	 *
+	 * @param column The column.
+	 * @return The minimum sample.
+	 */
+	public short getMinimum(int column) {
+		return minimumArray[column];
+	}
+
+	/**
+	 * Returns the maximum sample of a column.
+	 *
+	 * @param column The column.
+	 * @return The maximum sample.
+	 */
+	public short getMaximum(int column) {
+		return maximumArray[column];
+	}
+
+}
@@ -0,0 +1,55 @@
+package infn.bed.view.plot;
+
+import infn.bed.event.FullWaveformData;
+
+import java.awt.BorderLayout;
+
+import cnuphys.bCNU.attributes.AttributeType;
+import cnuphys.bCNU.view.BaseView;
+
+/**
+ * Shows the waveforms of all the channels of the current event at once, as a WaveformStripChart.
+ *
+ * @author Angelo Licastro
+ */
+@SuppressWarnings("serial")
+public class WaveformOverview extends BaseView {
+
+	/**
+	 * The chart of the waveforms.
+	 */
+	private final WaveformStripChart stripChart = new WaveformStripChart();
+
+	/**
+	 * The constructor.
+	 *
+	 * @param keyVals Variable set of arguments.
+	 */
+	private WaveformOverview(Object... keyVals) {
+		super(keyVals);
+		add(stripChart, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Creates the waveform overview.
+	 *
+	 * @return The waveform overview.
+	 */
+	public static WaveformOverview createWaveformOverview() {
+		WaveformOverview view = new WaveformOverview(AttributeType.TITLE, "Waveform Overview",
+				AttributeType.WIDTH, 700, AttributeType.HEIGHT, 720, AttributeType.VISIBLE, true,
+				AttributeType.STANDARDVIEWDECORATIONS, true);
+		view.pack();
+		return view;
+	}
+
+	/**
+	 * Shows the waveforms of an event. Must be called on the event dispatch thread.
+	 *
+	 * @param fullWaveformData The full-waveform data of the event.
+	 */
+	public void setData(FullWaveformData fullWaveformData) {
+		stripChart.setData(fullWaveformData);
+	}
+
+}
@@ -0,0 +1,316 @@
+package infn.bed.view.plot;
+
+import infn.bed.event.FullWaveformData;
+import infn.bed.math.MathematicalConstants;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+/**
+ * Draws the waveforms of all the channels of an event as strips stacked one above the other, so channels that
+ * fire at the same time line up.
+ *
+ * <p>
+ * The chart is drawn into one image, which is only drawn again when the event or the size changes. The traces
+ * are written straight into the pixels of the image, one pass over the samples of each channel, and a trace
+ * longer than the strip is wide is drawn as the minimum and the maximum of each pixel column (see
+ * WaveformDecimator). All the strips share one vertical scale, so the threshold line
+ * (MathematicalConstants.ADC_THRESHOLD) is at the same height in each of them, and a strip with a sample above
+ * the threshold is tinted.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+@SuppressWarnings("serial")
+public class WaveformStripChart extends JComponent {
+
+	/**
+	 * The width in pixels of the channel labels.
+	 */
+	private static final int LABEL_WIDTH = 56;
+
+	/**
+	 * The height in pixels of a strip the chart asks for.
+	 */
+	private static final int PREFERRED_STRIP_HEIGHT = 20;
+
+	/**
+	 * The bar (1 to 9) of each pair of bar channels: channels 2i and 2i + 1 are the left and right PMTs
+	 * (photomultiplier tubes) of bar BAR_OF_CHANNEL_PAIR[i]. The same order as Bed.setPlotsVisible().
+	 */
+	private static final int[] BAR_OF_CHANNEL_PAIR = { 7, 8, 9, 4, 5, 6, 1, 2, 3 };
+
+	/**
+	 * The background of the strips.
+	 */
+	private static final Color BACKGROUND = Color.white;
+
+	/**
+	 * The background of the strips of the channels above the threshold.
+	 */
+	private static final Color FIRED_BACKGROUND = new Color(255, 240, 200);
+
+	/**
+	 * The color of the traces.
+	 */
+	private static final Color TRACE_COLOR = new Color(0, 0, 160);
+
+	/**
+	 * The color of the threshold lines.
+	 */
+	private static final Color THRESHOLD_COLOR = Color.red;
+
+	/**
+	 * The color of the lines between the strips.
+	 */
+	private static final Color SEPARATOR_COLOR = Color.lightGray;
+
+	/**
+	 * The stroke of the threshold lines.
+	 */
+	private static final BasicStroke THRESHOLD_STROKE = new BasicStroke(1f, BasicStroke.CAP_BUTT,
+			BasicStroke.JOIN_MITER, 1f, new float[] { 4f, 4f }, 0f);
+
+	/**
+	 * The font of the channel labels.
+	 */
+	private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+	/**
+	 * The labels of the channels.
+	 */
+	private static final String[] LABELS = createLabels();
+
+	/**
+	 * The samples of each channel of the event on display, reused from event to event.
+	 */
+	private final short[][] sampleArrays = new short[FullWaveformData.CHANNELS][0];
+
+	/**
+	 * The number of samples of each channel of the event on display.
+	 */
+	private final int[] sampleCounts = new int[FullWaveformData.CHANNELS];
+
+	/**
+	 * Whether each channel of the event on display has a sample above the threshold.
+	 */
+	private final boolean[] fired = new boolean[FullWaveformData.CHANNELS];
+
+	/**
+	 * Reduces the samples of a channel to one minimum and maximum per pixel column.
+	 */
+	private final WaveformDecimator decimator = new WaveformDecimator();
+
+	/**
+	 * The lowest sample of the vertical scale.
+	 */
+	private int minimumSample;
+
+	/**
+	 * The highest sample of the vertical scale.
+	 */
+	private int maximumSample = 2 * MathematicalConstants.ADC_THRESHOLD;
+
+	/**
+	 * The image of the chart, or null if it has to be drawn again.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * The constructor.
+	 */
+	public WaveformStripChart() {
+		setOpaque(true);
+		setPreferredSize(new Dimension(640, FullWaveformData.CHANNELS * PREFERRED_STRIP_HEIGHT));
+	}
+
+	/**
+	 * Creates the labels of the channels.
+	 *
+	 * @return The labels, "Bar n L" and "Bar n R" for the bar channels and "Ch n" for the others.
+	 */
+	private static String[] createLabels() {
+		String[] labels = new String[FullWaveformData.CHANNELS];
+		for (int channel = 0; channel < labels.length; channel++) {
+			int pair = channel / 2;
+			if (pair < BAR_OF_CHANNEL_PAIR.length) {
+				labels[channel] = "Bar " + BAR_OF_CHANNEL_PAIR[pair] + ((channel % 2 == 0) ? " L" : " R");
+			} else {
+				labels[channel] = "Ch " + channel;
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * Returns the label of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The label, "Bar n L" or "Bar n R" for a bar channel and "Ch n" for the others.
+	 */
+	static String getLabel(int channel) {
+		return LABELS[channel];
+	}
+
+	/**
+	 * Shows the waveforms of an event. The samples are copied, so the full-waveform data can be recycled
+	 * afterwards. Must be called on the event dispatch thread.
+	 *
+	 * @param fullWaveformData The full-waveform data of the event, or null to clear the chart.
+	 */
+	public void setData(FullWaveformData fullWaveformData) {
+		int minimum = 0;
+		int maximum = 2 * MathematicalConstants.ADC_THRESHOLD;
+		for (int channel = 0; channel < FullWaveformData.CHANNELS; channel++) {
+			int count = (fullWaveformData == null) ? 0 : fullWaveformData.getSampleCount(channel);
+			if (count > sampleArrays[channel].length) {
+				sampleArrays[channel] = Arrays.copyOf(sampleArrays[channel], Math.max(count, 2 * sampleArrays[channel].length));
+			}
+			short[] samples = sampleArrays[channel];
+			if (count > 0) {
+				fullWaveformData.copyChannelSamples(channel, samples);
+			}
+			sampleCounts[channel] = count;
+			boolean aboveThreshold = false;
+			for (int i = 0; i < count; i++) {
+				int sample = samples[i];
+				minimum = Math.min(minimum, sample);
+				maximum = Math.max(maximum, sample);
+				aboveThreshold |= sample > MathematicalConstants.ADC_THRESHOLD;
+			}
+			fired[channel] = aboveThreshold;
+		}
+		minimumSample = minimum;
+		maximumSample = maximum;
+		image = null;
+		repaint();
+	}
+
+	/**
+	 * Draws the image of the chart, drawing it again first if the event or the size changed.
+	 *
+	 * @param g The graphics context.
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = render(width, height);
+		}
+		g.drawImage(image, 0, 0, null);
+	}
+
+	/**
+	 * Draws the chart into a new image.
+	 *
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @return The image.
+	 */
+	BufferedImage render(int width, int height) {
+		BufferedImage chart = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) chart.getRaster().getDataBuffer()).getData();
+		Graphics2D g2 = chart.createGraphics();
+		g2.setColor(BACKGROUND);
+		g2.fillRect(0, 0, width, height);
+		int plotWidth = width - LABEL_WIDTH;
+		int range = Math.max(1, maximumSample - minimumSample);
+		g2.setFont(LABEL_FONT);
+		for (int channel = 0; channel < FullWaveformData.CHANNELS; channel++) {
+			int top = channel * height / FullWaveformData.CHANNELS;
+			int bottom = (channel + 1) * height / FullWaveformData.CHANNELS - 1;
+			if (bottom <= top) {
+				continue;
+			}
+			if (fired[channel]) {
+				g2.setColor(FIRED_BACKGROUND);
+				g2.fillRect(LABEL_WIDTH, top, plotWidth, bottom - top);
+			}
+			g2.setColor(SEPARATOR_COLOR);
+			g2.drawLine(0, bottom, width - 1, bottom);
+			g2.setColor(Color.black);
+			g2.drawString(LABELS[channel], 2, Math.min(bottom - 1, (top + bottom) / 2 + 4));
+			if (plotWidth > 0) {
+				int thresholdY = toY(MathematicalConstants.ADC_THRESHOLD, top, bottom, range);
+				g2.setColor(THRESHOLD_COLOR);
+				g2.setStroke(THRESHOLD_STROKE);
+				g2.drawLine(LABEL_WIDTH, thresholdY, width - 1, thresholdY);
+				g2.setStroke(new BasicStroke());
+				drawTrace(pixels, width, channel, plotWidth, top, bottom, range);
+			}
+		}
+		g2.dispose();
+		return chart;
+	}
+
+	/**
+	 * Writes the trace of a channel into the pixels of the image. Each column of the decimated samples is a
+	 * vertical line from its minimum to its maximum, joined to the last sample of the column before it; a column
+	 * wider than a pixel is continued as a step to the next one.
+	 *
+	 * @param pixels The pixels of the image.
+	 * @param width The width of the image.
+	 * @param channel The channel.
+	 * @param plotWidth The width of the strip without its label.
+	 * @param top The top of the strip.
+	 * @param bottom The bottom of the strip.
+	 * @param range The difference between the highest and the lowest sample of the vertical scale.
+	 */
+	private void drawTrace(int[] pixels, int width, int channel, int plotWidth, int top, int bottom, int range) {
+		int count = sampleCounts[channel];
+		if (count == 0) {
+			return;
+		}
+		short[] samples = sampleArrays[channel];
+		int rgb = TRACE_COLOR.getRGB();
+		int columns = decimator.decimate(samples, 0, count, plotWidth);
+		int previousY = -1;
+		for (int column = 0; column < columns; column++) {
+			int x0 = LABEL_WIDTH + (int) ((long) column * plotWidth / columns);
+			int x1 = LABEL_WIDTH + (int) ((long) (column + 1) * plotWidth / columns);
+			int lowY = toY(decimator.getMaximum(column), top, bottom, range);
+			int highY = toY(decimator.getMinimum(column), top, bottom, range);
+			if (previousY >= 0) {
+				lowY = Math.min(lowY, previousY);
+				highY = Math.max(highY, previousY);
+			}
+			for (int y = lowY; y <= highY; y++) {
+				pixels[y * width + x0] = rgb;
+			}
+			int lastY = toY(samples[decimator.getColumnStart(column + 1) - 1], top, bottom, range);
+			for (int x = x0 + 1; x < x1; x++) {
+				pixels[lastY * width + x] = rgb;
+			}
+			previousY = lastY;
+		}
+	}
+
+	/**
+	 * Converts a sample to the row of the image it is drawn on.
+	 *
+	 * @param sample The sample.
+	 * @param top The top of the strip.
+	 * @param bottom The bottom of the strip.
+	 * @param range The difference between the highest and the lowest sample of the vertical scale.
+	 * @return The row, between top and bottom - 1.
+	 */
+	private int toY(int sample, int top, int bottom, int range) {
+		int rows = bottom - top - 1;
+		int y = bottom - 1 - (int) ((long) (sample - minimumSample) * rows / range);
+		return Math.max(top, Math.min(bottom - 1, y));
+	}
+
+}
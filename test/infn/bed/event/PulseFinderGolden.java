@@ -0,0 +1,387 @@
+package infn.bed.event;
+
+import infn.bed.math.MathematicalConstants;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioReader;
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * Golden-output check of PulseFinder against convertHits, the pulse finder ChargeTimeData used before it,
+ * which is kept here unchanged as the reference.
+ *
+ * <p>
+ * Every window is run through the reference and through PulseFinder, from an array and from a direct buffer,
+ * and the number of hits and every charge and time must be identical to the last bit. The windows are
+ * synthetic pulses crossing the threshold at every index of short windows (so across every block and vector
+ * boundary), pulses at the edges of a window, back-to-back pulses, and noisy random windows. The windows of
+ * the full-waveform banks of any evio files given as arguments are checked as well. The threshold scanners are
+ * also compared with each other directly.
+ * </p>
+ *
+ * <p>
+ * Run with: java --add-modules jdk.incubator.vector infn.bed.event.PulseFinderGolden [file.evio ...]. The
+ * program exits with 1 on the first mismatch.
+ * </p>
+ *
+ * @author Angelo Licastro
+ */
+public class PulseFinderGolden {
+
+	/**
+	 * The threshold of the reference.
+	 */
+	private static final int THRESHOLD = MathematicalConstants.ADC_THRESHOLD;
+
+	/**
+	 * The finder under test.
+	 */
+	private final PulseFinder pulseFinder = new PulseFinder();
+
+	/**
+	 * The scanner used where the Vector API is not available.
+	 */
+	private final IThresholdScanner scalarScanner = new ScalarThresholdScanner();
+
+	/**
+	 * The Vector API scanner, or null if its module is not there.
+	 */
+	private final IThresholdScanner vectorScanner = createVectorScanner();
+
+	/**
+	 * The number of windows checked.
+	 */
+	private long windows;
+
+	/**
+	 * The number of hits checked.
+	 */
+	private long hits;
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args The evio files whose full-waveform windows are checked as well.
+	 * @throws Exception If an evio file cannot be read.
+	 */
+	public static void main(String[] args) throws Exception {
+		PulseFinderGolden golden = new PulseFinderGolden();
+		golden.checkEdges();
+		golden.checkBlockBoundaries();
+		golden.checkBackToBack();
+		golden.checkRandom(new Random(42), 20000);
+		for (String arg : args) {
+			golden.checkFile(new File(arg));
+		}
+		System.out.println("OK windows=" + golden.windows + " hits=" + golden.hits + " vectorized="
+				+ PulseFinder.isVectorized());
+	}
+
+	/**
+	 * Creates the Vector API scanner.
+	 *
+	 * @return The scanner, or null if the jdk.incubator.vector module is not there.
+	 */
+	private static IThresholdScanner createVectorScanner() {
+		try {
+			IThresholdScanner scanner = new VectorThresholdScanner();
+			scanner.nextAboveThreshold(new short[1], 0, 0, 1, 0);
+			return scanner;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks pulses that start at the first samples or end at the last samples of a window, and windows too
+	 * short to hold a pulse.
+	 */
+	private void checkEdges() {
+		for (int length = 0; length <= 4; length++) {
+			for (int mask = 0; mask < (1 << length); mask++) {
+				short[] samples = new short[length];
+				for (int i = 0; i < length; i++) {
+					samples[i] = (short) (((mask & (1 << i)) != 0) ? THRESHOLD + 100 : THRESHOLD - 100);
+				}
+				check(samples, "edge " + length + "/" + mask);
+			}
+		}
+		for (int length = 5; length <= 40; length++) {
+			for (int width = 1; width <= 6 && width <= length; width++) {
+				short[] head = flat(length);
+				short[] tail = flat(length);
+				addPulse(head, 0, width, 900);
+				addPulse(tail, length - width, width, 900);
+				check(head, "head " + length + "/" + width);
+				check(tail, "tail " + length + "/" + width);
+			}
+		}
+	}
+
+	/**
+	 * Checks a pulse of every width up to 5 starting at every index of windows up to 100 samples long, so
+	 * the crossings fall on both sides of every block and vector boundary.
+	 */
+	private void checkBlockBoundaries() {
+		for (int length = 3; length <= 100; length++) {
+			for (int start = 0; start < length; start++) {
+				for (int width = 1; width <= 5 && start + width <= length; width++) {
+					short[] samples = flat(length);
+					addPulse(samples, start, width, 1000);
+					check(samples, "boundary " + length + "/" + start + "/" + width);
+					// a sample exactly at the threshold is neither above nor below it
+					samples[start] = THRESHOLD;
+					check(samples, "at threshold " + length + "/" + start + "/" + width);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks pairs of pulses with no sample, one sample or two samples between them, with the gap below and at
+	 * the threshold.
+	 */
+	private void checkBackToBack() {
+		short[] gapValues = { THRESHOLD - 50, THRESHOLD, THRESHOLD + 1 };
+		for (int length = 8; length <= 70; length++) {
+			for (int start = 0; start + 4 < length; start++) {
+				for (int gap = 0; gap <= 2; gap++) {
+					for (short gapValue : gapValues) {
+						short[] samples = flat(length);
+						addPulse(samples, start, 2, 800);
+						for (int i = start + 2; i < Math.min(length, start + 2 + gap); i++) {
+							samples[i] = gapValue;
+						}
+						addPulse(samples, Math.min(length - 1, start + 2 + gap), 3, 1200);
+						check(samples, "back to back " + length + "/" + start + "/" + gap + "/" + gapValue);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks noisy windows with random pulses around a random baseline.
+	 *
+	 * @param random The source of the windows.
+	 * @param count The number of windows.
+	 */
+	private void checkRandom(Random random, int count) {
+		for (int window = 0; window < count; window++) {
+			int length = random.nextInt(600);
+			int baseline = 150 + random.nextInt(200);
+			short[] samples = new short[length];
+			for (int i = 0; i < length; i++) {
+				samples[i] = (short) (baseline + random.nextInt(40) - 20);
+			}
+			int pulses = random.nextInt(6);
+			for (int pulse = 0; pulse < pulses && length > 0; pulse++) {
+				int start = random.nextInt(length);
+				int amplitude = 20 + random.nextInt(4000);
+				for (int k = 0; k < 12 && start + k < length; k++) {
+					samples[start + k] += (short) (amplitude * Math.exp(-Math.abs(k - 2)));
+				}
+			}
+			check(samples, "random " + window);
+		}
+	}
+
+	/**
+	 * Checks the windows of every channel of the full-waveform banks of an evio file.
+	 *
+	 * @param evioFile The evio file.
+	 * @throws Exception If the file cannot be read.
+	 */
+	private void checkFile(File evioFile) throws Exception {
+		EvioReader evioReader = new EvioReader(evioFile);
+		try {
+			List<IEvioStructure> structureList = new ArrayList<>();
+			FullWaveformData fullWaveformData = new FullWaveformData();
+			short[] samples = new short[0];
+			long eventNumber = 0;
+			EvioEvent evioEvent;
+			while ((evioEvent = evioReader.parseNextEvent()) != null) {
+				eventNumber++;
+				structureList.clear();
+				EventDecoder.collectDecodedStructures(evioEvent, structureList);
+				for (IEvioStructure structure : structureList) {
+					if (structure.getHeader().getTag() != EventDecoder.FULL_WAVEFORM_TAG) {
+						continue;
+					}
+					fullWaveformData.load(structure, EventDecoder.FULL_WAVEFORM_TAG, 0);
+					for (int channel = 0; channel < FullWaveformData.CHANNELS; channel++) {
+						int count = fullWaveformData.getSampleCount(channel);
+						if (count > samples.length) {
+							samples = new short[count];
+						}
+						fullWaveformData.copyChannelSamples(channel, samples);
+						short[] window = new short[count];
+						System.arraycopy(samples, 0, window, 0, count);
+						check(window, evioFile.getName() + " event " + eventNumber + " channel "
+								+ channel);
+					}
+				}
+			}
+		} finally {
+			evioReader.close();
+		}
+	}
+
+	/**
+	 * Checks one window, and exits on a mismatch.
+	 *
+	 * @param samples The samples of the window.
+	 * @param name The name of the window in the message of a mismatch.
+	 */
+	private void check(short[] samples, String name) {
+		ArrayList<Short> sampleArrayList = new ArrayList<>(samples.length);
+		for (short sample : samples) {
+			sampleArrayList.add(sample);
+		}
+		ArrayList<Double> chargeArrayList = new ArrayList<>();
+		ArrayList<Double> timeArrayList = new ArrayList<>();
+		int expected = convertHits(sampleArrayList, chargeArrayList, timeArrayList);
+
+		// in the middle of a bigger array, so the offset is used
+		short[] padded = new short[samples.length + 7];
+		System.arraycopy(samples, 0, padded, 3, samples.length);
+		PulseList arrayPulses = new PulseList();
+		compare(name + " (array)", expected, chargeArrayList, timeArrayList,
+				pulseFinder.findPulses(padded, 3, samples.length, arrayPulses), arrayPulses);
+
+		ByteBuffer byteBuffer = ByteBuffer.allocateDirect(2 * padded.length).order(ByteOrder.LITTLE_ENDIAN);
+		byteBuffer.asShortBuffer().put(padded);
+		ShortBuffer shortBuffer = byteBuffer.asShortBuffer();
+		shortBuffer.position(3).limit(3 + samples.length);
+		PulseList bufferPulses = new PulseList();
+		compare(name + " (buffer)", expected, chargeArrayList, timeArrayList,
+				pulseFinder.findPulses(shortBuffer, bufferPulses), bufferPulses);
+
+		if (vectorScanner != null) {
+			for (int from = 0; from <= samples.length; from++) {
+				int scalar = scalarScanner.nextAboveThreshold(padded, 3, from, samples.length, THRESHOLD);
+				int vector = vectorScanner.nextAboveThreshold(padded, 3, from, samples.length, THRESHOLD);
+				if (scalar != vector) {
+					fail(name + ": scanners disagree from " + from + ", " + scalar + " != " + vector);
+				}
+			}
+		}
+		windows++;
+		hits += expected;
+	}
+
+	/**
+	 * Compares the hits of the reference with the pulses found, and exits on a mismatch.
+	 *
+	 * @param name The name of the window.
+	 * @param expected The number of hits of the reference.
+	 * @param chargeArrayList The charges of the reference.
+	 * @param timeArrayList The times of the reference.
+	 * @param found The number of pulses found.
+	 * @param pulses The pulses found.
+	 */
+	private static void compare(String name, int expected, ArrayList<Double> chargeArrayList,
+			ArrayList<Double> timeArrayList, int found, PulseList pulses) {
+		if (found != expected || pulses.size() != expected) {
+			fail(name + ": " + found + " hits, expected " + expected);
+		}
+		for (int hit = 0; hit < expected; hit++) {
+			if (Double.doubleToLongBits(pulses.getCharge(hit)) != Double.doubleToLongBits(chargeArrayList.get(hit))
+					|| Double.doubleToLongBits(pulses.getTime(hit)) != Double.doubleToLongBits(timeArrayList.get(hit))) {
+				fail(name + ": hit " + hit + " is (" + pulses.getCharge(hit) + ", " + pulses.getTime(hit)
+						+ "), expected (" + chargeArrayList.get(hit) + ", " + timeArrayList.get(hit) + ")");
+			}
+		}
+	}
+
+	/**
+	 * Prints a mismatch and exits.
+	 *
+	 * @param message The mismatch.
+	 */
+	private static void fail(String message) {
+		System.err.println("MISMATCH " + message);
+		System.exit(1);
+	}
+
+	/**
+	 * Creates a window with every sample below the threshold.
+	 *
+	 * @param length The number of samples.
+	 * @return The window.
+	 */
+	private static short[] flat(int length) {
+		short[] samples = new short[length];
+		for (int i = 0; i < length; i++) {
+			samples[i] = (short) (THRESHOLD - 80 + (i % 5));
+		}
+		return samples;
+	}
+
+	/**
+	 * Writes a pulse into a window, rising to its peak in the middle.
+	 *
+	 * @param samples The window.
+	 * @param start The first sample of the pulse.
+	 * @param width The number of samples of the pulse above the threshold.
+	 * @param amplitude The height of the peak above the threshold.
+	 */
+	private static void addPulse(short[] samples, int start, int width, int amplitude) {
+		for (int k = 0; k < width && start + k < samples.length; k++) {
+			int distance = Math.abs(2 * k - (width - 1));
+			samples[start + k] = (short) (THRESHOLD + 1 + amplitude / (1 + distance));
+		}
+	}
+
+	/**
+	 * The pulse finder of ChargeTimeData before PulseFinder, unchanged.
+	 *
+	 * @param sampleArrayList An ArrayList of samples.
+	 * @param chargeArrayList An ArrayList of charges.
+	 * @param timeArrayList An ArrayList of times.
+	 * @return hits The number of hits.
+	 */
+	private static int convertHits(ArrayList<Short> sampleArrayList, ArrayList<Double> chargeArrayList, ArrayList<Double> timeArrayList) {
+		int hits = 0;
+		double a_L = 0;
+		double b_L = 0;
+		double charge = 0;
+		double time = 0;
+		boolean collectingPulse = false;
+		for (int i = 1; i < (sampleArrayList.size() - 1); i++) {
+			if (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD && sampleArrayList.get(i - 1) < MathematicalConstants.ADC_THRESHOLD) {
+				a_L = sampleArrayList.get(i + 1) - sampleArrayList.get(i - 1) * 1 / 4;
+				b_L = sampleArrayList.get(i + 1) - a_L * (i - 1) * 4;
+				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				collectingPulse = true;
+			} else if ((sampleArrayList.get(i + 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i - 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD)) {
+				time = sampleArrayList.get(i) / 2;
+				time = time - b_L;
+				time = time / a_L;
+				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+			} else if ((sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD) && (sampleArrayList.get(i + 1) < MathematicalConstants.ADC_THRESHOLD)) {
+				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				chargeArrayList.add(charge);
+				timeArrayList.add(time);
+				hits++;
+				a_L = 0;
+				b_L = 0;
+				charge = 0;
+				time = 0;
+				collectingPulse = false;
+			} else if (collectingPulse) {
+				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+			}
+		}
+		return hits;
+	}
+
+}